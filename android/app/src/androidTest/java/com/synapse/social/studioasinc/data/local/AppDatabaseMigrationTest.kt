@@ -0,0 +1,91 @@
+package com.synapse.social.studioasinc.data.local
+
+import androidx.room.testing.MigrationTestHelper
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Migration tests against the exported schemas in app/schemas.
+ */
+@RunWith(AndroidJUnit4::class)
+class AppDatabaseMigrationTest {
+
+    companion object {
+        private const val TEST_DB = "migration-test"
+    }
+
+    @get:Rule
+    val helper = MigrationTestHelper(
+        InstrumentationRegistry.getInstrumentation(),
+        AppDatabase::class.java
+    )
+
+    @Test
+    fun migrate1To2_keepsOfflineDataAndAddsLinkPreviews() {
+        helper.createDatabase(TEST_DB, 1).use { db ->
+            db.execSQL(
+                "INSERT INTO users (uid, username, email, avatarUrl, isVerified) " +
+                    "VALUES ('u1', 'ashik', NULL, NULL, 0)"
+            )
+        }
+
+        // Validates the migrated tables against 2.json
+        val db = helper.runMigrationsAndValidate(TEST_DB, 2, true, AppDatabase.MIGRATION_1_2)
+
+        db.query("SELECT username FROM users WHERE uid = 'u1'").use { cursor ->
+            assertEquals(1, cursor.count)
+            cursor.moveToFirst()
+            assertEquals("ashik", cursor.getString(0))
+        }
+        db.execSQL(
+            "INSERT INTO link_previews (url, title, description, imageUrl, domain, failed, fetchedAt) " +
+                "VALUES ('https://example.com', NULL, NULL, NULL, NULL, 1, 0)"
+        )
+        db.query("SELECT failed FROM link_previews").use { cursor ->
+            cursor.moveToFirst()
+            assertEquals(1, cursor.getInt(0))
+        }
+    }
+
+    @Test
+    fun migrate2To3_keepsLinkPreviewsAndAddsWindowMessages() {
+        helper.createDatabase(TEST_DB, 2).use { db ->
+            db.execSQL(
+                "INSERT INTO link_previews (url, title, description, imageUrl, domain, failed, fetchedAt) " +
+                    "VALUES ('https://example.com', 'Example', NULL, NULL, 'example.com', 0, 0)"
+            )
+        }
+
+        // Validates the migrated tables and the chatId/createdAt index against 3.json
+        val db = helper.runMigrationsAndValidate(TEST_DB, 3, true, AppDatabase.MIGRATION_2_3)
+
+        db.query("SELECT title FROM link_previews WHERE url = 'https://example.com'").use { cursor ->
+            assertEquals(1, cursor.count)
+            cursor.moveToFirst()
+            assertEquals("Example", cursor.getString(0))
+        }
+        db.execSQL(
+            "INSERT INTO window_messages (id, chatId, createdAt, row) VALUES ('m1', 'c1', 100, '{}')"
+        )
+        db.query("SELECT id FROM window_messages WHERE chatId = 'c1' ORDER BY createdAt").use { cursor ->
+            assertEquals(1, cursor.count)
+        }
+    }
+
+    @Test
+    fun migrate1To3_runsTheWholeChain() {
+        helper.createDatabase(TEST_DB, 1).close()
+
+        helper.runMigrationsAndValidate(
+            TEST_DB,
+            3,
+            true,
+            AppDatabase.MIGRATION_1_2,
+            AppDatabase.MIGRATION_2_3
+        ).close()
+    }
+}
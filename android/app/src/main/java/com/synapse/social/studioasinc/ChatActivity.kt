@@ -35,6 +35,7 @@ import com.synapse.social.studioasinc.chat.DeleteConfirmationDialog
 import com.synapse.social.studioasinc.chat.EditMessageDialog
 import com.synapse.social.studioasinc.chat.EditHistoryDialog
 import com.synapse.social.studioasinc.chat.SwipeToReplyCallback
+import com.synapse.social.studioasinc.chat.ChatViewPool
 import com.synapse.social.studioasinc.chat.ImageGalleryActivity
 import kotlinx.coroutines.*
 import androidx.lifecycle.lifecycleScope
@@ -42,7 +43,9 @@ import androidx.lifecycle.ViewModelProvider
 import androidx.lifecycle.DefaultLifecycleObserver
 import androidx.lifecycle.LifecycleOwner
 import com.synapse.social.studioasinc.presentation.viewmodel.ChatViewModel
+import com.synapse.social.studioasinc.chat.service.OutboxEntry
 import com.synapse.social.studioasinc.chat.service.RealtimeState
+import com.synapse.social.studioasinc.chat.service.ReplyPreviewResolver
 import java.text.SimpleDateFormat
 import java.util.*
 import kotlinx.coroutines.Dispatchers
@@ -61,6 +64,8 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
     private var synapseLoadingDialog: ProgressDialog? = null
     private var chatId: String? = null
     private var otherUserId: String? = null
+    // Message to open the chat at, e.g. a search hit; shown instead of the latest page
+    private var pendingJumpMessageId: String? = null
     private var isGroup: Boolean = false
     private var replyMessageId: String? = null
     
@@ -84,9 +89,14 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
     // Realtime channel
     private var realtimeChannel: io.github.jan.supabase.realtime.RealtimeChannel? = null
     
-    // Pagination state
+    // Pagination state: a bounded window over the history, paged in both directions
+    private val messageWindow = com.synapse.social.studioasinc.chat.MessageWindow()
+    private var messagePager: com.synapse.social.studioasinc.chat.service.MessagePager? = null
     private var isLoadingMoreMessages = false
-    private var hasMoreMessages = true
+    private var isLoadingNewerMessages = false
+    
+    // Mirrors outbox state onto optimistic messages
+    private var outboxJob: Job? = null
 
     // UI Components
     private var recyclerView: RecyclerView? = null
@@ -132,6 +142,7 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
         chatId = intent.getStringExtra("chatId")
         otherUserId = intent.getStringExtra("uid")
         isGroup = intent.getBooleanExtra("isGroup", false)
+        pendingJumpMessageId = intent.getStringExtra("messageId")
         currentUserId = SupabaseClient.client.auth.currentUserOrNull()?.id
         
         if (currentUserId == null) {
@@ -183,6 +194,9 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                 layoutManager = linearLayoutManager
                 setHasFixedSize(true)
                 
+                // Bubbles come from the pool shared by all chat screens
+                ChatViewPool.attach(this)
+                
                 // Setup swipe-to-reply gesture
                 setupSwipeToReply(this)
                 
@@ -193,9 +207,15 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                         
                         // Check if user scrolled to the top
                         val firstVisiblePosition = linearLayoutManager.findFirstVisibleItemPosition()
-                        if (firstVisiblePosition == 0 && !isLoadingMoreMessages && hasMoreMessages) {
+                        if (firstVisiblePosition == 0 && !isLoadingMoreMessages && messageWindow.hasOlder) {
                             loadMoreMessages()
                         }
+                        
+                        // Or back down to messages trimmed off the bottom of the window
+                        val lastVisiblePosition = linearLayoutManager.findLastVisibleItemPosition()
+                        if (lastVisiblePosition >= messagesList.size - 1 && !isLoadingNewerMessages && messageWindow.hasNewer) {
+                            loadNewerMessages()
+                        }
                     }
                 })
             }
@@ -203,7 +223,7 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
             // Initialize ChatAdapter with full listener implementation
             val chatAdapter = ChatAdapter(
                 data = messagesList,
-                repliedMessagesCache = HashMap(),
+                replyPreviews = ReplyPreviewResolver.getInstance(),
                 listener = object : com.synapse.social.studioasinc.chat.interfaces.ChatAdapterListener {
                     override fun onMessageClick(messageId: String, position: Int) {
                         // Handle message click if needed
@@ -215,7 +235,8 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                     }
                     
                     override fun onReplyClick(messageId: String, messageText: String, senderName: String) {
-                        prepareReply(messageId, messageText, senderName)
+                        // Tapping the quoted message jumps to the original
+                        scrollToMessage(messageId)
                     }
                     
                     override fun onAttachmentClick(attachmentUrl: String, attachmentType: String) {
@@ -262,7 +283,8 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                     }
                 }
             )
-            recyclerView?.adapter = chatAdapter
+            // swapAdapter keeps the shared pool's bubbles, which setAdapter may discard
+            recyclerView?.swapAdapter(chatAdapter, false)
             this.chatAdapter = chatAdapter
             
             // Initialize ViewModels FIRST
@@ -299,14 +321,14 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
             
             // Setup queued messages callback
             multiSelectManager?.onQueuedMessagesReady = { queuedMessages ->
-                // Add queued messages to the list
-                queuedMessages.forEach { message ->
-                    messagesList.add(message)
-                }
-                chatAdapter.notifyDataSetChanged()
-                // Scroll to bottom to show new messages
-                if (messagesList.isNotEmpty()) {
-                    recyclerView?.scrollToPosition(messagesList.size - 1)
+                // Add queued messages to the list, unless the window no longer ends at the latest
+                // message; they load when the user pages back down
+                val shown = if (messageWindow.isAtLatest) queuedMessages else emptyList()
+                chatAdapter.appendMessages(shown) {
+                    // Scroll to bottom to show new messages
+                    if (messagesList.isNotEmpty()) {
+                        recyclerView?.scrollToPosition(messagesList.size - 1)
+                    }
                 }
                 // Re-enable animations after processing queued messages
                 enableRecyclerViewAnimations()
@@ -521,12 +543,15 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
         if (multiSelectManager?.shouldQueueMessages() == true) {
             // Queue message for later display
             multiSelectManager?.queueMessage(message)
+        } else if (messageWindow.hasNewer) {
+            // Below the window's gap; it loads when the user pages back down
+            Log.d(TAG, "Window detached from latest, not appending ${message["id"]}")
         } else {
             // Add message immediately
-            messagesList.add(message)
-            chatAdapter?.notifyItemInserted(messagesList.size - 1)
-            // Scroll to bottom to show new message
-            recyclerView?.scrollToPosition(messagesList.size - 1)
+            chatAdapter?.appendMessages(listOf(message)) {
+                // Scroll to bottom to show new message
+                recyclerView?.scrollToPosition(messagesList.size - 1)
+            }
         }
     }
 
@@ -631,36 +656,31 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                 // Load user-deleted messages first
                 loadUserDeletedMessages()
                 
-                val result = chatService.getMessages(chatId!!, limit = 50)
+                // Opened at a specific message: load around it instead of the latest page
+                val jumpTarget = pendingJumpMessageId
+                if (jumpTarget != null) {
+                    pendingJumpMessageId = null
+                    loadingDialog(false)
+                    jumpToMessage(jumpTarget)
+                    return@launch
+                }
+                
+                val pager = pagerFor(chatId!!)
+                val result = pager.latest()
                 result.fold(
-                    onSuccess = { messages ->
-                        messagesList.clear()
-                        // Messages are already sorted by created_at ascending (oldest first) from the service
-                        messages.forEach { message ->
-                            val messageMap = HashMap<String, Any?>()
-                            messageMap["id"] = message["id"]
-                            messageMap["chat_id"] = message["chat_id"]
-                            messageMap["sender_id"] = message["sender_id"]
-                            messageMap["uid"] = message["sender_id"] // For compatibility
-                            messageMap["content"] = message["content"]
-                            messageMap["message_text"] = message["content"] // For compatibility
-                            messageMap["message_type"] = message["message_type"]
-                            messageMap["created_at"] = message["created_at"]
-                            messageMap["push_date"] = message["created_at"] // For compatibility
-                            messageMap["is_deleted"] = message["is_deleted"]
-                            messageMap["is_edited"] = message["is_edited"]
-                            messageMap["delete_for_everyone"] = message["delete_for_everyone"]
-                            messagesList.add(messageMap)
-                        }
+                    onSuccess = { loadedMessages ->
+                        // Rows are sorted oldest first; this is the newest page of the history
+                        messageWindow.reset(loadedMessages.size, pager.activePageSize)
                         
-                        // Check if there might be more messages
-                        hasMoreMessages = messages.size >= 50
-                        
-                        chatAdapter?.notifyDataSetChanged()
-                        if (messagesList.isNotEmpty()) {
-                            recyclerView?.scrollToPosition(messagesList.size - 1)
+                        chatAdapter?.setMessages(loadedMessages) {
+                            if (messagesList.isNotEmpty()) {
+                                recyclerView?.scrollToPosition(messagesList.size - 1)
+                            }
                         }
                         
+                        // Re-append messages still in the outbox
+                        observeOutbox()
+                        
                         // Mark messages as read
                         if (currentUserId != null) {
                             chatService.markMessagesAsRead(chatId!!, currentUserId!!)
@@ -681,67 +701,56 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
     }
     
     private fun loadMoreMessages() {
-        if (isLoadingMoreMessages || !hasMoreMessages || messagesList.isEmpty()) return
+        if (isLoadingMoreMessages || !messageWindow.hasOlder || messagesList.isEmpty()) return
+        val pager = messagePager ?: return
         
         lifecycleScope.launch {
             try {
                 isLoadingMoreMessages = true
                 
-                // Get the timestamp of the oldest message currently loaded
+                // The page above the oldest message currently loaded
                 val oldestMessage = messagesList.firstOrNull() ?: return@launch
-                val oldestTimestamp = oldestMessage["created_at"]?.toString()?.toLongOrNull() ?: return@launch
+                val generation = messageWindow.generation
                 
-                Log.d(TAG, "Loading more messages before timestamp: $oldestTimestamp")
+                Log.d(TAG, "Loading more messages before: ${oldestMessage["id"]}")
                 
-                val result = chatService.getMessages(
-                    chatId = chatId!!,
-                    limit = 50,
-                    beforeTimestamp = oldestTimestamp
-                )
+                val result = pager.older(oldestMessage, messagesList)
+                if (generation != messageWindow.generation) {
+                    // The window was replaced meanwhile, e.g. by a jump
+                    isLoadingMoreMessages = false
+                    return@launch
+                }
                 
                 result.fold(
-                    onSuccess = { messages ->
-                        if (messages.isEmpty()) {
-                            hasMoreMessages = false
+                    onSuccess = { loaded ->
+                        val adapter = chatAdapter
+                        // The pager drops rows already in the window; this skips any the list still shows
+                        val newMessages = loaded.filter { row ->
+                            row["id"]?.toString()?.let { adapter?.positionOf(it) } == -1
+                        }
+                        val excess = messageWindow.onOlderLoaded(loaded.size, messagesList.size + newMessages.size)
+                        
+                        if (newMessages.isEmpty()) {
                             Log.d(TAG, "No more messages to load")
                         } else {
                             // Remember the current first item position
                             val layoutManager = recyclerView?.layoutManager as? LinearLayoutManager
                             val firstVisiblePosition = layoutManager?.findFirstVisibleItemPosition() ?: 0
                             
-                            // Add older messages to the beginning of the list
-                            val newMessages = messages.map { message ->
-                                HashMap<String, Any?>().apply {
-                                    put("id", message["id"])
-                                    put("chat_id", message["chat_id"])
-                                    put("sender_id", message["sender_id"])
-                                    put("uid", message["sender_id"])
-                                    put("content", message["content"])
-                                    put("message_text", message["content"])
-                                    put("message_type", message["message_type"])
-                                    put("created_at", message["created_at"])
-                                    put("push_date", message["created_at"])
-                                    put("is_deleted", message["is_deleted"])
-                                    put("is_edited", message["is_edited"])
-                                    put("delete_for_everyone", message["delete_for_everyone"])
-                                }
+                            // Restore scroll position once shown (add the number of new items to the old position)
+                            adapter?.prependMessages(newMessages) { itemsAdded ->
+                                layoutManager?.scrollToPositionWithOffset(
+                                    firstVisiblePosition + itemsAdded,
+                                    0
+                                )
                             }
                             
-                            messagesList.addAll(0, newMessages)
-                            
-                            // Check if there might be more messages
-                            hasMoreMessages = messages.size >= 50
-                            
-                            // Notify adapter and maintain scroll position
-                            chatAdapter?.notifyItemRangeInserted(0, newMessages.size)
-                            
-                            // Restore scroll position (add the number of new items to the old position)
-                            layoutManager?.scrollToPositionWithOffset(
-                                firstVisiblePosition + newMessages.size,
-                                0
-                            )
+                            // Keep the window bounded: the newest rows go to the local store
+                            if (excess > 0) {
+                                adapter?.trimEnd(excess)?.let { pager.evict(it) }
+                            }
                             
-                            Log.d(TAG, "Loaded ${newMessages.size} more messages")
+                            Log.d(TAG, "Loaded ${newMessages.size} more messages, trimmed $excess")
                         }
                         
                         isLoadingMoreMessages = false
@@ -759,6 +768,69 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
         }
     }
     
+    /**
+     * Pages back down towards the latest message after the window was trimmed at the bottom.
+     * Once the latest page is back, new and unsent messages are appended again.
+     */
+    private fun loadNewerMessages() {
+        if (isLoadingNewerMessages || !messageWindow.hasNewer || messagesList.isEmpty()) return
+        val pager = messagePager ?: return
+        
+        lifecycleScope.launch {
+            try {
+                isLoadingNewerMessages = true
+                
+                val newestMessage = messagesList.lastOrNull() ?: return@launch
+                val generation = messageWindow.generation
+                val result = pager.newer(newestMessage, messagesList)
+                if (generation != messageWindow.generation) {
+                    isLoadingNewerMessages = false
+                    return@launch
+                }
+                
+                result.fold(
+                    onSuccess = { loaded ->
+                        val adapter = chatAdapter
+                        val newMessages = loaded.filter { row ->
+                            row["id"]?.toString()?.let { adapter?.positionOf(it) } == -1
+                        }
+                        val excess = messageWindow.onNewerLoaded(loaded.size, messagesList.size + newMessages.size)
+                        
+                        adapter?.appendMessages(newMessages)
+                        if (excess > 0) {
+                            adapter?.trimStart(excess)?.let { pager.evict(it) }
+                        }
+                        
+                        if (messageWindow.isAtLatest) {
+                            // Unsent messages were not appended while the window was detached
+                            observeOutbox()
+                        }
+                        
+                        Log.d(TAG, "Loaded ${newMessages.size} newer messages, trimmed $excess")
+                        isLoadingNewerMessages = false
+                    },
+                    onFailure = { error ->
+                        showError("Failed to load newer messages: ${error.message}")
+                        isLoadingNewerMessages = false
+                    }
+                )
+            } catch (e: Exception) {
+                Log.e(TAG, "Error loading newer messages: ${e.message}", e)
+                isLoadingNewerMessages = false
+            }
+        }
+    }
+    
+    private fun pagerFor(chatId: String): com.synapse.social.studioasinc.chat.service.MessagePager {
+        return messagePager ?: com.synapse.social.studioasinc.chat.service.MessagePager(
+            chatId = chatId,
+            chatService = chatService,
+            dao = com.synapse.social.studioasinc.data.local.AppDatabase.getDatabase(this).windowMessageDao(),
+            pageSize = messageWindow.pageSize,
+            networkPolicy = com.synapse.social.studioasinc.util.NetworkPolicyEngine.getInstance(this).policy
+        ).also { messagePager = it }
+    }
+    
     /**
      * Load user-deleted messages from database
      * Stores deleted message IDs in memory for quick lookup during rendering
@@ -865,12 +937,14 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
             return
         }
         
-        // Generate temporary message ID using timestamp
-        val tempId = "temp_${System.currentTimeMillis()}"
+        val currentReplyId = replyMessageId
+        
+        // Queue in the outbox. The client ID is also the server row ID, so the realtime echo
+        // replaces this message in place instead of adding a duplicate
+        val clientId = chatViewModel.sendMessage(chatId!!, messageText, "text", currentReplyId) ?: return
         
-        // Create optimistic message map with temp ID
         val optimisticMessage = HashMap<String, Any?>()
-        optimisticMessage["id"] = tempId
+        optimisticMessage["id"] = clientId
         optimisticMessage["chat_id"] = chatId
         optimisticMessage["sender_id"] = currentUserId
         optimisticMessage["uid"] = currentUserId
@@ -883,116 +957,38 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
         optimisticMessage["is_edited"] = false
         optimisticMessage["delivery_status"] = "sending"
         optimisticMessage["is_optimistic"] = true
-        optimisticMessage["temp_id"] = tempId
         
         // Include reply reference if present
-        val currentReplyId = replyMessageId
         if (currentReplyId != null) {
             optimisticMessage["replied_message_id"] = currentReplyId
         }
         
-        // Add optimistic message to messagesList immediately
-        messagesList.add(optimisticMessage)
+        // Add optimistic message to messagesList immediately, unless the outbox observer
+        // already added it
+        // Scroll to bottom to show new message
+        if (messageWindow.hasNewer) {
+            // The window is scrolled far back; reload the latest page, which re-appends the
+            // message from the outbox
+            loadMessages()
+        } else if (chatAdapter?.positionOf(clientId) == -1) {
+            chatAdapter?.appendMessages(listOf(optimisticMessage)) {
+                recyclerView?.scrollToPosition(messagesList.size - 1)
+            }
+        } else {
+            recyclerView?.scrollToPosition(messagesList.size - 1)
+        }
         
         // Clear input field immediately after adding to list
         messageInput?.text?.clear()
         
         // Clear reply preview after message sent
         cancelReply()
-        
-        // Notify adapter of new message insertion
-        chatAdapter?.notifyItemInserted(messagesList.size - 1)
-        
-        // Scroll to bottom to show new message
-        recyclerView?.scrollToPosition(messagesList.size - 1)
-        
-        // Disable send button to prevent double-sending
-        sendButton?.isEnabled = false
-        
-        lifecycleScope.launch {
-            try {
-                val result = chatService.sendMessage(
-                    chatId = chatId!!,
-                    senderId = currentUserId!!,
-                    content = messageText,
-                    messageType = "text",
-                    replyToId = currentReplyId
-                )
-                
-                result.fold(
-                    onSuccess = { messageId ->
-                        // Find message by temp ID in messagesList
-                        val position = messagesList.indexOfFirst { 
-                            it["temp_id"]?.toString() == tempId 
-                        }
-                        
-                        if (position != -1) {
-                            // Update message with real ID from server
-                            val message = messagesList[position]
-                            message["id"] = messageId
-                            message["delivery_status"] = "sent"
-                            message["is_optimistic"] = false
-                            message.remove("temp_id")
-                            
-                            // Notify adapter of item change
-                            runOnUiThread {
-                                chatAdapter?.notifyItemChanged(position)
-                            }
-                        }
-                    },
-                    onFailure = { error ->
-                        // Find message by temp ID in messagesList
-                        val position = messagesList.indexOfFirst { 
-                            it["temp_id"]?.toString() == tempId 
-                        }
-                        
-                        if (position != -1) {
-                            // Update message delivery status to "failed"
-                            val message = messagesList[position]
-                            message["delivery_status"] = "failed"
-                            message["is_optimistic"] = false
-                            
-                            // Notify adapter of item change
-                            runOnUiThread {
-                                chatAdapter?.notifyItemChanged(position)
-                            }
-                        }
-                        
-                        showError("Failed to send message: ${error.message}")
-                    }
-                )
-            } catch (e: Exception) {
-                // Find message by temp ID in messagesList
-                val position = messagesList.indexOfFirst { 
-                    it["temp_id"]?.toString() == tempId 
-                }
-                
-                if (position != -1) {
-                    // Update message delivery status to "failed"
-                    val message = messagesList[position]
-                    message["delivery_status"] = "failed"
-                    message["is_optimistic"] = false
-                    
-                    // Notify adapter of item change
-                    runOnUiThread {
-                        chatAdapter?.notifyItemChanged(position)
-                    }
-                }
-                
-                showError("Error sending message: ${e.message}")
-            } finally {
-                // Re-enable send button
-                runOnUiThread {
-                    sendButton?.isEnabled = true
-                }
-            }
-        }
     }
     
     /**
      * Retry sending a failed message
      * 
-     * @param messageId The ID of the failed message (temp ID)
+     * @param messageId The client ID of the failed message
      * @param position The position of the message in the list
      */
     private fun retryFailedMessage(messageId: String, position: Int) {
@@ -1003,62 +999,86 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
             return
         }
         
-        val messageText = message["content"]?.toString() ?: return
-        val replyToId = message["replied_message_id"]?.toString()
-        
-        // Update status to sending
-        message["delivery_status"] = "sending"
-        chatAdapter?.notifyItemChanged(position)
-        
-        lifecycleScope.launch {
-            try {
-                val result = chatService.sendMessage(
-                    chatId = chatId!!,
-                    senderId = currentUserId!!,
-                    content = messageText,
-                    messageType = "text",
-                    replyToId = replyToId
-                )
-                
-                result.fold(
-                    onSuccess = { newMessageId ->
-                        // Update message with real ID from server
-                        message["id"] = newMessageId
-                        message["delivery_status"] = "sent"
-                        message["is_optimistic"] = false
-                        message.remove("temp_id")
-                        
-                        // Notify adapter of item change
-                        runOnUiThread {
-                            chatAdapter?.notifyItemChanged(position)
-                        }
-                    },
-                    onFailure = { error ->
-                        // Update message delivery status back to "failed"
-                        message["delivery_status"] = "failed"
-                        
-                        // Notify adapter of item change
-                        runOnUiThread {
-                            chatAdapter?.notifyItemChanged(position)
-                        }
-                        
-                        showError("Failed to send message: ${error.message}")
-                    }
-                )
-            } catch (e: Exception) {
-                // Update message delivery status back to "failed"
-                message["delivery_status"] = "failed"
-                
-                // Notify adapter of item change
-                runOnUiThread {
-                    chatAdapter?.notifyItemChanged(position)
-                }
-                
-                showError("Error sending message: ${e.message}")
+        if (chatViewModel.retryMessage(messageId)) {
+            message["delivery_status"] = "sending"
+            chatAdapter?.refresh()
+        }
+    }
+    
+    /**
+     * Observe the outbox for this chat. Restarted after every reload so unsent messages from
+     * the outbox are appended to the freshly loaded list.
+     */
+    private fun observeOutbox() {
+        val currentChatId = chatId ?: return
+        outboxJob?.cancel()
+        outboxJob = lifecycleScope.launch {
+            chatViewModel.outboxEntries(currentChatId).collect { entries ->
+                applyOutboxEntries(entries)
             }
         }
     }
     
+    /**
+     * Mirror outbox state onto optimistic messages, adding unsent messages that are not in the
+     * list, e.g. ones restored from an earlier session.
+     */
+    private fun applyOutboxEntries(entries: List<OutboxEntry>) {
+        val adapter = chatAdapter ?: return
+        val added = ArrayList<HashMap<String, Any?>>()
+        var changed = false
+        entries.forEach { entry ->
+            val status = when (entry.state) {
+                OutboxEntry.State.PENDING, OutboxEntry.State.SENDING -> "sending"
+                OutboxEntry.State.SENT -> "sent"
+                OutboxEntry.State.FAILED -> "failed"
+            }
+            val position = adapter.positionOf(entry.clientId)
+            
+            if (position == -1) {
+                if (entry.state != OutboxEntry.State.SENT) {
+                    added.add(outboxMessageOf(entry, status))
+                }
+                return@forEach
+            }
+            
+            // Rows from the server are authoritative once they replaced the optimistic message
+            val message = messagesList[position]
+            if (message["is_optimistic"] == true && message["delivery_status"] != status) {
+                message["delivery_status"] = status
+                message["is_optimistic"] = entry.state != OutboxEntry.State.SENT
+                changed = true
+            }
+        }
+        // Unsent messages belong at the end of the chat, which a detached window doesn't show
+        if (added.isNotEmpty() && messageWindow.isAtLatest) {
+            adapter.appendMessages(added)
+        } else if (changed) {
+            adapter.refresh()
+        }
+    }
+    
+    private fun outboxMessageOf(entry: OutboxEntry, status: String): HashMap<String, Any?> {
+        val message = HashMap<String, Any?>()
+        message["id"] = entry.clientId
+        message["chat_id"] = entry.chatId
+        message["sender_id"] = entry.senderId
+        message["uid"] = entry.senderId
+        message["content"] = entry.content
+        message["message_text"] = entry.content
+        message["message_type"] = entry.messageType
+        message["created_at"] = entry.createdAt
+        message["push_date"] = entry.createdAt
+        message["is_deleted"] = false
+        message["is_edited"] = false
+        message["delivery_status"] = status
+        message["is_optimistic"] = true
+        if (entry.replyToId != null) {
+            message["replied_message_id"] = entry.replyToId
+        }
+        return message
+    }
+
     /**
      * Setup typing indicator
      */
@@ -1576,15 +1596,14 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
     }
     
     /**
-     * Scroll to a specific message and highlight it
+     * Scroll to a specific message and highlight it, loading the messages around it first if
+     * it isn't in the window
      * 
      * @param messageId The ID of the message to scroll to
      */
     private fun scrollToMessage(messageId: String) {
         // Find the position of the message in the list
-        val position = messagesList.indexOfFirst { 
-            it["id"]?.toString() == messageId 
-        }
+        val position = chatAdapter?.positionOf(messageId) ?: -1
         
         if (position != -1) {
             // Scroll to the message with smooth animation
@@ -1595,13 +1614,61 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                 highlightMessage(position)
             }, 300) // Wait for scroll animation to complete
         } else {
-            // Message not found in current list
-            // In a real implementation, we would load more messages
-            Toast.makeText(
-                this,
-                "Original message not found. It may have been deleted or not loaded yet.",
-                Toast.LENGTH_SHORT
-            ).show()
+            jumpToMessage(messageId)
+        }
+    }
+    
+    /**
+     * Replace the window with the messages around one that isn't loaded, then scroll to it.
+     * One anchored load instead of paging through everything in between; paging continues in
+     * both directions from there.
+     * 
+     * @param messageId The ID of the message to show
+     */
+    private fun jumpToMessage(messageId: String) {
+        val pager = chatId?.let { pagerFor(it) } ?: return
+        
+        lifecycleScope.launch {
+            try {
+                loadingDialog(true)
+                val result = pager.around(messageId)
+                loadingDialog(false)
+                
+                result.fold(
+                    onSuccess = { page ->
+                        if (page == null) {
+                            Toast.makeText(
+                                this@ChatActivity,
+                                "Original message not found. It may have been deleted.",
+                                Toast.LENGTH_SHORT
+                            ).show()
+                            // Opened at a message that's gone; show the latest instead
+                            if (messagesList.isEmpty()) loadMessages()
+                            return@fold
+                        }
+                        
+                        messageWindow.resetAround(page.olderFetched, page.newerFetched, pager.activePageSize)
+                        chatAdapter?.setMessages(page.rows) {
+                            (recyclerView?.layoutManager as? LinearLayoutManager)
+                                ?.scrollToPositionWithOffset(page.anchorIndex, (recyclerView?.height ?: 0) / 3)
+                            recyclerView?.postDelayed({
+                                highlightMessage(page.anchorIndex)
+                            }, 300)
+                        }
+                        
+                        if (messageWindow.isAtLatest) {
+                            // The window reaches the end of the chat, where unsent messages go
+                            observeOutbox()
+                        }
+                    },
+                    onFailure = { error ->
+                        showError("Failed to load message: ${error.message}")
+                    }
+                )
+            } catch (e: Exception) {
+                Log.e(TAG, "Error jumping to message: ${e.message}", e)
+                loadingDialog(false)
+            }
         }
     }
     
@@ -1702,31 +1769,6 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
         }
     }
     
-    /**
-     * Calculate which message positions are affected by a new message insertion
-     * and need their grouping recalculated.
-     * 
-     * When a new message is added:
-     * - The previous message may change from LAST to MIDDLE or from SINGLE to FIRST
-     * - The new message needs its grouping calculated
-     * 
-     * @param newMessagePosition The position of the newly added message
-     * @return List of positions that need grouping recalculation
-     */
-    private fun calculateAffectedPositions(newMessagePosition: Int): List<Int> {
-        val affectedPositions = mutableListOf<Int>()
-        
-        // The new message itself is affected
-        affectedPositions.add(newMessagePosition)
-        
-        // The previous message (if exists) is affected because it may change grouping position
-        if (newMessagePosition > 0) {
-            affectedPositions.add(newMessagePosition - 1)
-        }
-        
-        return affectedPositions
-    }
-    
     /**
      * Handle real-time message updates (edits and deletions)
      * Filters for updates where is_deleted or delete_for_everyone changed
@@ -1744,7 +1786,7 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                 android.util.Log.d("ChatActivity", "Received message update - ID: $messageId, isDeleted: $isDeleted, deleteForEveryone: $deleteForEveryone, isEdited: $isEdited")
                 
                 // Find the message in the list
-                val position = messagesList.indexOfFirst { it["id"]?.toString() == messageId }
+                val position = chatAdapter?.positionOf(messageId) ?: -1
                 
                 if (position != -1) {
                     // Check if this is a deletion event (either is_deleted or delete_for_everyone is true)
@@ -1757,6 +1799,12 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                     }
                 } else {
                     android.util.Log.w("ChatActivity", "Message not found in list: $messageId")
+                    // It may be a stored row trimmed off the window; don't page it back in stale
+                    messagePager?.invalidate()
+                    // Or quoted by a loaded reply; its preview is fetched again
+                    if (ReplyPreviewResolver.getInstance().invalidate(messageId)) {
+                        chatAdapter?.refresh()
+                    }
                 }
             } catch (e: Exception) {
                 android.util.Log.e("ChatActivity", "Error handling message update", e)
@@ -1808,11 +1856,8 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                 message["is_edited"] = true
                 message["edited_at"] = editedAt
                 
-                // Refresh the specific message view with animation
-                chatAdapter?.notifyItemChanged(position)
-                
-                // Show brief animation to indicate update
-                recyclerView?.postDelayed({
+                // Refresh the specific message view, then show brief animation to indicate update
+                chatAdapter?.refresh {
                     val viewHolder = recyclerView?.findViewHolderForAdapterPosition(position)
                     viewHolder?.itemView?.let { view ->
                         view.alpha = 0.5f
@@ -1821,7 +1866,7 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                             .setDuration(300)
                             .start()
                     }
-                }, 100)
+                }
                 
                 android.util.Log.d("ChatActivity", "Message edited in real-time: $messageId")
             } catch (e: Exception) {
@@ -1860,10 +1905,10 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                 message["delete_for_everyone"] = deleteForEveryone
                 
                 // Refresh the specific message view with animation
-                chatAdapter?.notifyItemChanged(position)
-                
-                // Restore scroll position to prevent disruption
-                layoutManager?.scrollToPositionWithOffset(scrollPosition, scrollOffset)
+                chatAdapter?.refresh {
+                    // Restore scroll position to prevent disruption
+                    layoutManager?.scrollToPositionWithOffset(scrollPosition, scrollOffset)
+                }
                 
                 // Show brief animation to indicate deletion
                 recyclerView?.postDelayed({
@@ -1901,9 +1946,7 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                 val newMessageId = record["id"]?.toString()?.removeSurrounding("\"")
                 
                 // Check if incoming message ID already exists in messagesList (deduplication)
-                val existingIndex = messagesList.indexOfFirst { 
-                    it["id"]?.toString() == newMessageId 
-                }
+                val existingIndex = newMessageId?.let { chatAdapter?.positionOf(it) } ?: -1
                 
                 // Create message map from record
                 val newMessage = HashMap<String, Any?>()
@@ -1935,34 +1978,27 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                 
                 if (existingIndex != -1) {
                     // Message already exists, update existing message instead of adding new one
-                    messagesList[existingIndex] = newMessage
-                    chatAdapter?.notifyItemChanged(existingIndex)
+                    chatAdapter?.updateMessageWithAnimation(existingIndex, newMessage)
                     android.util.Log.d("ChatActivity", "Updated existing message in real-time: $newMessageId")
+                } else if (messageWindow.hasNewer) {
+                    // Below the window's gap; it loads when the user pages back down
+                    android.util.Log.d("ChatActivity", "Window detached from latest, not appending $newMessageId")
                 } else {
                     // New message, add it to list
-                    messagesList.add(newMessage)
-                    
-                    // Calculate affected range for grouping updates (will be implemented in subtask 5.2)
-                    val affectedPositions = calculateAffectedPositions(messagesList.size - 1)
-                    
-                    chatAdapter?.notifyItemInserted(messagesList.size - 1)
-                    
-                    // Notify adapter of grouping changes for affected messages
-                    affectedPositions.forEach { position ->
-                        if (position != messagesList.size - 1) {
-                            chatAdapter?.notifyItemChanged(position)
-                        }
-                    }
-                    
                     // Check if user is at bottom of list
                     val layoutManager = recyclerView?.layoutManager as? LinearLayoutManager
                     val lastVisiblePosition = layoutManager?.findLastCompletelyVisibleItemPosition() ?: -1
-                    val isAtBottom = lastVisiblePosition >= messagesList.size - 2 // Account for newly added message
+                    val isAtBottom = lastVisiblePosition >= messagesList.size - 1
+                    
+                    // The diff also regroups the previous message, which may change from LAST to MIDDLE
+                    chatAdapter?.appendMessages(listOf(newMessage)) {
+                        if (isAtBottom) {
+                            // Scroll to new message if user is at bottom
+                            recyclerView?.smoothScrollToPosition(messagesList.size - 1)
+                        }
+                    }
                     
-                    if (isAtBottom) {
-                        // Scroll to new message if user is at bottom
-                        recyclerView?.smoothScrollToPosition(messagesList.size - 1)
-                    } else {
+                    if (!isAtBottom) {
                         // Show notification if user is scrolled up
                         Toast.makeText(
                             this,
@@ -2211,11 +2247,7 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                         
                         // If deleting for me only, remove from local list immediately
                         if (!deleteForEveryone) {
-                            val position = messagesList.indexOfFirst { it["id"]?.toString() == messageId }
-                            if (position != -1) {
-                                messagesList.removeAt(position)
-                                chatAdapter?.notifyItemRemoved(position)
-                            }
+                            chatAdapter?.removeMessage(messageId)
                         }
                         // If deleting for everyone, update will come through realtime
                     },
@@ -2250,7 +2282,7 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
         if (showingSummary) {
             // Toggle back to original text
             messageData["showing_ai_summary"] = false
-            chatAdapter?.notifyItemChanged(position)
+            chatAdapter?.refresh()
             return
         }
         
@@ -2259,7 +2291,7 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
         if (!existingSummary.isNullOrEmpty()) {
             // Toggle to show summary
             messageData["showing_ai_summary"] = true
-            chatAdapter?.notifyItemChanged(position)
+            chatAdapter?.refresh()
             return
         }
         
@@ -2280,7 +2312,7 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
                             
                             // Update the message bubble
                             runOnUiThread {
-                                chatAdapter?.notifyItemChanged(position)
+                                chatAdapter?.refresh()
                                 Toast.makeText(
                                     this@ChatActivity,
                                     "AI summary generated",
@@ -2419,12 +2451,8 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
         }
 
         // Stop typing indicator when leaving chat
-        val currentChatId = chatId
-        val currentUser = currentUserId
-        if (currentChatId != null && currentUser != null) {
-            lifecycleScope.launch {
-                chatService.updateTypingStatus(currentChatId, currentUser, false)
-            }
+        if (::chatViewModel.isInitialized) {
+            chatViewModel.onUserStoppedTyping()
         }
     }
     
@@ -2453,12 +2481,8 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
         }
         
         // Stop sending typing events when app is backgrounded
-        val currentChatId = chatId
-        val currentUser = currentUserId
-        if (currentChatId != null && currentUser != null) {
-            lifecycleScope.launch {
-                chatService.updateTypingStatus(currentChatId, currentUser, false)
-            }
+        if (::chatViewModel.isInitialized) {
+            chatViewModel.onUserStoppedTyping()
         }
     }
 
@@ -2541,8 +2565,10 @@ class ChatActivity : BaseActivity(), DefaultLifecycleObserver {
 
         // Nullify the adapter and any other listeners to break reference cycles
         // between the RecyclerView and the adapter, which can cause memory leaks.
-        recyclerView?.adapter = null
+        // The bubbles go back to the shared pool for the next chat.
+        recyclerView?.let { ChatViewPool.detach(it) }
         chatAdapter = null
+        Log.d(TAG, "Chat bubble inflations: ${ChatViewPool.stats}")
 
         // Clean up ChatViewModel resources, which includes unsubscribing from the Realtime channel.
         // This is the most critical cleanup step to prevent memory leaks and stop background network activity.
@@ -5,52 +5,130 @@ import android.content.Intent
 import android.content.SharedPreferences
 import android.graphics.Color
 import android.graphics.PorterDuff
-import android.media.MediaPlayer
 import android.net.Uri
-import android.os.Handler
-import android.os.Looper
+import android.text.method.LinkMovementMethod
 import android.util.Log
 import android.view.Gravity
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
 import android.widget.*
+import androidx.core.text.PrecomputedTextCompat
+import androidx.core.widget.TextViewCompat
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.lifecycleScope
+import androidx.recyclerview.widget.ListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import com.bumptech.glide.Glide
 import com.bumptech.glide.load.resource.bitmap.RoundedCorners
 import com.synapse.social.studioasinc.backend.SupabaseAuthenticationService
 import com.synapse.social.studioasinc.backend.SupabaseDatabaseService
+import com.synapse.social.studioasinc.chat.ChatViewPool
+import com.synapse.social.studioasinc.chat.MessageLink
+import com.synapse.social.studioasinc.chat.MessageTextCache
+import com.synapse.social.studioasinc.chat.MessagePositionIndex
 import com.synapse.social.studioasinc.chat.interfaces.ChatAdapterListener
+import com.synapse.social.studioasinc.chat.models.ChatItem
+import com.synapse.social.studioasinc.chat.models.ChatItemMapper
+import com.synapse.social.studioasinc.chat.models.MessageLayoutPass
+import com.synapse.social.studioasinc.chat.service.LinkPreviewService
+import com.synapse.social.studioasinc.chat.service.ReplyPreviewResolver
+import com.synapse.social.studioasinc.chat.service.VoicePlaybackController
+import com.synapse.social.studioasinc.util.ImageLoader
+import com.synapse.social.studioasinc.util.MentionUtils
 import com.synapse.social.studioasinc.util.MessageAnimations
 import com.synapse.social.studioasinc.util.setMessageState
-import java.text.SimpleDateFormat
-import java.util.*
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancelChildren
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 
+/**
+ * Chat message list adapter.
+ *
+ * [data] stays the screen's mutable source of truth. Rows are added and removed through
+ * [appendMessages], [prependMessages], [removeMessage], [trimStart], [trimEnd] and
+ * [setMessages], which keep a message ID index in step; after editing a row in place, callers
+ * call [refresh]. The adapter maps a snapshot of [data] to immutable [ChatItem]s on a
+ * background dispatcher and submits them through [ListAdapter], so only rows that changed
+ * rebind, and state-only or grouping-only changes rebind partially via payloads. Replies to
+ * messages outside [data] are resolved through [replyPreviews] in one batch per refresh.
+ */
 class ChatAdapter(
     private val data: ArrayList<HashMap<String, Any?>>,
-    private val repliedMessagesCache: HashMap<String, HashMap<String, Any?>>,
+    private val replyPreviews: ReplyPreviewResolver,
     private val listener: ChatAdapterListener
-) : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+) : ListAdapter<ChatItem, RecyclerView.ViewHolder>(ChatItem.DIFF_CALLBACK) {
 
     companion object {
         private const val TAG = "ChatAdapter"
-        private const val VIEW_TYPE_TEXT = 1
-        private const val VIEW_TYPE_MEDIA_GRID = 2
-        private const val VIEW_TYPE_TYPING = 3
-        private const val VIEW_TYPE_VIDEO = 4
-        private const val VIEW_TYPE_LINK_PREVIEW = 5
-        private const val VIEW_TYPE_VOICE_MESSAGE = 6
-        private const val VIEW_TYPE_ERROR = 7
-        private const val VIEW_TYPE_LOADING_MORE = 99
-        
+        private const val VIEW_TYPE_TEXT = ChatItem.VIEW_TYPE_TEXT
+        private const val VIEW_TYPE_MEDIA_GRID = ChatItem.VIEW_TYPE_MEDIA_GRID
+        private const val VIEW_TYPE_TYPING = ChatItem.VIEW_TYPE_TYPING
+        private const val VIEW_TYPE_VIDEO = ChatItem.VIEW_TYPE_VIDEO
+        private const val VIEW_TYPE_LINK_PREVIEW = ChatItem.VIEW_TYPE_LINK_PREVIEW
+        private const val VIEW_TYPE_VOICE_MESSAGE = ChatItem.VIEW_TYPE_VOICE_MESSAGE
+        private const val VIEW_TYPE_ERROR = ChatItem.VIEW_TYPE_ERROR
+        private const val VIEW_TYPE_LOADING_MORE = ChatItem.VIEW_TYPE_LOADING_MORE
+
         /** Maximum bubble width as a percentage of screen width (75%) */
         private const val MAX_BUBBLE_WIDTH_PERCENT = 0.75
+
+        /**
+         * Inflates a bubble for [ChatViewPool], themed like the screen [parent] is on but not
+         * tied to it, so the holder can be reused by any chat screen.
+         */
+        fun createHolder(parent: ViewGroup, viewType: Int): RecyclerView.ViewHolder {
+            val inflater = LayoutInflater.from(ChatViewPool.inflationContextFor(parent.context))
+
+            return when (viewType) {
+                VIEW_TYPE_MEDIA_GRID -> MediaViewHolder(inflater.inflate(R.layout.chat_bubble_media, parent, false))
+                VIEW_TYPE_VIDEO -> VideoViewHolder(inflater.inflate(R.layout.chat_bubble_video, parent, false))
+                VIEW_TYPE_TYPING -> TypingViewHolder(inflater.inflate(R.layout.chat_bubble_typing, parent, false))
+                VIEW_TYPE_LINK_PREVIEW -> LinkPreviewViewHolder(inflater.inflate(R.layout.chat_bubble_link_preview, parent, false))
+                VIEW_TYPE_VOICE_MESSAGE -> VoiceMessageViewHolder(inflater.inflate(R.layout.chat_bubble_voice, parent, false))
+                VIEW_TYPE_ERROR -> ErrorViewHolder(inflater.inflate(R.layout.chat_bubble_error, parent, false))
+                VIEW_TYPE_LOADING_MORE -> LoadingViewHolder(inflater.inflate(R.layout.chat_bubble_loading_more, parent, false))
+                else -> TextViewHolder(inflater.inflate(R.layout.chat_bubble_text, parent, false))
+            }
+        }
+
+        /**
+         * Drops what binding attached to a pooled holder that refers to its screen: click
+         * listeners, media grid cells and texts whose spans call back into the adapter.
+         */
+        fun releaseHolder(holder: RecyclerView.ViewHolder) {
+            holder.itemView.setOnClickListener(null)
+            holder.itemView.setOnLongClickListener(null)
+            if (holder is BaseMessageViewHolder) {
+                holder.replyLayout?.setOnClickListener(null)
+                holder.editedIndicator?.setOnClickListener(null)
+            }
+            when (holder) {
+                is TextViewHolder -> holder.messageText.text = null
+                is MediaViewHolder -> {
+                    holder.mediaGrid.removeAllViews()
+                    holder.mediaCaption?.text = null
+                }
+                is VideoViewHolder -> {
+                    holder.playButton.setOnClickListener(null)
+                    holder.videoCaption?.text = null
+                }
+                is LinkPreviewViewHolder -> {
+                    holder.linkPreviewCard.setOnClickListener(null)
+                    holder.messageText.text = null
+                }
+                is VoiceMessageViewHolder -> {
+                    holder.playPauseButton.setOnClickListener(null)
+                    holder.waveform.progress = 0
+                }
+            }
+        }
     }
-    
+
     /**
      * Calculate the maximum bubble width based on device screen width.
      * Returns 75% of the screen width to prevent bubbles from stretching
@@ -78,158 +156,288 @@ class ChatAdapter(
     private var appSettings: SharedPreferences? = null
     private var isGroupChat = false
     private var userNamesMap = HashMap<String, String>()
-    private var previousSenderId: String? = null
-    
+
     // Multi-select mode state
     var isMultiSelectMode: Boolean = false
         set(value) {
             field = value
-            notifyDataSetChanged()
+            notifySelectionChanged()
         }
-    
+
     // Multi-select callbacks
     var onEnterMultiSelectMode: ((String) -> Unit)? = null
     var onToggleMessageSelection: ((String) -> Unit)? = null
     var isMessageSelected: ((String) -> Boolean)? = null
-    
+
     // Supabase services
     private val authService = SupabaseAuthenticationService()
     private val databaseService = SupabaseDatabaseService()
-    
-    // Link preview cache to avoid refetching
-    private val linkPreviewCache = HashMap<String, LinkPreviewUtil.LinkData>()
+
+    // Shared link preview cache, and the screen's scope for waiting on previews
+    private var linkPreviews: LinkPreviewService? = null
+    private var viewScope: CoroutineScope? = null
+
+    // Pixel sizes of layout dimensions, resolved once
+    private val dimensionCache = HashMap<Int, Int>()
+
+    // Spanned and measured message texts, prepared while mapping
+    private val messageTexts = MessageTextCache(::onMessageLinkClick)
+    @Volatile
+    private var textMetricsParams: PrecomputedTextCompat.Params? = null
+
+    // Message ID -> position in data, and in the shown list once the latest submission committed
+    private val positionIndex = MessagePositionIndex()
+
+    // Snapshot mapping; a newer refresh supersedes one still mapping. Its work is cancelled
+    // when the adapter leaves its RecyclerView
+    private val mainScope = CoroutineScope(SupervisorJob() + Dispatchers.Main)
+    private var mapJob: Job? = null
+    private val pendingCommitCallbacks = mutableListOf<() -> Unit>()
+    private var submittedGeneration = 0
+    private var committedGeneration = 0
+
+    // Shared voice note player; bubbles only show its state
+    private var voicePlayback: VoicePlaybackController? = null
+    private val voicePlaybackListener = object : VoicePlaybackController.Listener {
+        override fun onVoicePlaybackChanged(previousId: String?, currentId: String?) {
+            setOfNotNull(previousId, currentId).forEach { id ->
+                val position = currentList.indexOfFirst { it.key == id }
+                if (position != -1) notifyItemChanged(position, ChatItem.PAYLOAD_VOICE_PLAYBACK)
+            }
+        }
+    }
 
     // Setter methods for configuration
     fun setSecondUserAvatar(url: String) { secondUserAvatarUrl = url }
     fun setFirstUserName(name: String) { firstUserName = name }
     fun setSecondUserName(name: String) { secondUserName = name }
-    fun setGroupChat(isGroup: Boolean) { isGroupChat = isGroup }
+    fun setGroupChat(isGroup: Boolean) {
+        if (isGroupChat == isGroup) return
+        isGroupChat = isGroup
+        // Sender names are part of the precomputed layout
+        if (data.isNotEmpty()) refresh()
+    }
     fun setUserNamesMap(map: HashMap<String, String>) { userNamesMap = map }
 
-    override fun getItemViewType(position: Int): Int {
-        val item = data[position]
-        
-        if (item.containsKey("isLoadingMore")) return VIEW_TYPE_LOADING_MORE
-        if (item.containsKey("typingMessageStatus")) return VIEW_TYPE_TYPING
-        
-        // Check for error/failed messages - support both field names
-        val deliveryStatus = item["delivery_status"]?.toString() 
-            ?: item["message_state"]?.toString() 
-            ?: ""
-        if (deliveryStatus == "failed" || deliveryStatus == "error") {
-            Log.d(TAG, "Error message detected at position $position")
-            return VIEW_TYPE_ERROR
-        }
-        
-        val type = item["TYPE"]?.toString() ?: "MESSAGE"
-        Log.d(TAG, "Message at position $position has type: $type")
-
-        return when (type) {
-            "VOICE_MESSAGE" -> VIEW_TYPE_VOICE_MESSAGE
-            "ATTACHMENT_MESSAGE" -> {
-                val attachments = item["attachments"] as? ArrayList<HashMap<String, Any?>>
-                Log.d(TAG, "ATTACHMENT_MESSAGE detected with ${attachments?.size ?: 0} attachments")
-
-                if (attachments?.size == 1 && 
-                    attachments[0]["publicId"]?.toString()?.contains("|video") == true) {
-                    Log.d(TAG, "Video message detected, returning VIEW_TYPE_VIDEO")
-                    VIEW_TYPE_VIDEO
-                } else {
-                    Log.d(TAG, "Media message detected, returning VIEW_TYPE_MEDIA_GRID")
-                    VIEW_TYPE_MEDIA_GRID
+    /**
+     * Re-reads [data] and shows it. Must be called on the main thread after every change to
+     * [data]; rows are copied here so later in-place edits can't race the background mapping.
+     *
+     * @param onCommitted Runs once the new list is displayed, e.g. to scroll to a new message.
+     * Callbacks of a refresh superseded by a newer one run when the newer one commits.
+     */
+    fun refresh(onCommitted: (() -> Unit)? = null) {
+        if (positionIndex.size != data.size) {
+            // data was resized without going through the adapter
+            positionIndex.rebuild(data.map { ChatItemMapper.keyOf(it) })
+        }
+        val rows = data.map { HashMap(it) }
+        val myUid = authService.getCurrentUser()?.id ?: ""
+        val isGroup = isGroupChat
+        val textParams = textMetricsParams
+        onCommitted?.let { pendingCommitCallbacks.add(it) }
+
+        mapJob?.cancel()
+        mapJob = mainScope.launch {
+            val items = withContext(Dispatchers.Default) {
+                val replies = replyPreviews.cached(rows.mapNotNullTo(HashSet()) { ChatItemMapper.replyToIdOf(it) })
+                MessageLayoutPass.apply(ChatItemMapper.map(rows, replies, myUid), isGroup).also { mapped ->
+                    prepareTexts(mapped, textParams)
                 }
             }
-            else -> {
-                val messageText = item["content"]?.toString() 
-                    ?: item["message_text"]?.toString() 
-                    ?: ""
-                if (LinkPreviewUtil.extractUrl(messageText) != null) {
-                    Log.d(TAG, "Link preview message detected, returning VIEW_TYPE_LINK_PREVIEW")
-                    VIEW_TYPE_LINK_PREVIEW
-                } else {
-                    Log.d(TAG, "Text message detected, returning VIEW_TYPE_TEXT")
-                    VIEW_TYPE_TEXT
-                }
+            // Previews start loading as messages arrive, not when their bubbles are bound
+            linkPreviews?.prefetch(items.mapNotNull { (it as? ChatItem.Message)?.linkUrl })
+            resolveReplies(items)
+            submit(items)
+        }
+    }
+
+    /**
+     * Builds the spans of every message text and measures text bubbles, so binding them only
+     * sets a finished text. Runs on the mapping dispatcher.
+     */
+    private fun prepareTexts(items: List<ChatItem>, textParams: PrecomputedTextCompat.Params?) {
+        val measured = HashSet<String>()
+        val spannedOnly = HashSet<String>()
+        items.forEach { item ->
+            if (item !is ChatItem.Message || item.isDeleted) return@forEach
+            when (item.viewType) {
+                VIEW_TYPE_TEXT -> measured.add(item.displayText)
+                VIEW_TYPE_LINK_PREVIEW, VIEW_TYPE_MEDIA_GRID, VIEW_TYPE_VIDEO -> spannedOnly.add(item.text)
             }
         }
+        messageTexts.prepare(measured, textParams)
+        messageTexts.prepare(spannedOnly, null)
     }
 
-    override fun getItemId(position: Int): Long {
-        return try {
-            val keyObj = data[position]["key"] ?: data[position]["KEY_KEY"] ?: position
-            keyObj.toString().hashCode().toLong()
-        } catch (e: Exception) {
-            position.toLong()
+    /**
+     * Fetches the replied messages [items] couldn't show in one request, then remaps.
+     */
+    private fun resolveReplies(items: List<ChatItem>) {
+        val unresolved = items.mapNotNullTo(HashSet()) { item ->
+            (item as? ChatItem.Message)?.takeIf { it.reply == null }?.replyToId
+        }
+        if (unresolved.isEmpty()) return
+        // Not tied to mapJob: a newer refresh needs the same previews
+        mainScope.launch {
+            if (replyPreviews.resolve(unresolved)) refresh()
         }
     }
 
-    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): RecyclerView.ViewHolder {
-        context = parent.context
-        appSettings = context?.getSharedPreferences("appSettings", Context.MODE_PRIVATE)
-        val inflater = LayoutInflater.from(context)
-        
-        return when (viewType) {
-            VIEW_TYPE_MEDIA_GRID -> MediaViewHolder(inflater.inflate(R.layout.chat_bubble_media, parent, false))
-            VIEW_TYPE_VIDEO -> VideoViewHolder(inflater.inflate(R.layout.chat_bubble_video, parent, false))
-            VIEW_TYPE_TYPING -> TypingViewHolder(inflater.inflate(R.layout.chat_bubble_typing, parent, false))
-            VIEW_TYPE_LINK_PREVIEW -> LinkPreviewViewHolder(inflater.inflate(R.layout.chat_bubble_link_preview, parent, false))
-            VIEW_TYPE_VOICE_MESSAGE -> VoiceMessageViewHolder(inflater.inflate(R.layout.chat_bubble_voice, parent, false))
-            VIEW_TYPE_ERROR -> ErrorViewHolder(inflater.inflate(R.layout.chat_bubble_error, parent, false))
-            VIEW_TYPE_LOADING_MORE -> LoadingViewHolder(inflater.inflate(R.layout.chat_bubble_loading_more, parent, false))
-            else -> TextViewHolder(inflater.inflate(R.layout.chat_bubble_text, parent, false))
+    /**
+     * Position of a message in [data], or -1 if it isn't loaded. O(1).
+     */
+    fun positionOf(messageId: String): Int {
+        val position = positionIndex.positionOf(messageId)
+        if (position in data.indices && ChatItemMapper.keyOf(data[position]) == messageId) {
+            return position
+        }
+        if (position == -1 && positionIndex.size == data.size) {
+            return -1
         }
+        // Stale after an in-place edit of data; re-index once
+        positionIndex.rebuild(data.map { ChatItemMapper.keyOf(it) })
+        return positionIndex.positionOf(messageId)
+    }
+
+    /**
+     * Replaces all rows, e.g. after the first page loaded.
+     */
+    fun setMessages(messages: List<HashMap<String, Any?>>, onCommitted: (() -> Unit)? = null) {
+        data.clear()
+        data.addAll(messages)
+        positionIndex.rebuild(messages.map { ChatItemMapper.keyOf(it) })
+        refresh(onCommitted)
+    }
+
+    /**
+     * Adds rows at the bottom, e.g. new or sent messages.
+     */
+    fun appendMessages(messages: List<HashMap<String, Any?>>, onCommitted: (() -> Unit)? = null) {
+        if (messages.isEmpty()) return
+        data.addAll(messages)
+        messages.forEach { positionIndex.append(ChatItemMapper.keyOf(it)) }
+        refresh(onCommitted)
+    }
+
+    /**
+     * Removes a message by ID.
+     *
+     * @return Whether the message was loaded
+     */
+    fun removeMessage(messageId: String): Boolean {
+        val position = positionOf(messageId)
+        if (position == -1) return false
+        data.removeAt(position)
+        positionIndex.removeAt(position)
+        refresh()
+        return true
+    }
+
+    /**
+     * Removes the first [count] rows, e.g. when the window grew past its cap at the bottom.
+     *
+     * @return The removed rows, oldest first
+     */
+    fun trimStart(count: Int): List<HashMap<String, Any?>> {
+        if (count <= 0) return emptyList()
+        val removed = ArrayList(data.subList(0, count))
+        data.subList(0, count).clear()
+        positionIndex.dropFirst(count)
+        refresh()
+        return removed
+    }
+
+    /**
+     * Removes the last [count] rows, e.g. when the window grew past its cap at the top.
+     *
+     * @return The removed rows, oldest first
+     */
+    fun trimEnd(count: Int): List<HashMap<String, Any?>> {
+        if (count <= 0) return emptyList()
+        val removed = ArrayList(data.subList(data.size - count, data.size))
+        data.subList(data.size - count, data.size).clear()
+        positionIndex.dropLast(count)
+        refresh()
+        return removed
+    }
+
+    private fun submit(items: List<ChatItem>) {
+        val generation = ++submittedGeneration
+        // Only the latest submission's callback runs, so it carries all pending callbacks
+        submitList(items) {
+            committedGeneration = generation
+            val callbacks = pendingCommitCallbacks.toList()
+            pendingCommitCallbacks.clear()
+            callbacks.forEach { it() }
+        }
+    }
+
+    /**
+     * Rebinds selection state of the visible rows without touching their content.
+     */
+    fun notifySelectionChanged() {
+        notifyItemRangeChanged(0, itemCount, ChatItem.PAYLOAD_SELECTION)
+    }
+
+    override fun getItemViewType(position: Int): Int = getItem(position).viewType
+
+    override fun getItemId(position: Int): Long = getItem(position).key.hashCode().toLong()
+
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): RecyclerView.ViewHolder {
+        // Only reached when the shared pool has no bubble of this type
+        return ChatViewPool.inflate(viewType) { createHolder(parent, viewType) }
     }
 
     override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int) {
-        when (holder.itemViewType) {
-            VIEW_TYPE_TEXT -> bindTextViewHolder(holder as TextViewHolder, position)
-            VIEW_TYPE_MEDIA_GRID -> bindMediaViewHolder(holder as MediaViewHolder, position)
-            VIEW_TYPE_VIDEO -> bindVideoViewHolder(holder as VideoViewHolder, position)
-            VIEW_TYPE_TYPING -> bindTypingViewHolder(holder as TypingViewHolder, position)
-            VIEW_TYPE_LINK_PREVIEW -> bindLinkPreviewViewHolder(holder as LinkPreviewViewHolder, position)
-            VIEW_TYPE_VOICE_MESSAGE -> bindVoiceMessageViewHolder(holder as VoiceMessageViewHolder, position)
-            VIEW_TYPE_ERROR -> bindErrorViewHolder(holder as ErrorViewHolder, position)
-            VIEW_TYPE_LOADING_MORE -> bindLoadingViewHolder(holder as LoadingViewHolder, position)
+        val item = getItem(position)
+        if (item !is ChatItem.Message) return
+
+        when (holder) {
+            is TextViewHolder -> bindTextViewHolder(holder, item)
+            is MediaViewHolder -> bindMediaViewHolder(holder, item)
+            is VideoViewHolder -> bindVideoViewHolder(holder, item)
+            is LinkPreviewViewHolder -> bindLinkPreviewViewHolder(holder, item)
+            is VoiceMessageViewHolder -> bindVoiceMessageViewHolder(holder, item)
+            is ErrorViewHolder -> bindErrorViewHolder(holder, item)
         }
     }
 
     override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int, payloads: MutableList<Any>) {
-        if (payloads.isNotEmpty() && payloads.contains("message_state_update")) {
-            // Handle partial update for message state only
-            if (holder is BaseMessageViewHolder) {
-                updateMessageStateIcon(holder, position)
-            }
-        } else {
-            // Full bind
+        val item = getItem(position)
+        if (payloads.isEmpty() || holder !is BaseMessageViewHolder || item !is ChatItem.Message) {
             onBindViewHolder(holder, position)
+            return
+        }
+
+        // Partial binds for changes that leave the bubble content alone
+        payloads.forEach { payload ->
+            when (payload) {
+                ChatItem.PAYLOAD_MESSAGE_STATE -> updateMessageStateIcon(holder, item)
+                ChatItem.PAYLOAD_GROUPING -> applyGroupingLayout(holder, item)
+                ChatItem.PAYLOAD_SELECTION -> applySelectionState(holder, item)
+                ChatItem.PAYLOAD_VOICE_PLAYBACK -> if (holder is VoiceMessageViewHolder) applyVoicePlaybackState(holder, item)
+                else -> {
+                    onBindViewHolder(holder, position)
+                    return
+                }
+            }
         }
     }
 
     /**
      * Update only the message state icon with fade animation
      */
-    private fun updateMessageStateIcon(holder: BaseMessageViewHolder, position: Int) {
-        val messageData = data[position]
-        val currentUser = authService.getCurrentUser()
-        val myUid = currentUser?.id ?: ""
-        val msgUid = messageData["sender_id"]?.toString() 
-            ?: messageData["uid"]?.toString() 
-            ?: ""
-        val isMyMessage = msgUid == myUid
-        
+    private fun updateMessageStateIcon(holder: BaseMessageViewHolder, item: ChatItem.Message) {
         holder.messageStatus?.let { statusView ->
-            if (isMyMessage) {
-                val deliveryStatus = messageData["delivery_status"]?.toString() 
-                    ?: messageData["message_state"]?.toString() 
-                    ?: "sent"
-                
+            if (item.isMine && !item.isDeleted) {
                 // Apply fade animation for state change
                 statusView.animate()
                     .alpha(0f)
                     .setDuration(150)
                     .withEndAction {
                         // Update the icon using extension function
-                        statusView.setMessageState(deliveryStatus)
+                        statusView.setMessageState(item.deliveryStatus)
                         statusView.animate()
                             .alpha(1f)
                             .setDuration(150)
@@ -242,19 +450,37 @@ class ChatAdapter(
         }
     }
 
-    override fun getItemCount(): Int = data.size
+    override fun onAttachedToRecyclerView(recyclerView: RecyclerView) {
+        super.onAttachedToRecyclerView(recyclerView)
+        // Bubbles may all come from the shared pool, so this can't wait for onCreateViewHolder
+        context = recyclerView.context
+        appSettings = recyclerView.context.getSharedPreferences("appSettings", Context.MODE_PRIVATE)
+        linkPreviews = LinkPreviewService.getInstance(recyclerView.context)
+        viewScope = (recyclerView.context as? LifecycleOwner)?.lifecycleScope
+        voicePlayback = VoicePlaybackController.getInstance(recyclerView.context).also { it.addListener(voicePlaybackListener) }
+    }
+
+    override fun onDetachedFromRecyclerView(recyclerView: RecyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView)
+        voicePlayback?.removeListener(voicePlaybackListener)
+        voicePlayback = null
+        // Mapping and reply lookups would otherwise outlive the screen and keep it reachable.
+        // Only the children are cancelled, so a reattached adapter can still refresh
+        mainScope.coroutineContext.cancelChildren()
+        mapJob = null
+        pendingCommitCallbacks.clear()
+        viewScope = null
+    }
 
     override fun onViewRecycled(holder: RecyclerView.ViewHolder) {
         super.onViewRecycled(holder)
+        if (holder is LinkPreviewViewHolder) {
+            holder.previewJob?.cancel()
+            holder.previewJob = null
+        }
         if (holder is VoiceMessageViewHolder) {
-            holder.mediaPlayer?.let { player ->
-                if (player.isPlaying) {
-                    player.stop()
-                }
-                player.release()
-                holder.mediaPlayer = null
-            }
-            holder.handler?.removeCallbacksAndMessages(null)
+            // Playback goes on; only the ticker stops updating this bubble
+            voicePlayback?.clearProgressTarget(holder)
         }
     }
 
@@ -274,6 +500,9 @@ class ChatAdapter(
         val bodyLayout: LinearLayout? = try { itemView.findViewById(R.id.body) } catch (e: ClassCastException) { null }
         val deletedMessagePlaceholder: LinearLayout? = try { itemView.findViewById(R.id.deletedMessagePlaceholder) } catch (e: ClassCastException) { null }
         val messageContentContainer: LinearLayout? = try { itemView.findViewById(R.id.messageContentContainer) } catch (e: ClassCastException) { null }
+
+        // Bubble drawable currently set, to skip redundant background changes
+        var bubbleRes = 0
     }
 
     // Text Message ViewHolder
@@ -308,15 +537,20 @@ class ChatAdapter(
         val linkTitle: TextView = itemView.findViewById(R.id.linkPreviewTitle)
         val linkDescription: TextView = itemView.findViewById(R.id.linkPreviewDescription)
         val linkUrl: TextView = itemView.findViewById(R.id.linkPreviewDomain)
+
+        // Waits for this bubble's preview; cancelled on rebind and recycle
+        var previewJob: Job? = null
     }
 
     // Voice Message ViewHolder
-    class VoiceMessageViewHolder(itemView: View) : BaseMessageViewHolder(itemView) {
+    class VoiceMessageViewHolder(itemView: View) : BaseMessageViewHolder(itemView), VoicePlaybackController.ProgressTarget {
         val playPauseButton: ImageView = itemView.findViewById(R.id.play_pause_button)
         val waveform: SeekBar = itemView.findViewById(R.id.voice_seekbar)
         val duration: TextView = itemView.findViewById(R.id.voice_duration)
-        var mediaPlayer: MediaPlayer? = null
-        var handler: Handler? = null
+
+        override fun onVoiceProgress(positionMs: Long, durationMs: Long) {
+            waveform.progress = if (durationMs > 0) (positionMs * waveform.max / durationMs).toInt() else 0
+        }
     }
 
     // Error Message ViewHolder
@@ -334,307 +568,136 @@ class ChatAdapter(
     }
 
     // Binding methods for each view type
-    private fun bindCommonMessageProperties(holder: BaseMessageViewHolder, position: Int) {
-        val messageData = data[position]
-        val currentUser = authService.getCurrentUser()
-        val myUid = currentUser?.id ?: ""
-        
+    private fun bindCommonMessageProperties(holder: BaseMessageViewHolder, item: ChatItem.Message) {
         // Apply entrance animation for new messages
-        if (position == data.size - 1 && messageData["is_new"] == true) {
-            val isMyMessage = (messageData["sender_id"]?.toString() ?: messageData["uid"]?.toString()) == myUid
+        if (item.isNew && holder.bindingAdapterPosition == itemCount - 1) {
             com.synapse.social.studioasinc.util.MessageAnimationHelper.animateMessageReceive(
-                holder.itemView, 
-                isMyMessage
+                holder.itemView,
+                item.isMine
             ) {
-                messageData.remove("is_new")
+                data.firstOrNull { ChatItemMapper.keyOf(it) == item.key }?.remove("is_new")
             }
         }
-        // Support both old (uid) and new (sender_id) field names
-        val msgUid = messageData["sender_id"]?.toString() 
-            ?: messageData["uid"]?.toString() 
-            ?: ""
-        val isMyMessage = msgUid == myUid
-        
-        // Calculate message position for grouping BEFORE any other styling
-        val messagePosition = calculateMessagePosition(position)
-        
-        // Check if message is deleted
-        val isDeleted = messageData["is_deleted"]?.toString()?.toBooleanStrictOrNull() ?: false
-        val deleteForEveryone = messageData["delete_for_everyone"]?.toString()?.toBooleanStrictOrNull() ?: false
-        
+
+        applySelectionState(holder, item)
+
         // Handle deleted message display
-        if (isDeleted || deleteForEveryone) {
+        if (item.isDeleted) {
             // Show deleted placeholder, hide content
             holder.deletedMessagePlaceholder?.visibility = View.VISIBLE
             holder.messageContentContainer?.visibility = View.GONE
-            
+
             // Keep timestamp and sender info visible but hide message status
             holder.messageStatus?.visibility = View.GONE
-            
+
             // Disable long-press for deleted messages
             holder.itemView.setOnLongClickListener(null)
             holder.itemView.isLongClickable = false
-            
+
             // Still allow regular click for navigation
             holder.itemView.setOnClickListener {
-                val messageId = messageData["id"]?.toString() 
-                    ?: messageData["key"]?.toString() 
-                    ?: ""
-                listener.onMessageClick(messageId, position)
+                listener.onMessageClick(item.key, holder.bindingAdapterPosition)
             }
-            
-            // Set message layout alignment using ConstraintLayout
-            holder.bodyLayout?.let { body ->
-                val layoutParams = body.layoutParams as? androidx.constraintlayout.widget.ConstraintLayout.LayoutParams
-                layoutParams?.let { params ->
-                    if (isMyMessage) {
-                        // Align to right
-                        params.startToStart = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.UNSET
-                        params.endToEnd = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.PARENT_ID
-                    } else {
-                        // Align to left
-                        params.startToStart = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.PARENT_ID
-                        params.endToEnd = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.UNSET
-                    }
-                    body.layoutParams = params
-                }
-            }
-            
-            // Set message bubble background for deleted messages (always use SINGLE position)
-            applyMessageBubbleBackground(holder, MessagePosition.SINGLE, isMyMessage)
-            
-            // Set message time (deleted messages always show timestamp)
-            holder.messageTime?.let { timeView ->
-                val timestamp = messageData["created_at"]?.toString()?.toLongOrNull()
-                    ?: messageData["push_date"]?.toString()?.toLongOrNull() 
-                    ?: System.currentTimeMillis()
-                timeView.text = formatMessageTime(timestamp)
-                timeView.visibility = View.VISIBLE
-            }
-            
-            // Handle username display for group chats (deleted messages use SINGLE position logic)
-            holder.senderUsername?.let { usernameView ->
-                if (shouldShowUsername(position, MessagePosition.SINGLE, isGroupChat, isMyMessage) && userNamesMap.containsKey(msgUid)) {
-                    usernameView.visibility = View.VISIBLE
-                    usernameView.text = userNamesMap[msgUid]
-                } else {
-                    usernameView.visibility = View.GONE
-                }
-            }
-            
-            // Apply dynamic vertical spacing (deleted messages always use ungrouped spacing)
-            holder.bodyLayout?.let { bodyLayout ->
-                val layoutParams = bodyLayout.layoutParams as? ViewGroup.MarginLayoutParams
-                layoutParams?.let { params ->
-                    val context = holder.itemView.context
-                    // Deleted messages always use ungrouped spacing since they break groups
-                    val spacing = context.resources.getDimensionPixelSize(R.dimen.message_spacing_ungrouped)
-                    params.topMargin = spacing
-                    bodyLayout.layoutParams = params
-                }
-            }
-            
-            // Update previous sender ID
-            previousSenderId = msgUid
-            
+
+            applyAlignment(holder, item.isMine)
+
+            // Deleted messages break groups, so the layout pass always lays them out as SINGLE
+            applyGroupingLayout(holder, item)
+
             // Early return - don't process normal message content
             return
         }
-        
+
         // Message is not deleted - show content, hide placeholder
         holder.deletedMessagePlaceholder?.visibility = View.GONE
         holder.messageContentContainer?.visibility = View.VISIBLE
-        
-        // Apply dynamic vertical spacing based on message grouping position
-        holder.bodyLayout?.let { bodyLayout ->
-            val layoutParams = bodyLayout.layoutParams as? ViewGroup.MarginLayoutParams
-            layoutParams?.let { params ->
-                val context = holder.itemView.context
-                // Use grouped spacing (2dp) for messages in a group, ungrouped spacing (12dp) otherwise
-                val spacing = when (messagePosition) {
-                    MessagePosition.MIDDLE, MessagePosition.LAST -> {
-                        // Messages in the middle or at the end of a group use tight spacing
-                        context.resources.getDimensionPixelSize(R.dimen.message_spacing_grouped)
-                    }
-                    MessagePosition.SINGLE, MessagePosition.FIRST -> {
-                        // Single messages or first in group use larger spacing
-                        context.resources.getDimensionPixelSize(R.dimen.message_spacing_ungrouped)
-                    }
-                }
-                params.topMargin = spacing
-                bodyLayout.layoutParams = params
-            }
-        }
-        
-        // Update previous sender ID for next message
-        previousSenderId = msgUid
-        
-        // Handle username display for group chats using grouping logic
-        holder.senderUsername?.let { usernameView ->
-            if (shouldShowUsername(position, messagePosition, isGroupChat, isMyMessage) && userNamesMap.containsKey(msgUid)) {
-                usernameView.visibility = View.VISIBLE
-                usernameView.text = userNamesMap[msgUid]
-            } else {
-                usernameView.visibility = View.GONE
-            }
-        }
-        
+
+        // Spacing, username, timestamp and bubble shape from the precomputed group position
+        applyGroupingLayout(holder, item)
+
         // Handle forwarded indicator display
-        holder.forwardedIndicator?.let { forwardedView ->
-            val forwardedFromMessageId = messageData["forwarded_from_message_id"]?.toString()
-            if (!forwardedFromMessageId.isNullOrEmpty()) {
-                forwardedView.visibility = View.VISIBLE
-            } else {
-                forwardedView.visibility = View.GONE
-            }
-        }
-        
-        // Set message time using grouping logic - support both old and new field names
-        holder.messageTime?.let { timeView ->
-            val timestamp = messageData["created_at"]?.toString()?.toLongOrNull()
-                ?: messageData["push_date"]?.toString()?.toLongOrNull() 
-                ?: System.currentTimeMillis()
-            
-            if (shouldShowTimestamp(position, messagePosition)) {
-                timeView.text = formatMessageTime(timestamp)
-                timeView.visibility = View.VISIBLE
-            } else {
-                timeView.visibility = View.GONE
-            }
-        }
-        
+        holder.forwardedIndicator?.visibility = if (item.isForwarded) View.VISIBLE else View.GONE
+
         // Handle edited indicator display
         holder.editedIndicator?.let { editedView ->
-            val isEdited = messageData["is_edited"]?.toString()?.toBooleanStrictOrNull() ?: false
-            if (isEdited) {
+            if (item.isEdited) {
                 editedView.visibility = View.VISIBLE
                 // Add click listener to show edit history dialog
                 editedView.setOnClickListener {
-                    val messageId = messageData["id"]?.toString() 
-                        ?: messageData["key"]?.toString() 
-                        ?: ""
-                    listener.onEditHistoryClick(messageId)
+                    listener.onEditHistoryClick(item.key)
                 }
             } else {
                 editedView.visibility = View.GONE
                 editedView.setOnClickListener(null)
             }
         }
-        
-        // Set message status for sent messages using extension function - support both field names
+
+        // Set message status for sent messages using extension function
         holder.messageStatus?.let { statusView ->
-            if (isMyMessage) {
-                val deliveryStatus = messageData["delivery_status"]?.toString() 
-                    ?: messageData["message_state"]?.toString() 
-                    ?: "sent"
-                
-                // Use the extension function to set the appropriate icon and styling
-                statusView.setMessageState(deliveryStatus)
+            if (item.isMine) {
+                statusView.setMessageState(item.deliveryStatus)
                 statusView.visibility = View.VISIBLE
             } else {
                 // Hide read receipt icons for incoming messages
                 statusView.visibility = View.GONE
             }
         }
-        
+
         // Handle reply layout with WhatsApp-style display
         holder.replyLayout?.let { replyLayout ->
-            val repliedMessageId = messageData["replied_message_id"]?.toString() 
-                ?: messageData["reply_to_id"]?.toString()
-            
-            if (!repliedMessageId.isNullOrEmpty()) {
-                // Try to find the replied message in the current data list
-                val repliedMessage = repliedMessagesCache[repliedMessageId] 
-                    ?: data.find { it["id"]?.toString() == repliedMessageId }
-                
-                if (repliedMessage != null) {
-                    // Set reply username - always show "You" for current user's messages
-                    val replySenderId = repliedMessage["sender_id"]?.toString() 
-                        ?: repliedMessage["uid"]?.toString()
-                    val replyUsername = if (replySenderId == myUid) {
-                        "You"
-                    } else if (isGroupChat && userNamesMap.containsKey(replySenderId)) {
-                        userNamesMap[replySenderId] ?: "User"
-                    } else {
-                        secondUserName.ifEmpty { "User" }
-                    }
-                    holder.replyUsername?.text = replyUsername
-                    
-                    // Set reply message text (maxLines=2 is set in XML)
-                    val replyText = repliedMessage["content"]?.toString() 
-                        ?: repliedMessage["message_text"]?.toString() 
-                        ?: "Message"
-                    holder.replyText?.text = replyText
-                    
-                    // Handle reply image preview if message has attachments
-                    val attachments = repliedMessage["attachments"] as? ArrayList<HashMap<String, Any?>>
-                    val firstAttachment = attachments?.firstOrNull()
-                    val attachmentUrl = firstAttachment?.get("url")?.toString()
-                    val attachmentType = firstAttachment?.get("type")?.toString()
-                    
-                    if (!attachmentUrl.isNullOrEmpty() && attachmentType == "image") {
-                        holder.replyImage?.visibility = View.VISIBLE
-                        context?.let { ctx ->
-                            Glide.with(ctx)
-                                .load(attachmentUrl)
-                                .transform(RoundedCorners(8))
-                                .placeholder(R.drawable.ph_imgbluredsqure)
-                                .error(R.drawable.ph_imgbluredsqure)
-                                .into(holder.replyImage!!)
-                        }
-                    } else {
-                        holder.replyImage?.visibility = View.GONE
-                    }
-                    
-                    // Set click listener to scroll to replied message
-                    replyLayout.setOnClickListener {
-                        val position = data.indexOfFirst { it["id"]?.toString() == repliedMessageId }
-                        if (position != -1) {
-                            listener.onReplyClick(repliedMessageId, replyText, replyUsername)
-                        }
+            val replyToId = item.replyToId
+            val reply = item.reply
+
+            if (replyToId == null) {
+                replyLayout.visibility = View.GONE
+            } else if (reply != null && reply.isAvailable) {
+                // Set reply username - always show "You" for current user's messages
+                val myUid = authService.getCurrentUser()?.id ?: ""
+                val replyUsername = if (reply.senderId == myUid) {
+                    "You"
+                } else if (isGroupChat && userNamesMap.containsKey(reply.senderId)) {
+                    userNamesMap[reply.senderId] ?: "User"
+                } else {
+                    secondUserName.ifEmpty { "User" }
+                }
+                holder.replyUsername?.text = replyUsername
+
+                // Set reply message text (maxLines=2 is set in XML)
+                holder.replyText?.text = reply.text
+
+                // Handle reply image preview if message has attachments
+                if (reply.imageUrl != null) {
+                    holder.replyImage?.visibility = View.VISIBLE
+                    context?.let { ctx ->
+                        Glide.with(ctx)
+                            .load(reply.imageUrl)
+                            .transform(RoundedCorners(8))
+                            .placeholder(R.drawable.ph_imgbluredsqure)
+                            .error(R.drawable.ph_imgbluredsqure)
+                            .into(holder.replyImage!!)
                     }
-                    
-                    replyLayout.visibility = View.VISIBLE
                 } else {
-                    // Replied message not found - show placeholder
-                    holder.replyUsername?.text = "Unknown"
-                    holder.replyText?.text = "Message not available"
                     holder.replyImage?.visibility = View.GONE
-                    replyLayout.setOnClickListener(null)
-                    replyLayout.visibility = View.VISIBLE
                 }
-            } else {
-                replyLayout.visibility = View.GONE
-            }
-        }
-        
-        // Set message layout alignment using ConstraintLayout
-        holder.bodyLayout?.let { body ->
-            val layoutParams = body.layoutParams as? androidx.constraintlayout.widget.ConstraintLayout.LayoutParams
-            layoutParams?.let { params ->
-                if (isMyMessage) {
-                    // Align to right
-                    params.startToStart = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.UNSET
-                    params.endToEnd = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.PARENT_ID
-                } else {
-                    // Align to left
-                    params.startToStart = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.PARENT_ID
-                    params.endToEnd = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.UNSET
+
+                // Set click listener to scroll to replied message
+                replyLayout.setOnClickListener {
+                    listener.onReplyClick(replyToId, reply.text, replyUsername)
                 }
-                body.layoutParams = params
-            }
-        }
-        
-        // Set message layout alignment - message_layout is now a LinearLayout
-        holder.messageLayout?.let { layout ->
-            val layoutParams = layout.layoutParams as? LinearLayout.LayoutParams
-            if (layoutParams != null) {
-                layoutParams.width = ViewGroup.LayoutParams.WRAP_CONTENT
-                layoutParams.gravity = if (isMyMessage) Gravity.END else Gravity.START
-                layout.layoutParams = layoutParams
+
+                replyLayout.visibility = View.VISIBLE
+            } else {
+                // Replied message deleted or missing, or still being fetched - show placeholder
+                holder.replyUsername?.text = if (reply == null) "" else "Unknown"
+                holder.replyText?.text = reply?.text ?: "Loading…"
+                holder.replyImage?.visibility = View.GONE
+                replyLayout.setOnClickListener(null)
+                replyLayout.visibility = View.VISIBLE
             }
         }
-        
+
+        applyAlignment(holder, item.isMine)
+
         // Apply responsive bubble width constraint (75% of screen width)
         // Prevents bubbles from stretching too wide on tablets/foldables
         context?.let { ctx ->
@@ -654,538 +717,286 @@ class ChatAdapter(
                 }
             }
         }
-        
-        // Set message bubble background using grouping logic
-        applyMessageBubbleBackground(holder, messagePosition, isMyMessage)
-        
-        // Set click listeners - support both id field names
+
+        // Set click listeners
         holder.itemView.setOnClickListener {
-            val messageId = messageData["id"]?.toString() 
-                ?: messageData["key"]?.toString() 
-                ?: ""
-            
             if (isMultiSelectMode) {
                 // Toggle selection in multi-select mode
-                onToggleMessageSelection?.invoke(messageId)
+                onToggleMessageSelection?.invoke(item.key)
             } else {
                 // Normal click behavior
-                listener.onMessageClick(messageId, position)
+                listener.onMessageClick(item.key, holder.bindingAdapterPosition)
             }
         }
-        
+
         holder.itemView.setOnLongClickListener {
-            val messageId = messageData["id"]?.toString() 
-                ?: messageData["key"]?.toString() 
-                ?: ""
-            
             // Trigger haptic feedback on long-press
             holder.itemView.performHapticFeedback(
                 android.view.HapticFeedbackConstants.LONG_PRESS,
                 android.view.HapticFeedbackConstants.FLAG_IGNORE_GLOBAL_SETTING
             )
-            
+
             // Enter multi-select mode if not already in it
             if (!isMultiSelectMode) {
-                onEnterMultiSelectMode?.invoke(messageId)
+                onEnterMultiSelectMode?.invoke(item.key)
                 true
             } else {
                 // Call listener for message actions if already in multi-select mode
-                listener.onMessageLongClick(messageId, position)
+                listener.onMessageLongClick(item.key, holder.bindingAdapterPosition)
                 true
             }
         }
     }
 
     /**
-     * Check if a message type supports grouping
-     * Excludes typing, error, and loading indicators from grouping
+     * Apply the parts of a bubble that depend on its neighbours: vertical spacing, sender
+     * name, timestamp visibility and bubble shape, all decided by [MessageLayoutPass]. Also used
+     * as the partial bind when only grouping changed, e.g. the previous last message of a
+     * group when a new one arrives.
      */
-    private fun isGroupableMessageType(viewType: Int): Boolean {
-        return when (viewType) {
-            VIEW_TYPE_TEXT,
-            VIEW_TYPE_MEDIA_GRID,
-            VIEW_TYPE_VIDEO,
-            VIEW_TYPE_VOICE_MESSAGE,
-            VIEW_TYPE_LINK_PREVIEW -> true
-            VIEW_TYPE_TYPING,
-            VIEW_TYPE_ERROR,
-            VIEW_TYPE_LOADING_MORE -> false
-            else -> false
-        }
-    }
+    private fun applyGroupingLayout(holder: BaseMessageViewHolder, item: ChatItem.Message) {
+        val layout = item.layout
 
-    /**
-     * Check if current message should group with previous message
-     * Considers sender ID, message type, and deleted status
-     */
-    private fun shouldGroupWithPrevious(currentPosition: Int): Boolean {
-        // Validate bounds
-        if (currentPosition <= 0 || currentPosition >= data.size) {
-            return false
-        }
-        
-        val previousPosition = currentPosition - 1
-        val currentMessage = data[currentPosition]
-        val previousMessage = data[previousPosition]
-        
-        // Check if current message is groupable
-        val currentViewType = getItemViewType(currentPosition)
-        if (!isGroupableMessageType(currentViewType)) {
-            return false
-        }
-        
-        // Check if previous message is groupable
-        val previousViewType = getItemViewType(previousPosition)
-        if (!isGroupableMessageType(previousViewType)) {
-            return false
-        }
-        
-        // Check if current message is deleted
-        val currentDeleted = currentMessage["is_deleted"]?.toString()?.toBooleanStrictOrNull() ?: false
-        val currentDeleteForEveryone = currentMessage["delete_for_everyone"]?.toString()?.toBooleanStrictOrNull() ?: false
-        if (currentDeleted || currentDeleteForEveryone) {
-            return false
-        }
-        
-        // Check if previous message is deleted
-        val previousDeleted = previousMessage["is_deleted"]?.toString()?.toBooleanStrictOrNull() ?: false
-        val previousDeleteForEveryone = previousMessage["delete_for_everyone"]?.toString()?.toBooleanStrictOrNull() ?: false
-        if (previousDeleted || previousDeleteForEveryone) {
-            return false
+        holder.bodyLayout?.let { bodyLayout ->
+            val params = bodyLayout.layoutParams as? ViewGroup.MarginLayoutParams
+            val spacing = dimensionPixelSize(holder, layout.spacingRes)
+            if (params != null && params.topMargin != spacing) {
+                params.topMargin = spacing
+                bodyLayout.layoutParams = params
+            }
         }
-        
-        // Check if same sender
-        val currentSenderId = currentMessage["sender_id"]?.toString() 
-            ?: currentMessage["uid"]?.toString() 
-            ?: ""
-        val previousSenderId = previousMessage["sender_id"]?.toString() 
-            ?: previousMessage["uid"]?.toString() 
-            ?: ""
-        
-        return currentSenderId == previousSenderId && currentSenderId.isNotEmpty()
-    }
 
-    /**
-     * Check if current message should group with next message
-     * Considers sender ID, message type, and deleted status
-     */
-    private fun shouldGroupWithNext(currentPosition: Int): Boolean {
-        // Validate bounds
-        if (currentPosition < 0 || currentPosition >= data.size - 1) {
-            return false
-        }
-        
-        val nextPosition = currentPosition + 1
-        val currentMessage = data[currentPosition]
-        val nextMessage = data[nextPosition]
-        
-        // Check if current message is groupable
-        val currentViewType = getItemViewType(currentPosition)
-        if (!isGroupableMessageType(currentViewType)) {
-            return false
-        }
-        
-        // Check if next message is groupable
-        val nextViewType = getItemViewType(nextPosition)
-        if (!isGroupableMessageType(nextViewType)) {
-            return false
+        holder.senderUsername?.let { usernameView ->
+            val senderName = if (layout.showUsername) userNamesMap[item.senderId] else null
+            if (senderName != null) {
+                usernameView.visibility = View.VISIBLE
+                usernameView.text = senderName
+            } else {
+                usernameView.visibility = View.GONE
+            }
         }
-        
-        // Check if current message is deleted
-        val currentDeleted = currentMessage["is_deleted"]?.toString()?.toBooleanStrictOrNull() ?: false
-        val currentDeleteForEveryone = currentMessage["delete_for_everyone"]?.toString()?.toBooleanStrictOrNull() ?: false
-        if (currentDeleted || currentDeleteForEveryone) {
-            return false
+
+        holder.messageTime?.let { timeView ->
+            if (layout.showTimestamp) {
+                timeView.text = layout.formattedTime
+                timeView.visibility = View.VISIBLE
+            } else {
+                timeView.visibility = View.GONE
+            }
         }
-        
-        // Check if next message is deleted
-        val nextDeleted = nextMessage["is_deleted"]?.toString()?.toBooleanStrictOrNull() ?: false
-        val nextDeleteForEveryone = nextMessage["delete_for_everyone"]?.toString()?.toBooleanStrictOrNull() ?: false
-        if (nextDeleted || nextDeleteForEveryone) {
-            return false
+
+        // Re-inflating the same shape drawable on every bind is wasted work
+        holder.messageBubble?.let { bubble ->
+            if (holder.bubbleRes != layout.bubbleRes) {
+                bubble.setBackgroundResource(layout.bubbleRes)
+                holder.bubbleRes = layout.bubbleRes
+            }
         }
-        
-        // Check if same sender
-        val currentSenderId = currentMessage["sender_id"]?.toString() 
-            ?: currentMessage["uid"]?.toString() 
-            ?: ""
-        val nextSenderId = nextMessage["sender_id"]?.toString() 
-            ?: nextMessage["uid"]?.toString() 
-            ?: ""
-        
-        return currentSenderId == nextSenderId && currentSenderId.isNotEmpty()
     }
 
-    /**
-     * Calculate the position of a message within its group
-     * Returns SINGLE, FIRST, MIDDLE, or LAST based on adjacent messages
-     */
-    private fun calculateMessagePosition(position: Int): MessagePosition {
-        // Validate position
-        if (position < 0 || position >= data.size) {
-            return MessagePosition.SINGLE
-        }
-        
-        val canGroupWithPrevious = shouldGroupWithPrevious(position)
-        val canGroupWithNext = shouldGroupWithNext(position)
-        
-        return when {
-            !canGroupWithPrevious && !canGroupWithNext -> MessagePosition.SINGLE
-            !canGroupWithPrevious && canGroupWithNext -> MessagePosition.FIRST
-            canGroupWithPrevious && canGroupWithNext -> MessagePosition.MIDDLE
-            canGroupWithPrevious && !canGroupWithNext -> MessagePosition.LAST
-            else -> MessagePosition.SINGLE // Fallback
+    private fun dimensionPixelSize(holder: RecyclerView.ViewHolder, dimenRes: Int): Int {
+        return dimensionCache.getOrPut(dimenRes) {
+            holder.itemView.resources.getDimensionPixelSize(dimenRes)
         }
     }
 
     /**
-     * Apply message bubble background based on message position and direction
-     * Maps MessagePosition to appropriate drawable resources
+     * Align the bubble to the end for outgoing messages and to the start for incoming ones
      */
-    private fun applyMessageBubbleBackground(
-        holder: BaseMessageViewHolder,
-        messagePosition: MessagePosition,
-        isMyMessage: Boolean
-    ) {
-        holder.messageBubble?.let { bubble ->
-            val drawableRes = when (messagePosition) {
-                MessagePosition.SINGLE -> {
-                    if (isMyMessage) {
-                        R.drawable.shape_outgoing_message_single
-                    } else {
-                        R.drawable.shape_incoming_message_single
-                    }
-                }
-                MessagePosition.FIRST -> {
-                    if (isMyMessage) {
-                        R.drawable.shape_outgoing_message_first
-                    } else {
-                        R.drawable.shape_incoming_message_first
-                    }
-                }
-                MessagePosition.MIDDLE -> {
-                    if (isMyMessage) {
-                        R.drawable.shape_outgoing_message_middle
-                    } else {
-                        R.drawable.shape_incoming_message_middle
-                    }
-                }
-                MessagePosition.LAST -> {
-                    if (isMyMessage) {
-                        R.drawable.shape_outgoing_message_last
-                    } else {
-                        R.drawable.shape_incoming_message_last
-                    }
+    private fun applyAlignment(holder: BaseMessageViewHolder, isMyMessage: Boolean) {
+        // Set message layout alignment using ConstraintLayout
+        holder.bodyLayout?.let { body ->
+            val layoutParams = body.layoutParams as? androidx.constraintlayout.widget.ConstraintLayout.LayoutParams
+            layoutParams?.let { params ->
+                if (isMyMessage) {
+                    // Align to right
+                    params.startToStart = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.UNSET
+                    params.endToEnd = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.PARENT_ID
+                } else {
+                    // Align to left
+                    params.startToStart = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.PARENT_ID
+                    params.endToEnd = androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.UNSET
                 }
+                body.layoutParams = params
             }
-            bubble.setBackgroundResource(drawableRes)
         }
-    }
 
-    /**
-     * Calculate time difference in milliseconds between two messages
-     * Handles null timestamp values with fallback to current time
-     * 
-     * @param position1 Position of first message
-     * @param position2 Position of second message
-     * @return Time difference in milliseconds, or Long.MAX_VALUE if either message is invalid
-     */
-    private fun getTimeDifference(position1: Int, position2: Int): Long {
-        // Validate positions are within bounds
-        if (position1 < 0 || position1 >= data.size || position2 < 0 || position2 >= data.size) {
-            return Long.MAX_VALUE
+        // Set message layout alignment - message_layout is now a LinearLayout
+        holder.messageLayout?.let { layout ->
+            val layoutParams = layout.layoutParams as? LinearLayout.LayoutParams
+            if (layoutParams != null) {
+                layoutParams.width = ViewGroup.LayoutParams.WRAP_CONTENT
+                layoutParams.gravity = if (isMyMessage) Gravity.END else Gravity.START
+                layout.layoutParams = layoutParams
+            }
         }
-        
-        val message1 = data[position1]
-        val message2 = data[position2]
-        
-        // Get timestamps with fallback to current time
-        val timestamp1 = message1["created_at"]?.toString()?.toLongOrNull()
-            ?: message1["push_date"]?.toString()?.toLongOrNull()
-            ?: System.currentTimeMillis()
-        
-        val timestamp2 = message2["created_at"]?.toString()?.toLongOrNull()
-            ?: message2["push_date"]?.toString()?.toLongOrNull()
-            ?: System.currentTimeMillis()
-        
-        return kotlin.math.abs(timestamp2 - timestamp1)
     }
 
     /**
-     * Determine if timestamp should be shown for a message
-     * Implements 60-second threshold logic for grouped messages
-     * 
-     * @param position Position of the message in the data list
-     * @param messagePosition Position of message within its group (SINGLE, FIRST, MIDDLE, LAST)
-     * @return true if timestamp should be displayed, false otherwise
+     * Mark the row as activated while it is selected in multi-select mode
      */
-    private fun shouldShowTimestamp(position: Int, messagePosition: MessagePosition): Boolean {
-        // Validate position is within bounds
-        if (position < 0 || position >= data.size) {
-            return true // Show timestamp by default for invalid positions
+    private fun applySelectionState(holder: BaseMessageViewHolder, item: ChatItem.Message) {
+        holder.itemView.isActivated = isMultiSelectMode && isMessageSelected?.invoke(item.key) == true
+    }
+
+    private fun bubbleTextColor(holder: RecyclerView.ViewHolder, isMyMessage: Boolean): Int {
+        val context = holder.itemView.context
+        return if (isMyMessage) {
+            context.getColor(R.color.md_theme_onPrimaryContainer)
+        } else {
+            context.getColor(R.color.md_theme_onSecondaryContainer)
         }
-        
-        return when (messagePosition) {
-            // SINGLE and LAST messages always show timestamp
-            MessagePosition.SINGLE, MessagePosition.LAST -> true
-            
-            // FIRST and MIDDLE messages show timestamp only if time difference with next message > 60 seconds
-            MessagePosition.FIRST, MessagePosition.MIDDLE -> {
-                val nextPosition = position + 1
-                if (nextPosition >= data.size) {
-                    // No next message, show timestamp
-                    true
-                } else {
-                    // Check time difference with next message
-                    val timeDiff = getTimeDifference(position, nextPosition)
-                    timeDiff > 60000 // 60 seconds = 60000 milliseconds
-                }
-            }
+    }
+
+    private fun bindTextViewHolder(holder: TextViewHolder, item: ChatItem.Message) {
+        bindCommonMessageProperties(holder, item)
+
+        if (textMetricsParams == null) {
+            // Bubble text metrics are known once one exists; measure from the next mapping on
+            textMetricsParams = TextViewCompat.getTextMetricsParams(holder.messageText)
+            refresh()
         }
+
+        // Display summary or original text
+        bindMessageText(holder.messageText, item.displayText, measured = true)
+        holder.messageText.setTextColor(bubbleTextColor(holder, item.isMine))
     }
 
     /**
-     * Determine if username should be shown for a message in group chats
-     * Username is shown only for SINGLE or FIRST messages in group chats
-     * 
-     * @param position Position of the message in the data list
-     * @param messagePosition Position of message within its group (SINGLE, FIRST, MIDDLE, LAST)
-     * @param isGroupChat Whether the conversation is a group chat
-     * @param isMyMessage Whether the message is from the current user
-     * @return true if username should be displayed, false otherwise
+     * Sets a message text prepared by [prepareTexts], or the plain text if it wasn't yet.
+     *
+     * @param measured Whether [textView] is a text bubble's, whose metrics texts were measured for
      */
-    private fun shouldShowUsername(
-        position: Int,
-        messagePosition: MessagePosition,
-        isGroupChat: Boolean,
-        isMyMessage: Boolean
-    ): Boolean {
-        // Never show username for current user's messages
-        if (isMyMessage) {
-            return false
-        }
-        
-        // Never show username in 1-on-1 chats
-        if (!isGroupChat) {
-            return false
-        }
-        
-        // In group chats, show username only for SINGLE or FIRST message positions
-        return when (messagePosition) {
-            MessagePosition.SINGLE, MessagePosition.FIRST -> true
-            MessagePosition.MIDDLE, MessagePosition.LAST -> false
+    private fun bindMessageText(textView: TextView, text: String, measured: Boolean) {
+        val entry = messageTexts.get(text)
+        val precomputed = entry?.precomputed?.takeIf { measured }
+        val applied = precomputed != null && try {
+            TextViewCompat.setPrecomputedText(textView, precomputed)
+            true
+        } catch (e: IllegalArgumentException) {
+            // Measured for other metrics, e.g. after a font scale change
+            false
+        }
+        if (!applied) textView.text = entry?.text ?: text
+
+        val movementMethod = if (entry?.hasLinks == true) LinkMovementMethod.getInstance() else null
+        if (textView.movementMethod !== movementMethod) {
+            textView.movementMethod = movementMethod
+            // Taps beside the links still reach the bubble's click and long click handlers
+            textView.isClickable = false
+            textView.isLongClickable = false
+            textView.isFocusable = false
         }
     }
 
-    private fun bindTextViewHolder(holder: TextViewHolder, position: Int) {
-        bindCommonMessageProperties(holder, position)
-        val messageData = data[position]
-        val currentUser = authService.getCurrentUser()
-        val myUid = currentUser?.id ?: ""
-        val msgUid = messageData["sender_id"]?.toString() 
-            ?: messageData["uid"]?.toString() 
-            ?: ""
-        val isMyMessage = msgUid == myUid
-        
-        // Check if AI summary is being shown
-        val showingSummary = messageData["showing_ai_summary"]?.toString()?.toBooleanStrictOrNull() ?: false
-        val aiSummary = messageData["ai_summary"]?.toString()
-        
-        // Support both content (Supabase) and message_text (legacy) field names
-        val originalText = messageData["content"]?.toString() 
-            ?: messageData["message_text"]?.toString() 
-            ?: ""
-        
-        // Display summary or original text
-        val displayText = if (showingSummary && !aiSummary.isNullOrEmpty()) {
-            aiSummary
-        } else {
-            originalText
+    private fun onMessageLinkClick(link: MessageLink) {
+        when (link) {
+            is MessageLink.Url -> listener.onAttachmentClick(link.url, "link")
+            is MessageLink.Mention -> context?.let { MentionUtils.openProfile(it, link.username) }
+            // No hashtag screen yet; they are only highlighted
+            is MessageLink.Hashtag -> Unit
         }
-        holder.messageText.text = displayText
-        
-        // Apply text color based on message type
-        val context = holder.itemView.context
-        holder.messageText.setTextColor(
-            if (isMyMessage) {
-                context.getColor(R.color.md_theme_onPrimaryContainer)
-            } else {
-                context.getColor(R.color.md_theme_onSecondaryContainer)
-            }
-        )
     }
 
-    private fun bindMediaViewHolder(holder: MediaViewHolder, position: Int) {
-        bindCommonMessageProperties(holder, position)
-        val messageData = data[position]
-        val currentUser = authService.getCurrentUser()
-        val myUid = currentUser?.id ?: ""
-        val msgUid = messageData["sender_id"]?.toString() 
-            ?: messageData["uid"]?.toString() 
-            ?: ""
-        val isMyMessage = msgUid == myUid
-        val attachments = messageData["attachments"] as? ArrayList<HashMap<String, Any?>>
-        
+    private fun bindMediaViewHolder(holder: MediaViewHolder, item: ChatItem.Message) {
+        bindCommonMessageProperties(holder, item)
+
         holder.mediaGrid.removeAllViews()
-        
-        attachments?.forEach { attachment ->
-            val imageView = ImageView(context)
-            val imageUrl = attachment["url"]?.toString()
-            
+
+        item.attachments.forEach { attachment ->
+            // The grid's context, not the screen's: the holder outlives the screen in the pool
+            val imageView = ImageView(holder.mediaGrid.context)
+            val imageUrl = attachment.url
+
             if (!imageUrl.isNullOrEmpty()) {
-                Glide.with(context!!)
-                    .load(imageUrl)
-                    .transform(RoundedCorners(16))
-                    .into(imageView)
-                
+                ImageLoader.loadImage(
+                    context = context!!,
+                    url = imageUrl,
+                    imageView = imageView,
+                    placeholder = R.drawable.ph_imgbluredsqure,
+                    blurHash = attachment.blurHash,
+                    thumbnailUrl = attachment.thumbnailUrl,
+                    cornerRadius = 16
+                )
+
                 imageView.setOnClickListener {
-                    listener.onAttachmentClick(imageUrl, attachment["type"]?.toString() ?: "image")
+                    listener.onAttachmentClick(imageUrl, attachment.type ?: "image")
                 }
             }
-            
+
             holder.mediaGrid.addView(imageView)
         }
-        
-        // Support both content and message_text for caption
-        val caption = messageData["content"]?.toString() 
-            ?: messageData["message_text"]?.toString() 
-            ?: ""
-        holder.mediaCaption?.text = caption
-        
-        // Apply text color to caption based on message type
-        holder.mediaCaption?.let { captionView ->
-            val context = holder.itemView.context
-            captionView.setTextColor(
-                if (isMyMessage) {
-                    context.getColor(R.color.md_theme_onPrimaryContainer)
-                } else {
-                    context.getColor(R.color.md_theme_onSecondaryContainer)
-                }
-            )
-        }
+
+        holder.mediaCaption?.let { bindMessageText(it, item.text, measured = false) }
+        holder.mediaCaption?.setTextColor(bubbleTextColor(holder, item.isMine))
     }
 
-    private fun bindVideoViewHolder(holder: VideoViewHolder, position: Int) {
-        bindCommonMessageProperties(holder, position)
-        val messageData = data[position]
-        val currentUser = authService.getCurrentUser()
-        val myUid = currentUser?.id ?: ""
-        val msgUid = messageData["sender_id"]?.toString() 
-            ?: messageData["uid"]?.toString() 
-            ?: ""
-        val isMyMessage = msgUid == myUid
-        val attachments = messageData["attachments"] as? ArrayList<HashMap<String, Any?>>
-        val videoAttachment = attachments?.firstOrNull()
-        
-        val thumbnailUrl = videoAttachment?.get("thumbnailUrl")?.toString()
-        val videoUrl = videoAttachment?.get("url")?.toString()
-        
+    private fun bindVideoViewHolder(holder: VideoViewHolder, item: ChatItem.Message) {
+        bindCommonMessageProperties(holder, item)
+        val videoAttachment = item.attachments.firstOrNull()
+
+        val thumbnailUrl = videoAttachment?.thumbnailUrl
+        val videoUrl = videoAttachment?.url
+
         if (!thumbnailUrl.isNullOrEmpty()) {
-            Glide.with(context!!)
-                .load(thumbnailUrl)
-                .transform(RoundedCorners(16))
-                .into(holder.videoThumbnail)
+            ImageLoader.loadImage(
+                context = context!!,
+                url = thumbnailUrl,
+                imageView = holder.videoThumbnail,
+                placeholder = R.drawable.ph_imgbluredsqure,
+                blurHash = videoAttachment?.blurHash,
+                cornerRadius = 16
+            )
         }
-        
+
         holder.playButton.setOnClickListener {
             if (!videoUrl.isNullOrEmpty()) {
                 listener.onAttachmentClick(videoUrl, "video")
             }
         }
-        
-        // Support both content and message_text for caption
-        val caption = messageData["content"]?.toString() 
-            ?: messageData["message_text"]?.toString() 
-            ?: ""
-        holder.videoCaption?.text = caption
-        
-        // Apply text color to caption based on message type
-        holder.videoCaption?.let { captionView ->
-            val context = holder.itemView.context
-            captionView.setTextColor(
-                if (isMyMessage) {
-                    context.getColor(R.color.md_theme_onPrimaryContainer)
-                } else {
-                    context.getColor(R.color.md_theme_onSecondaryContainer)
-                }
-            )
-        }
-    }
 
-    private fun bindTypingViewHolder(holder: TypingViewHolder, position: Int) {
-        // Typing animation is handled by Lottie animation
+        holder.videoCaption?.let { bindMessageText(it, item.text, measured = false) }
+        holder.videoCaption?.setTextColor(bubbleTextColor(holder, item.isMine))
     }
 
-    private fun bindLinkPreviewViewHolder(holder: LinkPreviewViewHolder, position: Int) {
-        bindCommonMessageProperties(holder, position)
-        val messageData = data[position]
-        val currentUser = authService.getCurrentUser()
-        val myUid = currentUser?.id ?: ""
-        val msgUid = messageData["sender_id"]?.toString() 
-            ?: messageData["uid"]?.toString() 
-            ?: ""
-        val isMyMessage = msgUid == myUid
-        
-        // Support both content and message_text field names
-        val messageText = messageData["content"]?.toString() 
-            ?: messageData["message_text"]?.toString() 
-            ?: ""
-        
-        holder.messageText.text = messageText
-        
-        // Apply text color based on message type
-        val context = holder.itemView.context
-        holder.messageText.setTextColor(
-            if (isMyMessage) {
-                context.getColor(R.color.md_theme_onPrimaryContainer)
-            } else {
-                context.getColor(R.color.md_theme_onSecondaryContainer)
-            }
-        )
-        
-        val url = LinkPreviewUtil.extractUrl(messageText)
+    private fun bindLinkPreviewViewHolder(holder: LinkPreviewViewHolder, item: ChatItem.Message) {
+        bindCommonMessageProperties(holder, item)
+
+        bindMessageText(holder.messageText, item.text, measured = false)
+        holder.messageText.setTextColor(bubbleTextColor(holder, item.isMine))
+
+        val url = item.linkUrl
         if (url != null) {
             holder.linkPreviewCard.visibility = View.VISIBLE
-            
+
             // Set click listener to open URL
             holder.linkPreviewCard.setOnClickListener {
                 listener.onAttachmentClick(url, "link")
             }
-            
-            // Check cache first
-            if (linkPreviewCache.containsKey(url)) {
-                val cachedData = linkPreviewCache[url]!!
-                displayLinkPreview(holder, cachedData)
-            } else {
-                // Show loading state with basic info
-                holder.linkTitle.text = "Loading..."
-                holder.linkDescription.text = url
-                holder.linkUrl.text = LinkPreviewUtil.extractDomain(url) ?: url
-                holder.linkImage.visibility = View.GONE
-                
-                // Fetch metadata asynchronously
-                CoroutineScope(Dispatchers.Main).launch {
-                    val result = LinkPreviewUtil.fetchPreview(url)
-                    result.onSuccess { linkData ->
-                        // Cache the result
-                        linkPreviewCache[url] = linkData
-                        
-                        // Only update if this holder is still showing the same URL
-                        if (position < data.size) {
-                            val currentMessageText = data[position]["content"]?.toString() 
-                                ?: data[position]["message_text"]?.toString() 
-                                ?: ""
-                            val currentUrl = LinkPreviewUtil.extractUrl(currentMessageText)
-                            if (currentUrl == url) {
-                                displayLinkPreview(holder, linkData)
-                            }
+
+            holder.previewJob?.cancel()
+            holder.previewJob = null
+            val service = linkPreviews
+            val cached = service?.peek(url)
+            when {
+                cached != null -> displayLinkPreview(holder, cached)
+                service == null || service.isKnownFailure(url) -> displayBasicPreview(holder, url)
+                else -> {
+                    // Show loading state with basic info
+                    holder.linkTitle.text = "Loading..."
+                    holder.linkDescription.text = url
+                    holder.linkUrl.text = LinkPreviewUtil.extractDomain(url) ?: url
+                    holder.linkImage.visibility = View.GONE
+
+                    // Usually already in flight from the prefetch when the message arrived
+                    holder.previewJob = (viewScope ?: mainScope).launch {
+                        val linkData = service.get(url)
+                        if (!isBoundTo(holder, url)) return@launch
+                        if (linkData != null) {
+                            displayLinkPreview(holder, linkData)
+                        } else {
+                            displayBasicPreview(holder, url)
                         }
-                    }.onFailure {
-                        // On error, show basic preview
-                        holder.linkTitle.text = LinkPreviewUtil.extractDomain(url) ?: "Link"
-                        holder.linkDescription.text = url
-                        holder.linkUrl.text = LinkPreviewUtil.extractDomain(url) ?: url
-                        holder.linkImage.visibility = View.GONE
                     }
                 }
             }
@@ -1193,12 +1004,25 @@ class ChatAdapter(
             holder.linkPreviewCard.visibility = View.GONE
         }
     }
-    
+
+    private fun isBoundTo(holder: LinkPreviewViewHolder, url: String): Boolean {
+        val position = holder.bindingAdapterPosition
+        if (position == RecyclerView.NO_POSITION || position >= itemCount) return false
+        return (getItem(position) as? ChatItem.Message)?.linkUrl == url
+    }
+
+    private fun displayBasicPreview(holder: LinkPreviewViewHolder, url: String) {
+        holder.linkTitle.text = LinkPreviewUtil.extractDomain(url) ?: "Link"
+        holder.linkDescription.text = url
+        holder.linkUrl.text = LinkPreviewUtil.extractDomain(url) ?: url
+        holder.linkImage.visibility = View.GONE
+    }
+
     private fun displayLinkPreview(holder: LinkPreviewViewHolder, linkData: LinkPreviewUtil.LinkData) {
         holder.linkTitle.text = linkData.title ?: linkData.domain ?: "Link"
         holder.linkDescription.text = linkData.description ?: linkData.url
         holder.linkUrl.text = linkData.domain ?: linkData.url
-        
+
         // Load and display image if available
         if (!linkData.imageUrl.isNullOrEmpty()) {
             holder.linkImage.visibility = View.VISIBLE
@@ -1215,47 +1039,48 @@ class ChatAdapter(
         }
     }
 
-    private fun bindVoiceMessageViewHolder(holder: VoiceMessageViewHolder, position: Int) {
-        bindCommonMessageProperties(holder, position)
-        val messageData = data[position]
-        val attachments = messageData["attachments"] as? ArrayList<HashMap<String, Any?>>
-        val audioAttachment = attachments?.firstOrNull()
-        val audioUrl = audioAttachment?.get("url")?.toString()
-        
+    private fun bindVoiceMessageViewHolder(holder: VoiceMessageViewHolder, item: ChatItem.Message) {
+        bindCommonMessageProperties(holder, item)
+        val audioAttachment = item.attachments.firstOrNull()
+        val audioUrl = audioAttachment?.url
+
         holder.playPauseButton.setOnClickListener {
             if (!audioUrl.isNullOrEmpty()) {
-                toggleVoicePlayback(holder, audioUrl)
+                toggleVoicePlayback(item.key)
             }
         }
-        
-        val duration = audioAttachment?.get("duration")?.toString()?.toLongOrNull() ?: 0L
-        holder.duration.text = formatDuration(duration)
+
+        holder.duration.text = formatDuration(audioAttachment?.durationMs ?: 0L)
+        applyVoicePlaybackState(holder, item)
+    }
+
+    /**
+     * Shows whether the bubble's note is playing, and makes the bubble the progress ticker's
+     * target while its note is the current one.
+     */
+    private fun applyVoicePlaybackState(holder: VoiceMessageViewHolder, item: ChatItem.Message) {
+        val playback = voicePlayback
+        val isPlaying = playback?.isPlaying(item.key) == true
+        holder.playPauseButton.setImageResource(if (isPlaying) R.drawable.ic_close else R.drawable.ic_play_circle_filled)
+        if (playback != null && playback.currentId == item.key) {
+            playback.setProgressTarget(item.key, holder)
+        } else {
+            playback?.clearProgressTarget(holder)
+            holder.waveform.progress = 0
+        }
     }
 
-    private fun bindErrorViewHolder(holder: ErrorViewHolder, position: Int) {
-        val messageData = data[position]
-        
+    private fun bindErrorViewHolder(holder: ErrorViewHolder, item: ChatItem.Message) {
         // Display user-friendly error message
         holder.errorMessageText.text = context?.getString(R.string.failed_to_send) ?: "Failed to send"
         holder.retryText.text = context?.getString(R.string.tap_to_retry) ?: "Tap to retry"
-        
+
         // Log full error details for debugging (never display in UI)
-        val errorDetails = messageData["error"]?.toString()
-        val exception = messageData["exception"] as? Exception
-        val messageId = messageData["id"]?.toString() 
-            ?: messageData["key"]?.toString() 
-            ?: "unknown"
-        
-        Log.e(TAG, "Message send failed for message ID: $messageId. Error: $errorDetails", exception)
-        
+        Log.e(TAG, "Message send failed for message ID: ${item.key}. Error: ${item.errorDetails}")
+
         // Set message time
-        holder.messageTime?.let { timeView ->
-            val timestamp = messageData["created_at"]?.toString()?.toLongOrNull()
-                ?: messageData["push_date"]?.toString()?.toLongOrNull() 
-                ?: System.currentTimeMillis()
-            timeView.text = formatMessageTime(timestamp)
-        }
-        
+        holder.messageTime?.text = item.layout.formattedTime
+
         // Set message layout alignment (error messages are always from current user)
         holder.messageLayout?.let { layout ->
             val layoutParams = layout.layoutParams as? LinearLayout.LayoutParams
@@ -1265,90 +1090,29 @@ class ChatAdapter(
                 layout.layoutParams = layoutParams
             }
         }
-        
+
         // Implement retry click listener
         holder.itemView.setOnClickListener {
-            listener.onMessageRetry(messageId, position)
+            listener.onMessageRetry(item.key, holder.bindingAdapterPosition)
         }
-        
+
         // Also allow long click for message options
         holder.itemView.setOnLongClickListener {
             // Enter multi-select mode if not already in it
             if (!isMultiSelectMode) {
-                onEnterMultiSelectMode?.invoke(messageId)
+                onEnterMultiSelectMode?.invoke(item.key)
                 true
             } else {
                 // Call listener for message actions if already in multi-select mode
-                listener.onMessageLongClick(messageId, position)
+                listener.onMessageLongClick(item.key, holder.bindingAdapterPosition)
                 true
             }
         }
     }
 
-    private fun bindLoadingViewHolder(holder: LoadingViewHolder, position: Int) {
-        // Loading is handled by progress bar only
-    }
-
-    private fun toggleVoicePlayback(holder: VoiceMessageViewHolder, audioUrl: String) {
-        try {
-            if (holder.mediaPlayer == null) {
-                holder.mediaPlayer = MediaPlayer().apply {
-                    setDataSource(audioUrl)
-                    prepareAsync()
-                    setOnPreparedListener { player ->
-                        player.start()
-                        holder.playPauseButton.setImageResource(R.drawable.ic_close)
-                        startProgressUpdate(holder)
-                    }
-                    setOnCompletionListener {
-                        holder.playPauseButton.setImageResource(R.drawable.ic_play_circle_filled)
-                        holder.waveform.progress = 0
-                    }
-                }
-            } else {
-                if (holder.mediaPlayer!!.isPlaying) {
-                    holder.mediaPlayer!!.pause()
-                    holder.playPauseButton.setImageResource(R.drawable.ic_play_circle_filled)
-                } else {
-                    holder.mediaPlayer!!.start()
-                    holder.playPauseButton.setImageResource(R.drawable.ic_close)
-                    startProgressUpdate(holder)
-                }
-            }
-        } catch (e: Exception) {
-            Log.e(TAG, "Error playing voice message", e)
-        }
-    }
-
-    private fun startProgressUpdate(holder: VoiceMessageViewHolder) {
-        holder.handler = Handler(Looper.getMainLooper())
-        val updateProgress = object : Runnable {
-            override fun run() {
-                holder.mediaPlayer?.let { player ->
-                    if (player.isPlaying) {
-                        val progress = (player.currentPosition * 100) / player.duration
-                        holder.waveform.progress = progress
-                        holder.handler?.postDelayed(this, 100)
-                    }
-                }
-            }
-        }
-        holder.handler?.post(updateProgress)
-    }
-
-    private fun formatMessageTime(timestamp: Long): String {
-        val calendar = Calendar.getInstance()
-        calendar.timeInMillis = timestamp
-        
-        val now = Calendar.getInstance()
-        
-        return if (isSameDay(calendar, now)) {
-            SimpleDateFormat("HH:mm", Locale.getDefault()).format(Date(timestamp))
-        } else if (isYesterday(calendar, now)) {
-            "Yesterday ${SimpleDateFormat("HH:mm", Locale.getDefault()).format(Date(timestamp))}"
-        } else {
-            SimpleDateFormat("MMM dd, HH:mm", Locale.getDefault()).format(Date(timestamp))
-        }
+    private fun toggleVoicePlayback(messageId: String) {
+        // The notes right after this one follow it
+        voicePlayback?.toggle(VoicePlaybackController.playlistFrom(currentList, messageId), messageId)
     }
 
     private fun formatDuration(durationMs: Long): String {
@@ -1357,26 +1121,14 @@ class ChatAdapter(
         return String.format("%d:%02d", minutes, seconds)
     }
 
-    private fun isSameDay(cal1: Calendar, cal2: Calendar): Boolean {
-        return cal1.get(Calendar.YEAR) == cal2.get(Calendar.YEAR) &&
-                cal1.get(Calendar.DAY_OF_YEAR) == cal2.get(Calendar.DAY_OF_YEAR)
-    }
-
-    private fun isYesterday(messageTime: Calendar, now: Calendar): Boolean {
-        val yesterday = Calendar.getInstance()
-        yesterday.timeInMillis = now.timeInMillis
-        yesterday.add(Calendar.DAY_OF_YEAR, -1)
-        
-        return isSameDay(messageTime, yesterday)
-    }
-
     /**
      * Update a message with fade animation (for edited messages)
      */
     fun updateMessageWithAnimation(position: Int, newMessageData: HashMap<String, Any?>) {
         if (position >= 0 && position < data.size) {
+            positionIndex.replace(position, ChatItemMapper.keyOf(data[position]), ChatItemMapper.keyOf(newMessageData))
             data[position] = newMessageData
-            notifyItemChanged(position)
+            refresh()
         }
     }
 
@@ -1385,24 +1137,18 @@ class ChatAdapter(
      */
     fun removeMessageWithAnimation(position: Int, recyclerView: RecyclerView) {
         if (position >= 0 && position < data.size) {
+            val messageId = ChatItemMapper.keyOf(data[position]) ?: return
+            val removeFromData = { removeMessage(messageId) }
+
             val viewHolder = recyclerView.findViewHolderForAdapterPosition(position)
+            val isMyMessage = (currentList.getOrNull(position) as? ChatItem.Message)?.isMine ?: false
             viewHolder?.itemView?.let { view ->
-                val currentUser = authService.getCurrentUser()
-                val myUid = currentUser?.id ?: ""
-                val messageData = data[position]
-                val msgUid = messageData["sender_id"]?.toString() 
-                    ?: messageData["uid"]?.toString() 
-                    ?: ""
-                val isMyMessage = msgUid == myUid
-                
                 MessageAnimations.applyDeletedMessageAnimation(view, isMyMessage) {
-                    data.removeAt(position)
-                    notifyItemRemoved(position)
+                    removeFromData()
                 }
             } ?: run {
                 // If view is not visible, remove without animation
-                data.removeAt(position)
-                notifyItemRemoved(position)
+                removeFromData()
             }
         }
     }
@@ -1416,26 +1162,35 @@ class ChatAdapter(
 
     /**
      * Update message state for real-time read receipts
-     * This method efficiently updates only the message state without full item refresh
+     * Only the state icon rebinds; the diff turns the change into a state payload
      */
     fun updateMessageState(messageId: String, newState: String) {
-        val position = data.indexOfFirst { messageData ->
-            val id = messageData["id"]?.toString() ?: messageData["key"]?.toString() ?: ""
-            id == messageId
-        }
-        
-        if (position != -1) {
+        updateMessageStates(mapOf(messageId to newState))
+    }
+
+    /**
+     * Update multiple message states in batch for efficiency.
+     *
+     * Each message is found through the ID index, and the shown items are patched in place of
+     * a full re-map, so a batch costs O(m) on the main thread. The whole batch is one
+     * submission; DiffUtil dispatches adjacent changed rows as a single range change.
+     */
+    fun updateMessageStates(messageStates: Map<String, String>) {
+        val changedPositions = HashMap<Int, String>()
+
+        messageStates.forEach { (messageId, newState) ->
+            val position = positionOf(messageId)
+            if (position == -1) return@forEach
             val messageData = data[position]
-            val oldState = messageData["delivery_status"]?.toString() 
-                ?: messageData["message_state"]?.toString() 
+            val oldState = messageData["delivery_status"]?.toString()
+                ?: messageData["message_state"]?.toString()
                 ?: "sent"
-            
+
             // Only update if state actually changed
             if (oldState != newState) {
-                // Update the data
                 messageData["message_state"] = newState
                 messageData["delivery_status"] = newState
-                
+
                 // Set timestamps based on state
                 when (newState) {
                     "delivered" -> {
@@ -1452,61 +1207,31 @@ class ChatAdapter(
                         }
                     }
                 }
-                
-                // Notify only the specific item changed with payload for partial update
-                notifyItemChanged(position, "message_state_update")
+                changedPositions[position] = newState
             }
         }
-    }
 
-    /**
-     * Update multiple message states in batch for efficiency
-     */
-    fun updateMessageStates(messageStates: Map<String, String>) {
-        val updatedPositions = mutableListOf<Int>()
-        
-        messageStates.forEach { (messageId, newState) ->
-            val position = data.indexOfFirst { messageData ->
-                val id = messageData["id"]?.toString() ?: messageData["key"]?.toString() ?: ""
-                id == messageId
-            }
-            
-            if (position != -1) {
-                val messageData = data[position]
-                val oldState = messageData["delivery_status"]?.toString() 
-                    ?: messageData["message_state"]?.toString() 
-                    ?: "sent"
-                
-                if (oldState != newState) {
-                    messageData["message_state"] = newState
-                    messageData["delivery_status"] = newState
-                    
-                    // Set timestamps based on state
-                    when (newState) {
-                        "delivered" -> {
-                            if (messageData["delivered_at"] == null) {
-                                messageData["delivered_at"] = System.currentTimeMillis()
-                            }
-                        }
-                        "read" -> {
-                            if (messageData["read_at"] == null) {
-                                messageData["read_at"] = System.currentTimeMillis()
-                            }
-                            if (messageData["delivered_at"] == null) {
-                                messageData["delivered_at"] = System.currentTimeMillis()
-                            }
-                        }
-                    }
-                    
-                    updatedPositions.add(position)
-                }
-            }
+        if (changedPositions.isEmpty()) return
+
+        val isSettled = mapJob?.isActive != true &&
+            committedGeneration == submittedGeneration &&
+            currentList.size == data.size
+        val changesViewType = changedPositions.any { (position, newState) ->
+            val isError = newState == "failed" || newState == "error"
+            isError != (currentList.getOrNull(position)?.viewType == ChatItem.VIEW_TYPE_ERROR)
+        }
+        if (!isSettled || changesViewType) {
+            // The shown list is about to be replaced, or the row needs a different bubble
+            refresh()
+            return
         }
-        
-        // Batch notify all changed positions
-        updatedPositions.forEach { position ->
-            notifyItemChanged(position, "message_state_update")
+
+        val items = currentList.toMutableList()
+        changedPositions.forEach { (position, newState) ->
+            val item = items[position] as? ChatItem.Message ?: return@forEach
+            items[position] = item.copy(deliveryStatus = newState)
         }
+        submit(items)
     }
 
     /**
@@ -1517,12 +1242,13 @@ class ChatAdapter(
         if (data.isNotEmpty() && data[0].containsKey("isLoadingMore")) {
             return
         }
-        
+
         // Add loading indicator at position 0
         val loadingItem = HashMap<String, Any?>()
         loadingItem["isLoadingMore"] = true
         data.add(0, loadingItem)
-        notifyItemInserted(0)
+        positionIndex.prepend(listOf(null))
+        refresh()
     }
 
     /**
@@ -1533,7 +1259,8 @@ class ChatAdapter(
         val loadingPosition = data.indexOfFirst { it.containsKey("isLoadingMore") }
         if (loadingPosition != -1) {
             data.removeAt(loadingPosition)
-            notifyItemRemoved(loadingPosition)
+            positionIndex.removeAt(loadingPosition)
+            refresh()
         }
     }
 
@@ -1547,7 +1274,8 @@ class ChatAdapter(
     /**
      * Prepend older messages to the chat while preserving scroll position
      * @param olderMessages List of older messages to prepend
-     * @param onScrollPositionCalculated Callback to restore scroll position after prepending
+     * @param onScrollPositionCalculated Callback to restore scroll position once the
+     * prepended messages are displayed
      */
     fun prependMessages(
         olderMessages: List<HashMap<String, Any?>>,
@@ -1556,19 +1284,23 @@ class ChatAdapter(
         if (olderMessages.isEmpty()) {
             return
         }
-        
+
         // Remove loading indicator if present
-        removeLoadingIndicator()
-        
+        val loadingPosition = data.indexOfFirst { it.containsKey("isLoadingMore") }
+        if (loadingPosition != -1) {
+            data.removeAt(loadingPosition)
+            positionIndex.removeAt(loadingPosition)
+        }
+
         // Calculate the number of items to add
         val itemsToAdd = olderMessages.size
-        
+
         // Add older messages at the beginning
         data.addAll(0, olderMessages)
-        notifyItemRangeInserted(0, itemsToAdd)
-        
-        // Notify callback with number of items added for scroll position restoration
-        onScrollPositionCalculated?.invoke(itemsToAdd)
+        positionIndex.prepend(olderMessages.map { ChatItemMapper.keyOf(it) })
+        refresh {
+            // Notify callback with number of items added for scroll position restoration
+            onScrollPositionCalculated?.invoke(itemsToAdd)
+        }
     }
-    
-}
\ No newline at end of file
+}
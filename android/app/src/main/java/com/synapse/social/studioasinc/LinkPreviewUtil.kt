@@ -13,9 +13,15 @@ package com.synapse.social.studioasinc
 
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import org.jsoup.HttpStatusException
 import org.jsoup.Jsoup
+import org.jsoup.UnsupportedMimeTypeException
 import org.jsoup.nodes.Document
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.net.MalformedURLException
 import java.net.URL
+import java.nio.charset.Charset
 import java.util.regex.Pattern
 
 object LinkPreviewUtil {
@@ -51,17 +57,38 @@ object LinkPreviewUtil {
         }
     }
 
+    /** Upper bound on bytes read from a page; preview tags live in its head */
+    private const val MAX_HEAD_BYTES = 64 * 1024
+
+    private const val USER_AGENT =
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.36"
+
+    private val HEAD_END = "</head>".toByteArray(Charsets.US_ASCII)
+
+    /**
+     * Fetches a page's preview tags. Only the document head is downloaded: reading stops after
+     * `</head>` or [MAX_HEAD_BYTES], whichever comes first.
+     */
     suspend fun fetchPreview(url: String): Result<LinkData> = withContext(Dispatchers.IO) {
         try {
-            val doc = Jsoup.connect(url)
-                .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.36")
-                .get()
+            val response = Jsoup.connect(url)
+                .userAgent(USER_AGENT)
+                .timeout(10_000)
+                .execute()
+            val head = response.bodyStream().use { stream ->
+                readHead(stream, MAX_HEAD_BYTES)
+            }
+            val charset = response.charset()?.let { runCatching { Charset.forName(it) }.getOrNull() } ?: Charsets.UTF_8
+            val doc = Jsoup.parse(String(head, charset), url)
 
             val title = getMetaTag(doc, "og:title")?.takeIf { it.isNotEmpty() } ?: doc.title()
             val description = getMetaTag(doc, "og:description")?.takeIf { it.isNotEmpty() }
                 ?: getMetaTag(doc, "description")
             val imageUrl = getMetaTag(doc, "og:image")
             val domain = URL(url).host
+            if (title.isNullOrBlank() && description.isNullOrBlank() && imageUrl.isNullOrBlank()) {
+                return@withContext Result.failure(NoPreviewException(url))
+            }
 
             val linkData = LinkData(
                 url = url,
@@ -77,6 +104,55 @@ object LinkPreviewUtil {
         }
     }
 
+    /**
+     * The page was read but has no title, description or image to show.
+     */
+    class NoPreviewException(url: String) : Exception("No preview tags in $url")
+
+    /**
+     * Whether a [fetchPreview] failure will recur if the page is fetched again soon: a page
+     * without preview tags, a client error (4xx), a non-HTML page or a malformed URL.
+     * Timeouts, connection errors and server errors (5xx) may not.
+     */
+    fun isDefinitiveFailure(error: Throwable): Boolean {
+        return when (error) {
+            is NoPreviewException -> true
+            is HttpStatusException -> error.statusCode in 400..499
+            is UnsupportedMimeTypeException -> true
+            is MalformedURLException, is IllegalArgumentException -> true
+            else -> false
+        }
+    }
+
+    /**
+     * Reads [input] up to and including the first `</head>` (case-insensitive), or at most
+     * [maxBytes]. The tag is ASCII, so matching bytes works for UTF-8 and single-byte charsets.
+     */
+    internal fun readHead(input: InputStream, maxBytes: Int): ByteArray {
+        val out = ByteArrayOutputStream(minOf(maxBytes, 16 * 1024))
+        val buffer = ByteArray(8 * 1024)
+        var matched = 0
+        while (out.size() < maxBytes) {
+            val read = input.read(buffer, 0, minOf(buffer.size, maxBytes - out.size()))
+            if (read == -1) break
+            for (i in 0 until read) {
+                val byte = buffer[i]
+                val b = if (byte in 'A'.code.toByte()..'Z'.code.toByte()) (byte + 32).toByte() else byte
+                matched = when (b) {
+                    HEAD_END[matched] -> matched + 1
+                    HEAD_END[0] -> 1
+                    else -> 0
+                }
+                if (matched == HEAD_END.size) {
+                    out.write(buffer, 0, i + 1)
+                    return out.toByteArray()
+                }
+            }
+            out.write(buffer, 0, read)
+        }
+        return out.toByteArray()
+    }
+
     private fun getMetaTag(document: Document, attr: String): String? {
         var element = document.select("meta[property=$attr]").first()
         if (element != null) {
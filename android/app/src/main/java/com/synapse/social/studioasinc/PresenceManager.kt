@@ -1,54 +1,34 @@
 package com.synapse.social.studioasinc
 
-import com.synapse.social.studioasinc.backend.SupabaseDatabaseService
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
+import com.synapse.social.studioasinc.backend.SupabasePresenceService
 
 /**
  * Manages user online presence in Supabase, writing to the users table.
  * Handles online, offline (timestamp), and chat statuses.
+ *
+ * Writes go through [SupabasePresenceService], which heartbeats while the app is in the
+ * foreground and coalesces activity changes instead of writing on every transition.
  */
 object PresenceManager {
 
-    private val dbService = SupabaseDatabaseService()
+    private val presenceService = SupabasePresenceService.getInstance()
 
     /**
-     * Sets user status to "online".
+     * Sets user status to "online" and starts presence heartbeats.
      * @param uid The Supabase user UID.
      */
     @JvmStatic
     fun goOnline(uid: String) {
-        CoroutineScope(Dispatchers.IO).launch {
-            try {
-                val updateData = mapOf(
-                    "status" to "online",
-                    "last_seen" to System.currentTimeMillis().toString()
-                )
-                dbService.update("users", updateData, "uid", uid)
-            } catch (e: Exception) {
-                // Handle error silently for now
-            }
-        }
+        presenceService.goOnline(uid)
     }
 
     /**
-     * Explicitly sets the user's status to offline with timestamp.
+     * Explicitly sets the user's status to offline with timestamp and stops heartbeats.
      * @param uid The Supabase user UID.
      */
     @JvmStatic
     fun goOffline(uid: String) {
-        CoroutineScope(Dispatchers.IO).launch {
-            try {
-                val updateData = mapOf(
-                    "status" to "offline",
-                    "last_seen" to System.currentTimeMillis().toString()
-                )
-                dbService.update("users", updateData, "uid", uid)
-            } catch (e: Exception) {
-                // Handle error silently for now
-            }
-        }
+        presenceService.goOffline(uid)
     }
 
     /**
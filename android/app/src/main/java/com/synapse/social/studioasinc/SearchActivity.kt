@@ -13,6 +13,7 @@ import com.google.android.material.chip.ChipGroup
 import com.synapse.social.studioasinc.adapters.SearchResultsAdapter
 import com.synapse.social.studioasinc.backend.SupabaseAuthenticationService
 import com.synapse.social.studioasinc.backend.SupabaseDatabaseService
+import com.synapse.social.studioasinc.backend.SupabasePresenceService
 import com.synapse.social.studioasinc.model.SearchResult
 import kotlinx.coroutines.*
 
@@ -21,6 +22,7 @@ class SearchActivity : BaseActivity() {
     // Supabase services
     private val authService = SupabaseAuthenticationService()
     private val databaseService = SupabaseDatabaseService()
+    private val presenceService = SupabasePresenceService.getInstance()
 
     // UI Components
     private lateinit var toolbar: MaterialToolbar
@@ -206,8 +208,9 @@ class SearchActivity : BaseActivity() {
             result.fold(
                 onSuccess = { users ->
                     users.map { user ->
+                        val uid = user["uid"]?.toString() ?: ""
                         SearchResult.User(
-                            uid = user["uid"]?.toString() ?: "",
+                            uid = uid,
                             username = user["username"]?.toString() ?: "",
                             nickname = user["nickname"]?.toString(),
                             avatar = user["avatar"]?.toString(),
@@ -216,7 +219,8 @@ class SearchActivity : BaseActivity() {
                             isPremium = user["account_premium"]?.toString() == "true",
                             isVerified = user["verify"]?.toString() == "true",
                             isBanned = user["banned"]?.toString() == "true",
-                            status = user["status"]?.toString()
+                            // The search row already carries status and last_seen
+                            presence = presenceService.prime(uid, user["status"]?.toString(), user["last_seen"]?.toString())
                         )
                     }
                 },
@@ -1,9 +1,12 @@
 package com.synapse.social.studioasinc
 
 import android.app.Application
+import android.content.ComponentCallbacks2
 import com.synapse.social.studioasinc.backend.SupabaseAuthenticationService
 import com.synapse.social.studioasinc.backend.AuthDevelopmentUtils
+import com.synapse.social.studioasinc.util.BitmapPool
 import com.synapse.social.studioasinc.util.MediaCacheCleanupManager
+import com.synapse.social.studioasinc.chat.ChatViewPool
 import com.synapse.social.studioasinc.chat.service.DatabaseMaintenanceManager
 import com.synapse.social.studioasinc.data.repository.SettingsRepositoryImpl
 import com.synapse.social.studioasinc.ui.theme.ThemeManager
@@ -28,6 +31,9 @@ class SynapseApplication : Application() {
         // Apply saved theme on app startup
         applyThemeOnStartup()
         
+        // Inflate common chat bubbles while the main thread is idle
+        ChatViewPool.prewarm(this)
+        
         // Log authentication configuration in development builds
         if (AuthDevelopmentUtils.isDevelopmentBuild()) {
             AuthDevelopmentUtils.logAuthConfig(this)
@@ -57,6 +63,17 @@ class SynapseApplication : Application() {
         databaseMaintenanceManager.initialize()
     }
     
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        
+        // Pooled bitmaps are only an optimization, drop them under memory pressure
+        BitmapPool.clear()
+        // Pooled chat bubbles too, once no screen is visible
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            ChatViewPool.pool.clear()
+        }
+    }
+    
     override fun onTerminate() {
         super.onTerminate()
         
@@ -1,18 +1,17 @@
 package com.synapse.social.studioasinc
 
-import com.synapse.social.studioasinc.backend.SupabaseDatabaseService
-import io.github.jan.supabase.postgrest.query.filter.PostgrestFilterBuilder
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
+import com.synapse.social.studioasinc.backend.SupabasePresenceService
 
 /**
  * Manages user activity status in Supabase.
  * Handles setting and clearing user activities like "chatting_with_<uid>", "online", etc.
+ *
+ * Reads come from the [SupabasePresenceService] cache, so a status whose heartbeat has
+ * expired reads as "offline".
  */
 object UserActivity {
 
-    private val dbService = SupabaseDatabaseService()
+    private val presenceService = SupabasePresenceService.getInstance()
 
     /**
      * Sets a user's activity status.
@@ -21,17 +20,7 @@ object UserActivity {
      */
     @JvmStatic
     fun setActivity(uid: String, activity: String) {
-        CoroutineScope(Dispatchers.IO).launch {
-            try {
-                val updateData = mapOf(
-                    "status" to activity,
-                    "last_seen" to System.currentTimeMillis().toString()
-                )
-                dbService.update("users", updateData, "uid", uid)
-            } catch (e: Exception) {
-                // Handle error silently for now
-            }
-        }
+        presenceService.setActivity(uid, activity)
     }
 
     /**
@@ -49,17 +38,7 @@ object UserActivity {
      */
     @JvmStatic
     fun setOffline(uid: String) {
-        CoroutineScope(Dispatchers.IO).launch {
-            try {
-                val updateData = mapOf(
-                    "status" to "offline",
-                    "last_seen" to System.currentTimeMillis().toString()
-                )
-                dbService.update("users", updateData, "uid", uid)
-            } catch (e: Exception) {
-                // Handle error silently for now
-            }
-        }
+        presenceService.goOffline(uid)
     }
 
     /**
@@ -68,12 +47,7 @@ object UserActivity {
      * @return The user's current status or null if not found
      */
     suspend fun getActivity(uid: String): String? {
-        return try {
-            val result = dbService.selectById("users", uid, "status").getOrNull()
-            result?.get("status") as? String
-        } catch (e: Exception) {
-            null
-        }
+        return presenceService.getPresence(uid)?.effectiveStatus()
     }
 
     /**
@@ -82,8 +56,7 @@ object UserActivity {
      * @return true if user is online, false otherwise
      */
     suspend fun isOnline(uid: String): Boolean {
-        val status = getActivity(uid)
-        return status == "online" || status?.startsWith("chatting_with_") == true
+        return presenceService.getPresence(uid)?.isOnline() == true
     }
 
     /**
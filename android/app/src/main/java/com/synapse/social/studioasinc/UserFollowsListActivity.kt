@@ -18,15 +18,20 @@ import androidx.swiperefreshlayout.widget.SwipeRefreshLayout
 import com.bumptech.glide.Glide
 import com.synapse.social.studioasinc.backend.SupabaseAuthenticationService
 import com.synapse.social.studioasinc.backend.SupabaseDatabaseService
+import com.synapse.social.studioasinc.backend.SupabasePresenceService
+import com.synapse.social.studioasinc.backend.UserPresence
 import kotlinx.coroutines.*
+import java.util.concurrent.ConcurrentHashMap
 
 class UserFollowsListActivity : BaseActivity() {
 
     // Supabase services
     private val authService = SupabaseAuthenticationService()
     private val databaseService = SupabaseDatabaseService()
+    private val presenceService = SupabasePresenceService.getInstance()
 
     private val userInfoCacheMap = mutableMapOf<String, String>()
+    private val presenceByUid = ConcurrentHashMap<String, UserPresence>()
     private val followersList = mutableListOf<Map<String, Any?>>()
     private val followingList = mutableListOf<Map<String, Any?>>()
 
@@ -283,6 +288,7 @@ class UserFollowsListActivity : BaseActivity() {
                                 }
                             }
                             
+                            loadPresence(followersList.mapNotNull { it["uid"]?.toString() })
                             followersLayoutList.adapter?.notifyDataSetChanged()
                         } else {
                             followersLayoutList.visibility = View.GONE
@@ -331,6 +337,7 @@ class UserFollowsListActivity : BaseActivity() {
                                 }
                             }
                             
+                            loadPresence(followingList.mapNotNull { it["uid"]?.toString() })
                             followingLayoutList.adapter?.notifyDataSetChanged()
                         } else {
                             followingLayoutList.visibility = View.GONE
@@ -398,6 +405,15 @@ class UserFollowsListActivity : BaseActivity() {
         window.navigationBarColor = navigationColor
     }
 
+    /**
+     * Fetches presence for a whole list in one bulk lookup, so rows bind their status
+     * indicator from the cache instead of each row querying users.
+     */
+    private suspend fun loadPresence(uids: List<String>) {
+        val presence = withContext(Dispatchers.IO) { presenceService.getPresence(uids) }
+        presenceByUid.putAll(presence)
+    }
+
     private fun createGradientDrawable(radius: Int, color: Int): GradientDrawable {
         return GradientDrawable().apply {
             cornerRadius = radius.toFloat()
@@ -466,8 +482,8 @@ class UserFollowsListActivity : BaseActivity() {
                 Glide.with(applicationContext).load(Uri.parse(avatar)).into(holder.profileAvatar)
             }
             
-            val status = userInfoCacheMap["status-$uid"]
-            holder.userStatusCircleBG.visibility = if (status == "online") View.VISIBLE else View.GONE
+            val online = presenceByUid[uid]?.isOnline() == true
+            holder.userStatusCircleBG.visibility = if (online) View.VISIBLE else View.GONE
             
             val nickname = userInfoCacheMap["nickname-$uid"]
             val username = userInfoCacheMap["username-$uid"]
@@ -533,7 +549,6 @@ class UserFollowsListActivity : BaseActivity() {
                                 userInfoCacheMap["banned-$uid"] = user["banned"]?.toString() ?: "false"
                                 userInfoCacheMap["nickname-$uid"] = user["nickname"]?.toString() ?: "null"
                                 userInfoCacheMap["username-$uid"] = user["username"]?.toString() ?: ""
-                                userInfoCacheMap["status-$uid"] = user["status"]?.toString() ?: "offline"
                                 userInfoCacheMap["avatar-$uid"] = user["avatar"]?.toString() ?: "null"
                                 userInfoCacheMap["gender-$uid"] = user["gender"]?.toString() ?: "hidden"
                                 userInfoCacheMap["verify-$uid"] = user["verify"]?.toString() ?: "false"
@@ -631,8 +646,8 @@ class UserFollowsListActivity : BaseActivity() {
                 Glide.with(applicationContext).load(Uri.parse(avatar)).into(holder.profileAvatar)
             }
             
-            val status = userInfoCacheMap["status-$uid"]
-            holder.userStatusCircleBG.visibility = if (status == "online") View.VISIBLE else View.GONE
+            val online = presenceByUid[uid]?.isOnline() == true
+            holder.userStatusCircleBG.visibility = if (online) View.VISIBLE else View.GONE
             
             val nickname = userInfoCacheMap["nickname-$uid"]
             val username = userInfoCacheMap["username-$uid"]
@@ -698,7 +713,6 @@ class UserFollowsListActivity : BaseActivity() {
                                 userInfoCacheMap["banned-$uid"] = user["banned"]?.toString() ?: "false"
                                 userInfoCacheMap["nickname-$uid"] = user["nickname"]?.toString() ?: "null"
                                 userInfoCacheMap["username-$uid"] = user["username"]?.toString() ?: ""
-                                userInfoCacheMap["status-$uid"] = user["status"]?.toString() ?: "offline"
                                 userInfoCacheMap["avatar-$uid"] = user["avatar"]?.toString() ?: "null"
                                 userInfoCacheMap["gender-$uid"] = user["gender"]?.toString() ?: "hidden"
                                 userInfoCacheMap["verify-$uid"] = user["verify"]?.toString() ?: "false"
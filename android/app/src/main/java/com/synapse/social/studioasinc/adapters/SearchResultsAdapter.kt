@@ -95,8 +95,8 @@ class SearchResultsAdapter(
                     .into(imageAvatar)
             }
 
-            // Set online status
-            statusIndicator.visibility = if (user.status == "online") View.VISIBLE else View.GONE
+            // Set online status, treating an expired heartbeat as offline
+            statusIndicator.visibility = if (user.presence?.isOnline() == true) View.VISIBLE else View.GONE
 
             // Set gender badge
             when (user.gender) {
@@ -0,0 +1,144 @@
+package com.synapse.social.studioasinc.audio
+
+import android.content.Context
+import android.util.Log
+import android.util.LruCache
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+
+/**
+ * WaveformCache stores extracted waveforms on disk keyed by audio URL,
+ * with a small in-memory layer for bubbles that are re-bound while scrolling.
+ * A waveform is a few hundred bytes, so it is cached far longer than the audio itself,
+ * up to [MAX_DISK_BYTES]; the least recently used files go first beyond that.
+ *
+ * Only [getCached] may be called on the main thread; disk reads and writes run on
+ * [Dispatchers.IO].
+ */
+class WaveformCache internal constructor(private val cacheDir: File) {
+
+    companion object {
+        private const val TAG = "WaveformCache"
+        private const val CACHE_DIR_NAME = "waveforms"
+        private const val MEMORY_CACHE_ENTRIES = 64
+        private const val FILE_EXTENSION = ".wf"
+        internal const val MAX_DISK_BYTES = 2L * 1024 * 1024 // 2MB, thousands of waveforms
+
+        @Volatile
+        private var INSTANCE: WaveformCache? = null
+
+        fun getInstance(context: Context): WaveformCache {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: WaveformCache(context.applicationContext.cacheDir.resolve(CACHE_DIR_NAME))
+                    .also { INSTANCE = it }
+            }
+        }
+    }
+
+    private val memoryCache = LruCache<String, FloatArray>(MEMORY_CACHE_ENTRIES)
+
+    // Bytes on disk, counted on the first write; guarded by this
+    private var diskSize = -1L
+
+    /**
+     * Returns the waveform for an audio URL if it's in memory, without touching the disk.
+     */
+    fun getCached(url: String): FloatArray? = memoryCache.get(url)
+
+    /**
+     * Returns the cached waveform for an audio URL, or null if it was never extracted.
+     */
+    suspend fun get(url: String): FloatArray? {
+        memoryCache.get(url)?.let { return it }
+
+        return withContext(Dispatchers.IO) {
+            val file = fileFor(url)
+            if (!file.exists()) return@withContext null
+
+            try {
+                DataInputStream(file.inputStream().buffered()).use { input ->
+                    val size = input.readInt()
+                    FloatArray(size) { input.readFloat() }
+                }.also {
+                    memoryCache.put(url, it)
+                    // Recently read waveforms are the last to be trimmed
+                    file.setLastModified(System.currentTimeMillis())
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Discarding unreadable waveform for $url", e)
+                file.delete()
+                null
+            }
+        }
+    }
+
+    /**
+     * Stores a waveform for an audio URL. A waveform already in memory with the same values
+     * isn't written again, so re-binding a bubble costs no I/O. The file is written
+     * atomically via a temp file.
+     */
+    suspend fun put(url: String, waveform: FloatArray) {
+        if (memoryCache.get(url)?.contentEquals(waveform) == true) return
+        memoryCache.put(url, waveform)
+
+        withContext(Dispatchers.IO) {
+            try {
+                if (!cacheDir.exists()) {
+                    cacheDir.mkdirs()
+                }
+                val file = fileFor(url)
+                val previousLength = file.length()
+                val tempFile = File(cacheDir, "${file.name}.tmp")
+                DataOutputStream(tempFile.outputStream().buffered()).use { output ->
+                    output.writeInt(waveform.size)
+                    waveform.forEach { output.writeFloat(it) }
+                }
+                if (tempFile.renameTo(file)) {
+                    onWritten(file.length() - previousLength)
+                } else {
+                    tempFile.delete()
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Failed to persist waveform for $url", e)
+            }
+        }
+    }
+
+    // Private helper methods
+
+    /**
+     * Tracks the directory's size and trims it back to [MAX_DISK_BYTES] once it's exceeded.
+     */
+    private fun onWritten(delta: Long) = synchronized(this) {
+        if (diskSize < 0) {
+            // Counted after the write, so the delta is already included
+            diskSize = cacheFiles().sumOf { it.length() }
+        } else {
+            diskSize += delta
+        }
+        if (diskSize <= MAX_DISK_BYTES) return@synchronized
+
+        // Oldest first; trim to 90% so the next writes don't trim again right away
+        val target = MAX_DISK_BYTES * 9 / 10
+        for (file in cacheFiles().sortedBy { it.lastModified() }) {
+            if (diskSize <= target) break
+            val length = file.length()
+            if (file.delete()) diskSize -= length
+        }
+    }
+
+    private fun cacheFiles(): List<File> {
+        return cacheDir.listFiles { file -> file.name.endsWith(FILE_EXTENSION) }?.toList() ?: emptyList()
+    }
+
+    private fun fileFor(url: String): File {
+        val digest = MessageDigest.getInstance("SHA-256").digest(url.toByteArray())
+        val name = digest.joinToString("") { "%02x".format(it) }
+        return File(cacheDir, name + FILE_EXTENSION)
+    }
+}
@@ -0,0 +1,248 @@
+package com.synapse.social.studioasinc.audio
+
+import android.content.Context
+import android.media.AudioFormat
+import android.media.MediaCodec
+import android.media.MediaExtractor
+import android.media.MediaFormat
+import android.net.Uri
+import android.util.Log
+import com.synapse.social.studioasinc.BuildConfig
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.withContext
+import java.io.IOException
+import java.nio.ByteOrder
+import kotlin.coroutines.coroutineContext
+import kotlin.math.sqrt
+
+/**
+ * WaveformExtractor decodes an audio track to PCM with MediaCodec and reduces it to
+ * per-bar RMS amplitudes in a single streaming pass. Decoded buffers are folded into
+ * the running bar as they arrive, so memory use is independent of the audio length.
+ */
+class WaveformExtractor(private val context: Context) {
+
+    companion object {
+        private const val TAG = "WaveformExtractor"
+        const val DEFAULT_BAR_COUNT = 100
+        private const val CODEC_TIMEOUT_US = 10_000L
+        private const val PCM_16_MAX = 32768.0
+    }
+
+    /**
+     * Extracts a waveform from a local audio URI (content:// or file://).
+     *
+     * @param uri The audio URI
+     * @param barCount Number of bars to produce
+     * @return Result containing normalized amplitudes (0.0 to 1.0) per bar
+     */
+    suspend fun extract(uri: Uri, barCount: Int = DEFAULT_BAR_COUNT): Result<FloatArray> {
+        return extractWith(barCount) { extractor ->
+            extractor.setDataSource(context, uri, null)
+        }
+    }
+
+    /**
+     * Extracts a waveform from a remote audio URL, streaming it through the decoder
+     * instead of downloading it first.
+     *
+     * @param url The audio URL
+     * @param barCount Number of bars to produce
+     * @return Result containing normalized amplitudes (0.0 to 1.0) per bar
+     */
+    suspend fun extract(url: String, barCount: Int = DEFAULT_BAR_COUNT): Result<FloatArray> {
+        return extractWith(barCount) { extractor ->
+            extractor.setDataSource(url, buildAuthHeaders(url))
+        }
+    }
+
+    private suspend fun extractWith(
+        barCount: Int,
+        setDataSource: (MediaExtractor) -> Unit
+    ): Result<FloatArray> = withContext(Dispatchers.Default) {
+        val extractor = MediaExtractor()
+        var codec: MediaCodec? = null
+
+        try {
+            setDataSource(extractor)
+
+            val trackIndex = (0 until extractor.trackCount).firstOrNull { index ->
+                extractor.getTrackFormat(index).getString(MediaFormat.KEY_MIME)?.startsWith("audio/") == true
+            } ?: return@withContext Result.failure(IOException("No audio track found"))
+
+            extractor.selectTrack(trackIndex)
+            val format = extractor.getTrackFormat(trackIndex)
+            val mimeType = format.getString(MediaFormat.KEY_MIME)
+                ?: return@withContext Result.failure(IOException("Audio track has no MIME type"))
+
+            val durationUs = if (format.containsKey(MediaFormat.KEY_DURATION)) format.getLong(MediaFormat.KEY_DURATION) else 0L
+            if (durationUs <= 0) {
+                return@withContext Result.failure(IOException("Audio track has no duration"))
+            }
+
+            codec = MediaCodec.createDecoderByType(mimeType).apply {
+                configure(format, null, null, 0)
+                start()
+            }
+
+            val accumulator = decode(extractor, codec, format, durationUs, barCount)
+            Result.success(accumulator.finish())
+
+        } catch (e: Exception) {
+            Log.w(TAG, "Waveform extraction failed", e)
+            Result.failure(e)
+        } finally {
+            try {
+                codec?.stop()
+                codec?.release()
+            } catch (e: Exception) {
+                // Ignore release errors
+            }
+            extractor.release()
+        }
+    }
+
+    private suspend fun decode(
+        extractor: MediaExtractor,
+        codec: MediaCodec,
+        inputFormat: MediaFormat,
+        durationUs: Long,
+        barCount: Int
+    ): BarAccumulator {
+        var sampleRate = inputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+        var channelCount = inputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT)
+        var pcmEncoding = AudioFormat.ENCODING_PCM_16BIT
+        var accumulator = BarAccumulator(barCount, expectedSamples(durationUs, sampleRate, channelCount))
+
+        val bufferInfo = MediaCodec.BufferInfo()
+        var inputDone = false
+        var outputDone = false
+
+        while (!outputDone) {
+            coroutineContext.ensureActive()
+
+            if (!inputDone) {
+                val inputIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US)
+                if (inputIndex >= 0) {
+                    val inputBuffer = codec.getInputBuffer(inputIndex)!!
+                    val size = extractor.readSampleData(inputBuffer, 0)
+                    if (size < 0) {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM)
+                        inputDone = true
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, size, extractor.sampleTime, 0)
+                        extractor.advance()
+                    }
+                }
+            }
+
+            val outputIndex = codec.dequeueOutputBuffer(bufferInfo, CODEC_TIMEOUT_US)
+            when {
+                outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED -> {
+                    // The decoder reports the real PCM layout here, which may differ from the container
+                    val outputFormat = codec.outputFormat
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+                    channelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT)
+                    if (outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)) {
+                        pcmEncoding = outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING)
+                    }
+                    if (accumulator.isEmpty()) {
+                        accumulator = BarAccumulator(barCount, expectedSamples(durationUs, sampleRate, channelCount))
+                    }
+                }
+                outputIndex >= 0 -> {
+                    if (bufferInfo.size > 0) {
+                        val outputBuffer = codec.getOutputBuffer(outputIndex)!!
+                        outputBuffer.position(bufferInfo.offset)
+                        outputBuffer.limit(bufferInfo.offset + bufferInfo.size)
+                        outputBuffer.order(ByteOrder.nativeOrder())
+
+                        if (pcmEncoding == AudioFormat.ENCODING_PCM_FLOAT) {
+                            val samples = outputBuffer.asFloatBuffer()
+                            while (samples.hasRemaining()) {
+                                accumulator.add(samples.get().toDouble())
+                            }
+                        } else {
+                            val samples = outputBuffer.asShortBuffer()
+                            while (samples.hasRemaining()) {
+                                accumulator.add(samples.get() / PCM_16_MAX)
+                            }
+                        }
+                    }
+                    codec.releaseOutputBuffer(outputIndex, false)
+
+                    if (bufferInfo.flags and MediaCodec.BUFFER_FLAG_END_OF_STREAM != 0) {
+                        outputDone = true
+                    }
+                }
+            }
+        }
+
+        return accumulator
+    }
+
+    private fun expectedSamples(durationUs: Long, sampleRate: Int, channelCount: Int): Long {
+        return durationUs * sampleRate / 1_000_000L * channelCount
+    }
+
+    private fun buildAuthHeaders(url: String): Map<String, String> {
+        // Same rule as ImageLoader: private Supabase Storage objects need the anon key
+        val needsAuth = url.contains("supabase.co/storage") && !url.contains("/public/")
+        return if (needsAuth) {
+            mapOf(
+                "Authorization" to "Bearer ${BuildConfig.SUPABASE_ANON_KEY}",
+                "apikey" to BuildConfig.SUPABASE_ANON_KEY
+            )
+        } else {
+            emptyMap()
+        }
+    }
+
+    /**
+     * Folds normalized samples into per-bar RMS values as they are decoded.
+     */
+    private class BarAccumulator(private val barCount: Int, expectedSamples: Long) {
+        private val samplesPerBar = maxOf(1L, expectedSamples / barCount)
+        private val bars = FloatArray(barCount)
+        private var barIndex = 0
+        private var sumOfSquares = 0.0
+        private var samplesInBar = 0L
+        private var totalSamples = 0L
+
+        fun isEmpty(): Boolean = totalSamples == 0L
+
+        fun add(sample: Double) {
+            sumOfSquares += sample * sample
+            samplesInBar++
+            totalSamples++
+            if (samplesInBar >= samplesPerBar && barIndex < barCount - 1) {
+                closeBar()
+            }
+        }
+
+        fun finish(): FloatArray {
+            if (samplesInBar > 0) {
+                closeBar()
+            }
+
+            // Normalize against the loudest bar so quiet recordings still show shape
+            val peak = bars.maxOrNull() ?: 0f
+            if (peak > 0f) {
+                for (i in bars.indices) {
+                    bars[i] = (bars[i] / peak).coerceIn(0f, 1f)
+                }
+            }
+            return bars
+        }
+
+        private fun closeBar() {
+            bars[barIndex] = maxOf(bars[barIndex], sqrt(sumOfSquares / samplesInBar).toFloat())
+            if (barIndex < barCount - 1) {
+                barIndex++
+            }
+            sumOfSquares = 0.0
+            samplesInBar = 0L
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package com.synapse.social.studioasinc.backend
 
 import com.synapse.social.studioasinc.SupabaseClient
+import com.synapse.social.studioasinc.chat.service.MessageLatencyTracer
 import com.synapse.social.studioasinc.chat.service.SupabaseRealtimeService
 import io.github.jan.supabase.postgrest.Postgrest
 import io.github.jan.supabase.postgrest.from
 import io.github.jan.supabase.postgrest.postgrest
 import io.github.jan.supabase.postgrest.query.Columns
+import io.github.jan.supabase.postgrest.query.filter.PostgrestFilterBuilder
 import io.github.jan.supabase.postgrest.rpc
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import kotlinx.serialization.json.JsonArray
 import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.JsonPrimitive
 import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.contentOrNull
 import kotlinx.serialization.json.put
 import java.util.*
 
@@ -26,6 +31,7 @@ class SupabaseChatService {
     
     private val client = SupabaseClient.client
     private val databaseService = SupabaseDatabaseService()
+    private val latencyTracer = MessageLatencyTracer.getInstance()
     
     /**
      * Check if a Result contains a duplicate key constraint violation error
@@ -236,6 +242,9 @@ class SupabaseChatService {
     
     /**
      * Send a message with optional attachments
+     * 
+     * @param messageId Client-generated ID for the row. Passing the same ID again is safe: a
+     * retry whose first insert already landed succeeds without inserting a duplicate.
      */
     suspend fun sendMessage(
         chatId: String,
@@ -243,8 +252,11 @@ class SupabaseChatService {
         content: String,
         messageType: String = "text",
         replyToId: String? = null,
-        attachments: List<com.synapse.social.studioasinc.chat.interfaces.ChatAttachment>? = null
+        attachments: List<com.synapse.social.studioasinc.chat.interfaces.ChatAttachment>? = null,
+        messageId: String = UUID.randomUUID().toString()
     ): Result<String> {
+        // Client send time for delivery latency tracing
+        val clientSentAt = System.currentTimeMillis()
         return withContext(Dispatchers.IO) {
             try {
                 // Check if Supabase is properly configured
@@ -259,7 +271,6 @@ class SupabaseChatService {
                     return@withContext Result.failure(Exception("User is not a participant in this chat"))
                 }
                 
-                val messageId = UUID.randomUUID().toString()
                 val timestamp = System.currentTimeMillis()
                 // Convert milliseconds to seconds for PostgreSQL timestamptz
                 val timestampSeconds = timestamp / 1000
@@ -272,6 +283,7 @@ class SupabaseChatService {
                 }
                 
                 val messageData = mutableMapOf<String, Any?>(
+                    "id" to messageId,
                     "chat_id" to chatId,
                     "sender_id" to senderId,
                     "content" to content,
@@ -303,14 +315,25 @@ class SupabaseChatService {
                             "width" to attachment.width,
                             "height" to attachment.height,
                             "duration" to attachment.duration,
-                            "mime_type" to attachment.mimeType
+                            "mime_type" to attachment.mimeType,
+                            "waveform" to attachment.waveform,
+                            "blur_hash" to attachment.blurHash
                         )
                     }
                     messageData["attachments"] = attachmentsJson
                 }
                 
-                databaseService.insert("messages", messageData).fold(
+                // The client-generated message ID doubles as the trace ID
+                latencyTracer.onSend(messageId, chatId, clientSentAt)
+                
+                val insertResult = databaseService.insert("messages", messageData)
+                // The row exists already when an earlier attempt landed but its response was lost
+                val alreadyStored = isDuplicateKeyError(insertResult)
+                
+                insertResult.fold(
                     onSuccess = {
+                        latencyTracer.onServerAck(messageId)
+                        
                         // Update chat's last message
                         val lastMessageText = if (!attachments.isNullOrEmpty()) {
                             when (attachments.first().type) {
@@ -326,7 +349,16 @@ class SupabaseChatService {
                         updateChatLastMessage(chatId, lastMessageText, timestampSeconds, senderId)
                         Result.success(messageId)
                     },
-                    onFailure = { error -> Result.failure(error) }
+                    onFailure = { error ->
+                        if (alreadyStored) {
+                            android.util.Log.d(TAG, "Message $messageId was already stored, treating retry as sent")
+                            latencyTracer.onServerAck(messageId)
+                            Result.success(messageId)
+                        } else {
+                            latencyTracer.onSendFailed(messageId)
+                            Result.failure(error)
+                        }
+                    }
                 )
             } catch (e: Exception) {
                 Result.failure(e)
@@ -356,15 +388,17 @@ class SupabaseChatService {
     }
     
     /**
-     * Get messages for a chat
+     * Get messages for a chat, oldest first
      * @param chatId The chat ID
      * @param limit Maximum number of messages to fetch
-     * @param beforeTimestamp Optional timestamp to fetch messages before (for pagination)
+     * @param beforeTimestamp Optional timestamp to fetch messages up to (for pagination), inclusive
+     * @param afterTimestamp Optional timestamp to fetch messages from (for paging back down), inclusive
      */
     suspend fun getMessages(
         chatId: String, 
         limit: Int = 50,
-        beforeTimestamp: Long? = null
+        beforeTimestamp: Long? = null,
+        afterTimestamp: Long? = null
     ): Result<List<Map<String, Any?>>> {
         return withContext(Dispatchers.IO) {
             try {
@@ -372,18 +406,33 @@ class SupabaseChatService {
                 if (!SupabaseClient.isConfigured()) {
                     return@withContext Result.success(emptyList())
                 }
+                // Paging down reads forwards from the cursor; everything else reads back from
+                // the newest end
+                val ascending = afterTimestamp != null && beforeTimestamp == null
                 val result = client.from("messages")
                     .select(columns = Columns.raw("*")) {
                         filter {
                             eq("chat_id", chatId)
                             eq("is_deleted", false)
-                            // If beforeTimestamp is provided, only fetch messages before that timestamp
+                            // Cursors compare at second precision, so the bounds are inclusive: a
+                            // strict bound would skip other messages sent in the cursor's second.
+                            // The cursor row and its loaded neighbours come back and callers drop
+                            // them by ID.
                             beforeTimestamp?.let {
-                                lt("created_at", it / 1000) // Convert to seconds
+                                lte("created_at", it / 1000) // Convert to seconds
                             }
+                            afterTimestamp?.let {
+                                gte("created_at", it / 1000)
+                            }
+                        }
+                        val order = if (ascending) {
+                            io.github.jan.supabase.postgrest.query.Order.ASCENDING
+                        } else {
+                            io.github.jan.supabase.postgrest.query.Order.DESCENDING
                         }
-                        // Order by created_at DESCENDING to get the most recent messages first
-                        order(column = "created_at", order = io.github.jan.supabase.postgrest.query.Order.DESCENDING)
+                        // The ID breaks ties within a second, so pages cut the same way each time
+                        order(column = "created_at", order = order)
+                        order(column = "id", order = order)
                         limit(limit.toLong())
                     }
                     .decodeList<JsonObject>()
@@ -395,13 +444,202 @@ class SupabaseChatService {
                 }
                 
                 // Reverse the list so oldest messages are first (for display)
-                Result.success(messages.reversed())
+                Result.success(if (ascending) messages else messages.reversed())
+            } catch (e: Exception) {
+                Result.failure(e)
+            }
+        }
+    }
+    
+    /**
+     * Get a single message, e.g. the anchor of a jump to an unloaded message
+     * @param chatId The chat ID, so a message ID from elsewhere can't open another chat's history
+     * @param messageId The message ID
+     * @return The message, or null if it doesn't exist or was deleted
+     */
+    suspend fun getMessage(chatId: String, messageId: String): Result<Map<String, Any?>?> {
+        return withContext(Dispatchers.IO) {
+            try {
+                if (!SupabaseClient.isConfigured()) {
+                    return@withContext Result.success(null)
+                }
+                val result = client.from("messages")
+                    .select(columns = Columns.raw("*")) {
+                        filter {
+                            eq("id", messageId)
+                            eq("chat_id", chatId)
+                            eq("is_deleted", false)
+                        }
+                        limit(1)
+                    }
+                    .decodeList<JsonObject>()
+                
+                val message = result.firstOrNull()?.toMap()?.mapValues { (_, value) ->
+                    value.toString().removeSurrounding("\"")
+                }
+                Result.success(message)
+            } catch (e: Exception) {
+                Result.failure(e)
+            }
+        }
+    }
+    
+    /**
+     * Get the fields reply previews show for a batch of messages in one request
+     * @param messageIds Message IDs, e.g. every unresolved reply target of a loaded page
+     * @return The messages found, deleted ones included so their replies can say so.
+     * Attachments are decoded to lists of string maps.
+     */
+    suspend fun getReplySnippets(messageIds: List<String>): Result<List<Map<String, Any?>>> {
+        return withContext(Dispatchers.IO) {
+            try {
+                if (messageIds.isEmpty() || !SupabaseClient.isConfigured()) {
+                    return@withContext Result.success(emptyList())
+                }
+                val result = client.from("messages")
+                    .select(columns = Columns.raw("id, sender_id, content, attachments, is_deleted, delete_for_everyone")) {
+                        filter {
+                            isIn("id", messageIds)
+                        }
+                    }
+                    .decodeList<JsonObject>()
+                
+                val messages = result.map { jsonObject ->
+                    jsonObject.toMap().mapValues { (key, value) ->
+                        if (key == "attachments") {
+                            (value as? JsonArray)?.mapNotNull { attachment ->
+                                (attachment as? JsonObject)?.mapValues { (_, field) ->
+                                    (field as? JsonPrimitive)?.contentOrNull
+                                }
+                            }
+                        } else {
+                            value.toString().removeSurrounding("\"")
+                        }
+                    }
+                }
+                Result.success(messages)
+            } catch (e: Exception) {
+                Result.failure(e)
+            }
+        }
+    }
+    
+    /**
+     * Get messages created or changed at or after a sync cursor, oldest change first.
+     * Deleted rows are included so deletions made during a disconnect can be applied.
+     * @param chatId The chat ID
+     * @param sinceTimestamp Cursor timestamp, in the same units as the stored created_at/updated_at
+     * @param limit Maximum number of rows to fetch
+     */
+    suspend fun getMessagesSince(
+        chatId: String,
+        sinceTimestamp: String,
+        limit: Int
+    ): Result<List<Map<String, Any?>>> {
+        return withContext(Dispatchers.IO) {
+            try {
+                if (!SupabaseClient.isConfigured()) {
+                    return@withContext Result.success(emptyList())
+                }
+                val result = client.from("messages")
+                    .select(columns = Columns.raw("*")) {
+                        filter {
+                            eq("chat_id", chatId)
+                            // Edits and deletions bump updated_at, inserts set both
+                            or {
+                                gte("created_at", sinceTimestamp)
+                                gte("updated_at", sinceTimestamp)
+                            }
+                        }
+                        order(column = "updated_at", order = io.github.jan.supabase.postgrest.query.Order.ASCENDING)
+                        limit(limit.toLong())
+                    }
+                    .decodeList<JsonObject>()
+                
+                val messages = result.map { jsonObject ->
+                    jsonObject.toMap().mapValues { (_, value) ->
+                        value.toString().removeSurrounding("\"")
+                    }
+                }
+                
+                Result.success(messages)
             } catch (e: Exception) {
                 Result.failure(e)
             }
         }
     }
     
+    /**
+     * Count messages changed after each chat's cursor, without fetching any rows.
+     * Used by the polling fallback to skip work when nothing changed.
+     * @param cursors Cursor timestamp per chat ID
+     */
+    suspend fun countMessagesChangedSince(cursors: Map<String, String>): Result<Long> {
+        return withContext(Dispatchers.IO) {
+            try {
+                if (!SupabaseClient.isConfigured() || cursors.isEmpty()) {
+                    return@withContext Result.success(0L)
+                }
+                val count = client.from("messages")
+                    .select(columns = Columns.raw("id")) {
+                        filter { changedSince(cursors) }
+                        count(io.github.jan.supabase.postgrest.query.Count.EXACT)
+                        // Only the count header is needed
+                        limit(0)
+                    }
+                    .countOrNull() ?: 0L
+                
+                Result.success(count)
+            } catch (e: Exception) {
+                Result.failure(e)
+            }
+        }
+    }
+    
+    /**
+     * Get the IDs of chats with messages changed after their cursor.
+     * @param cursors Cursor timestamp per chat ID
+     */
+    suspend fun getChatIdsChangedSince(cursors: Map<String, String>): Result<Set<String>> {
+        return withContext(Dispatchers.IO) {
+            try {
+                if (!SupabaseClient.isConfigured() || cursors.isEmpty()) {
+                    return@withContext Result.success(emptySet())
+                }
+                val result = client.from("messages")
+                    .select(columns = Columns.raw("chat_id")) {
+                        filter { changedSince(cursors) }
+                    }
+                    .decodeList<JsonObject>()
+                
+                val chatIds = result.mapNotNull { jsonObject ->
+                    jsonObject["chat_id"]?.toString()?.removeSurrounding("\"")
+                }.toSet()
+                
+                Result.success(chatIds)
+            } catch (e: Exception) {
+                Result.failure(e)
+            }
+        }
+    }
+    
+    /**
+     * Matches messages created or updated after their chat's cursor, for several chats at once.
+     */
+    private fun PostgrestFilterBuilder.changedSince(cursors: Map<String, String>) {
+        or {
+            cursors.forEach { (chatId, timestamp) ->
+                and {
+                    eq("chat_id", chatId)
+                    or {
+                        gt("created_at", timestamp)
+                        gt("updated_at", timestamp)
+                    }
+                }
+            }
+        }
+    }
+    
     /**
      * Get user's chats
      */
@@ -812,85 +1050,6 @@ class SupabaseChatService {
         }
     }
     
-    /**
-     * Update typing status for a user in a chat
-     */
-    suspend fun updateTypingStatus(chatId: String, userId: String, isTyping: Boolean): Result<Unit> {
-        return withContext(Dispatchers.IO) {
-            try {
-                // Validate inputs
-                if (chatId.isBlank() || userId.isBlank()) {
-                    android.util.Log.e(TAG, "Invalid parameters: chatId=$chatId, userId=$userId")
-                    return@withContext Result.failure(Exception("Invalid chat ID or user ID"))
-                }
-                
-                // Check if Supabase is properly configured
-                if (!SupabaseClient.isConfigured()) {
-                    android.util.Log.e(TAG, "Supabase not configured")
-                    return@withContext Result.failure(Exception("Supabase not configured"))
-                }
-                if (isTyping) {
-                    // Convert milliseconds to seconds for PostgreSQL timestamptz
-                    val timestampSeconds = System.currentTimeMillis() / 1000
-                    val typingData = mapOf(
-                        "chat_id" to chatId,
-                        "user_id" to userId,
-                        "is_typing" to isTyping,
-                        "timestamp" to timestampSeconds
-                    )
-                    databaseService.upsert("typing_status", typingData)
-                } else {
-                    // Remove typing status when user stops typing
-                    try {
-                        client.from("typing_status").delete {
-                            filter {
-                                eq("chat_id", chatId)
-                                eq("user_id", userId)
-                            }
-                        }
-                        Result.success(Unit)
-                    } catch (e: Exception) {
-                        android.util.Log.w(TAG, "Failed to delete typing status (user may not be typing): ${e.message}")
-                        Result.success(Unit) // Don't fail if delete fails
-                    }
-                }
-            } catch (e: Exception) {
-                android.util.Log.e(TAG, "Error updating typing status", e)
-                Result.failure(e)
-            }
-        }
-    }
-    
-    /**
-     * Get typing users in a chat
-     */
-    suspend fun getTypingUsers(chatId: String, excludeUserId: String): Result<List<String>> {
-        return withContext(Dispatchers.IO) {
-            try {
-                // Convert milliseconds to seconds for PostgreSQL timestamptz comparison
-                val fiveSecondsAgo = (System.currentTimeMillis() - 5000) / 1000
-                
-                val typingUsers = client.from("typing_status")
-                    .select(columns = Columns.raw("user_id")) {
-                        filter {
-                            eq("chat_id", chatId)
-                            eq("is_typing", true)
-                            neq("user_id", excludeUserId)
-                            gte("timestamp", fiveSecondsAgo)
-                        }
-                    }
-                    .decodeList<JsonObject>()
-                
-                val userIds = typingUsers.map { 
-                    it["user_id"].toString().removeSurrounding("\"") 
-                }
-                Result.success(userIds)
-            } catch (e: Exception) {
-                Result.failure(e)
-            }
-        }
-    }
-    
     /**
      * Get chat participants
      */
@@ -315,27 +315,6 @@ class SupabaseDatabaseService : IDatabaseService {
         }
     }
     
-    /**
-     * Update user presence
-     */
-    suspend fun updatePresence(userId: String, isOnline: Boolean): Result<Unit> {
-        return withContext(Dispatchers.IO) {
-            try {
-                // Use ISO 8601 timestamp format for Supabase
-                val timestamp = java.time.Instant.now().toString()
-                val presenceData = kotlinx.serialization.json.buildJsonObject {
-                    put("user_id", kotlinx.serialization.json.JsonPrimitive(userId))
-                    put("is_online", kotlinx.serialization.json.JsonPrimitive(isOnline))
-                    put("last_seen", kotlinx.serialization.json.JsonPrimitive(timestamp))
-                }
-                client.from("user_presence").upsert(presenceData)
-                Result.success(Unit)
-            } catch (e: Exception) {
-                Result.failure(e)
-            }
-        }
-    }
-    
     /**
      * Select with filter (alias for selectWhere)
      */
@@ -0,0 +1,288 @@
+package com.synapse.social.studioasinc.backend
+
+import android.util.Log
+import com.synapse.social.studioasinc.SupabaseClient
+import com.synapse.social.studioasinc.chat.service.MessageLatencyTracer
+import io.github.jan.supabase.postgrest.from
+import io.github.jan.supabase.postgrest.query.Columns
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.contentOrNull
+import kotlinx.serialization.json.jsonPrimitive
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Presence for one user as last seen by this client.
+ *
+ * @property status Raw status column, e.g. "online", "offline" or "chatting_with_<uid>"
+ * @property lastSeen Epoch milliseconds of the user's last heartbeat, 0 if unknown
+ */
+data class UserPresence(
+    val uid: String,
+    val status: String,
+    val lastSeen: Long
+) {
+
+    /**
+     * Whether the user counts as online at [now]. A status without a recent heartbeat has
+     * expired: the client crashed or lost its connection before it could write "offline".
+     */
+    fun isOnline(now: Long = System.currentTimeMillis()): Boolean {
+        return status != SupabasePresenceService.STATUS_OFFLINE &&
+            now - lastSeen <= SupabasePresenceService.PRESENCE_EXPIRY_MS
+    }
+
+    /**
+     * The status to display: the stored one while the heartbeat is fresh, otherwise offline.
+     */
+    fun effectiveStatus(now: Long = System.currentTimeMillis()): String {
+        return if (isOnline(now)) status else SupabasePresenceService.STATUS_OFFLINE
+    }
+}
+
+/**
+ * Presence subsystem backed by the users table's status and last_seen columns.
+ *
+ * Writes: while the app is in the foreground one heartbeat is written every
+ * [HEARTBEAT_INTERVAL_MS], carrying the latest activity. Activity changes between heartbeats
+ * are coalesced into a single write after [ACTIVITY_DEBOUNCE_MS] instead of one per transition.
+ * Readers treat a status whose heartbeat is older than [PRESENCE_EXPIRY_MS] as offline.
+ *
+ * Reads: presence is cached per user for [CACHE_TTL_MS]. Lookups that miss the cache within
+ * [LOOKUP_BATCH_WINDOW_MS] of each other share one bulk query, so a list binding rows one at
+ * a time still costs a single request. Screens that already fetched user rows can [prime]
+ * the cache instead.
+ */
+class SupabasePresenceService private constructor() {
+
+    companion object {
+        private const val TAG = "SupabasePresenceService"
+
+        const val STATUS_ONLINE = "online"
+        const val STATUS_OFFLINE = "offline"
+
+        const val HEARTBEAT_INTERVAL_MS = 60_000L // One presence write per minute while active
+        const val PRESENCE_EXPIRY_MS = 2 * HEARTBEAT_INTERVAL_MS + 30_000L // Survive one missed heartbeat
+        private const val ACTIVITY_DEBOUNCE_MS = 2_000L
+        private const val CACHE_TTL_MS = 30_000L
+        private const val LOOKUP_BATCH_WINDOW_MS = 50L
+        private const val MAX_BATCH_SIZE = 100
+
+        @Volatile
+        private var INSTANCE: SupabasePresenceService? = null
+
+        fun getInstance(): SupabasePresenceService {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: SupabasePresenceService().also { INSTANCE = it }
+            }
+        }
+
+        /**
+         * Parses last_seen as stored by the app: ISO-8601 from Postgres, or epoch
+         * milliseconds/seconds from older rows.
+         */
+        internal fun parseLastSeen(value: String?): Long {
+            if (value.isNullOrEmpty() || value == "null") return 0L
+            value.toLongOrNull()?.let { return if (it > 1_000_000_000_000L) it else it * 1000 }
+            return MessageLatencyTracer.parseTimestampMs(value) ?: 0L
+        }
+    }
+
+    private class CachedPresence(val presence: UserPresence, val fetchedAt: Long)
+
+    private val client = SupabaseClient.client
+    private val dbService = SupabaseDatabaseService()
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    private val cache = ConcurrentHashMap<String, CachedPresence>()
+
+    // Single-user lookups waiting for the next bulk query
+    private val pendingLookups = HashMap<String, MutableList<CompletableDeferred<UserPresence?>>>()
+    private var lookupJob: Job? = null
+
+    // Heartbeat state for the signed-in user
+    @Volatile
+    private var currentUid: String? = null
+    @Volatile
+    private var currentStatus: String = STATUS_ONLINE
+    private var heartbeatJob: Job? = null
+    private var activityJob: Job? = null
+
+    /**
+     * Starts heartbeats for the signed-in user, writing one immediately.
+     */
+    fun goOnline(uid: String) {
+        synchronized(this) {
+            currentUid = uid
+            currentStatus = STATUS_ONLINE
+            activityJob?.cancel()
+            heartbeatJob?.cancel()
+            heartbeatJob = scope.launch {
+                while (isActive) {
+                    writePresence(uid, currentStatus)
+                    delay(HEARTBEAT_INTERVAL_MS)
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops heartbeats and writes "offline" once.
+     */
+    fun goOffline(uid: String) {
+        synchronized(this) {
+            heartbeatJob?.cancel()
+            heartbeatJob = null
+            activityJob?.cancel()
+            activityJob = null
+            currentUid = null
+        }
+        scope.launch { writePresence(uid, STATUS_OFFLINE) }
+    }
+
+    /**
+     * Records the user's current activity. Rapid changes are coalesced into one write.
+     */
+    fun setActivity(uid: String, activity: String) {
+        currentStatus = activity
+        if (currentUid != uid) {
+            // Not heartbeating (e.g. called before the app reached the foreground); write once
+            scope.launch { writePresence(uid, activity) }
+            return
+        }
+        synchronized(this) {
+            activityJob?.cancel()
+            activityJob = scope.launch {
+                delay(ACTIVITY_DEBOUNCE_MS)
+                writePresence(uid, currentStatus)
+            }
+        }
+    }
+
+    /**
+     * Presence for one user, from the cache or the next bulk query.
+     */
+    suspend fun getPresence(uid: String): UserPresence? {
+        cachedPresence(uid)?.let { return it }
+
+        val deferred = CompletableDeferred<UserPresence?>()
+        synchronized(pendingLookups) {
+            pendingLookups.getOrPut(uid) { mutableListOf() }.add(deferred)
+            if (lookupJob?.isActive != true) {
+                lookupJob = scope.launch {
+                    delay(LOOKUP_BATCH_WINDOW_MS)
+                    flushLookups()
+                }
+            }
+        }
+        return deferred.await()
+    }
+
+    /**
+     * Presence for many users in as few queries as possible. Users without a row are omitted.
+     */
+    suspend fun getPresence(uids: Collection<String>): Map<String, UserPresence> {
+        val result = HashMap<String, UserPresence>()
+        val missing = uids.filter { uid ->
+            val cached = cachedPresence(uid)
+            if (cached != null) result[uid] = cached
+            cached == null
+        }.distinct()
+
+        if (missing.isNotEmpty()) {
+            result.putAll(fetchPresence(missing))
+        }
+        return result
+    }
+
+    /**
+     * Caches presence from a user row fetched for another reason, e.g. a profile list.
+     *
+     * @return The cached presence
+     */
+    fun prime(uid: String, status: String?, lastSeen: String?): UserPresence {
+        val presence = UserPresence(uid, status ?: STATUS_OFFLINE, parseLastSeen(lastSeen))
+        cache[uid] = CachedPresence(presence, System.currentTimeMillis())
+        return presence
+    }
+
+    /**
+     * Drops cached presence, e.g. on sign-out.
+     */
+    fun clearCache() {
+        cache.clear()
+    }
+
+    // Private helper methods
+
+    private fun cachedPresence(uid: String): UserPresence? {
+        val cached = cache[uid] ?: return null
+        return cached.presence.takeIf { System.currentTimeMillis() - cached.fetchedAt <= CACHE_TTL_MS }
+    }
+
+    private suspend fun flushLookups() {
+        val waiting = synchronized(pendingLookups) {
+            HashMap(pendingLookups).also { pendingLookups.clear() }
+        }
+        if (waiting.isEmpty()) return
+
+        val fetched = try {
+            fetchPresence(waiting.keys.toList())
+        } catch (e: Exception) {
+            Log.e(TAG, "Bulk presence lookup failed", e)
+            emptyMap()
+        }
+        waiting.forEach { (uid, deferreds) ->
+            deferreds.forEach { it.complete(fetched[uid]) }
+        }
+    }
+
+    private suspend fun fetchPresence(uids: List<String>): Map<String, UserPresence> {
+        val now = System.currentTimeMillis()
+        val result = HashMap<String, UserPresence>()
+
+        uids.chunked(MAX_BATCH_SIZE).forEach { batch ->
+            try {
+                val rows = client.from("users").select(columns = Columns.list("uid", "status", "last_seen")) {
+                    filter { isIn("uid", batch) }
+                }.decodeList<JsonObject>()
+
+                rows.forEach { row ->
+                    val uid = row["uid"]?.jsonPrimitive?.contentOrNull ?: return@forEach
+                    val presence = UserPresence(
+                        uid = uid,
+                        status = row["status"]?.jsonPrimitive?.contentOrNull ?: STATUS_OFFLINE,
+                        lastSeen = parseLastSeen(row["last_seen"]?.jsonPrimitive?.contentOrNull)
+                    )
+                    cache[uid] = CachedPresence(presence, now)
+                    result[uid] = presence
+                }
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to fetch presence for ${batch.size} users", e)
+            }
+        }
+        Log.d(TAG, "Fetched presence for ${result.size} of ${uids.size} users")
+        return result
+    }
+
+    private suspend fun writePresence(uid: String, status: String) {
+        val now = System.currentTimeMillis()
+        val updateData = mapOf(
+            "status" to status,
+            "last_seen" to now.toString()
+        )
+        dbService.update("users", updateData, "uid", uid).onSuccess {
+            // Our own presence is always fresh locally
+            cache[uid] = CachedPresence(UserPresence(uid, status, now), now)
+        }.onFailure { e ->
+            Log.w(TAG, "Presence write failed for $uid", e)
+        }
+    }
+}
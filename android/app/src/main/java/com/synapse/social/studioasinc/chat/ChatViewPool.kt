@@ -0,0 +1,221 @@
+package com.synapse.social.studioasinc.chat
+
+import android.app.Application
+import android.content.Context
+import android.content.pm.ActivityInfo
+import android.content.res.Configuration
+import android.os.Looper
+import android.os.SystemClock
+import android.view.ContextThemeWrapper
+import android.view.ViewGroup
+import android.widget.FrameLayout
+import androidx.appcompat.app.AppCompatDelegate
+import androidx.recyclerview.widget.RecyclerView
+import com.synapse.social.studioasinc.ChatAdapter
+import com.synapse.social.studioasinc.R
+import com.synapse.social.studioasinc.chat.models.ChatItem
+
+/**
+ * Chat bubble view holders shared by every chat screen, so opening a chat reuses the bubbles of
+ * the last one instead of inflating them again.
+ *
+ * Bubbles are inflated with an application context themed and configured like the chat screen,
+ * never with an activity, so pooled holders don't keep a closed screen alive. When a screen with
+ * a different configuration attaches (night mode, font scale, locale, density), the pool is
+ * emptied and bubbles are inflated for the new one. [prewarm] fills the pool during startup idle
+ * time so even the first chat opens without inflating its first screen of bubbles.
+ *
+ * Main thread only.
+ */
+object ChatViewPool {
+
+    // Holders kept per view type; text bubbles dominate a chat
+    private val MAX_RECYCLED = mapOf(
+        ChatItem.VIEW_TYPE_TEXT to 20,
+        ChatItem.VIEW_TYPE_MEDIA_GRID to 6,
+        ChatItem.VIEW_TYPE_LINK_PREVIEW to 4,
+        ChatItem.VIEW_TYPE_VOICE_MESSAGE to 4,
+        ChatItem.VIEW_TYPE_VIDEO to 4,
+        ChatItem.VIEW_TYPE_ERROR to 2,
+        ChatItem.VIEW_TYPE_TYPING to 1,
+        ChatItem.VIEW_TYPE_LOADING_MORE to 1
+    )
+
+    // Inflated ahead of time: about one screen of a typical chat
+    private val PREWARM = listOf(
+        ChatItem.VIEW_TYPE_TEXT to 12,
+        ChatItem.VIEW_TYPE_MEDIA_GRID to 2,
+        ChatItem.VIEW_TYPE_LINK_PREVIEW to 1,
+        ChatItem.VIEW_TYPE_VOICE_MESSAGE to 1,
+        ChatItem.VIEW_TYPE_TYPING to 1
+    )
+
+    // Main thread time one idle pass may spend inflating
+    private const val PREWARM_BUDGET_MS = 4L
+
+    // Configuration changes that alter inflated bubbles
+    private const val INFLATION_CONFIG_CHANGES = ActivityInfo.CONFIG_UI_MODE or
+        ActivityInfo.CONFIG_DENSITY or
+        ActivityInfo.CONFIG_FONT_SCALE or
+        ActivityInfo.CONFIG_LOCALE or
+        ActivityInfo.CONFIG_LAYOUT_DIRECTION or
+        ActivityInfo.CONFIG_ORIENTATION or
+        ActivityInfo.CONFIG_SMALLEST_SCREEN_SIZE
+
+    val pool = RecyclerView.RecycledViewPool().apply {
+        MAX_RECYCLED.forEach { (viewType, max) -> setMaxRecycledViews(viewType, max) }
+    }
+
+    /** Inflations of chat bubbles, to check how often the pool saves one */
+    val stats = InflationStats()
+
+    private var inflationContext: Context? = null
+    private var inflationConfig: Configuration? = null
+
+    // Creates holders for prewarming; RecyclerView only accepts holders an adapter created
+    private val holderFactory = object : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+        override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): RecyclerView.ViewHolder {
+            return ChatAdapter.createHolder(parent, viewType)
+        }
+
+        override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int) = Unit
+
+        override fun getItemCount() = 0
+    }
+
+    /**
+     * Makes [recyclerView] take bubbles from the shared pool. Call before setting its adapter,
+     * and set the adapter with swapAdapter(adapter, false): a plain setAdapter empties the pool
+     * when no other chat list is attached.
+     */
+    fun attach(recyclerView: RecyclerView) {
+        inflationContextFor(recyclerView.context)
+        recyclerView.setRecycledViewPool(pool)
+    }
+
+    /**
+     * Returns a closing chat list's bubbles to the pool, without the click listeners that point
+     * at its screen.
+     */
+    fun detach(recyclerView: RecyclerView) {
+        recyclerView.swapAdapter(null, true)
+        MAX_RECYCLED.keys.forEach { viewType ->
+            val holders = generateSequence { pool.getRecycledView(viewType) }.toList()
+            holders.forEach { holder ->
+                ChatAdapter.releaseHolder(holder)
+                pool.putRecycledView(holder)
+            }
+        }
+    }
+
+    /**
+     * The context bubbles for a screen with [context]'s configuration are inflated with.
+     */
+    fun inflationContextFor(context: Context): Context {
+        val config = context.resources.configuration
+        val current = inflationContext
+        if (current != null && inflationConfig?.let { config.diff(it) and INFLATION_CONFIG_CHANGES == 0 } == true) {
+            return current
+        }
+        // Bubbles inflated for another configuration would look wrong here
+        pool.clear()
+        return createInflationContext(context.applicationContext, config)
+    }
+
+    /**
+     * Inflates the common bubble types into the pool while the main thread is idle, a few
+     * milliseconds at a time, so it never delays a frame. Call once from application start.
+     */
+    fun prewarm(application: Application) {
+        val pending = PREWARM.flatMapTo(ArrayDeque<Int>()) { (viewType, count) -> List(count) { viewType } }
+        Looper.myQueue().addIdleHandler {
+            // Night mode is applied per activity; until one attaches, follow the saved setting
+            val context = inflationContext ?: createInflationContext(application, startupConfig(application))
+            val parent = FrameLayout(context)
+            val deadline = SystemClock.uptimeMillis() + PREWARM_BUDGET_MS
+            while (pending.isNotEmpty() && SystemClock.uptimeMillis() < deadline) {
+                val viewType = pending.removeFirst()
+                if (pool.getRecycledViewCount(viewType) >= (MAX_RECYCLED[viewType] ?: 0)) continue
+                val holder = holderFactory.createViewHolder(parent, viewType)
+                stats.recordPrewarm(viewType)
+                pool.putRecycledView(holder)
+            }
+            // Keep the handler until everything is inflated
+            pending.isNotEmpty()
+        }
+    }
+
+    /**
+     * Inflates a bubble that wasn't in the pool, counting it in [stats].
+     */
+    fun <T : RecyclerView.ViewHolder> inflate(viewType: Int, create: () -> T): T {
+        val start = SystemClock.elapsedRealtimeNanos()
+        val holder = create()
+        stats.recordInflation(viewType, SystemClock.elapsedRealtimeNanos() - start)
+        return holder
+    }
+
+    // Private helper methods
+
+    private fun createInflationContext(application: Context, config: Configuration): Context {
+        // Chat screens use the application theme
+        val context = ContextThemeWrapper(application.createConfigurationContext(config), R.style.AppTheme)
+        inflationContext = context
+        inflationConfig = Configuration(config)
+        return context
+    }
+
+    private fun startupConfig(application: Application): Configuration {
+        val config = Configuration(application.resources.configuration)
+        val night = when (AppCompatDelegate.getDefaultNightMode()) {
+            AppCompatDelegate.MODE_NIGHT_YES -> Configuration.UI_MODE_NIGHT_YES
+            AppCompatDelegate.MODE_NIGHT_NO -> Configuration.UI_MODE_NIGHT_NO
+            else -> return config
+        }
+        config.uiMode = (config.uiMode and Configuration.UI_MODE_NIGHT_MASK.inv()) or night
+        return config
+    }
+}
+
+/**
+ * Counts view holder inflations per view type.
+ */
+class InflationStats {
+
+    private val inflations = HashMap<Int, Int>()
+    private val prewarmed = HashMap<Int, Int>()
+    private var inflationNanos = 0L
+
+    /** Holders inflated while a list needed them */
+    val inflationCount: Int
+        get() = inflations.values.sum()
+
+    /** Holders inflated ahead of time */
+    val prewarmCount: Int
+        get() = prewarmed.values.sum()
+
+    /** Average time of an inflation a list waited for, in milliseconds */
+    val averageInflationMs: Double
+        get() = if (inflationCount == 0) 0.0 else inflationNanos / 1_000_000.0 / inflationCount
+
+    fun recordInflation(viewType: Int, nanos: Long) {
+        inflations[viewType] = (inflations[viewType] ?: 0) + 1
+        inflationNanos += nanos
+    }
+
+    fun recordPrewarm(viewType: Int) {
+        prewarmed[viewType] = (prewarmed[viewType] ?: 0) + 1
+    }
+
+    fun inflationsOf(viewType: Int): Int = inflations[viewType] ?: 0
+
+    fun reset() {
+        inflations.clear()
+        prewarmed.clear()
+        inflationNanos = 0L
+    }
+
+    override fun toString(): String {
+        return "inflated=$inflations prewarmed=$prewarmed avg=${"%.2f".format(averageInflationMs)}ms"
+    }
+}
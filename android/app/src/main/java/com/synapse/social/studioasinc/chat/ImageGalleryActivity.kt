@@ -129,7 +129,7 @@ class ImageGalleryActivity : BaseActivity() {
         
         // Initialize MediaDownloadManager
         val storageService = SupabaseStorageService()
-        val mediaCache = MediaCache(this)
+        val mediaCache = MediaCache.getInstance(this)
         mediaDownloadManager = MediaDownloadManager(this, storageService, mediaCache, lifecycleScope)
         
         setupToolbar()
@@ -0,0 +1,99 @@
+package com.synapse.social.studioasinc.chat
+
+/**
+ * Message ID to list position index for the chat list.
+ *
+ * Positions are stored as slots relative to a movable base, so appending and prepending only
+ * touch the new entries and a lookup is a single hash probe. Removing from the middle shifts
+ * the later slots and costs O(n); in chat that only happens on delete-for-me. Trimming either
+ * end is one O(n) pass however many rows it drops. Rows without an ID, like the loading
+ * indicator, occupy a position but aren't indexed.
+ */
+class MessagePositionIndex {
+
+    // Message ID -> slot; position = slot - base
+    private val slots = HashMap<String, Int>()
+    private var base = 0
+
+    /** Number of positions tracked, indexed or not */
+    var size = 0
+        private set
+
+    /**
+     * Position of a message, or -1 if it isn't indexed.
+     */
+    fun positionOf(messageId: String): Int {
+        return slots[messageId]?.let { it - base } ?: -1
+    }
+
+    fun append(messageId: String?) {
+        messageId?.let { slots[it] = base + size }
+        size++
+    }
+
+    /**
+     * Inserts IDs at the top, keeping their order.
+     */
+    fun prepend(messageIds: List<String?>) {
+        base -= messageIds.size
+        messageIds.forEachIndexed { offset, id ->
+            id?.let { slots[it] = base + offset }
+        }
+        size += messageIds.size
+    }
+
+    /**
+     * Replaces the ID at a position, e.g. when a row is swapped for its server copy.
+     */
+    fun replace(position: Int, oldId: String?, newId: String?) {
+        require(position in 0 until size) { "Position $position out of range (size $size)" }
+        oldId?.let { slots.remove(it) }
+        newId?.let { slots[it] = base + position }
+    }
+
+    fun removeAt(position: Int) {
+        require(position in 0 until size) { "Position $position out of range (size $size)" }
+        val slot = base + position
+        val iterator = slots.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            when {
+                entry.value == slot -> iterator.remove()
+                entry.value > slot -> entry.setValue(entry.value - 1)
+            }
+        }
+        size--
+    }
+
+    /**
+     * Drops the first [count] positions, e.g. rows trimmed off the top of a bounded window.
+     * The remaining positions shift up without re-indexing them.
+     */
+    fun dropFirst(count: Int) {
+        require(count in 0..size) { "Can't drop $count of $size positions" }
+        val end = base + count
+        slots.values.removeAll { it < end }
+        base = end
+        size -= count
+    }
+
+    /**
+     * Drops the last [count] positions, e.g. rows trimmed off the bottom of a bounded window.
+     */
+    fun dropLast(count: Int) {
+        require(count in 0..size) { "Can't drop $count of $size positions" }
+        size -= count
+        val end = base + size
+        slots.values.removeAll { it >= end }
+    }
+
+    /**
+     * Re-indexes the whole list, e.g. after it was replaced.
+     */
+    fun rebuild(messageIds: List<String?>) {
+        slots.clear()
+        base = 0
+        size = 0
+        messageIds.forEach { append(it) }
+    }
+}
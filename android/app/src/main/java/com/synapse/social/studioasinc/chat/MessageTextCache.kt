@@ -0,0 +1,155 @@
+package com.synapse.social.studioasinc.chat
+
+import android.text.SpannableString
+import android.text.Spanned
+import android.text.TextPaint
+import android.text.style.ClickableSpan
+import android.text.style.URLSpan
+import android.text.util.Linkify
+import android.view.View
+import androidx.core.text.PrecomputedTextCompat
+import androidx.core.text.util.LinkifyCompat
+import com.synapse.social.studioasinc.util.MentionUtils
+import java.util.regex.Pattern
+
+/**
+ * Styled, measured message text for the chat list, built off the main thread.
+ *
+ * [prepare] runs on a background dispatcher next to the item mapping: each distinct text gets
+ * its link, mention and hashtag spans once, plus a [PrecomputedTextCompat] for the bubble's
+ * text metrics, so binding only sets a finished text. Entries are keyed by the text itself and
+ * the most recently used [maxEntries] are kept, about one chat window.
+ *
+ * Spans don't open anything themselves: taps go to [onSpanClick], so they never depend on the
+ * context of a view that may be pooled across screens.
+ */
+class MessageTextCache(
+    private val onSpanClick: (MessageLink) -> Unit,
+    private val maxEntries: Int = MessageWindow.DEFAULT_MAX_ITEMS
+) {
+
+    companion object {
+        // Linkify's matching, minus map addresses, which are slow and rarely right
+        private const val LINK_MASK = Linkify.WEB_URLS or Linkify.EMAIL_ADDRESSES or Linkify.PHONE_NUMBERS
+
+        // Hashtags start a word, like mentions
+        private val HASHTAG_PATTERN: Pattern = Pattern.compile("(?<![\\w#])#(\\w+)")
+
+        /**
+         * Where the tappable parts of [text] are, links first; mentions and hashtags inside a
+         * link are left to the link.
+         */
+        fun findLinks(text: String, links: List<Pair<IntRange, String>> = emptyList()): List<Pair<IntRange, MessageLink>> {
+            val found = links.mapTo(ArrayList()) { (range, url) -> range to MessageLink.Url(url) as MessageLink }
+            fun overlapsLink(start: Int, end: Int) = links.any { (range, _) -> start <= range.last && end - 1 >= range.first }
+
+            val mentions = MentionUtils.MENTION_PATTERN.matcher(text)
+            while (mentions.find()) {
+                val username = mentions.group(1) ?: continue
+                // Not the middle of a word, like an email address Linkify missed
+                val start = mentions.start()
+                if (start > 0 && (text[start - 1].isLetterOrDigit() || text[start - 1] == '_')) continue
+                if (overlapsLink(start, mentions.end())) continue
+                found.add(start until mentions.end() to MessageLink.Mention(username))
+            }
+            val hashtags = HASHTAG_PATTERN.matcher(text)
+            while (hashtags.find()) {
+                val tag = hashtags.group(1) ?: continue
+                if (overlapsLink(hashtags.start(), hashtags.end())) continue
+                found.add(hashtags.start() until hashtags.end() to MessageLink.Hashtag(tag))
+            }
+            return found
+        }
+    }
+
+    /**
+     * A message's text ready to bind.
+     *
+     * @property text The spanned text, for bubbles it wasn't measured for
+     * @property precomputed The text measured with [params], null if there were none
+     * @property hasLinks Whether the text has tappable spans
+     */
+    class Entry(
+        val text: CharSequence,
+        val precomputed: PrecomputedTextCompat?,
+        val params: PrecomputedTextCompat.Params?,
+        val hasLinks: Boolean
+    )
+
+    // Access-ordered, so the eldest entry is the least recently used
+    private val entries = object : LinkedHashMap<String, Entry>(64, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>): Boolean {
+            return size > maxEntries
+        }
+    }
+
+    /**
+     * The prepared text of [text], or null if it wasn't prepared yet.
+     */
+    fun get(text: String): Entry? {
+        return synchronized(entries) { entries[text] }
+    }
+
+    /**
+     * Builds the spans of each text not prepared yet, and measures texts with [params] unless
+     * they already were. Call off the main thread.
+     *
+     * @param params Metrics of the text bubbles' TextView, null until one was bound
+     */
+    fun prepare(texts: Collection<String>, params: PrecomputedTextCompat.Params?) {
+        texts.forEach { text ->
+            val existing = get(text)
+            if (existing != null && (params == null || existing.params == params)) return@forEach
+            val spanned = existing?.text ?: buildSpans(text)
+            val hasLinks = existing?.hasLinks ?: (spanned is Spanned && spanned.getSpans(0, spanned.length, ClickableSpan::class.java).isNotEmpty())
+            val precomputed = params?.let { PrecomputedTextCompat.create(spanned, it) }
+            synchronized(entries) { entries[text] = Entry(spanned, precomputed, params, hasLinks) }
+        }
+    }
+
+    fun clear() {
+        synchronized(entries) { entries.clear() }
+    }
+
+    // Private helper methods
+
+    private fun buildSpans(text: String): CharSequence {
+        if (text.isEmpty()) return text
+        val spannable = SpannableString(text)
+        LinkifyCompat.addLinks(spannable, LINK_MASK)
+        val urlSpans = spannable.getSpans(0, spannable.length, URLSpan::class.java)
+        val links = urlSpans.map { span ->
+            val range = spannable.getSpanStart(span) until spannable.getSpanEnd(span)
+            spannable.removeSpan(span)
+            range to span.url
+        }
+
+        val found = findLinks(text, links)
+        if (found.isEmpty()) return text
+        found.forEach { (range, link) ->
+            spannable.setSpan(MessageLinkSpan(link), range.first, range.last + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE)
+        }
+        return spannable
+    }
+
+    private inner class MessageLinkSpan(private val link: MessageLink) : ClickableSpan() {
+        override fun onClick(widget: View) {
+            onSpanClick(link)
+        }
+
+        override fun updateDrawState(ds: TextPaint) {
+            ds.color = ds.linkColor
+            ds.isUnderlineText = link is MessageLink.Url
+            if (link is MessageLink.Mention) ds.isFakeBoldText = true
+        }
+    }
+}
+
+/**
+ * A tappable part of a message's text.
+ */
+sealed class MessageLink {
+    data class Url(val url: String) : MessageLink()
+    data class Mention(val username: String) : MessageLink()
+    data class Hashtag(val tag: String) : MessageLink()
+}
@@ -0,0 +1,101 @@
+package com.synapse.social.studioasinc.chat
+
+/**
+ * Bounds the chat list to a window of at most [maxItems] rows around what the user is reading.
+ *
+ * Loading a page at one end may push the window over its cap; the caller then drops the
+ * returned number of rows from the opposite end. Dropping the newest rows detaches the window
+ * from the live end of the chat ([hasNewer]); until it pages back down, new messages aren't
+ * appended, since they would sit below a gap.
+ *
+ * @param pageSize Rows per page; a shorter page means that end of the history was reached.
+ *        A window may page in smaller pages, see [reset].
+ */
+class MessageWindow(
+    val pageSize: Int = DEFAULT_PAGE_SIZE,
+    val maxItems: Int = DEFAULT_MAX_ITEMS
+) {
+
+    companion object {
+        const val DEFAULT_PAGE_SIZE = 50
+        const val DEFAULT_MAX_ITEMS = 300
+    }
+
+    init {
+        require(maxItems >= 2 * pageSize) { "Window of $maxItems rows can't hold two pages of $pageSize" }
+    }
+
+    /** Older messages exist above the window */
+    var hasOlder = false
+        private set
+
+    /** Newer messages exist below the window, i.e. it isn't showing the latest message */
+    var hasNewer = false
+        private set
+
+    val isAtLatest: Boolean
+        get() = !hasNewer
+
+    /** Rows per page for the current window, at most [pageSize] */
+    var activePageSize = pageSize
+        private set
+
+    /** Bumped whenever the window is replaced; a page loaded for an earlier one is discarded */
+    var generation = 0
+        private set
+
+    /**
+     * The window was replaced by the latest page.
+     *
+     * @param pageSize Rows per page for this window, e.g. fewer on a poor connection
+     */
+    fun reset(loaded: Int, pageSize: Int = this.pageSize) {
+        generation++
+        activePageSize = pageSize.coerceAtMost(this.pageSize)
+        hasOlder = loaded >= activePageSize
+        hasNewer = false
+    }
+
+    /**
+     * The window was replaced by rows around one message, e.g. after a jump to a reply's
+     * original.
+     *
+     * @param olderLoaded Rows loaded before the message
+     * @param newerLoaded Rows loaded after it
+     * @param pageSize Rows per page for this window
+     */
+    fun resetAround(olderLoaded: Int, newerLoaded: Int, pageSize: Int = this.pageSize) {
+        generation++
+        activePageSize = pageSize.coerceAtMost(this.pageSize)
+        hasOlder = olderLoaded >= activePageSize
+        hasNewer = newerLoaded >= activePageSize
+    }
+
+    /**
+     * Older rows were added at the top.
+     *
+     * @param size Rows in the window including the new ones
+     * @return Rows to drop from the bottom
+     */
+    fun onOlderLoaded(loaded: Int, size: Int): Int {
+        if (loaded < activePageSize) hasOlder = false
+        val excess = size - maxItems
+        if (excess <= 0) return 0
+        hasNewer = true
+        return excess
+    }
+
+    /**
+     * Newer rows were added at the bottom.
+     *
+     * @param size Rows in the window including the new ones
+     * @return Rows to drop from the top
+     */
+    fun onNewerLoaded(loaded: Int, size: Int): Int {
+        if (loaded < activePageSize) hasNewer = false
+        val excess = size - maxItems
+        if (excess <= 0) return 0
+        hasOlder = true
+        return excess
+    }
+}
@@ -64,7 +64,6 @@ class MultiSelectManager(
         
         // Update adapter to show selection indicators
         adapter.isMultiSelectMode = true
-        adapter.notifyDataSetChanged()
     }
     
     /**
@@ -120,7 +119,6 @@ class MultiSelectManager(
         
         // Update adapter to hide selection indicators
         adapter.isMultiSelectMode = false
-        adapter.notifyDataSetChanged()
         
         // Restore scroll position after exiting multi-select mode
         restoreScrollPosition()
@@ -205,7 +203,7 @@ class MultiSelectManager(
         
         // Schedule new update
         pendingUiUpdate = Runnable {
-            adapter.notifyDataSetChanged()
+            adapter.notifySelectionChanged()
         }
         
         uiUpdateHandler.postDelayed(pendingUiUpdate!!, uiUpdateDebounceMs)
@@ -85,6 +85,8 @@ interface ChatAttachment {
     val height: Int? // Height in pixels for images/videos
     val duration: Long? // Duration in milliseconds for videos/audio
     val mimeType: String? // MIME type of the file
+    val waveform: List<Float>? // Normalized amplitudes for audio, computed at upload time
+    val blurHash: String? // Blurhash placeholder for images/videos, computed at upload time
 }
 
 /**
@@ -0,0 +1,129 @@
+package com.synapse.social.studioasinc.chat.models
+
+import androidx.recyclerview.widget.DiffUtil
+
+/**
+ * Immutable row of the chat list.
+ *
+ * Built by [ChatItemMapper] from the activity's message maps on a background dispatcher, so
+ * binding reads typed fields instead of doing string-keyed lookups, casts and URL scans.
+ */
+sealed class ChatItem {
+
+    /** Stable identity across list snapshots, the message ID for messages */
+    abstract val key: String
+    abstract val viewType: Int
+
+    object LoadingMore : ChatItem() {
+        override val key = "loading_more"
+        override val viewType = VIEW_TYPE_LOADING_MORE
+    }
+
+    object Typing : ChatItem() {
+        override val key = "typing"
+        override val viewType = VIEW_TYPE_TYPING
+    }
+
+    /**
+     * A message with everything its bubble needs precomputed.
+     *
+     * @property text Message content, "" if missing
+     * @property displayText The AI summary while the user toggled it on, otherwise [text]
+     * @property deliveryStatus sending/sent/delivered/read/failed
+     * @property timestamp Epoch milliseconds
+     * @property linkUrl First URL in [text] for link preview bubbles
+     * @property reply Preview of the replied message, null if not a reply or not resolved yet
+     * @property layout Placement among neighbouring messages, from [MessageLayoutPass]
+     */
+    data class Message(
+        override val key: String,
+        override val viewType: Int,
+        val senderId: String,
+        val isMine: Boolean,
+        val text: String,
+        val displayText: String,
+        val deliveryStatus: String,
+        val isDeleted: Boolean,
+        val isEdited: Boolean,
+        val isForwarded: Boolean,
+        val replyToId: String?,
+        val reply: ReplyPreview?,
+        val attachments: List<Attachment>,
+        val linkUrl: String?,
+        val timestamp: Long,
+        val layout: MessageLayout,
+        val isNew: Boolean,
+        val errorDetails: String?
+    ) : ChatItem()
+
+    data class Attachment(
+        val url: String?,
+        val type: String?,
+        val thumbnailUrl: String?,
+        val blurHash: String?,
+        val durationMs: Long
+    )
+
+    /**
+     * What a reply bubble shows of the message it quotes: a compact snippet, so previews of
+     * messages outside the list can be cached without holding whole rows.
+     *
+     * @property text At most [ChatItemMapper.REPLY_SNIPPET_LENGTH] characters
+     * @property imageUrl Thumbnail of the first image or video attachment
+     * @property isAvailable false if the quoted message was deleted or doesn't exist
+     */
+    data class ReplyPreview(
+        val senderId: String?,
+        val text: String,
+        val imageUrl: String?,
+        val isAvailable: Boolean = true
+    ) {
+        companion object {
+            val UNAVAILABLE = ReplyPreview(senderId = null, text = "Message not available", imageUrl = null, isAvailable = false)
+        }
+    }
+
+    companion object {
+        const val VIEW_TYPE_TEXT = 1
+        const val VIEW_TYPE_MEDIA_GRID = 2
+        const val VIEW_TYPE_TYPING = 3
+        const val VIEW_TYPE_VIDEO = 4
+        const val VIEW_TYPE_LINK_PREVIEW = 5
+        const val VIEW_TYPE_VOICE_MESSAGE = 6
+        const val VIEW_TYPE_ERROR = 7
+        const val VIEW_TYPE_LOADING_MORE = 99
+
+        /** Payload: only the delivery status changed */
+        const val PAYLOAD_MESSAGE_STATE = "message_state_update"
+
+        /** Payload: only grouping or timestamp visibility changed, e.g. a neighbour arrived */
+        const val PAYLOAD_GROUPING = "message_grouping_update"
+
+        /** Payload: multi-select mode or selection changed */
+        const val PAYLOAD_SELECTION = "message_selection_update"
+
+        /** Payload: the voice note started, paused or stopped playing; sent by the adapter */
+        const val PAYLOAD_VOICE_PLAYBACK = "voice_playback_update"
+
+        val DIFF_CALLBACK = object : DiffUtil.ItemCallback<ChatItem>() {
+            override fun areItemsTheSame(oldItem: ChatItem, newItem: ChatItem): Boolean {
+                return oldItem.key == newItem.key
+            }
+
+            override fun areContentsTheSame(oldItem: ChatItem, newItem: ChatItem): Boolean {
+                return oldItem == newItem
+            }
+
+            override fun getChangePayload(oldItem: ChatItem, newItem: ChatItem): Any? {
+                if (oldItem !is Message || newItem !is Message || oldItem.viewType != newItem.viewType) {
+                    return null
+                }
+                return when (newItem) {
+                    oldItem.copy(deliveryStatus = newItem.deliveryStatus) -> PAYLOAD_MESSAGE_STATE
+                    oldItem.copy(layout = newItem.layout) -> PAYLOAD_GROUPING
+                    else -> null
+                }
+            }
+        }
+    }
+}
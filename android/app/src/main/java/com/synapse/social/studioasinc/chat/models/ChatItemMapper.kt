@@ -0,0 +1,158 @@
+package com.synapse.social.studioasinc.chat.models
+
+import com.synapse.social.studioasinc.LinkPreviewUtil
+
+/**
+ * Turns the chat screen's message maps into [ChatItem]s.
+ *
+ * This is where the legacy field fallbacks live ("content" vs "message_text", "sender_id" vs
+ * "uid", "delivery_status" vs "message_state"). Runs in O(n) over a snapshot of the list and is
+ * meant to be called off the main thread, followed by [MessageLayoutPass].
+ */
+object ChatItemMapper {
+
+    /** Characters of the quoted message a reply preview keeps */
+    const val REPLY_SNIPPET_LENGTH = 100
+
+    /**
+     * Maps a snapshot of the chat list.
+     *
+     * @param rows Copies of the message maps, oldest first
+     * @param replies Previews of replied messages outside the loaded list, by message ID
+     * @param currentUserId The signed-in user, to tell outgoing from incoming messages
+     * @param now Stand-in for missing timestamps
+     * @return Items whose layout is still [MessageLayout.PENDING]
+     */
+    fun map(
+        rows: List<Map<String, Any?>>,
+        replies: Map<String, ChatItem.ReplyPreview>,
+        currentUserId: String,
+        now: Long = System.currentTimeMillis()
+    ): List<ChatItem> {
+        val rowsById = HashMap<String, Map<String, Any?>>(rows.size)
+        rows.forEach { row -> row["id"]?.toString()?.let { rowsById[it] = row } }
+
+        return rows.mapIndexed { index, row ->
+            when {
+                row.containsKey("isLoadingMore") -> ChatItem.LoadingMore
+                row.containsKey("typingMessageStatus") -> ChatItem.Typing
+                else -> messageOf(row, index, rowsById, replies, currentUserId, now)
+            }
+        }
+    }
+
+    /**
+     * The ID a message map is known by, matching [ChatItem.key].
+     */
+    fun keyOf(row: Map<String, Any?>): String? {
+        return (row["id"] ?: row["key"] ?: row["KEY_KEY"])?.toString()
+    }
+
+    /**
+     * The ID of the message a row replies to, or null if it isn't a reply.
+     */
+    fun replyToIdOf(row: Map<String, Any?>): String? {
+        return (row["replied_message_id"] ?: row["reply_to_id"])?.toString()?.takeIf { it.isNotEmpty() && it != "null" }
+    }
+
+    /**
+     * The snippet a reply shows of [row], the quoted message.
+     */
+    fun replyPreviewOf(row: Map<String, Any?>): ChatItem.ReplyPreview {
+        if (isTrue(row["is_deleted"]) || isTrue(row["delete_for_everyone"])) {
+            return ChatItem.ReplyPreview.UNAVAILABLE
+        }
+        val media = attachmentsOf(row).firstOrNull { it.type == "image" || it.type == "video" }
+        // Videos only have a preview if a thumbnail was generated
+        val thumbnail = media?.thumbnailUrl ?: media?.url?.takeIf { media.type == "image" }
+        return ChatItem.ReplyPreview(
+            senderId = row["sender_id"]?.toString() ?: row["uid"]?.toString(),
+            text = textOf(row)?.take(REPLY_SNIPPET_LENGTH) ?: "Message",
+            imageUrl = thumbnail?.takeIf { it.isNotEmpty() && it != "null" }
+        )
+    }
+
+    // Private helper methods
+
+    private fun messageOf(
+        row: Map<String, Any?>,
+        index: Int,
+        rowsById: Map<String, Map<String, Any?>>,
+        replies: Map<String, ChatItem.ReplyPreview>,
+        currentUserId: String,
+        now: Long
+    ): ChatItem.Message {
+        val senderId = senderOf(row)
+        val text = textOf(row) ?: ""
+        val deliveryStatus = row["delivery_status"]?.toString() ?: row["message_state"]?.toString() ?: "sent"
+        val attachments = attachmentsOf(row)
+
+        val viewType = when {
+            deliveryStatus == "failed" || deliveryStatus == "error" -> ChatItem.VIEW_TYPE_ERROR
+            row["TYPE"]?.toString() == "VOICE_MESSAGE" -> ChatItem.VIEW_TYPE_VOICE_MESSAGE
+            row["TYPE"]?.toString() == "ATTACHMENT_MESSAGE" -> {
+                val rawAttachments = row["attachments"] as? List<*>
+                val isVideo = rawAttachments?.size == 1 &&
+                    ((rawAttachments[0] as? Map<*, *>)?.get("publicId")?.toString()?.contains("|video") == true)
+                if (isVideo) ChatItem.VIEW_TYPE_VIDEO else ChatItem.VIEW_TYPE_MEDIA_GRID
+            }
+            else -> ChatItem.VIEW_TYPE_TEXT
+        }
+        val linkUrl = if (viewType == ChatItem.VIEW_TYPE_TEXT) LinkPreviewUtil.extractUrl(text) else null
+
+        val showingSummary = row["showing_ai_summary"]?.toString()?.toBooleanStrictOrNull() ?: false
+        val aiSummary = row["ai_summary"]?.toString()
+        val replyToId = replyToIdOf(row)
+        val timestamp = row["created_at"]?.toString()?.toLongOrNull()
+            ?: row["push_date"]?.toString()?.toLongOrNull()
+            ?: now
+
+        return ChatItem.Message(
+            key = keyOf(row) ?: "row_$index",
+            viewType = if (linkUrl != null) ChatItem.VIEW_TYPE_LINK_PREVIEW else viewType,
+            senderId = senderId,
+            isMine = senderId == currentUserId,
+            text = text,
+            displayText = if (showingSummary && !aiSummary.isNullOrEmpty()) aiSummary else text,
+            deliveryStatus = deliveryStatus,
+            isDeleted = isTrue(row["is_deleted"]) || isTrue(row["delete_for_everyone"]),
+            isEdited = isTrue(row["is_edited"]),
+            isForwarded = !row["forwarded_from_message_id"]?.toString().isNullOrEmpty(),
+            replyToId = replyToId,
+            // A loaded row is fresher than a cached snippet
+            reply = replyToId?.let { id -> rowsById[id]?.let(::replyPreviewOf) ?: replies[id] },
+            attachments = attachments,
+            linkUrl = linkUrl,
+            timestamp = timestamp,
+            layout = MessageLayout.PENDING,
+            isNew = row["is_new"] == true,
+            errorDetails = row["error"]?.toString()
+        )
+    }
+
+    private fun attachmentsOf(row: Map<String, Any?>): List<ChatItem.Attachment> {
+        val raw = row["attachments"] as? List<*> ?: return emptyList()
+        return raw.mapNotNull { entry ->
+            val attachment = entry as? Map<*, *> ?: return@mapNotNull null
+            ChatItem.Attachment(
+                url = attachment["url"]?.toString(),
+                type = attachment["type"]?.toString(),
+                thumbnailUrl = (attachment["thumbnail_url"] ?: attachment["thumbnailUrl"])?.toString(),
+                blurHash = attachment["blur_hash"]?.toString(),
+                durationMs = attachment["duration"]?.toString()?.toLongOrNull() ?: 0L
+            )
+        }
+    }
+
+    private fun senderOf(row: Map<String, Any?>): String {
+        return row["sender_id"]?.toString() ?: row["uid"]?.toString() ?: ""
+    }
+
+    private fun textOf(row: Map<String, Any?>): String? {
+        return row["content"]?.toString() ?: row["message_text"]?.toString()
+    }
+
+    private fun isTrue(value: Any?): Boolean {
+        return value?.toString()?.toBooleanStrictOrNull() ?: false
+    }
+}
@@ -38,7 +38,9 @@ data class ChatAttachmentImpl(
     override val width: Int? = null,
     override val height: Int? = null,
     override val duration: Long? = null,
-    override val mimeType: String? = null
+    override val mimeType: String? = null,
+    override val waveform: List<Float>? = null,
+    override val blurHash: String? = null
 ) : ChatAttachment
 
 /**
@@ -98,18 +100,23 @@ data class TypingStatus(
     val userId: String,
     val chatId: String,
     val isTyping: Boolean,
-    val timestamp: Long = System.currentTimeMillis()
+    val timestamp: Long = System.currentTimeMillis(),
+    val heartbeatIntervalMs: Long? = null
 )
 
 /**
  * Read Receipt Event
+ *
+ * [readUpTo] is the reader's watermark: every message created at or before it counts as read,
+ * including ones not listed in [messageIds].
  */
 @Serializable
 data class ReadReceiptEvent(
     val chatId: String,
     val userId: String,
     val messageIds: List<String>,
-    val timestamp: Long = System.currentTimeMillis()
+    val timestamp: Long = System.currentTimeMillis(),
+    val readUpTo: Long? = null
 )
 
 /**
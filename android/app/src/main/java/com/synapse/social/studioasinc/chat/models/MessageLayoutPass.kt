@@ -0,0 +1,161 @@
+package com.synapse.social.studioasinc.chat.models
+
+import androidx.annotation.DimenRes
+import androidx.annotation.DrawableRes
+import com.synapse.social.studioasinc.ChatAdapter.MessagePosition
+import com.synapse.social.studioasinc.R
+import java.time.Instant
+import java.time.LocalDate
+import java.time.ZoneId
+import java.time.format.DateTimeFormatter
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * How a message bubble sits among its neighbours, decided once per list change.
+ *
+ * @property bubbleRes Bubble shape for the group position and direction
+ * @property spacingRes Top margin: tight inside a group, wide before a new one
+ */
+data class MessageLayout(
+    val position: MessagePosition,
+    val showTimestamp: Boolean,
+    val showUsername: Boolean,
+    @DrawableRes val bubbleRes: Int,
+    @DimenRes val spacingRes: Int,
+    val formattedTime: String
+) {
+    companion object {
+        /** Placeholder until [MessageLayoutPass] ran */
+        val PENDING = MessageLayout(MessagePosition.SINGLE, true, false, 0, 0, "")
+    }
+}
+
+/**
+ * Layout pass over the whole chat list: grouping, bubble shape, spacing, sender name and
+ * timestamp visibility, and formatted times. Runs on a background dispatcher after
+ * [ChatItemMapper] so binding only assigns precomputed values.
+ */
+object MessageLayoutPass {
+
+    /** Messages further apart than this show their own timestamp even inside a group */
+    private const val TIMESTAMP_GAP_MS = 60_000L
+
+    /**
+     * @param items Mapped items, oldest first
+     * @param isGroupChat Whether incoming messages show their sender's name
+     * @param now Reference time for "today" and "yesterday"
+     */
+    fun apply(
+        items: List<ChatItem>,
+        isGroupChat: Boolean,
+        now: Long = System.currentTimeMillis(),
+        zone: ZoneId = ZoneId.systemDefault()
+    ): List<ChatItem> {
+        val timeFormatter = MessageTimeFormatter(now, zone)
+        val groupable = BooleanArray(items.size) { i ->
+            val item = items[i]
+            item is ChatItem.Message && !item.isDeleted && item.senderId.isNotEmpty() &&
+                item.viewType != ChatItem.VIEW_TYPE_ERROR
+        }
+        fun groups(a: Int, b: Int): Boolean {
+            return groupable[a] && groupable[b] &&
+                (items[a] as ChatItem.Message).senderId == (items[b] as ChatItem.Message).senderId
+        }
+
+        return items.mapIndexed { i, item ->
+            if (item !is ChatItem.Message) return@mapIndexed item
+            val withPrevious = i > 0 && groups(i - 1, i)
+            val withNext = i < items.size - 1 && groups(i, i + 1)
+
+            val position = when {
+                withPrevious && withNext -> MessagePosition.MIDDLE
+                withPrevious -> MessagePosition.LAST
+                withNext -> MessagePosition.FIRST
+                else -> MessagePosition.SINGLE
+            }
+            // Inside a group only messages followed by a gap keep their timestamp
+            val showTimestamp = when (position) {
+                MessagePosition.FIRST, MessagePosition.MIDDLE -> {
+                    val next = items[i + 1] as ChatItem.Message
+                    kotlin.math.abs(next.timestamp - item.timestamp) > TIMESTAMP_GAP_MS
+                }
+                MessagePosition.SINGLE, MessagePosition.LAST -> true
+            }
+            val startsGroup = position == MessagePosition.SINGLE || position == MessagePosition.FIRST
+
+            item.copy(
+                layout = MessageLayout(
+                    position = position,
+                    showTimestamp = showTimestamp,
+                    showUsername = isGroupChat && !item.isMine && startsGroup,
+                    bubbleRes = bubbleShapeFor(position, item.isMine),
+                    spacingRes = if (startsGroup) R.dimen.message_spacing_ungrouped else R.dimen.message_spacing_grouped,
+                    formattedTime = timeFormatter.format(item.timestamp)
+                )
+            )
+        }
+    }
+
+    @DrawableRes
+    fun bubbleShapeFor(position: MessagePosition, isMine: Boolean): Int {
+        return when (position) {
+            MessagePosition.SINGLE -> if (isMine) R.drawable.shape_outgoing_message_single else R.drawable.shape_incoming_message_single
+            MessagePosition.FIRST -> if (isMine) R.drawable.shape_outgoing_message_first else R.drawable.shape_incoming_message_first
+            MessagePosition.MIDDLE -> if (isMine) R.drawable.shape_outgoing_message_middle else R.drawable.shape_incoming_message_middle
+            MessagePosition.LAST -> if (isMine) R.drawable.shape_outgoing_message_last else R.drawable.shape_incoming_message_last
+        }
+    }
+}
+
+/**
+ * Formats message times as "HH:mm", "Yesterday HH:mm" or "MMM dd, HH:mm" relative to [now].
+ *
+ * Day boundaries are computed once per instance and the thread-safe formatters are shared per
+ * locale, so formatting allocates nothing but the result. Messages sent in the same minute
+ * share one string.
+ */
+class MessageTimeFormatter(
+    now: Long,
+    private val zone: ZoneId = ZoneId.systemDefault(),
+    locale: Locale = Locale.getDefault()
+) {
+
+    private class Patterns(locale: Locale) {
+        val time: DateTimeFormatter = DateTimeFormatter.ofPattern("HH:mm", locale)
+        val date: DateTimeFormatter = DateTimeFormatter.ofPattern("MMM dd, HH:mm", locale)
+    }
+
+    companion object {
+        private const val MINUTE_MS = 60_000L
+        private val patternsByLocale = ConcurrentHashMap<Locale, Patterns>()
+    }
+
+    private val patterns = patternsByLocale.getOrPut(locale) { Patterns(locale) }
+    private val startOfToday: Long
+    private val startOfYesterday: Long
+    private val startOfTomorrow: Long
+    private val byMinute = HashMap<Long, String>()
+
+    init {
+        val today = Instant.ofEpochMilli(now).atZone(zone).toLocalDate()
+        startOfToday = startOf(today)
+        startOfYesterday = startOf(today.minusDays(1))
+        startOfTomorrow = startOf(today.plusDays(1))
+    }
+
+    fun format(timestamp: Long): String {
+        return byMinute.getOrPut(Math.floorDiv(timestamp, MINUTE_MS)) {
+            val time = Instant.ofEpochMilli(timestamp).atZone(zone)
+            when {
+                timestamp in startOfToday until startOfTomorrow -> patterns.time.format(time)
+                timestamp in startOfYesterday until startOfToday -> "Yesterday ${patterns.time.format(time)}"
+                else -> patterns.date.format(time)
+            }
+        }
+    }
+
+    private fun startOf(date: LocalDate): Long {
+        return date.atStartOfDay(zone).toInstant().toEpochMilli()
+    }
+}
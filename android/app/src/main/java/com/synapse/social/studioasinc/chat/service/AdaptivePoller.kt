@@ -0,0 +1,213 @@
+package com.synapse.social.studioasinc.chat.service
+
+import android.util.Log
+import androidx.lifecycle.DefaultLifecycleObserver
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.ProcessLifecycleOwner
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import kotlin.coroutines.coroutineContext
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Poll interval that backs off while nothing changes and snaps back on activity.
+ *
+ * @param minIntervalMs Interval right after activity
+ * @param maxIntervalMs Upper bound while idle
+ * @param backoffFactor Growth per idle poll
+ */
+class PollingBackoff(
+    private val minIntervalMs: Long = 3000L,
+    private val maxIntervalMs: Long = 60000L,
+    private val backoffFactor: Double = 1.5
+) {
+
+    @Volatile
+    var currentIntervalMs: Long = minIntervalMs
+        private set
+
+    /**
+     * Records the outcome of a poll and returns the delay before the next one.
+     *
+     * @param hadActivity Whether the poll found any change
+     */
+    fun next(hadActivity: Boolean): Long {
+        currentIntervalMs = if (hadActivity) {
+            minIntervalMs
+        } else {
+            (currentIntervalMs * backoffFactor).toLong().coerceAtMost(maxIntervalMs)
+        }
+        return currentIntervalMs
+    }
+
+    /**
+     * Returns to the shortest interval, e.g. when a chat starts polling or the app resumes.
+     */
+    fun reset() {
+        currentIntervalMs = minIntervalMs
+    }
+}
+
+/**
+ * One poll loop shared by every chat on polling fallback.
+ *
+ * Each tick hands the whole set of fallback chats to [poll] so it can batch its requests;
+ * the interval follows [PollingBackoff]. Polling pauses while the app is in the background
+ * (via [ProcessLifecycleOwner]) and resumes with an immediate poll when it returns.
+ *
+ * @param poll Polls the given chats and returns true if anything changed
+ */
+class AdaptivePoller(
+    private val backoff: PollingBackoff = PollingBackoff(),
+    private val poll: suspend (Set<String>) -> Boolean
+) : DefaultLifecycleObserver {
+
+    companion object {
+        private const val TAG = "AdaptivePoller"
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val chatIds = ConcurrentHashMap.newKeySet<String>()
+    private val foreground = MutableStateFlow(true)
+
+    // Bumped to cut the current backoff delay short
+    private val wakeUp = MutableStateFlow(0)
+
+    private var loopJob: Job? = null
+    private var observingLifecycle = false
+
+    /**
+     * Current delay between polls in milliseconds.
+     */
+    val currentIntervalMs: Long
+        get() = backoff.currentIntervalMs
+
+    /**
+     * Adds a chat to the combined poll and polls soon.
+     */
+    fun add(chatId: String) {
+        backoff.reset()
+        synchronized(this) {
+            chatIds.add(chatId)
+            ensureRunning()
+        }
+        wake()
+    }
+
+    /**
+     * Removes a chat from the combined poll. The loop stops when no chats remain.
+     */
+    fun remove(chatId: String) {
+        synchronized(this) {
+            chatIds.remove(chatId)
+            if (chatIds.isEmpty()) {
+                stop()
+            }
+        }
+    }
+
+    /**
+     * Whether a chat is part of the combined poll.
+     */
+    fun contains(chatId: String): Boolean = chatIds.contains(chatId)
+
+    /**
+     * Stops polling and forgets all chats.
+     */
+    fun stop() {
+        synchronized(this) {
+            chatIds.clear()
+            loopJob?.cancel()
+            loopJob = null
+            setLifecycleObserved(false)
+        }
+    }
+
+    override fun onStart(owner: LifecycleOwner) {
+        foreground.value = true
+        backoff.reset()
+        wake()
+    }
+
+    override fun onStop(owner: LifecycleOwner) {
+        foreground.value = false
+        Log.d(TAG, "App backgrounded, polling paused")
+    }
+
+    // Private helper methods
+
+    // Chats are added and the loop exits under the same lock, so a chat added while the loop
+    // is deciding to stop either keeps it going or starts a new one
+    private fun ensureRunning() {
+        synchronized(this) {
+            if (loopJob?.isActive == true) return
+            loopJob = scope.launch { runLoop() }
+            setLifecycleObserved(true)
+        }
+    }
+
+    private suspend fun runLoop() {
+        Log.i(TAG, "Polling started")
+        val self = coroutineContext[Job]
+        while (true) {
+            synchronized(this) {
+                if (chatIds.isEmpty()) {
+                    // A stopped loop may already have been replaced; leave the new one alone
+                    if (loopJob === self) {
+                        loopJob = null
+                        setLifecycleObserved(false)
+                    }
+                    Log.i(TAG, "Polling stopped")
+                    return
+                }
+            }
+
+            // Suspend while the app is in the background
+            foreground.first { it }
+
+            val hadActivity = try {
+                poll(chatIds.toSet())
+            } catch (e: Exception) {
+                Log.e(TAG, "Error during combined poll", e)
+                false
+            }
+
+            val delayMs = backoff.next(hadActivity)
+            val wakeCount = wakeUp.value
+            withTimeoutOrNull(delayMs) {
+                wakeUp.first { it != wakeCount }
+            }
+        }
+    }
+
+    private fun wake() {
+        wakeUp.update { it + 1 }
+    }
+
+    private fun setLifecycleObserved(observe: Boolean) {
+        synchronized(this) {
+            if (observingLifecycle == observe) return
+            observingLifecycle = observe
+            // Lifecycle observers must be added and removed on the main thread. Dispatched
+            // under the lock, so adds and removes run in the order they were decided.
+            scope.launch(Dispatchers.Main) {
+                val lifecycle = ProcessLifecycleOwner.get().lifecycle
+                if (observe) {
+                    foreground.value = lifecycle.currentState.isAtLeast(Lifecycle.State.STARTED)
+                    lifecycle.addObserver(this@AdaptivePoller)
+                } else {
+                    lifecycle.removeObserver(this@AdaptivePoller)
+                    foreground.value = true
+                }
+            }
+        }
+    }
+}
@@ -111,7 +111,6 @@ class DatabaseMaintenanceService(
             // Log the results
             Log.i(TAG, "Database maintenance completed successfully:")
             Log.i(TAG, "- Old records deleted: ${summary.oldRecordsDeleted}")
-            Log.i(TAG, "- Stale records updated: ${summary.staleRecordsUpdated}")
             Log.i(TAG, "- Duration: ${summary.durationMs}ms")
             
             // Return success with maintenance summary
@@ -119,7 +118,6 @@ class DatabaseMaintenanceService(
                 workDataOf(
                     "maintenance_performed" to true,
                     "old_records_deleted" to summary.oldRecordsDeleted,
-                    "stale_records_updated" to summary.staleRecordsUpdated,
                     "duration_ms" to summary.durationMs,
                     "timestamp" to summary.timestamp
                 )
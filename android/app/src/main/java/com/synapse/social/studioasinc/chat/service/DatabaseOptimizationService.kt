@@ -21,7 +21,6 @@ class DatabaseOptimizationService {
         private const val TAG = "DatabaseOptimizationService"
         private const val MAX_BATCH_SIZE = 100
         private const val TYPING_CLEANUP_THRESHOLD_MS = 3600000L // 1 hour
-        private const val STALE_TYPING_THRESHOLD_MS = 10000L // 10 seconds
     }
     
     private val supabase = SupabaseClient.client
@@ -62,7 +61,8 @@ class DatabaseOptimizationService {
                     )
                 )
                 
-                val updatedCount = result.data as? Int ?: 0
+                // The RPC returns its row count as a JSON number in the response body
+                val updatedCount = result.data.trim().toIntOrNull() ?: 0
                 totalUpdated += updatedCount
                 
                 Log.d(TAG, "Batch updated $updatedCount messages in this batch")
@@ -77,41 +77,10 @@ class DatabaseOptimizationService {
         }
     }
     
-    /**
-     * Upsert typing status efficiently using the optimized database function.
-     * 
-     * @param chatId Chat room identifier
-     * @param userId User identifier
-     * @param isTyping Whether the user is currently typing
-     */
-    suspend fun upsertTypingStatus(
-        chatId: String,
-        userId: String,
-        isTyping: Boolean
-    ): Unit = withContext(Dispatchers.IO) {
-        try {
-            Log.d(TAG, "Upserting typing status - chatId: $chatId, userId: $userId, isTyping: $isTyping")
-            
-            supabase.postgrest.rpc(
-                function = "upsert_typing_status",
-                parameters = TypingStatusParams(
-                    p_chat_id = chatId,
-                    p_user_id = userId,
-                    p_is_typing = isTyping
-                )
-            )
-            
-            Log.d(TAG, "Successfully upserted typing status")
-            
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to upsert typing status", e)
-            throw e
-        }
-    }
-    
     /**
      * Clean up old typing status records to prevent table bloat.
-     * Removes records older than 1 hour.
+     * Removes records older than 1 hour. Typing state is now broadcast-only, so this only
+     * drains rows written by older app versions.
      * 
      * @return Number of records cleaned up
      */
@@ -123,7 +92,7 @@ class DatabaseOptimizationService {
                 function = "cleanup_old_typing_status"
             )
             
-            val deletedCount = result.data as? Int ?: 0
+            val deletedCount = result.data.trim().toIntOrNull() ?: 0
             
             if (deletedCount > 0) {
                 Log.i(TAG, "Cleaned up $deletedCount old typing status records")
@@ -139,36 +108,6 @@ class DatabaseOptimizationService {
         }
     }
     
-    /**
-     * Clean up stale typing indicators (older than 10 seconds).
-     * Sets is_typing to false for stale records.
-     * 
-     * @return Number of records updated
-     */
-    suspend fun cleanupStaleTypingStatus(): Int = withContext(Dispatchers.IO) {
-        try {
-            Log.d(TAG, "Cleaning up stale typing status records")
-            
-            val result = supabase.postgrest.rpc(
-                function = "cleanup_stale_typing_status"
-            )
-            
-            val updatedCount = result.data as? Int ?: 0
-            
-            if (updatedCount > 0) {
-                Log.i(TAG, "Cleaned up $updatedCount stale typing indicators")
-            } else {
-                Log.v(TAG, "No stale typing indicators to clean up")
-            }
-            
-            updatedCount
-            
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to clean up stale typing status", e)
-            throw e
-        }
-    }
-    
     /**
      * Get message state statistics for performance monitoring.
      * 
@@ -231,7 +170,7 @@ class DatabaseOptimizationService {
     
     /**
      * Perform routine maintenance tasks for optimal performance.
-     * This includes cleaning up old and stale typing status records.
+     * This includes cleaning up old typing status records.
      * 
      * @return Maintenance summary
      */
@@ -244,14 +183,10 @@ class DatabaseOptimizationService {
             // Clean up old typing status records
             val oldRecordsDeleted = cleanupOldTypingStatus()
             
-            // Clean up stale typing indicators
-            val staleRecordsUpdated = cleanupStaleTypingStatus()
-            
             val duration = System.currentTimeMillis() - startTime
             
             val summary = MaintenanceSummary(
                 oldRecordsDeleted = oldRecordsDeleted,
-                staleRecordsUpdated = staleRecordsUpdated,
                 durationMs = duration,
                 timestamp = System.currentTimeMillis()
             )
@@ -302,13 +237,6 @@ data class BatchUpdateParams(
     val user_id: String? = null
 )
 
-@Serializable
-data class TypingStatusParams(
-    val p_chat_id: String,
-    val p_user_id: String,
-    val p_is_typing: Boolean
-)
-
 // Data classes for statistics
 
 @Serializable
@@ -332,7 +260,6 @@ data class TypingActivityStats(
 @Serializable
 data class MaintenanceSummary(
     val oldRecordsDeleted: Int,
-    val staleRecordsUpdated: Int,
     val durationMs: Long,
     val timestamp: Long
 )
\ No newline at end of file
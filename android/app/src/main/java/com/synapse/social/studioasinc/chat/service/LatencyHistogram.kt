@@ -0,0 +1,138 @@
+package com.synapse.social.studioasinc.chat.service
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import kotlin.math.ceil
+
+/**
+ * Fixed-bucket latency histogram in the style of HdrHistogram.
+ *
+ * Values below [SUB_BUCKETS] ms get a bucket each; above that every power of two is split into
+ * [SUB_BUCKETS] linear buckets, so any recorded value is reported within ~6% of its true value.
+ * Recording is a single atomic increment and never allocates or locks, so it is safe to call
+ * from any thread on the realtime hot path.
+ */
+class LatencyHistogram {
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 4
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS // 16 buckets per power of two
+        private const val MAX_EXPONENT = 24 // Values are clamped to ~2^25 ms (about 9 hours)
+        private const val BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+
+        /**
+         * Bucket index for a latency value in milliseconds.
+         */
+        internal fun indexOf(valueMs: Long): Int {
+            if (valueMs < SUB_BUCKETS) return valueMs.coerceAtLeast(0L).toInt()
+            val exponent = 63 - java.lang.Long.numberOfLeadingZeros(valueMs)
+            if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1
+            val shift = exponent - SUB_BUCKET_BITS
+            val subBucket = (valueMs shr shift).toInt() - SUB_BUCKETS
+            return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket
+        }
+
+        /**
+         * Largest value that falls into a bucket. Percentiles report this bound so tail
+         * latency is never understated.
+         */
+        internal fun upperBoundOf(index: Int): Long {
+            if (index < SUB_BUCKETS) return index.toLong()
+            val shift = (index - SUB_BUCKETS) / SUB_BUCKETS
+            val subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS
+            val lowerBound = (SUB_BUCKETS + subBucket).toLong() shl shift
+            return lowerBound + (1L shl shift) - 1
+        }
+    }
+
+    private val counts = AtomicLongArray(BUCKET_COUNT)
+    private val totalCount = AtomicLong(0L)
+    private val totalSum = AtomicLong(0L)
+    private val maxValue = AtomicLong(0L)
+
+    /**
+     * Number of recorded values.
+     */
+    val count: Long
+        get() = totalCount.get()
+
+    /**
+     * Record one latency value in milliseconds. Negative values are recorded as 0.
+     */
+    fun record(valueMs: Long) {
+        val value = valueMs.coerceAtLeast(0L)
+        counts.incrementAndGet(indexOf(value))
+        totalCount.incrementAndGet()
+        totalSum.addAndGet(value)
+        maxValue.accumulateAndGet(value) { current, new -> maxOf(current, new) }
+    }
+
+    /**
+     * Value at the given percentile, e.g. 0.99 for p99. Returns 0 when nothing was recorded.
+     *
+     * Concurrent recording may shift the result by the values recorded during the scan.
+     */
+    fun percentile(percentile: Double): Long {
+        val total = totalCount.get()
+        if (total == 0L) return 0L
+
+        val rank = ceil(percentile.coerceIn(0.0, 1.0) * total).toLong().coerceAtLeast(1L)
+        var seen = 0L
+        for (index in 0 until BUCKET_COUNT) {
+            seen += counts.get(index)
+            if (seen >= rank) {
+                return minOf(upperBoundOf(index), maxValue.get())
+            }
+        }
+        return maxValue.get()
+    }
+
+    /**
+     * Mean of all recorded values in milliseconds.
+     */
+    fun mean(): Long {
+        val total = totalCount.get()
+        return if (total > 0) totalSum.get() / total else 0L
+    }
+
+    /**
+     * Largest recorded value in milliseconds.
+     */
+    fun max(): Long = maxValue.get()
+
+    /**
+     * Summary used by [MetricsSnapshot].
+     */
+    fun toPercentiles(): LatencyPercentiles {
+        return LatencyPercentiles(
+            count = count,
+            p50 = percentile(0.50),
+            p95 = percentile(0.95),
+            p99 = percentile(0.99),
+            max = max()
+        )
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    fun reset() {
+        for (index in 0 until BUCKET_COUNT) {
+            counts.set(index, 0L)
+        }
+        totalCount.set(0L)
+        totalSum.set(0L)
+        maxValue.set(0L)
+    }
+}
+
+/**
+ * Latency percentiles for one event type, in milliseconds.
+ */
+data class LatencyPercentiles(
+    val count: Long = 0L,
+    val p50: Long = 0L,
+    val p95: Long = 0L,
+    val p99: Long = 0L,
+    val max: Long = 0L
+)
@@ -0,0 +1,198 @@
+package com.synapse.social.studioasinc.chat.service
+
+import android.content.Context
+import android.util.Log
+import com.synapse.social.studioasinc.LinkPreviewUtil
+import com.synapse.social.studioasinc.data.local.AppDatabase
+import com.synapse.social.studioasinc.data.local.LinkPreviewDao
+import com.synapse.social.studioasinc.data.local.LinkPreviewEntity
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+
+/**
+ * Link previews shared by every chat screen.
+ *
+ * Lookups go memory, then the link_previews table, then the network. Concurrent requests for
+ * one URL share a single fetch, fetches are limited to [MAX_CONCURRENT_FETCHES] at a time, and
+ * pages without a usable preview are remembered for [FAILURE_TTL_MS] so they aren't retried on
+ * every bind. Only definitive failures are stored; network errors are kept in memory alone.
+ * Fetches run in the service's own scope: a caller that stops waiting, e.g. a recycled view,
+ * doesn't cancel a fetch other callers or the cache still want.
+ */
+class LinkPreviewService internal constructor(
+    private val dao: LinkPreviewDao?,
+    private val fetcher: suspend (String) -> Result<LinkPreviewUtil.LinkData>,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+
+    companion object {
+        private const val TAG = "LinkPreviewService"
+        private const val MEMORY_CACHE_SIZE = 200
+        private const val MAX_CONCURRENT_FETCHES = 4
+        const val PREVIEW_TTL_MS = 7 * 24 * 60 * 60 * 1000L
+        const val FAILURE_TTL_MS = 60 * 60 * 1000L
+
+        @Volatile
+        private var INSTANCE: LinkPreviewService? = null
+
+        /**
+         * Get singleton instance of LinkPreviewService.
+         * Always uses application context.
+         */
+        fun getInstance(context: Context): LinkPreviewService {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: LinkPreviewService(
+                    AppDatabase.getDatabase(context.applicationContext).linkPreviewDao(),
+                    LinkPreviewUtil::fetchPreview
+                ).also {
+                    INSTANCE = it
+                    it.pruneExpired()
+                }
+            }
+        }
+    }
+
+    /**
+     * A lookup result; [data] is null when the page had no usable preview.
+     */
+    private class Entry(val data: LinkPreviewUtil.LinkData?, val fetchedAt: Long)
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val fetchPermits = Semaphore(MAX_CONCURRENT_FETCHES)
+
+    // Access-ordered, so the eldest entry is the least recently used
+    private val memory = object : LinkedHashMap<String, Entry>(64, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>): Boolean {
+            return size > MEMORY_CACHE_SIZE
+        }
+    }
+    private val inFlight = HashMap<String, Deferred<Entry>>()
+
+    /**
+     * Preview already in memory, for binding without suspending.
+     */
+    fun peek(url: String): LinkPreviewUtil.LinkData? {
+        return fresh(url)?.data
+    }
+
+    /**
+     * Whether [url] is known to have no usable preview.
+     */
+    fun isKnownFailure(url: String): Boolean {
+        val entry = fresh(url) ?: return false
+        return entry.data == null
+    }
+
+    /**
+     * Preview for [url], loading it if needed.
+     *
+     * @return null if the page has no usable preview or couldn't be fetched
+     */
+    suspend fun get(url: String): LinkPreviewUtil.LinkData? {
+        fresh(url)?.let { return it.data }
+        return load(url).await().data
+    }
+
+    /**
+     * Starts loading previews so they are ready before their bubbles are bound, e.g. when
+     * messages arrive.
+     */
+    fun prefetch(urls: Collection<String>) {
+        urls.forEach { url ->
+            if (fresh(url) == null) load(url)
+        }
+    }
+
+    // Private helper methods
+
+    private fun fresh(url: String): Entry? {
+        val entry = synchronized(memory) { memory[url] } ?: return null
+        return entry.takeIf { !isExpired(it) }
+    }
+
+    private fun isExpired(entry: Entry): Boolean {
+        val ttl = if (entry.data != null) PREVIEW_TTL_MS else FAILURE_TTL_MS
+        return clock() - entry.fetchedAt > ttl
+    }
+
+    private fun load(url: String): Deferred<Entry> {
+        synchronized(inFlight) {
+            inFlight[url]?.let { return it }
+            // Registered before it starts, so completion always finds its own entry to remove
+            val deferred = scope.async(start = CoroutineStart.LAZY) {
+                try {
+                    val entry = stored(url) ?: fetch(url)
+                    synchronized(memory) { memory[url] = entry }
+                    entry
+                } finally {
+                    synchronized(inFlight) { inFlight.remove(url) }
+                }
+            }
+            inFlight[url] = deferred
+            deferred.start()
+            return deferred
+        }
+    }
+
+    private suspend fun stored(url: String): Entry? {
+        val row = try {
+            dao?.getByUrl(url)
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to read cached preview", e)
+            null
+        } ?: return null
+
+        val data = if (row.failed) null else LinkPreviewUtil.LinkData(row.url, row.title, row.description, row.imageUrl, row.domain)
+        return Entry(data, row.fetchedAt).takeIf { !isExpired(it) }
+    }
+
+    /**
+     * Fetches [url]. Previews and definitive failures are stored; a failure that may not recur,
+     * like a timeout, is only remembered in memory, so the next start fetches it again.
+     */
+    private suspend fun fetch(url: String): Entry {
+        val result = fetchPermits.withPermit { fetcher(url) }
+        val data = result.getOrNull()
+        val entry = Entry(data, clock())
+        val error = result.exceptionOrNull()
+        if (error != null && !LinkPreviewUtil.isDefinitiveFailure(error)) {
+            Log.w(TAG, "Preview fetch failed, not caching: ${error.message}")
+            return entry
+        }
+        dao?.let { dao ->
+            try {
+                dao.insert(
+                    LinkPreviewEntity(
+                        url = url,
+                        title = data?.title,
+                        description = data?.description,
+                        imageUrl = data?.imageUrl,
+                        domain = data?.domain,
+                        failed = data == null,
+                        fetchedAt = entry.fetchedAt
+                    )
+                )
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to store preview", e)
+            }
+        }
+        return entry
+    }
+
+    private fun pruneExpired() {
+        scope.launch {
+            try {
+                dao?.deleteOlderThan(clock() - PREVIEW_TTL_MS)
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to prune previews", e)
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.util.Log
 import com.synapse.social.studioasinc.backend.StorageException
 import com.synapse.social.studioasinc.backend.SupabaseStorageService
 import com.synapse.social.studioasinc.util.MediaCache
+import com.synapse.social.studioasinc.util.NetworkPolicyEngine
 import kotlinx.coroutines.*
 import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.flow.Flow
@@ -21,6 +22,7 @@ import java.util.concurrent.atomic.AtomicInteger
  * - Downloads media files with automatic caching
  * - Limits concurrent downloads to 5 maximum
  * - Preloads adjacent images for smooth gallery navigation
+ * - Defers preloading while the network policy disallows prefetch
  * - Checks cache before downloading
  * - Supports thumbnail downloads
  */
@@ -36,15 +38,36 @@ class MediaDownloadManager(
         private const val MAX_CONCURRENT_DOWNLOADS = 5
         private const val PRELOAD_COUNT = 3 // Preload next 3 images
         private const val DOWNLOAD_TIMEOUT_MS = 30000L // 30 seconds
+        private const val MAX_DEFERRED_PRELOADS = 20 // Older deferred preloads are likely stale
     }
     
     private val activeDownloads = AtomicInteger(0)
     private val downloadQueue = Channel<DownloadTask>(Channel.UNLIMITED)
     private val preloadJobs = ConcurrentHashMap<String, Job>()
     
+    private val networkPolicyEngine = NetworkPolicyEngine.getInstance(context)
+    
+    // Preloads held back while prefetch is disabled, newest last
+    private val deferredPreloads = LinkedHashSet<String>()
+    
     init {
         // Start download workers
         startDownloadWorkers()
+        
+        // Replay deferred preloads once the network policy allows prefetch again
+        coroutineScope.launch {
+            networkPolicyEngine.policy.collect { policy ->
+                if (policy.prefetchEnabled) {
+                    val deferred = synchronized(deferredPreloads) {
+                        deferredPreloads.toList().also { deferredPreloads.clear() }
+                    }
+                    if (deferred.isNotEmpty()) {
+                        Log.d(TAG, "Prefetch allowed again, replaying ${deferred.size} deferred preloads")
+                        preloadMedia(deferred)
+                    }
+                }
+            }
+        }
     }
     
     /**
@@ -144,6 +167,21 @@ class MediaDownloadManager(
             return
         }
         
+        if (!networkPolicyEngine.currentPolicy.prefetchEnabled) {
+            Log.d(TAG, "Prefetch disabled by network policy, deferring ${urls.size} preloads")
+            synchronized(deferredPreloads) {
+                urls.forEach { url ->
+                    // Re-adding moves the URL to the newest position
+                    deferredPreloads.remove(url)
+                    deferredPreloads.add(url)
+                }
+                while (deferredPreloads.size > MAX_DEFERRED_PRELOADS) {
+                    deferredPreloads.remove(deferredPreloads.first())
+                }
+            }
+            return
+        }
+        
         Log.d(TAG, "Preloading ${urls.size} media files")
         
         urls.forEach { url ->
@@ -213,6 +251,10 @@ class MediaDownloadManager(
         }
         
         preloadJobs.clear()
+        
+        synchronized(deferredPreloads) {
+            deferredPreloads.clear()
+        }
     }
     
     /**
@@ -262,8 +304,8 @@ class MediaDownloadManager(
                 // Create temporary file
                 val tempFile = createTempFile(mediaType, fileBytes)
                 
-                // Cache the file
-                mediaCache.put(url, tempFile)
+                // Cache the file under its media category quota
+                mediaCache.put(url, tempFile, MediaCache.Category.fromMediaType(mediaType))
                 
                 // Return cached file
                 val cachedFile = mediaCache.get(url)
@@ -307,7 +349,7 @@ class MediaDownloadManager(
                 
                 // Cache with thumbnail-specific key
                 val thumbnailCacheKey = "thumb_$url"
-                mediaCache.put(thumbnailCacheKey, tempFile)
+                mediaCache.put(thumbnailCacheKey, tempFile, MediaCache.Category.IMAGE)
                 
                 // Return cached file
                 val cachedFile = mediaCache.get(thumbnailCacheKey)
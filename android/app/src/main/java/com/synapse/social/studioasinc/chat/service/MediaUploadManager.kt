@@ -5,11 +5,14 @@ import android.graphics.BitmapFactory
 import android.media.MediaMetadataRetriever
 import android.net.Uri
 import android.webkit.MimeTypeMap
+import com.synapse.social.studioasinc.audio.WaveformCache
+import com.synapse.social.studioasinc.audio.WaveformExtractor
 import com.synapse.social.studioasinc.backend.SupabaseStorageService
 import com.synapse.social.studioasinc.model.models.MediaMetadata
 import com.synapse.social.studioasinc.model.models.MediaUploadResult
 import com.synapse.social.studioasinc.model.models.UploadProgress
 import com.synapse.social.studioasinc.model.models.UploadState
+import com.synapse.social.studioasinc.util.BlurHash
 import com.synapse.social.studioasinc.util.ImageCompressor
 import com.synapse.social.studioasinc.util.ThumbnailGenerator
 import kotlinx.coroutines.CoroutineScope
@@ -25,6 +28,7 @@ import kotlinx.coroutines.withContext
 import java.io.File
 import java.util.UUID
 import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.roundToInt
 
 /**
  * MediaUploadManager orchestrates file uploads with compression, thumbnail generation, and progress tracking.
@@ -70,6 +74,8 @@ class MediaUploadManager(
         )
     }
     
+    private val waveformExtractor = WaveformExtractor(context)
+    
     // Upload queue and progress tracking
     private val uploadQueue = Channel<UploadTask>(Channel.UNLIMITED)
     private val activeUploads = ConcurrentHashMap<String, UploadTask>()
@@ -146,7 +152,6 @@ class MediaUploadManager(
                 }
             }.getOrElse { 
                     compressedFile.delete()
-                    thumbnailFile.delete()
                     emitProgress(uploadId, metadata.fileName, 0.0f, 0L, metadata.fileSize, UploadState.FAILED, it.message)
                     return@withContext Result.failure(it) 
                 }
@@ -168,9 +173,11 @@ class MediaUploadManager(
                 // Get image dimensions from compressed file
                 val dimensions = getImageDimensions(compressedFile)
                 
-                // Clean up temporary files
+                // Blurhash from the thumbnail, shown by receivers before the image loads
+                val blurHash = BlurHash.encode(thumbnailFile)
+                
+                // Clean up the upload copy; the thumbnail stays in the thumbnail cache
                 compressedFile.delete()
-                thumbnailFile.delete()
                 
                 emitProgress(uploadId, metadata.fileName, 1.0f, metadata.fileSize, metadata.fileSize, UploadState.COMPLETED)
                 
@@ -181,7 +188,8 @@ class MediaUploadManager(
                     fileSize = compressedFile.length(),
                     mimeType = metadata.mimeType,
                     width = dimensions?.first,
-                    height = dimensions?.second
+                    height = dimensions?.second,
+                    blurHash = blurHash
                 )
                 
                 Result.success(result)
@@ -222,7 +230,6 @@ class MediaUploadManager(
                 // Copy video file to temp location for upload
                 val videoFile = copyUriToTempFile(uri, "video_${UUID.randomUUID()}")
                     .getOrElse { 
-                        thumbnailFile.delete()
                         emitProgress(uploadId, metadata.fileName, 0.0f, 0L, metadata.fileSize, UploadState.FAILED, it.message)
                         return@withContext Result.failure(it) 
                     }
@@ -237,7 +244,6 @@ class MediaUploadManager(
                     }
                 }.getOrElse { 
                     videoFile.delete()
-                    thumbnailFile.delete()
                     emitProgress(uploadId, metadata.fileName, 0.0f, 0L, metadata.fileSize, UploadState.FAILED, it.message)
                     return@withContext Result.failure(it) 
                 }
@@ -258,10 +264,10 @@ class MediaUploadManager(
                 
                 // Get video metadata
                 val videoMetadata = getVideoMetadata(uri)
+                val blurHash = BlurHash.encode(thumbnailFile)
                 
-                // Clean up temporary files
+                // Clean up the upload copy; the thumbnail stays in the thumbnail cache
                 videoFile.delete()
-                thumbnailFile.delete()
                 
                 emitProgress(uploadId, metadata.fileName, 1.0f, metadata.fileSize, metadata.fileSize, UploadState.COMPLETED)
                 
@@ -273,7 +279,8 @@ class MediaUploadManager(
                     mimeType = metadata.mimeType,
                     width = videoMetadata?.width,
                     height = videoMetadata?.height,
-                    duration = videoMetadata?.duration
+                    duration = videoMetadata?.duration,
+                    blurHash = blurHash
                 )
                 
                 Result.success(result)
@@ -310,6 +317,9 @@ class MediaUploadManager(
                         return@withContext Result.failure(it) 
                     }
                 
+                // Extract the waveform once here so receivers never have to decode the audio
+                val waveform = waveformExtractor.extract(uri).getOrNull()
+                
                 // Upload audio file
                 val mainPath = storageService.generateStoragePath(chatId, metadata.fileName)
                 val mainUrl = storageService.uploadFile(audioFile, mainPath) { progress ->
@@ -326,6 +336,9 @@ class MediaUploadManager(
                 // Get audio metadata
                 val audioMetadata = getAudioMetadata(uri)
                 
+                // Seed the waveform cache under the uploaded URL for the sender's own bubble
+                waveform?.let { WaveformCache.getInstance(context).put(mainUrl, it) }
+                
                 // Clean up temporary file
                 audioFile.delete()
                 
@@ -337,7 +350,8 @@ class MediaUploadManager(
                     fileName = metadata.fileName,
                     fileSize = metadata.fileSize,
                     mimeType = metadata.mimeType,
-                    duration = audioMetadata?.duration
+                    duration = audioMetadata?.duration,
+                    waveform = waveform?.map { (it * 100).roundToInt() / 100f }
                 )
                 
                 Result.success(result)
@@ -467,11 +481,22 @@ class MediaUploadManager(
             }
         }
         
-        // Queue tasks for processing
+        // Queue tasks for processing right away
         for (task in tasks) {
             uploadQueue.trySend(task)
         }
         
+        // Warm the thumbnail cache for the rest of the selection alongside, so workers
+        // reaching later files find their thumbnails ready
+        val thumbnailUris = tasks
+            .filter { it.mediaType == MediaType.IMAGE || it.mediaType == MediaType.VIDEO }
+            .map { it.uri }
+        if (thumbnailUris.size > 1) {
+            coroutineScope.launch {
+                thumbnailGenerator.generateThumbnails(thumbnailUris)
+            }
+        }
+        
         // Collect progress updates from the shared flow
         progressFlow.collect { progress ->
             if (tasks.any { it.uploadId == progress.uploadId }) {
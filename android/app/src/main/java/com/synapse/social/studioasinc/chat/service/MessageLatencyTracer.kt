@@ -0,0 +1,240 @@
+package com.synapse.social.studioasinc.chat.service
+
+import android.content.Context
+import android.util.Log
+import com.synapse.social.studioasinc.util.ConnectionMonitor
+import com.synapse.social.studioasinc.util.NetworkPolicyEngine
+import kotlinx.serialization.json.JsonObjectBuilder
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.put
+import kotlinx.serialization.json.putJsonObject
+import java.time.OffsetDateTime
+import java.time.format.DateTimeParseException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Stages of a message's trip that the tracer measures, all from the sender's client send time
+ * except [PEER_DELIVERY].
+ */
+enum class DeliveryStage(val key: String) {
+    /** Send until the insert returned from the server */
+    SERVER_ACK("server_ack"),
+
+    /** Send until our own message came back over realtime; a skew-free stand-in for delivery */
+    ECHO("echo"),
+
+    /**
+     * Peer message created_at until it arrived here over realtime. Crosses two clocks, so it
+     * includes clock skew and the second-level precision of created_at.
+     */
+    PEER_DELIVERY("peer_delivery"),
+
+    /** Send until a read receipt for the message arrived */
+    READ("read")
+}
+
+/**
+ * Local store of end-to-end message delivery latency.
+ *
+ * Each sent message is traced by its message ID, which the client generates before the insert.
+ * The realtime receive path and incoming read receipts close out the later stages. Latencies go
+ * into [LatencyHistogram]s per chat and per network type (from [ConnectionMonitor]), and
+ * [exportJson] dumps the percentiles for offline analysis.
+ *
+ * @param clock Time source in epoch milliseconds
+ */
+class MessageLatencyTracer internal constructor(
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+
+    companion object {
+        private const val TAG = "MessageLatencyTracer"
+        private const val MAX_OPEN_TRACES = 500
+        private const val NETWORK_UNKNOWN = "UNKNOWN"
+        private val SHORT_OFFSET = Regex("[+-]\\d{2}$")
+
+        @Volatile
+        private var INSTANCE: MessageLatencyTracer? = null
+
+        fun getInstance(): MessageLatencyTracer {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: MessageLatencyTracer().also { INSTANCE = it }
+            }
+        }
+
+        /**
+         * Parses a message timestamp as stored by [SupabaseChatService.sendMessage] (epoch
+         * seconds) or as returned by Postgres (ISO-8601), into epoch milliseconds.
+         */
+        internal fun parseTimestampMs(value: String?): Long? {
+            if (value.isNullOrEmpty() || value == "null") return null
+            value.toLongOrNull()?.let { return it * 1000 }
+            // Postgres may render "2024-01-01 12:00:00+00"; normalise to ISO-8601
+            val iso = value.replace(' ', 'T').let { if (SHORT_OFFSET.containsMatchIn(it)) "$it:00" else it }
+            return try {
+                OffsetDateTime.parse(iso).toInstant().toEpochMilli()
+            } catch (e: DateTimeParseException) {
+                null
+            }
+        }
+    }
+
+    /**
+     * A sent message awaiting its later stages.
+     *
+     * @property traceId The message ID
+     */
+    private data class Trace(
+        val traceId: String,
+        val chatId: String,
+        val sentAt: Long,
+        val networkType: String
+    )
+
+    // Open traces by message ID, oldest evicted first
+    private val openTraces = object : LinkedHashMap<String, Trace>(16, 0.75f, false) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Trace>?): Boolean {
+            return size > MAX_OPEN_TRACES
+        }
+    }
+
+    private val byChat = ConcurrentHashMap<String, ConcurrentHashMap<DeliveryStage, LatencyHistogram>>()
+    private val byNetwork = ConcurrentHashMap<String, ConcurrentHashMap<DeliveryStage, LatencyHistogram>>()
+
+    @Volatile
+    private var connectionMonitor: ConnectionMonitor? = null
+
+    /**
+     * Starts tagging samples with the current network type, using the process-wide monitor
+     * owned by [NetworkPolicyEngine].
+     */
+    fun attachConnectionMonitor(context: Context) {
+        if (connectionMonitor == null) {
+            connectionMonitor = NetworkPolicyEngine.getInstance(context).connectionMonitor
+        }
+    }
+
+    /**
+     * Records the client send time of a message.
+     *
+     * @param messageId Client-generated message ID, used as the trace ID
+     * @param sentAt Client time the send started
+     */
+    fun onSend(messageId: String, chatId: String, sentAt: Long = clock()) {
+        synchronized(openTraces) {
+            openTraces[messageId] = Trace(messageId, chatId, sentAt, currentNetworkType())
+        }
+    }
+
+    /**
+     * Records that the server accepted the insert.
+     */
+    fun onServerAck(messageId: String) {
+        val trace = synchronized(openTraces) { openTraces[messageId] } ?: return
+        record(DeliveryStage.SERVER_ACK, trace.chatId, trace.networkType, clock() - trace.sentAt)
+    }
+
+    /**
+     * Drops the trace of a message that failed to send.
+     */
+    fun onSendFailed(messageId: String) {
+        synchronized(openTraces) { openTraces.remove(messageId) }
+    }
+
+    /**
+     * Records a message insert arriving over realtime.
+     *
+     * @param row The inserted row, in the shape of [MessageSyncTracker.recordOf]
+     */
+    fun onMessageArrived(chatId: String, row: Map<String, Any?>) {
+        val messageId = row["id"]?.toString() ?: return
+        val now = clock()
+        val trace = synchronized(openTraces) { openTraces[messageId] }
+
+        if (trace != null) {
+            record(DeliveryStage.ECHO, chatId, trace.networkType, now - trace.sentAt)
+        } else {
+            val createdAt = parseTimestampMs(row["created_at"]?.toString()) ?: return
+            record(DeliveryStage.PEER_DELIVERY, chatId, currentNetworkType(), now - createdAt)
+        }
+    }
+
+    /**
+     * Records read receipts from another user for messages we sent, closing their traces.
+     */
+    fun onReadReceipt(chatId: String, messageIds: Collection<String>) {
+        val now = clock()
+        val traces = synchronized(openTraces) {
+            messageIds.mapNotNull { openTraces.remove(it) }
+        }
+        traces.forEach { trace ->
+            record(DeliveryStage.READ, chatId, trace.networkType, now - trace.sentAt)
+        }
+    }
+
+    /**
+     * Percentiles per stage for one chat.
+     */
+    fun getChatReport(chatId: String): Map<DeliveryStage, LatencyPercentiles> {
+        return byChat[chatId]?.mapValues { (_, histogram) -> histogram.toPercentiles() } ?: emptyMap()
+    }
+
+    /**
+     * Percentiles per stage for one network type, e.g. "WIFI" or "CELLULAR".
+     */
+    fun getNetworkReport(networkType: String): Map<DeliveryStage, LatencyPercentiles> {
+        return byNetwork[networkType]?.mapValues { (_, histogram) -> histogram.toPercentiles() } ?: emptyMap()
+    }
+
+    /**
+     * Exports all percentiles as JSON, grouped by chat and by network type.
+     */
+    fun exportJson(): String {
+        return buildJsonObject {
+            put("exported_at", clock())
+            putJsonObject("by_chat") { putGroups(byChat) }
+            putJsonObject("by_network") { putGroups(byNetwork) }
+        }.toString()
+    }
+
+    /**
+     * Clears all recorded samples and open traces.
+     */
+    fun reset() {
+        synchronized(openTraces) { openTraces.clear() }
+        byChat.clear()
+        byNetwork.clear()
+        Log.i(TAG, "Latency traces reset")
+    }
+
+    // Private helper methods
+
+    private fun record(stage: DeliveryStage, chatId: String, networkType: String, latencyMs: Long) {
+        // Clock skew can make cross-device latency negative; the histogram records those as 0
+        byChat.getOrPut(chatId) { ConcurrentHashMap() }.getOrPut(stage) { LatencyHistogram() }.record(latencyMs)
+        byNetwork.getOrPut(networkType) { ConcurrentHashMap() }.getOrPut(stage) { LatencyHistogram() }.record(latencyMs)
+    }
+
+    private fun currentNetworkType(): String {
+        return connectionMonitor?.connectionInfo?.value?.type?.name ?: NETWORK_UNKNOWN
+    }
+
+    private fun JsonObjectBuilder.putGroups(
+        groups: Map<String, Map<DeliveryStage, LatencyHistogram>>
+    ) {
+        groups.forEach { (group, stages) ->
+            putJsonObject(group) {
+                stages.forEach { (stage, histogram) ->
+                    val latency = histogram.toPercentiles()
+                    putJsonObject(stage.key) {
+                        put("count", latency.count)
+                        put("p50", latency.p50)
+                        put("p95", latency.p95)
+                        put("p99", latency.p99)
+                        put("max", latency.max)
+                    }
+                }
+            }
+        }
+    }
+}
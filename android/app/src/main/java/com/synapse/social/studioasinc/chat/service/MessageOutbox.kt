@@ -0,0 +1,426 @@
+package com.synapse.social.studioasinc.chat.service
+
+import android.content.Context
+import android.util.Log
+import com.synapse.social.studioasinc.backend.SupabaseChatService
+import com.synapse.social.studioasinc.data.local.AppDatabase
+import com.synapse.social.studioasinc.data.repository.ChatRepository
+import com.synapse.social.studioasinc.model.Message
+import com.synapse.social.studioasinc.model.MessageDeliveryStatus
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.builtins.ListSerializer
+import kotlinx.serialization.json.Json
+import java.io.File
+import java.util.UUID
+
+/**
+ * A message waiting in the outbox, identified by the client-generated ID that also becomes
+ * its row ID on the server.
+ *
+ * @property createdAt Client time the user pressed send, in epoch milliseconds
+ * @property attempt Failed send attempts so far
+ */
+@Serializable
+data class OutboxEntry(
+    val clientId: String,
+    val chatId: String,
+    val senderId: String,
+    val content: String,
+    val messageType: String = "text",
+    val replyToId: String? = null,
+    val createdAt: Long,
+    val attempt: Int = 0,
+    val state: State = State.PENDING,
+    val sentAt: Long = 0L
+) {
+
+    enum class State {
+        /** Waiting for its turn in the chat's queue */
+        PENDING,
+
+        /** Insert in flight */
+        SENDING,
+
+        /** Stored on the server; kept until the realtime echo replaces it */
+        SENT,
+
+        /** Gave up after the maximum attempts; waits for a manual retry */
+        FAILED
+    }
+
+    /**
+     * Delivery status for rendering the entry as a message.
+     */
+    val deliveryStatus: MessageDeliveryStatus
+        get() = when (state) {
+            State.PENDING, State.SENDING -> MessageDeliveryStatus.SENDING
+            State.SENT -> MessageDeliveryStatus.SENT
+            State.FAILED -> MessageDeliveryStatus.FAILED
+        }
+
+    /**
+     * The entry as a message from the current user. created_at is in epoch seconds, matching
+     * rows written by [SupabaseChatService.sendMessage].
+     */
+    fun toMessage(): Message {
+        return Message(
+            id = clientId,
+            chatId = chatId,
+            senderId = senderId,
+            content = content,
+            messageType = messageType,
+            createdAt = createdAt / 1000,
+            updatedAt = createdAt / 1000,
+            replyToId = replyToId,
+            isFromCurrentUser = true,
+            deliveryStatus = deliveryStatus
+        )
+    }
+}
+
+/**
+ * Ordered outbox state, kept apart from [MessageOutbox] so the queueing rules can be tested
+ * without a network or disk. Not thread-safe; callers synchronize.
+ *
+ * Entries of one chat are sent strictly in the order they were queued. A message that failed
+ * for good is skipped so it does not block the ones behind it.
+ *
+ * @param maxAttempts Attempts before an entry is marked [OutboxEntry.State.FAILED]
+ */
+class OutboxQueue(private val maxAttempts: Int = 4) {
+
+    companion object {
+        /**
+         * Server messages followed by outbox entries the server list does not contain yet.
+         * An echoed entry is dropped in favour of its server row, which carries the same ID,
+         * so a message is never shown twice and pending messages stay at the tail in send
+         * order.
+         */
+        fun reconcile(serverMessages: List<Message>, entries: List<OutboxEntry>): List<Message> {
+            if (entries.isEmpty()) return serverMessages
+            val serverIds = serverMessages.mapTo(HashSet()) { it.id }
+            val pending = entries.filter { it.clientId !in serverIds }
+            return if (pending.isEmpty()) serverMessages else serverMessages + pending.map { it.toMessage() }
+        }
+    }
+
+    private val entries = LinkedHashMap<String, OutboxEntry>()
+
+    fun add(entry: OutboxEntry) {
+        entries[entry.clientId] = entry
+    }
+
+    fun get(clientId: String): OutboxEntry? = entries[clientId]
+
+    /**
+     * Marks the oldest pending entry of a chat as sending and returns it.
+     */
+    fun takeNext(chatId: String): OutboxEntry? {
+        val next = entries.values.firstOrNull { it.chatId == chatId && it.state == OutboxEntry.State.PENDING }
+            ?: return null
+        return next.copy(state = OutboxEntry.State.SENDING).also { entries[it.clientId] = it }
+    }
+
+    fun markSent(clientId: String, now: Long) {
+        entries[clientId]?.let { entries[clientId] = it.copy(state = OutboxEntry.State.SENT, sentAt = now) }
+    }
+
+    /**
+     * Records a failed attempt. The entry goes back to pending, at the head of its chat, until
+     * it runs out of attempts.
+     *
+     * @return The updated entry
+     */
+    fun markAttemptFailed(clientId: String): OutboxEntry? {
+        val entry = entries[clientId] ?: return null
+        val attempt = entry.attempt + 1
+        val state = if (attempt >= maxAttempts) OutboxEntry.State.FAILED else OutboxEntry.State.PENDING
+        return entry.copy(attempt = attempt, state = state).also { entries[clientId] = it }
+    }
+
+    /**
+     * Queues a failed entry again, behind everything already queued for its chat.
+     */
+    fun retry(clientId: String): OutboxEntry? {
+        val entry = entries[clientId]?.takeIf { it.state == OutboxEntry.State.FAILED } ?: return null
+        entries.remove(clientId)
+        return entry.copy(attempt = 0, state = OutboxEntry.State.PENDING).also { entries[clientId] = it }
+    }
+
+    fun remove(clientId: String): OutboxEntry? = entries.remove(clientId)
+
+    /**
+     * Drops sent entries whose server rows have arrived.
+     *
+     * @return Number of entries dropped
+     */
+    fun acknowledge(serverIds: Collection<String>): Int {
+        var removed = 0
+        serverIds.forEach { id ->
+            if (entries[id]?.state == OutboxEntry.State.SENT) {
+                entries.remove(id)
+                removed++
+            }
+        }
+        return removed
+    }
+
+    /**
+     * Drops sent entries older than [retentionMs], in case their echo never arrives.
+     */
+    fun pruneSent(now: Long, retentionMs: Long) {
+        entries.values.removeAll { it.state == OutboxEntry.State.SENT && now - it.sentAt > retentionMs }
+    }
+
+    fun snapshot(): List<OutboxEntry> = entries.values.toList()
+
+    /**
+     * Entries that still need the server, in the form they should be persisted. An insert
+     * that was in flight is sent again; the client ID makes that safe.
+     */
+    fun unsent(): List<OutboxEntry> {
+        return entries.values
+            .filter { it.state != OutboxEntry.State.SENT }
+            .map { if (it.state == OutboxEntry.State.SENDING) it.copy(state = OutboxEntry.State.PENDING) else it }
+    }
+
+    fun restore(saved: List<OutboxEntry>) {
+        saved.forEach { entry ->
+            if (!entries.containsKey(entry.clientId)) {
+                entries[entry.clientId] = entry
+            }
+        }
+    }
+}
+
+/**
+ * Outbox for optimistic sends.
+ *
+ * [enqueue] assigns a client ID and returns at once so the UI can render the message before
+ * any network work. Each chat has one sender that drains its queue in order, retrying with
+ * backoff; the client ID is the row ID, so a retry after a lost response cannot insert twice,
+ * and the realtime echo is matched to the local message by ID instead of by content. Unsent
+ * entries are persisted to disk and resumed on the next start; no write happens before the
+ * saved entries are restored, so sending right after a cold start cannot drop them.
+ */
+class MessageOutbox private constructor(context: Context) {
+
+    companion object {
+        private const val TAG = "MessageOutbox"
+        private const val FILE_NAME = "message_outbox.json"
+        private const val MAX_ATTEMPTS = 4
+        private const val BASE_RETRY_DELAY_MS = 1000L
+        private const val SENT_RETENTION_MS = 60_000L
+
+        @Volatile
+        private var INSTANCE: MessageOutbox? = null
+
+        /**
+         * Get singleton instance of MessageOutbox.
+         * Always uses application context.
+         */
+        fun getInstance(context: Context): MessageOutbox {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: MessageOutbox(context.applicationContext).also { INSTANCE = it }
+            }
+        }
+    }
+
+    private val chatService = SupabaseChatService()
+    private val chatRepository = ChatRepository(AppDatabase.getDatabase(context).chatDao())
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val file = File(context.filesDir, FILE_NAME)
+    private val json = Json { ignoreUnknownKeys = true }
+    private val fileMutex = Mutex()
+    private val loaded = CompletableDeferred<Unit>()
+
+    private val queue = OutboxQueue(MAX_ATTEMPTS)
+    private val senders = HashMap<String, Job>()
+
+    private val _entries = MutableStateFlow<List<OutboxEntry>>(emptyList())
+
+    /**
+     * All outbox entries in queue order, including sent entries awaiting their echo.
+     */
+    val entries: StateFlow<List<OutboxEntry>> = _entries.asStateFlow()
+
+    init {
+        scope.launch { load() }
+    }
+
+    /**
+     * Queues a message and starts sending it in the background.
+     *
+     * @return The entry, whose client ID is the message ID to render
+     */
+    fun enqueue(
+        chatId: String,
+        senderId: String,
+        content: String,
+        messageType: String = "text",
+        replyToId: String? = null
+    ): OutboxEntry {
+        val entry = OutboxEntry(
+            clientId = UUID.randomUUID().toString(),
+            chatId = chatId,
+            senderId = senderId,
+            content = content,
+            messageType = messageType,
+            replyToId = replyToId,
+            createdAt = System.currentTimeMillis()
+        )
+        update { queue.add(entry) }
+        startSender(chatId)
+        return entry
+    }
+
+    /**
+     * Sends a failed message again.
+     *
+     * @return false if the message is not a failed outbox entry
+     */
+    fun retry(clientId: String): Boolean {
+        val entry = update { queue.retry(clientId) } ?: return false
+        startSender(entry.chatId)
+        return true
+    }
+
+    /**
+     * Removes a message the user chose not to send.
+     */
+    fun discard(clientId: String) {
+        update { queue.remove(clientId) }
+    }
+
+    /**
+     * Drops sent entries whose server rows are now displayed.
+     */
+    fun acknowledge(serverIds: Collection<String>) {
+        if (_entries.value.none { it.state == OutboxEntry.State.SENT }) return
+        update { queue.acknowledge(serverIds) }
+    }
+
+    /**
+     * Outbox entries of one chat.
+     */
+    fun entries(chatId: String): Flow<List<OutboxEntry>> {
+        return entries.map { all -> all.filter { it.chatId == chatId } }.distinctUntilChanged()
+    }
+
+    // Private helper methods
+
+    private fun <T> update(block: () -> T): T {
+        val result: T
+        val snapshot: List<OutboxEntry>
+        synchronized(queue) {
+            result = block()
+            queue.pruneSent(System.currentTimeMillis(), SENT_RETENTION_MS)
+            snapshot = queue.snapshot()
+            _entries.value = snapshot
+        }
+        scope.launch { persist() }
+        return result
+    }
+
+    private fun startSender(chatId: String) {
+        synchronized(queue) {
+            if (senders[chatId]?.isActive == true) return
+            senders[chatId] = scope.launch { drain(chatId) }
+        }
+    }
+
+    private suspend fun drain(chatId: String) {
+        var lastSent: OutboxEntry? = null
+        while (true) {
+            val entry = update {
+                queue.takeNext(chatId).also { next ->
+                    if (next == null) senders.remove(chatId)
+                }
+            } ?: break
+
+            val result = try {
+                chatService.sendMessage(
+                    chatId = entry.chatId,
+                    senderId = entry.senderId,
+                    content = entry.content,
+                    messageType = entry.messageType,
+                    replyToId = entry.replyToId,
+                    messageId = entry.clientId
+                )
+            } catch (e: Exception) {
+                Result.failure(e)
+            }
+
+            if (result.isSuccess) {
+                update { queue.markSent(entry.clientId, System.currentTimeMillis()) }
+                Log.d(TAG, "Sent ${entry.clientId} to $chatId")
+                lastSent = entry
+                continue
+            }
+
+            val failed = update { queue.markAttemptFailed(entry.clientId) } ?: continue
+            Log.w(TAG, "Send attempt ${failed.attempt} failed for ${entry.clientId}", result.exceptionOrNull())
+            if (failed.state == OutboxEntry.State.PENDING) {
+                // Keep the chat's order: the same message goes next after the backoff
+                delay(BASE_RETRY_DELAY_MS shl (failed.attempt - 1))
+            }
+        }
+
+        // Update the chat list's last message and order once per drained queue
+        lastSent?.let { chatRepository.refreshUserChats(it.senderId) }
+    }
+
+    private suspend fun load() {
+        val saved = fileMutex.withLock {
+            try {
+                if (file.exists()) json.decodeFromString(ListSerializer(OutboxEntry.serializer()), file.readText()) else emptyList()
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to read outbox", e)
+                emptyList()
+            }
+        }
+        if (saved.isEmpty()) {
+            loaded.complete(Unit)
+            return
+        }
+
+        // Merged with anything queued since start, which only exists in memory so far
+        update { queue.restore(saved) }
+        loaded.complete(Unit)
+        Log.i(TAG, "Resuming ${saved.size} unsent messages")
+        saved.map { it.chatId }.distinct().forEach { startSender(it) }
+    }
+
+    private suspend fun persist() {
+        // The file still holds the last session's entries until they are restored
+        loaded.await()
+        fileMutex.withLock {
+            // Read under the file lock so an older snapshot never overwrites a newer one
+            val unsent = synchronized(queue) { queue.unsent() }
+            try {
+                if (unsent.isEmpty()) {
+                    file.delete()
+                } else {
+                    file.writeText(json.encodeToString(ListSerializer(OutboxEntry.serializer()), unsent))
+                }
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to persist outbox", e)
+            }
+        }
+    }
+}
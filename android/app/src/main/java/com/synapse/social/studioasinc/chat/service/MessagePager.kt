@@ -0,0 +1,350 @@
+package com.synapse.social.studioasinc.chat.service
+
+import android.util.Log
+import com.synapse.social.studioasinc.backend.SupabaseChatService
+import com.synapse.social.studioasinc.chat.MessageWindow
+import com.synapse.social.studioasinc.data.local.WindowMessageDao
+import com.synapse.social.studioasinc.data.local.WindowMessageEntity
+import com.synapse.social.studioasinc.util.NetworkPolicy
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonArray
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.JsonNull
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.booleanOrNull
+import kotlinx.serialization.json.longOrNull
+
+/**
+ * Loads pages of one chat for the chat screen's [MessageWindow].
+ *
+ * Rows trimmed off the window are kept in the window_messages table by [evict]; paging back
+ * over them reads the table first and only asks the server for what it doesn't hold. Stored
+ * rows always continue the window without gaps: they were cut from its edges, and they leave
+ * the table when they rejoin it. The table is only a cache of server rows, so [invalidate]
+ * may drop it whenever a stored row might be stale.
+ *
+ * @param dao null keeps everything on the server, e.g. in tests
+ * @param pageSize Rows per page on a good connection
+ * @param networkPolicy Optional network policy; poor links shrink the page size. The size is
+ *        chosen when a window starts and kept until the next one, since [MessageWindow] tells
+ *        the ends of the history by pages coming back short.
+ */
+class MessagePager(
+    private val chatId: String,
+    private val chatService: SupabaseChatService,
+    private val dao: WindowMessageDao?,
+    val pageSize: Int = MessageWindow.DEFAULT_PAGE_SIZE,
+    private val networkPolicy: StateFlow<NetworkPolicy>? = null
+) {
+
+    companion object {
+        private const val TAG = "MessagePager"
+
+        /**
+         * A server message as a chat list row, with the legacy field names the screen reads.
+         */
+        fun rowOf(message: Map<String, Any?>): HashMap<String, Any?> {
+            return HashMap<String, Any?>().apply {
+                put("id", message["id"])
+                put("chat_id", message["chat_id"])
+                put("sender_id", message["sender_id"])
+                put("uid", message["sender_id"]) // For compatibility
+                put("content", message["content"])
+                put("message_text", message["content"]) // For compatibility
+                put("message_type", message["message_type"])
+                put("created_at", message["created_at"])
+                put("push_date", message["created_at"]) // For compatibility
+                put("is_deleted", message["is_deleted"])
+                put("is_edited", message["is_edited"])
+                put("delete_for_everyone", message["delete_for_everyone"])
+                // Null columns arrive as the string "null"
+                message["reply_to_id"]?.toString()?.takeIf { it.isNotEmpty() && it != "null" }?.let {
+                    put("replied_message_id", it)
+                }
+            }
+        }
+
+        /**
+         * IDs of the [rows] created in the same second as [createdAt], i.e. those a server page
+         * from that cursor can return again.
+         */
+        internal fun idsInSecondOf(createdAt: Long, rows: List<Map<String, Any?>>): Set<String> {
+            val second = createdAt / 1000
+            return rows.mapNotNullTo(HashSet()) { row ->
+                val cursor = Cursor.of(row) ?: return@mapNotNullTo null
+                cursor.id.takeIf { cursor.createdAt / 1000 == second }
+            }
+        }
+
+        /**
+         * Joins the two inclusive pages around [anchor]. Each side keeps only its rows past the
+         * anchor in (created_at, ID) order: those are contiguous with it, while rows of the
+         * anchor's second on the wrong side may not be, and the other page has them anyway.
+         *
+         * @param older The page up to the anchor's second, oldest first
+         * @param newer The page from the anchor's second, oldest first
+         */
+        internal fun anchoredPage(
+            anchor: HashMap<String, Any?>,
+            older: List<HashMap<String, Any?>>,
+            newer: List<HashMap<String, Any?>>
+        ): AnchoredPage {
+            val anchorCursor = Cursor.of(anchor) ?: return AnchoredPage(listOf(anchor), 0, 0, 0)
+            val before = older.filter { row -> Cursor.of(row)?.let { it < anchorCursor } == true }
+            val after = newer.filter { row -> Cursor.of(row)?.let { it > anchorCursor } == true }
+            return AnchoredPage(
+                rows = before + anchor + after,
+                anchorIndex = before.size,
+                olderFetched = older.count { it["id"]?.toString() != anchorCursor.id },
+                newerFetched = newer.count { it["id"]?.toString() != anchorCursor.id }
+            )
+        }
+
+        /**
+         * Server [messages] as rows, without those whose ID is in [seen].
+         */
+        internal fun withoutSeen(messages: List<Map<String, Any?>>, seen: Set<String>): List<HashMap<String, Any?>> {
+            return messages.filter { it["id"]?.toString() !in seen }.map(::rowOf)
+        }
+    }
+
+    // Whether evicted rows may be in the table, to skip needless deletes
+    private var hasStoredRows = false
+
+    /** Rows per page for the current window */
+    var activePageSize = pageSize
+        private set
+
+    /**
+     * The latest page. Starts a new window, so rows stored for an earlier one are dropped.
+     */
+    suspend fun latest(): Result<List<HashMap<String, Any?>>> {
+        startWindow()
+        return chatService.getMessages(chatId, limit = activePageSize).map { messages -> messages.map(::rowOf) }
+    }
+
+    /**
+     * A window centred on one message, for jumping to a message that isn't loaded, like the
+     * original of a reply or a search hit. However far back the message is, this takes at most
+     * two round trips: the anchor lookup unless it's given, then both sides concurrently.
+     *
+     * @param anchor The message's row if the caller already has it, saving the lookup
+     * @return null if the message doesn't exist in this chat
+     */
+    suspend fun around(messageId: String, anchor: Map<String, Any?>? = null): Result<AnchoredPage?> {
+        val anchorRow = anchor?.let { HashMap(it) }
+            ?: chatService.getMessage(chatId, messageId).getOrElse { return Result.failure(it) }?.let(::rowOf)
+            ?: return Result.success(null)
+        val cursor = Cursor.of(anchorRow) ?: return Result.success(null)
+        startWindow()
+
+        return coroutineScope {
+            // Both bounds include the anchor's second, so each side asks for one more row
+            val limit = activePageSize + 1
+            val older = async { chatService.getMessages(chatId, limit = limit, beforeTimestamp = cursor.createdAt) }
+            val newer = async { chatService.getMessages(chatId, limit = limit, afterTimestamp = cursor.createdAt) }
+            val olderRows = older.await().getOrElse { return@coroutineScope Result.failure(it) }.map(::rowOf)
+            val newerRows = newer.await().getOrElse { return@coroutineScope Result.failure(it) }.map(::rowOf)
+            Result.success(anchoredPage(anchorRow, olderRows, newerRows))
+        }
+    }
+
+    /**
+     * The page above [oldest], the window's first row.
+     *
+     * The server's cursor bounds are inclusive to the second, so its page can repeat [oldest]
+     * and other rows of that second; those already in [loaded] are dropped, and the request
+     * asks for enough extra rows to still fill the page.
+     *
+     * @param loaded The window's rows
+     */
+    suspend fun older(
+        oldest: Map<String, Any?>,
+        loaded: List<Map<String, Any?>> = emptyList()
+    ): Result<List<HashMap<String, Any?>>> {
+        val cursor = Cursor.of(oldest) ?: return Result.success(emptyList())
+        // Newest first from the table, so the run adjoining the window comes first
+        val stored = readStore { it.getBefore(chatId, cursor.createdAt, cursor.id, activePageSize) }.asReversed()
+        if (stored.size >= activePageSize) {
+            return Result.success(takeFromStore(stored))
+        }
+
+        val serverCursor = stored.firstOrNull()?.let(Cursor::of) ?: cursor
+        val wanted = activePageSize - stored.size
+        val seen = idsInSecondOf(serverCursor.createdAt, stored + loaded + oldest)
+        return chatService.getMessages(chatId, limit = wanted + seen.size, beforeTimestamp = serverCursor.createdAt)
+            .map { messages -> withoutSeen(messages, seen).takeLast(wanted) + takeFromStore(stored) }
+    }
+
+    /**
+     * The page below [newest], the window's last row. Rows of [newest]'s second already in
+     * [loaded] are dropped, as in [older].
+     *
+     * @param loaded The window's rows
+     */
+    suspend fun newer(
+        newest: Map<String, Any?>,
+        loaded: List<Map<String, Any?>> = emptyList()
+    ): Result<List<HashMap<String, Any?>>> {
+        val cursor = Cursor.of(newest) ?: return Result.success(emptyList())
+        val stored = readStore { it.getAfter(chatId, cursor.createdAt, cursor.id, activePageSize) }
+        if (stored.size >= activePageSize) {
+            return Result.success(takeFromStore(stored))
+        }
+
+        val serverCursor = stored.lastOrNull()?.let(Cursor::of) ?: cursor
+        val wanted = activePageSize - stored.size
+        val seen = idsInSecondOf(serverCursor.createdAt, stored + loaded + newest)
+        return chatService.getMessages(chatId, limit = wanted + seen.size, afterTimestamp = serverCursor.createdAt)
+            .map { messages -> takeFromStore(stored) + withoutSeen(messages, seen).take(wanted) }
+    }
+
+    /**
+     * Keeps rows trimmed off the window. Rows without an ID or a numeric created_at, like
+     * optimistic messages, can't be paged back in and are dropped; they come back from the
+     * server or the outbox.
+     */
+    suspend fun evict(rows: List<Map<String, Any?>>) {
+        val dao = dao ?: return
+        val entities = rows.mapNotNull { row ->
+            val cursor = Cursor.of(row) ?: return@mapNotNull null
+            if (row["is_optimistic"] == true) return@mapNotNull null
+            WindowMessageEntity(cursor.id, chatId, cursor.createdAt, MessageRowCodec.encode(row))
+        }
+        if (entities.isEmpty()) return
+        try {
+            dao.insertAll(entities)
+            hasStoredRows = true
+        } catch (e: Exception) {
+            // Paging falls back to the server; the table must not hold a partial run
+            Log.e(TAG, "Failed to store trimmed messages", e)
+            clearStore()
+        }
+    }
+
+    /**
+     * Drops stored rows, e.g. when a message outside the window changed. Paging then reads
+     * those pages from the server again.
+     */
+    suspend fun invalidate() {
+        if (hasStoredRows) clearStore()
+    }
+
+    /**
+     * Rows around a message, oldest first.
+     *
+     * @property anchorIndex Position of the message in [rows]
+     * @property olderFetched Rows the server returned before the message; fewer than a page
+     *           means the window reaches the first message
+     * @property newerFetched Rows the server returned after the message; fewer than a page
+     *           means the window reaches the latest message
+     */
+    data class AnchoredPage(
+        val rows: List<HashMap<String, Any?>>,
+        val anchorIndex: Int,
+        val olderFetched: Int,
+        val newerFetched: Int
+    )
+
+    // Private helper methods
+
+    private class Cursor(val createdAt: Long, val id: String) : Comparable<Cursor> {
+        override fun compareTo(other: Cursor): Int {
+            return compareValuesBy(this, other, Cursor::createdAt, Cursor::id)
+        }
+
+        companion object {
+            fun of(row: Map<String, Any?>): Cursor? {
+                val id = row["id"]?.toString() ?: return null
+                val createdAt = row["created_at"]?.toString()?.toLongOrNull() ?: return null
+                return Cursor(createdAt, id)
+            }
+        }
+    }
+
+    private suspend fun readStore(query: suspend (WindowMessageDao) -> List<WindowMessageEntity>): List<HashMap<String, Any?>> {
+        val dao = dao ?: return emptyList()
+        if (!hasStoredRows) return emptyList()
+        return try {
+            query(dao).map { MessageRowCodec.decode(it.row) }
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to read stored messages", e)
+            emptyList()
+        }
+    }
+
+    /**
+     * Removes rows from the table as they rejoin the window.
+     */
+    private suspend fun takeFromStore(rows: List<HashMap<String, Any?>>): List<HashMap<String, Any?>> {
+        if (rows.isEmpty()) return rows
+        try {
+            dao?.deleteByIds(rows.mapNotNull { it["id"]?.toString() })
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to remove restored messages", e)
+            clearStore()
+        }
+        return rows
+    }
+
+    /**
+     * Drops rows stored for the previous window and picks the page size for the new one.
+     */
+    private suspend fun startWindow() {
+        clearStore()
+        activePageSize = networkPolicy?.value?.scalePageSize(pageSize) ?: pageSize
+    }
+
+    private suspend fun clearStore() {
+        try {
+            dao?.clear()
+            hasStoredRows = false
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to clear stored messages", e)
+        }
+    }
+}
+
+/**
+ * JSON form of a chat list row. Strings, booleans, whole numbers, nested lists and maps
+ * survive the round trip; other values are stored as their string form, which is how the
+ * screen reads them anyway.
+ */
+internal object MessageRowCodec {
+
+    fun encode(row: Map<String, Any?>): String {
+        return JsonObject(row.mapValues { (_, value) -> toJson(value) }).toString()
+    }
+
+    fun decode(json: String): HashMap<String, Any?> {
+        val element = Json.parseToJsonElement(json) as? JsonObject ?: return HashMap()
+        return element.mapValuesTo(HashMap()) { (_, value) -> fromJson(value) }
+    }
+
+    private fun toJson(value: Any?): JsonElement {
+        return when (value) {
+            null -> JsonNull
+            is Boolean -> JsonPrimitive(value)
+            is Number -> JsonPrimitive(value)
+            is Map<*, *> -> JsonObject(value.entries.associate { (key, item) -> key.toString() to toJson(item) })
+            is List<*> -> JsonArray(value.map(::toJson))
+            else -> JsonPrimitive(value.toString())
+        }
+    }
+
+    private fun fromJson(element: JsonElement): Any? {
+        return when (element) {
+            is JsonNull -> null
+            is JsonPrimitive -> when {
+                element.isString -> element.content
+                else -> element.booleanOrNull ?: element.longOrNull ?: element.content
+            }
+            is JsonObject -> element.mapValuesTo(HashMap()) { (_, value) -> fromJson(value) }
+            is JsonArray -> element.mapTo(ArrayList()) { fromJson(it) }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.synapse.social.studioasinc.chat.service
+
+import android.util.Log
+import com.synapse.social.studioasinc.backend.SupabaseChatService
+import io.github.jan.supabase.realtime.PostgresAction
+import kotlinx.serialization.json.JsonObject
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Position in a chat's message stream: the newest created_at/updated_at seen, with the
+ * message ID as a tie-breaker for rows sharing a timestamp.
+ */
+data class SyncCursor(
+    val timestamp: String,
+    val messageId: String
+) : Comparable<SyncCursor> {
+
+    override fun compareTo(other: SyncCursor): Int {
+        val byTime = compareTimestamps(timestamp, other.timestamp)
+        return if (byTime != 0) byTime else messageId.compareTo(other.messageId)
+    }
+
+    companion object {
+        /**
+         * Compares epoch timestamps numerically and anything else (e.g. ISO strings) lexically.
+         */
+        fun compareTimestamps(a: String, b: String): Int {
+            val left = a.toLongOrNull()
+            val right = b.toLongOrNull()
+            return if (left != null && right != null) left.compareTo(right) else a.compareTo(b)
+        }
+    }
+}
+
+/**
+ * Tracks a last-seen cursor per chat and fetches what was missed while realtime was down.
+ *
+ * The cursor advances from live message changes and from messages loaded by the UI. After a
+ * reconnect or during polling fallback, [catchUp] queries rows changed since the cursor; a
+ * result larger than [CATCH_UP_LIMIT] means the gap is too wide to patch and consumers should
+ * reload instead.
+ */
+class MessageSyncTracker private constructor() {
+
+    companion object {
+        private const val TAG = "MessageSyncTracker"
+        const val CATCH_UP_LIMIT = 200
+
+        @Volatile
+        private var INSTANCE: MessageSyncTracker? = null
+
+        fun getInstance(): MessageSyncTracker {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: MessageSyncTracker().also { INSTANCE = it }
+            }
+        }
+
+        /**
+         * Cursor for a single message row, or null if it lacks an ID or timestamps.
+         */
+        fun cursorOf(record: Map<String, Any?>): SyncCursor? {
+            val id = record["id"]?.toString()?.takeIf { it.isNotEmpty() && it != "null" } ?: return null
+            val timestamps = listOfNotNull(
+                record["created_at"]?.toString(),
+                record["updated_at"]?.toString()
+            ).filter { it.isNotEmpty() && it != "null" }
+            val newest = timestamps.maxWithOrNull { a, b -> SyncCursor.compareTimestamps(a, b) } ?: return null
+            return SyncCursor(newest, id)
+        }
+
+        /**
+         * Converts a realtime record to the map shape returned by [SupabaseChatService.getMessages].
+         */
+        fun recordOf(json: JsonObject): Map<String, Any?> {
+            return json.mapValues { (_, value) -> value.toString().removeSurrounding("\"") }
+        }
+    }
+
+    private val chatService = SupabaseChatService()
+    private val cursors = ConcurrentHashMap<String, SyncCursor>()
+
+    /**
+     * Result of a catch-up query.
+     *
+     * @property messages Changed rows, oldest change first, as returned by the backend
+     * @property truncated True if more rows were missed than a catch-up may return
+     */
+    data class CatchUpResult(
+        val chatId: String,
+        val messages: List<Map<String, Any?>>,
+        val truncated: Boolean
+    )
+
+    /**
+     * Returns the last-seen cursor for a chat, or null if nothing has been seen yet.
+     */
+    fun getCursor(chatId: String): SyncCursor? = cursors[chatId]
+
+    /**
+     * Moves a chat's cursor forward to cover the given rows. Never moves it backwards.
+     *
+     * @param chatId The chat room identifier
+     * @param records Message rows as maps with id, created_at and updated_at
+     */
+    fun advance(chatId: String, records: Collection<Map<String, Any?>>) {
+        val newest = records.mapNotNull { cursorOf(it) }.maxOrNull() ?: return
+        cursors.merge(chatId, newest) { current, candidate -> maxOf(current, candidate) }
+    }
+
+    /**
+     * Moves a chat's cursor forward for a live message change.
+     */
+    fun advance(chatId: String, action: PostgresAction) {
+        val record = when (action) {
+            is PostgresAction.Insert -> action.record
+            is PostgresAction.Update -> action.record
+            // A delete carries no new timestamp to advance to
+            else -> return
+        }
+        advance(chatId, listOf(recordOf(record)))
+    }
+
+    /**
+     * Fetches message rows changed since the chat's cursor and advances the cursor past them.
+     * Chats without a cursor are skipped; their first load already reflects the server.
+     *
+     * @param chatId The chat room identifier
+     * @return The missed rows, an empty result if there was no gap, or null on failure
+     *         or when no cursor exists
+     */
+    suspend fun catchUp(chatId: String): CatchUpResult? {
+        val cursor = cursors[chatId] ?: return null
+
+        // One extra row tells us whether the gap exceeds the limit
+        val rows = chatService.getMessagesSince(chatId, cursor.timestamp, CATCH_UP_LIMIT + 1)
+            .onFailure { Log.w(TAG, "Catch-up query failed for chat: $chatId", it) }
+            .getOrNull() ?: return null
+
+        // The bound is inclusive because timestamps have second resolution; only the cursor
+        // row itself is known to be seen, other rows in that second are merged idempotently
+        val missed = rows.filter { row -> cursorOf(row)?.let { it != cursor } ?: false }
+        val truncated = missed.size > CATCH_UP_LIMIT
+        val messages = if (truncated) missed.take(CATCH_UP_LIMIT) else missed
+
+        advance(chatId, messages)
+
+        if (messages.isNotEmpty()) {
+            Log.d(TAG, "Gap detected for chat: $chatId, caught up ${messages.size} changes (truncated: $truncated)")
+        }
+        return CatchUpResult(chatId, messages, truncated)
+    }
+
+    /**
+     * Forgets a chat's cursor, e.g. when the user leaves the chat for good.
+     */
+    fun clear(chatId: String) {
+        cursors.remove(chatId)
+    }
+}
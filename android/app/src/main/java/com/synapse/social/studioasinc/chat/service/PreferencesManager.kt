@@ -6,7 +6,9 @@ import androidx.datastore.core.DataStore
 import androidx.datastore.preferences.core.Preferences
 import androidx.datastore.preferences.core.booleanPreferencesKey
 import androidx.datastore.preferences.core.edit
+import androidx.datastore.preferences.core.stringPreferencesKey
 import androidx.datastore.preferences.preferencesDataStore
+import com.synapse.social.studioasinc.util.NetworkPolicyMode
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.map
@@ -33,10 +35,12 @@ class PreferencesManager private constructor(private val context: Context) {
         // Preference keys
         private val KEY_SEND_READ_RECEIPTS = booleanPreferencesKey("send_read_receipts")
         private val KEY_SHOW_TYPING_INDICATORS = booleanPreferencesKey("show_typing_indicators")
+        private val KEY_NETWORK_POLICY_MODE = stringPreferencesKey("network_policy_mode")
         
         // Default values
         private const val DEFAULT_SEND_READ_RECEIPTS = true
         private const val DEFAULT_SHOW_TYPING_INDICATORS = true
+        private val DEFAULT_NETWORK_POLICY_MODE = NetworkPolicyMode.AUTO
         
         // Singleton instance
         @Volatile
@@ -151,6 +155,31 @@ class PreferencesManager private constructor(private val context: Context) {
         }
     }
     
+    /**
+     * Get the network policy mode as Flow for reactive updates.
+     * 
+     * @return Flow<NetworkPolicyMode> that emits network policy mode changes
+     */
+    fun getNetworkPolicyModeFlow(): Flow<NetworkPolicyMode> {
+        return dataStore.data.map { preferences ->
+            preferences[KEY_NETWORK_POLICY_MODE]
+                ?.let { name -> NetworkPolicyMode.values().firstOrNull { it.name == name } }
+                ?: DEFAULT_NETWORK_POLICY_MODE
+        }
+    }
+    
+    /**
+     * Set how network-dependent behaviour is chosen.
+     * 
+     * @param mode AUTO to follow connection quality, or a fixed mode
+     */
+    suspend fun setNetworkPolicyMode(mode: NetworkPolicyMode) {
+        Log.d(TAG, "Setting network policy mode: $mode")
+        dataStore.edit { preferences ->
+            preferences[KEY_NETWORK_POLICY_MODE] = mode.name
+        }
+    }
+    
     /**
      * Get all chat preferences.
      * 
@@ -200,6 +229,7 @@ class PreferencesManager private constructor(private val context: Context) {
         dataStore.edit { preferences ->
             preferences[KEY_SEND_READ_RECEIPTS] = DEFAULT_SEND_READ_RECEIPTS
             preferences[KEY_SHOW_TYPING_INDICATORS] = DEFAULT_SHOW_TYPING_INDICATORS
+            preferences[KEY_NETWORK_POLICY_MODE] = DEFAULT_NETWORK_POLICY_MODE.name
         }
     }
 }
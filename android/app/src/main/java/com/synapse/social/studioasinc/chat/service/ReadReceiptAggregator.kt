@@ -0,0 +1,269 @@
+package com.synapse.social.studioasinc.chat.service
+
+import android.util.Log
+import com.synapse.social.studioasinc.chat.models.MessageState
+import kotlinx.coroutines.CoroutineExceptionHandler
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Pending read receipts for one flush window, across chats.
+ *
+ * Visible message IDs are collected per chat together with a "read up to" watermark (the
+ * newest created_at seen read). IDs that were already flushed are remembered for a while so
+ * scrolling back and forth over a thread does not resend them.
+ *
+ * @param maxRemembered How many flushed message IDs to remember for de-duplication
+ */
+class ReadReceiptWindow(private val maxRemembered: Int = 2000) {
+
+    /**
+     * Read receipts for one chat, ready to flush.
+     *
+     * @property readUpTo Newest created_at among the read messages, if known
+     * @property broadcast Whether the user allows read receipts to be broadcast
+     */
+    data class ChatBatch(
+        val chatId: String,
+        val userId: String,
+        val messageIds: List<String>,
+        val readUpTo: Long?,
+        val broadcast: Boolean,
+        val attempt: Int = 0
+    )
+
+    private class Pending(
+        val userId: String,
+        val messageIds: LinkedHashSet<String> = LinkedHashSet(),
+        var readUpTo: Long? = null,
+        var broadcast: Boolean = true,
+        var attempt: Int = 0
+    )
+
+    private val pending = LinkedHashMap<String, Pending>()
+
+    private val flushed = object : LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Boolean>?): Boolean {
+            return size > maxRemembered
+        }
+    }
+
+    /**
+     * Adds read message IDs for a chat.
+     *
+     * @return The number of IDs that were not already pending or flushed
+     */
+    @Synchronized
+    fun add(chatId: String, userId: String, messageIds: Collection<String>, readUpTo: Long?, broadcast: Boolean): Int {
+        val entry = pending.getOrPut(chatId) { Pending(userId) }
+        var added = 0
+        messageIds.forEach { id ->
+            if (!flushed.containsKey(id) && entry.messageIds.add(id)) {
+                added++
+            }
+        }
+        if (readUpTo != null) {
+            entry.readUpTo = maxOf(entry.readUpTo ?: readUpTo, readUpTo)
+        }
+        // The latest preference wins for the whole window
+        entry.broadcast = broadcast
+        if (entry.messageIds.isEmpty()) {
+            pending.remove(chatId)
+        }
+        return added
+    }
+
+    /**
+     * Removes and returns everything pending, one batch per chat.
+     */
+    @Synchronized
+    fun drain(): List<ChatBatch> {
+        val batches = pending.map { (chatId, entry) ->
+            entry.messageIds.forEach { flushed[it] = true }
+            ChatBatch(chatId, entry.userId, entry.messageIds.toList(), entry.readUpTo, entry.broadcast, entry.attempt)
+        }
+        pending.clear()
+        return batches
+    }
+
+    /**
+     * Puts failed batches back so the next window retries them.
+     */
+    @Synchronized
+    fun restore(batches: Collection<ChatBatch>) {
+        batches.forEach { batch ->
+            batch.messageIds.forEach { flushed.remove(it) }
+            val entry = pending.getOrPut(batch.chatId) { Pending(batch.userId) }
+            entry.messageIds.addAll(batch.messageIds)
+            batch.readUpTo?.let { entry.readUpTo = maxOf(entry.readUpTo ?: it, it) }
+            entry.broadcast = batch.broadcast
+            entry.attempt = maxOf(entry.attempt, batch.attempt + 1)
+        }
+    }
+
+    /**
+     * Number of pending message IDs across all chats.
+     */
+    @Synchronized
+    fun size(): Int = pending.values.sumOf { it.messageIds.size }
+
+    /**
+     * Number of pending message IDs for one chat.
+     */
+    @Synchronized
+    fun size(chatId: String): Int = pending[chatId]?.messageIds?.size ?: 0
+}
+
+/**
+ * Process-wide read receipt pipeline.
+ *
+ * Read receipts from every open chat are collected over a short window, then flushed with one
+ * `batch_update_message_state` RPC per user (chunked only past the RPC's batch size) and one
+ * broadcast per chat carrying the message IDs and the chat's "read up to" watermark.
+ * The window starts with the first receipt and is not extended by later ones, so a long
+ * scroll still flushes once per window instead of waiting for the scroll to end.
+ */
+class ReadReceiptAggregator internal constructor(
+    private val markRead: suspend (messageIds: List<String>, userId: String) -> Int,
+    private val scope: CoroutineScope = defaultScope(),
+    private val windowMs: Long = WINDOW_MS
+) {
+
+    companion object {
+        private const val TAG = "ReadReceiptAggregator"
+        private const val WINDOW_MS = 1000L // 1 second flush window
+        private const val EARLY_FLUSH_SIZE = 100 // One RPC batch worth of receipts
+        private const val MAX_ATTEMPTS = 3
+
+        @Volatile
+        private var INSTANCE: ReadReceiptAggregator? = null
+
+        fun getInstance(): ReadReceiptAggregator {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: run {
+                    val dbOptimizationService = DatabaseOptimizationService()
+                    ReadReceiptAggregator({ messageIds, userId ->
+                        dbOptimizationService.batchUpdateMessageState(
+                            messageIds = messageIds,
+                            newState = MessageState.READ,
+                            userId = userId
+                        )
+                    })
+                }.also { INSTANCE = it }
+            }
+        }
+
+        private fun defaultScope(): CoroutineScope {
+            val exceptionHandler = CoroutineExceptionHandler { _, throwable ->
+                Log.e(TAG, "Coroutine exception", throwable)
+            }
+            return CoroutineScope(SupervisorJob() + Dispatchers.IO + exceptionHandler)
+        }
+    }
+
+    private val window = ReadReceiptWindow()
+    private val flushMutex = Mutex()
+
+    // The realtime service that last submitted for each chat; used for its broadcast
+    private val broadcasters = ConcurrentHashMap<String, SupabaseRealtimeService>()
+
+    private var windowJob: Job? = null
+
+    /**
+     * Queues read message IDs for the current window.
+     *
+     * @param chatId The chat room identifier
+     * @param userId The user who read the messages
+     * @param messageIds Message IDs that became visible
+     * @param readUpTo Newest created_at among those messages, if known
+     * @param realtimeService Service used to broadcast the receipt for this chat, null to
+     *        only mark the messages read
+     * @param broadcast Whether read receipts may be broadcast (privacy setting)
+     */
+    fun submit(
+        chatId: String,
+        userId: String,
+        messageIds: List<String>,
+        readUpTo: Long?,
+        realtimeService: SupabaseRealtimeService?,
+        broadcast: Boolean
+    ) {
+        realtimeService?.let { broadcasters[chatId] = it }
+        val added = window.add(chatId, userId, messageIds, readUpTo, broadcast)
+        if (added == 0) return
+
+        if (window.size() >= EARLY_FLUSH_SIZE) {
+            scope.launch { flush() }
+        } else {
+            scheduleWindow()
+        }
+    }
+
+    /**
+     * Flushes everything pending now, e.g. when the user leaves a chat.
+     */
+    suspend fun flushNow() {
+        flush()
+    }
+
+    /**
+     * Number of read receipts waiting for the next flush in a chat.
+     */
+    fun getPendingCount(chatId: String): Int = window.size(chatId)
+
+    // Private helper methods
+
+    private fun scheduleWindow() {
+        synchronized(this) {
+            if (windowJob?.isActive == true) return
+            windowJob = scope.launch {
+                delay(windowMs)
+                // Closed before flushing, so a failed flush can schedule its retry window
+                synchronized(this@ReadReceiptAggregator) { windowJob = null }
+                flush()
+            }
+        }
+    }
+
+    private suspend fun flush() {
+        flushMutex.withLock {
+            val batches = window.drain()
+            if (batches.isEmpty()) return
+
+            batches.groupBy { it.userId }.forEach { (userId, userBatches) ->
+                val messageIds = userBatches.flatMap { it.messageIds }
+                Log.d(TAG, "Flushing ${messageIds.size} read receipts across ${userBatches.size} chats")
+
+                try {
+                    val updatedCount = markRead(messageIds, userId)
+                    Log.d(TAG, "Marked $updatedCount messages as read")
+                } catch (e: Exception) {
+                    val retryable = userBatches.filter { it.attempt + 1 < MAX_ATTEMPTS }
+                    Log.e(TAG, "Read receipt flush failed, retrying ${retryable.size} of ${userBatches.size} chats", e)
+                    window.restore(retryable)
+                    if (retryable.isNotEmpty()) {
+                        scheduleWindow()
+                    }
+                    return@forEach
+                }
+
+                userBatches.filter { it.broadcast }.forEach { batch ->
+                    try {
+                        broadcasters[batch.chatId]?.broadcastReadReceipt(
+                            batch.chatId, userId, batch.messageIds, batch.readUpTo
+                        )
+                    } catch (e: Exception) {
+                        Log.e(TAG, "Failed to broadcast read receipt for chat: ${batch.chatId}", e)
+                    }
+                }
+            }
+        }
+    }
+}
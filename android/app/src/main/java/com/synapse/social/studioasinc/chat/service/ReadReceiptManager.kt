@@ -6,7 +6,7 @@ import com.synapse.social.studioasinc.chat.models.ReadReceiptEvent
 import kotlinx.coroutines.CoroutineExceptionHandler
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Job
-import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.filterIsInstance
 import kotlinx.coroutines.launch
 import java.util.concurrent.ConcurrentHashMap
 
@@ -14,7 +14,7 @@ import java.util.concurrent.ConcurrentHashMap
  * Manages read receipt tracking with batching and privacy controls.
  * 
  * This manager handles:
- * - Batching read receipt updates (1 second intervals)
+ * - Batching read receipt updates through the shared ReadReceiptAggregator window
  * - Managing message state transitions (sent → delivered → read)
  * - Broadcasting read events via Supabase Realtime
  * - Respecting user privacy preferences
@@ -32,24 +32,26 @@ class ReadReceiptManager(
     // Database optimization service for batch operations
     private val dbOptimizationService = DatabaseOptimizationService()
 
+    // Shared read receipt window across all chats
+    private val aggregator = ReadReceiptAggregator.getInstance()
+
+    // Delivery latency tracing for messages we sent
+    private val latencyTracer = MessageLatencyTracer.getInstance()
+
     private val exceptionHandler = CoroutineExceptionHandler { _, throwable ->
         Log.e(TAG, "Coroutine exception", throwable)
     }
 
     companion object {
         private const val TAG = "ReadReceiptManager"
-        private const val BATCH_DELAY = 1000L // 1 second batching delay
     }
     
-    // Pending read receipts queue per chat (chatId -> list of messageIds)
-    private val pendingReadReceipts = ConcurrentHashMap<String, MutableList<String>>()
-    
-    // Track batching jobs per chat
-    private val batchingJobs = ConcurrentHashMap<String, Job>()
-    
     // Track read receipt callbacks per chat
     private val readReceiptCallbacks = ConcurrentHashMap<String, (ReadReceiptEvent) -> Unit>()
     
+    // Track incoming event collection per chat
+    private val subscriptionJobs = ConcurrentHashMap<String, Job>()
+    
     // Track current user ID for filtering own read receipts
     private var currentUserId: String? = null
 
@@ -68,16 +70,18 @@ class ReadReceiptManager(
     }
     
     /**
-     * Mark messages as read with 1-second batching.
-     * Collects message IDs and batches them into a single database update.
+     * Mark messages as read.
+     * Receipts are handed to the process-wide [ReadReceiptAggregator], which collects them
+     * across all chats for a short window and flushes them with a single batched update.
      * 
      * Requirements: 3.1, 4.1, 4.4, 6.5
      * 
      * @param chatId The chat room identifier
      * @param userId The user marking messages as read
      * @param messageIds List of message IDs to mark as read
+     * @param readUpTo Newest created_at among the messages, broadcast as the read watermark
      */
-    suspend fun markMessagesAsRead(chatId: String, userId: String, messageIds: List<String>) {
+    fun markMessagesAsRead(chatId: String, userId: String, messageIds: List<String>, readUpTo: Long? = null) {
         if (messageIds.isEmpty()) {
             Log.d(TAG, "No messages to mark as read for chat: $chatId")
             return
@@ -85,72 +89,14 @@ class ReadReceiptManager(
         
         Log.d(TAG, "Marking ${messageIds.size} messages as read for chat: $chatId")
         
-        // Add messages to pending queue
-        val pendingList = pendingReadReceipts.getOrPut(chatId) { mutableListOf() }
-        synchronized(pendingList) {
-            messageIds.forEach { messageId ->
-                if (!pendingList.contains(messageId)) {
-                    pendingList.add(messageId)
-                }
-            }
-        }
-        
-        // Cancel existing batching job if it exists
-        batchingJobs[chatId]?.cancel()
-
-        // Create new batching job with delay
-        batchingJobs[chatId] = coroutineScope.launch(exceptionHandler) {
-            delay(BATCH_DELAY)
-
-            // Get all pending messages for this chat
-            val messagesToProcess = synchronized(pendingList) {
-                pendingList.toList().also {
-                    pendingList.clear()
-                }
-            }
-            
-            if (messagesToProcess.isEmpty()) {
-                Log.d(TAG, "No pending messages to process for chat: $chatId")
-                return@launch
-            }
-            
-            Log.d(TAG, "Processing batch of ${messagesToProcess.size} read receipts for chat: $chatId")
-            
-            try {
-                // Use optimized batch update for better performance
-                val updatedCount = dbOptimizationService.batchUpdateMessageState(
-                    messageIds = messagesToProcess,
-                    newState = MessageState.READ,
-                    userId = userId
-                )
-                
-                if (updatedCount > 0) {
-                    Log.d(TAG, "Successfully marked $updatedCount messages as read using batch update")
-                    
-                    // Broadcast read receipt event if privacy setting allows
-                    if (isReadReceiptsEnabled()) {
-                        try {
-                            realtimeService.broadcastReadReceipt(chatId, userId, messagesToProcess)
-                            Log.d(TAG, "Read receipt broadcasted for ${messagesToProcess.size} messages")
-                        } catch (e: Exception) {
-                            Log.e(TAG, "Failed to broadcast read receipt", e)
-                        }
-                    } else {
-                        Log.d(TAG, "Read receipts disabled - skipping broadcast")
-                    }
-                } else {
-                    Log.w(TAG, "No messages were updated in batch operation")
-                    // Re-add messages to pending queue for retry
-                    synchronized(pendingList) {
-                        pendingList.addAll(messagesToProcess)
-                    }
-                }
-            } catch (e: Exception) {
-                Log.e(TAG, "Error processing read receipts batch", e)
-            } finally {
-                batchingJobs.remove(chatId)
-            }
-        }
+        aggregator.submit(
+            chatId = chatId,
+            userId = userId,
+            messageIds = messageIds,
+            readUpTo = readUpTo,
+            realtimeService = realtimeService,
+            broadcast = isReadReceiptsEnabled()
+        )
     }
     
     /**
@@ -224,14 +170,23 @@ class ReadReceiptManager(
         readReceiptCallbacks[chatId] = onReadUpdate
         
         try {
-            // Get or create the Realtime channel
-            val channel = realtimeService.getChannel(chatId)
+            // Get or create the Realtime channel used for sending
+            realtimeService.getChannel(chatId)
                 ?: realtimeService.subscribeToChat(chatId)
 
-            // FIXME: Implement broadcast listening for read receipts once the Supabase Realtime API is finalized.
-            // This will involve listening for a specific event on the channel and invoking the onReadUpdate callback.
-            // For now, we'll rely on polling fallback for read receipt updates
-            Log.d(TAG, "Read receipt subscription set up for chat: $chatId (broadcast listening pending API clarification)")
+            // Incoming read receipt broadcasts are routed from the chat's shared topic
+            subscriptionJobs[chatId]?.cancel()
+            subscriptionJobs[chatId] = coroutineScope.launch(exceptionHandler) {
+                realtimeService.observeEvents(chatId)
+                    .filterIsInstance<RealtimeEvent.ReadReceipt>()
+                    .collect { receipt ->
+                        // Ignore our own receipts
+                        if (receipt.event.userId != currentUserId) {
+                            latencyTracer.onReadReceipt(chatId, receipt.event.messageIds)
+                            readReceiptCallbacks[chatId]?.invoke(receipt.event)
+                        }
+                    }
+            }
 
             Log.d(TAG, "Successfully subscribed to read receipts for chat: $chatId")
             
@@ -252,6 +207,7 @@ class ReadReceiptManager(
         
         // Remove the callback
         readReceiptCallbacks.remove(chatId)
+        subscriptionJobs.remove(chatId)?.cancel()
         
         // Clean up pending receipts
         cleanup(chatId)
@@ -267,36 +223,33 @@ class ReadReceiptManager(
         Log.d(TAG, "Unsubscribing from all read receipts")
         
         readReceiptCallbacks.clear()
+        subscriptionJobs.values.forEach { it.cancel() }
+        subscriptionJobs.clear()
         
         cleanupAll()
     }
     
     /**
-     * Clean up pending read receipts for a specific chat.
-     * Called when leaving a chat or when the chat is closed.
+     * Clean up read receipt state for a specific chat.
+     * Called when leaving a chat or when the chat is closed. Receipts already handed to the
+     * aggregator are still flushed, since the user did read those messages.
      * 
      * @param chatId The chat room identifier
      */
     fun cleanup(chatId: String) {
         Log.d(TAG, "Cleaning up read receipts for chat: $chatId")
         
-        batchingJobs[chatId]?.cancel()
-        batchingJobs.remove(chatId)
-        
-        pendingReadReceipts.remove(chatId)
+        readReceiptCallbacks.remove(chatId)
     }
     
     /**
-     * Clean up all pending read receipts for all chats.
+     * Clean up read receipt state for all chats.
      * Called when the service is being destroyed.
      */
     fun cleanupAll() {
         Log.d(TAG, "Cleaning up all read receipts")
         
-        batchingJobs.values.forEach { it.cancel() }
-        batchingJobs.clear()
-        
-        pendingReadReceipts.clear()
+        readReceiptCallbacks.clear()
     }
     
     /**
@@ -307,12 +260,13 @@ class ReadReceiptManager(
      * @return Number of pending read receipts
      */
     fun getPendingCount(chatId: String): Int {
-        return pendingReadReceipts[chatId]?.size ?: 0
+        return aggregator.getPendingCount(chatId)
     }
     
     /**
-     * Force flush pending read receipts for a specific chat.
-     * Immediately processes all pending read receipts without waiting for batch delay.
+     * Force flush pending read receipts.
+     * Immediately flushes the shared window, including receipts from other chats, without
+     * waiting for it to close.
      * 
      * @param chatId The chat room identifier
      * @param userId The user marking messages as read
@@ -320,50 +274,10 @@ class ReadReceiptManager(
     suspend fun flushPendingReadReceipts(chatId: String, userId: String) {
         Log.d(TAG, "Flushing pending read receipts for chat: $chatId")
         
-        // Cancel existing batching job
-        batchingJobs[chatId]?.cancel()
-        batchingJobs.remove(chatId)
-        
-        // Get all pending messages
-        val pendingList = pendingReadReceipts[chatId] ?: return
-        val messagesToProcess = synchronized(pendingList) {
-            pendingList.toList().also {
-                pendingList.clear()
-            }
-        }
-        
-        if (messagesToProcess.isEmpty()) {
-            return
-        }
-        
-        Log.d(TAG, "Flushing ${messagesToProcess.size} pending read receipts")
-
-        coroutineScope.launch(exceptionHandler) {
-            try {
-                // Use optimized batch update for flushing
-                val updatedCount = dbOptimizationService.batchUpdateMessageState(
-                    messageIds = messagesToProcess,
-                    newState = MessageState.READ,
-                    userId = userId
-                )
-                
-                if (updatedCount > 0) {
-                    Log.d(TAG, "Successfully flushed $updatedCount read receipts using batch update")
-                    
-                    // Broadcast read receipt event if privacy setting allows
-                    if (isReadReceiptsEnabled()) {
-                        try {
-                            realtimeService.broadcastReadReceipt(chatId, userId, messagesToProcess)
-                        } catch (e: Exception) {
-                            Log.e(TAG, "Failed to broadcast flushed read receipt", e)
-                        }
-                    }
-                } else {
-                    Log.w(TAG, "No messages were updated during flush operation")
-                }
-            } catch (e: Exception) {
-                Log.e(TAG, "Error flushing read receipts", e)
-            }
+        try {
+            aggregator.flushNow()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error flushing read receipts", e)
         }
     }
     
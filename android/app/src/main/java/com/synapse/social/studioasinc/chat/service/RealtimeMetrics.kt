@@ -1,9 +1,16 @@
 package com.synapse.social.studioasinc.chat.service
 
 import android.util.Log
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.AtomicLong
 
@@ -11,13 +18,25 @@ import java.util.concurrent.atomic.AtomicLong
  * Tracks performance metrics for Supabase Realtime operations.
  * Monitors typing events, read receipts, reconnections, and latency.
  * 
+ * Latency is kept in lock-free [LatencyHistogram]s, overall and per event type, so snapshots
+ * report p50/p95/p99 rather than an average. Recording never locks or logs; [metricsState]
+ * is refreshed at most once per [snapshotIntervalMs].
+ * 
  * Requirements: 6.1, 6.5
+ * 
+ * @param snapshotIntervalMs Minimum time between [metricsState] emissions
  */
-class RealtimeMetrics {
+class RealtimeMetrics(
+    private val snapshotIntervalMs: Long = SNAPSHOT_INTERVAL_MS
+) {
     
     companion object {
         private const val TAG = "RealtimeMetrics"
-        private const val LATENCY_SAMPLE_SIZE = 100
+        private const val SNAPSHOT_INTERVAL_MS = 1000L // Emit snapshots at most at 1 Hz
+
+        const val EVENT_TYPING = "typing"
+        const val EVENT_READ_RECEIPT = "read_receipt"
+        const val EVENT_OTHER = "other"
     }
     
     // Counters for events sent
@@ -26,8 +45,8 @@ class RealtimeMetrics {
     private val _reconnectionCount = AtomicInteger(0)
     
     // Latency tracking
-    private val latencySamples = mutableListOf<Long>()
-    private val _averageLatency = AtomicLong(0L)
+    private val latencyHistogram = LatencyHistogram()
+    private val latencyByType = ConcurrentHashMap<String, LatencyHistogram>()
     
     // Additional metrics
     private val _totalEventsProcessed = AtomicInteger(0)
@@ -39,6 +58,20 @@ class RealtimeMetrics {
     private var connectionStartTime = 0L
     private val _totalConnectionTime = AtomicLong(0L)
     
+    // Event rate tracking between snapshots
+    @Volatile
+    private var lastRateSampleTime = System.currentTimeMillis()
+    @Volatile
+    private var lastRateSampleEvents = 0
+    @Volatile
+    private var eventsPerSecond = 0.0
+    
+    // Throttled snapshot emission
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val emissionScheduled = AtomicBoolean(false)
+    @Volatile
+    private var lastEmissionTime = 0L
+    
     // StateFlow for reactive metrics updates
     private val _metricsState = MutableStateFlow(MetricsSnapshot())
     val metricsState: StateFlow<MetricsSnapshot> = _metricsState.asStateFlow()
@@ -52,10 +85,9 @@ class RealtimeMetrics {
         _typingEventsSent.incrementAndGet()
         _totalEventsProcessed.incrementAndGet()
         
-        latencyMs?.let { recordLatency(it) }
+        latencyMs?.let { recordLatency(it, EVENT_TYPING) }
         
         updateMetricsState()
-        Log.d(TAG, "Typing event sent. Total: ${_typingEventsSent.get()}")
     }
     
     /**
@@ -68,10 +100,9 @@ class RealtimeMetrics {
         _readReceiptsSent.incrementAndGet()
         _totalEventsProcessed.incrementAndGet()
         
-        latencyMs?.let { recordLatency(it) }
+        latencyMs?.let { recordLatency(it, EVENT_READ_RECEIPT) }
         
         updateMetricsState()
-        Log.d(TAG, "Read receipt sent for $messageCount messages. Total: ${_readReceiptsSent.get()}")
     }
     
     /**
@@ -91,26 +122,16 @@ class RealtimeMetrics {
     }
     
     /**
-     * Record event latency for average calculation.
+     * Record event latency in the overall and per-type histograms.
      * 
      * @param latencyMs Latency in milliseconds
+     * @param eventType Event type the latency belongs to, e.g. [EVENT_TYPING]
      */
-    fun recordLatency(latencyMs: Long) {
-        synchronized(latencySamples) {
-            latencySamples.add(latencyMs)
-            
-            // Keep only the most recent samples to prevent memory growth
-            if (latencySamples.size > LATENCY_SAMPLE_SIZE) {
-                latencySamples.removeAt(0)
-            }
-            
-            // Calculate new average
-            val average = latencySamples.average().toLong()
-            _averageLatency.set(average)
-        }
+    fun recordLatency(latencyMs: Long, eventType: String = EVENT_OTHER) {
+        latencyHistogram.record(latencyMs)
+        latencyByType.getOrPut(eventType) { LatencyHistogram() }.record(latencyMs)
         
         updateMetricsState()
-        Log.v(TAG, "Latency recorded: ${latencyMs}ms. Average: ${_averageLatency.get()}ms")
     }
     
     /**
@@ -141,7 +162,6 @@ class RealtimeMetrics {
     fun updateQueuedEventsCount(count: Int) {
         _queuedEventsCount.set(count)
         updateMetricsState()
-        Log.v(TAG, "Queued events count updated: $count")
     }
     
     /**
@@ -172,11 +192,17 @@ class RealtimeMetrics {
      * @return Current metrics data
      */
     fun getCurrentMetrics(): MetricsSnapshot {
+        val latency = latencyHistogram.toPercentiles()
         return MetricsSnapshot(
             typingEventsSent = _typingEventsSent.get(),
             readReceiptsSent = _readReceiptsSent.get(),
             reconnectionCount = _reconnectionCount.get(),
-            averageLatency = _averageLatency.get(),
+            averageLatency = latencyHistogram.mean(),
+            latencyP50 = latency.p50,
+            latencyP95 = latency.p95,
+            latencyP99 = latency.p99,
+            latencyByType = latencyByType.mapValues { (_, histogram) -> histogram.toPercentiles() },
+            eventsPerSecond = eventsPerSecond,
             totalEventsProcessed = _totalEventsProcessed.get(),
             failedEvents = _failedEvents.get(),
             pollingFallbackActivations = _pollingFallbackActivations.get(),
@@ -194,7 +220,6 @@ class RealtimeMetrics {
         _typingEventsSent.set(0)
         _readReceiptsSent.set(0)
         _reconnectionCount.set(0)
-        _averageLatency.set(0)
         _totalEventsProcessed.set(0)
         _failedEvents.set(0)
         _pollingFallbackActivations.set(0)
@@ -202,11 +227,13 @@ class RealtimeMetrics {
         _totalConnectionTime.set(0)
         connectionStartTime = 0L
         
-        synchronized(latencySamples) {
-            latencySamples.clear()
-        }
+        latencyHistogram.reset()
+        latencyByType.clear()
+        lastRateSampleTime = System.currentTimeMillis()
+        lastRateSampleEvents = 0
+        eventsPerSecond = 0.0
         
-        updateMetricsState()
+        _metricsState.value = getCurrentMetrics()
         Log.i(TAG, "All metrics reset")
     }
     
@@ -221,7 +248,11 @@ class RealtimeMetrics {
         Log.i(TAG, "Typing events sent: ${metrics.typingEventsSent}")
         Log.i(TAG, "Read receipts sent: ${metrics.readReceiptsSent}")
         Log.i(TAG, "Reconnections: ${metrics.reconnectionCount}")
-        Log.i(TAG, "Average latency: ${metrics.averageLatency}ms")
+        Log.i(TAG, "Latency p50/p95/p99: ${metrics.latencyP50}/${metrics.latencyP95}/${metrics.latencyP99}ms (avg ${metrics.averageLatency}ms)")
+        metrics.latencyByType.forEach { (eventType, latency) ->
+            Log.i(TAG, "  $eventType p50/p95/p99: ${latency.p50}/${latency.p95}/${latency.p99}ms over ${latency.count} events")
+        }
+        Log.i(TAG, "Event rate: ${String.format("%.2f", metrics.eventsPerSecond)}/s")
         Log.i(TAG, "Total events processed: ${metrics.totalEventsProcessed}")
         Log.i(TAG, "Failed events: ${metrics.failedEvents}")
         Log.i(TAG, "Success rate: ${String.format("%.2f", metrics.successRate * 100)}%")
@@ -244,7 +275,8 @@ class RealtimeMetrics {
             appendLine("• Typing events: ${metrics.typingEventsSent}")
             appendLine("• Read receipts: ${metrics.readReceiptsSent}")
             appendLine("• Reconnections: ${metrics.reconnectionCount}")
-            appendLine("• Avg latency: ${metrics.averageLatency}ms")
+            appendLine("• Latency p50/p95/p99: ${metrics.latencyP50}/${metrics.latencyP95}/${metrics.latencyP99}ms")
+            appendLine("• Event rate: ${String.format("%.1f", metrics.eventsPerSecond)}/s")
             appendLine("• Success rate: ${String.format("%.1f", metrics.successRate * 100)}%")
             appendLine("• Polling fallbacks: ${metrics.pollingFallbackActivations}")
             appendLine("• Queued events: ${metrics.queuedEventsCount}")
@@ -253,8 +285,33 @@ class RealtimeMetrics {
     
     // Private helper methods
     
+    /**
+     * Schedule a snapshot emission, coalescing all updates within the snapshot interval.
+     * The emission runs after the burst, so the last update is never lost.
+     */
     private fun updateMetricsState() {
-        _metricsState.value = getCurrentMetrics()
+        if (!emissionScheduled.compareAndSet(false, true)) return
+        
+        scope.launch {
+            val waitMs = lastEmissionTime + snapshotIntervalMs - System.currentTimeMillis()
+            if (waitMs > 0) {
+                delay(waitMs)
+            }
+            emissionScheduled.set(false)
+            lastEmissionTime = System.currentTimeMillis()
+            updateEventRate(lastEmissionTime)
+            _metricsState.value = getCurrentMetrics()
+        }
+    }
+    
+    private fun updateEventRate(now: Long) {
+        val elapsedMs = now - lastRateSampleTime
+        if (elapsedMs <= 0) return
+        
+        val events = _totalEventsProcessed.get()
+        eventsPerSecond = (events - lastRateSampleEvents) * 1000.0 / elapsedMs
+        lastRateSampleEvents = events
+        lastRateSampleTime = now
     }
     
     private fun calculateSuccessRate(): Double {
@@ -278,6 +335,11 @@ data class MetricsSnapshot(
     val readReceiptsSent: Int = 0,
     val reconnectionCount: Int = 0,
     val averageLatency: Long = 0L,
+    val latencyP50: Long = 0L,
+    val latencyP95: Long = 0L,
+    val latencyP99: Long = 0L,
+    val latencyByType: Map<String, LatencyPercentiles> = emptyMap(),
+    val eventsPerSecond: Double = 0.0,
     val totalEventsProcessed: Int = 0,
     val failedEvents: Int = 0,
     val pollingFallbackActivations: Int = 0,
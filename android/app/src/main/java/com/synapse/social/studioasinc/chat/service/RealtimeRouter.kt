@@ -0,0 +1,447 @@
+package com.synapse.social.studioasinc.chat.service
+
+import android.util.Log
+import com.synapse.social.studioasinc.SupabaseClient
+import com.synapse.social.studioasinc.chat.models.ReadReceiptEvent
+import com.synapse.social.studioasinc.chat.models.TypingStatus
+import io.github.jan.supabase.gotrue.auth
+import io.github.jan.supabase.realtime.PostgresAction
+import io.github.jan.supabase.realtime.RealtimeChannel
+import io.github.jan.supabase.realtime.broadcastFlow
+import io.github.jan.supabase.realtime.channel
+import io.github.jan.supabase.realtime.postgresChangeFlow
+import io.github.jan.supabase.realtime.realtime
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.mapNotNull
+import kotlinx.coroutines.flow.merge
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.booleanOrNull
+import kotlinx.serialization.json.contentOrNull
+import kotlinx.serialization.json.jsonArray
+import kotlinx.serialization.json.jsonPrimitive
+import kotlinx.serialization.json.longOrNull
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Typed realtime events dispatched by [RealtimeRouter].
+ * [chatId] is empty when the server did not include it (e.g. a DELETE without REPLICA IDENTITY FULL).
+ */
+sealed class RealtimeEvent {
+    abstract val chatId: String
+
+    data class MessageChange(override val chatId: String, val action: PostgresAction) : RealtimeEvent()
+    data class ChatChange(override val chatId: String, val action: PostgresAction) : RealtimeEvent()
+    data class MembershipChange(override val chatId: String, val action: PostgresAction) : RealtimeEvent()
+    data class Typing(override val chatId: String, val status: TypingStatus) : RealtimeEvent()
+    data class ReadReceipt(override val chatId: String, val event: ReadReceiptEvent) : RealtimeEvent()
+
+    /**
+     * Message rows missed while realtime was down, oldest change first. When [truncated] is
+     * true the gap was too large to patch and the chat should be reloaded.
+     */
+    data class CatchUp(
+        override val chatId: String,
+        val messages: List<Map<String, Any?>>,
+        val truncated: Boolean
+    ) : RealtimeEvent()
+}
+
+/**
+ * Multiplexes realtime traffic for the signed-in user.
+ *
+ * Database changes for every chat anyone in the process is interested in arrive on a single
+ * per-user channel (`user:<id>`), with postgres_changes filtered to those chat IDs instead of
+ * whole tables. The filters are rebuilt (debounced) when interest changes.
+ * Typing and read-receipt broadcasts need a topic shared with the other participants, so a
+ * `chat:<id>` topic is joined only while at least one subscriber holds interest in that chat.
+ *
+ * Interest is ref-counted: collecting [events] or calling [acquire] adds a reference,
+ * cancelling the collection or calling [release] drops it.
+ *
+ * Message changes advance a per-chat cursor in [MessageSyncTracker]. Every (re)join of the user
+ * channel runs [catchUp] for its chats, which holds live message changes while the missed rows
+ * are fetched so subscribers see the catch-up before anything that arrived after the join.
+ */
+class RealtimeRouter private constructor() {
+
+    companion object {
+        private const val TAG = "RealtimeRouter"
+        private const val MAX_FILTER_IDS = 100 // Realtime caps `in` filters at 100 values
+        private const val REBUILD_DEBOUNCE_MS = 250L
+        private const val EVENT_BUFFER_SIZE = 256
+
+        @Volatile
+        private var INSTANCE: RealtimeRouter? = null
+
+        fun getInstance(): RealtimeRouter {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: RealtimeRouter().also { INSTANCE = it }
+            }
+        }
+    }
+
+    private val client = SupabaseClient.client
+    private val syncTracker = MessageSyncTracker.getInstance()
+    private val latencyTracer = MessageLatencyTracer.getInstance()
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val mutex = Mutex()
+
+    private val eventBus = MutableSharedFlow<RealtimeEvent>(
+        extraBufferCapacity = EVENT_BUFFER_SIZE,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    )
+
+    // Ref-counted interest per chat, and the broadcast topics joined for them
+    private val chatInterest = ConcurrentHashMap<String, Int>()
+    private val broadcastChannels = ConcurrentHashMap<String, RealtimeChannel>()
+    private val broadcastJobs = ConcurrentHashMap<String, Job>()
+
+    // Chat list interest: the user's chats whose rows should be watched
+    private val chatListInterest = AtomicInteger(0)
+    private val listedChatIds = ConcurrentHashMap.newKeySet<String>()
+
+    private var userChannel: RealtimeChannel? = null
+    private var userChannelJob: Job? = null
+    private var userChannelSignature: String? = null
+    private var rebuildJob: Job? = null
+
+    // Live message changes held per chat while a catch-up is in flight
+    private val heldEvents = HashMap<String, MutableList<RealtimeEvent>>()
+
+    /**
+     * Events for a single chat. Collecting holds interest in the chat for as long as the
+     * collection is active.
+     *
+     * @param chatId The chat room identifier
+     * @return Flow of events routed to this chat
+     */
+    fun events(chatId: String): Flow<RealtimeEvent> = flow {
+        acquire(chatId)
+        try {
+            emitAll(eventBus.filter { it.chatId == chatId || it.chatId.isEmpty() })
+        } finally {
+            release(chatId)
+        }
+    }
+
+    /**
+     * Chat row and membership changes for the user's chat list.
+     *
+     * @param chatIds The chats currently shown in the list
+     * @return Flow of [RealtimeEvent.ChatChange] and [RealtimeEvent.MembershipChange] events
+     */
+    fun chatListEvents(chatIds: Collection<String>): Flow<RealtimeEvent> = flow {
+        updateChatList(chatIds)
+        chatListInterest.incrementAndGet()
+        scheduleRebuild()
+        try {
+            emitAll(eventBus.filter { it is RealtimeEvent.ChatChange || it is RealtimeEvent.MembershipChange })
+        } finally {
+            chatListInterest.decrementAndGet()
+            scheduleRebuild()
+        }
+    }
+
+    /**
+     * Replaces the set of chats watched for the chat list, e.g. after a refresh.
+     */
+    fun updateChatList(chatIds: Collection<String>) {
+        val ids = chatIds.filter { it.isNotEmpty() }.toSet()
+        if (ids == listedChatIds) return
+        listedChatIds.retainAll(ids)
+        listedChatIds.addAll(ids)
+        scheduleRebuild()
+    }
+
+    /**
+     * Adds a reference to a chat and returns its shared broadcast topic, joining it if needed.
+     *
+     * @param chatId The chat room identifier
+     * @return The subscribed broadcast channel for the chat
+     */
+    suspend fun acquire(chatId: String): RealtimeChannel {
+        val count = chatInterest.merge(chatId, 1) { current, added -> current + added } ?: 1
+        if (count == 1) {
+            scheduleRebuild()
+        }
+
+        return try {
+            mutex.withLock {
+                broadcastChannels[chatId] ?: joinBroadcastTopic(chatId)
+            }
+        } catch (e: Exception) {
+            release(chatId)
+            throw e
+        }
+    }
+
+    /**
+     * Drops a reference to a chat. The broadcast topic is left when the last reference goes.
+     */
+    fun release(chatId: String) {
+        val remaining = chatInterest.computeIfPresent(chatId) { _, count -> if (count <= 1) null else count - 1 }
+        if (remaining == null) {
+            scope.launch {
+                mutex.withLock {
+                    // Re-acquired while we waited for the lock
+                    if (!chatInterest.containsKey(chatId)) {
+                        leaveBroadcastTopic(chatId)
+                    }
+                }
+            }
+            scheduleRebuild()
+        }
+    }
+
+    /**
+     * Returns the joined broadcast topic for a chat, or null if nobody holds interest in it.
+     */
+    fun getBroadcastChannel(chatId: String): RealtimeChannel? {
+        return broadcastChannels[chatId]
+    }
+
+    /**
+     * Leaves and rejoins a chat's broadcast topic and the per-user channel.
+     * Used after connection errors; all holders share the new topic.
+     *
+     * @param chatId The chat room identifier
+     * @return The new broadcast channel
+     */
+    suspend fun rejoin(chatId: String): RealtimeChannel {
+        return mutex.withLock {
+            leaveBroadcastTopic(chatId)
+            userChannelSignature = null
+            joinBroadcastTopic(chatId)
+        }.also {
+            scheduleRebuild()
+        }
+    }
+
+    /**
+     * Fetches message changes missed since the chat's cursor and publishes them as a
+     * [RealtimeEvent.CatchUp] ahead of any live changes that arrive meanwhile.
+     *
+     * @param chatId The chat room identifier
+     * @return true if the catch-up ran (even if nothing was missed), false if it could not
+     */
+    suspend fun catchUp(chatId: String): Boolean {
+        synchronized(heldEvents) {
+            // Another catch-up for this chat is already running
+            if (heldEvents.containsKey(chatId)) return true
+            heldEvents[chatId] = mutableListOf()
+        }
+
+        var result: MessageSyncTracker.CatchUpResult? = null
+        try {
+            result = syncTracker.catchUp(chatId)
+            result?.takeIf { it.messages.isNotEmpty() }?.let {
+                eventBus.emit(RealtimeEvent.CatchUp(chatId, it.messages, it.truncated))
+            }
+        } finally {
+            val held = synchronized(heldEvents) { heldEvents.remove(chatId) } ?: emptyList()
+            held.forEach { eventBus.emit(it) }
+        }
+        return result != null
+    }
+
+    // Private helper methods
+
+    private suspend fun dispatch(event: RealtimeEvent) {
+        if (event is RealtimeEvent.MessageChange && event.chatId.isNotEmpty()) {
+            // Arrival is stamped here, before a running catch-up can hold the event back
+            (event.action as? PostgresAction.Insert)?.let {
+                latencyTracer.onMessageArrived(event.chatId, MessageSyncTracker.recordOf(it.record))
+            }
+            syncTracker.advance(event.chatId, event.action)
+            val held = synchronized(heldEvents) {
+                heldEvents[event.chatId]?.add(event) != null
+            }
+            if (held) return
+        }
+        eventBus.emit(event)
+    }
+
+    /**
+     * Must be called under [mutex].
+     */
+    private suspend fun joinBroadcastTopic(chatId: String): RealtimeChannel {
+        val channel = client.realtime.channel("chat:$chatId")
+
+        // Register listeners before joining so nothing sent right after the join is missed
+        broadcastJobs[chatId] = scope.launch(start = CoroutineStart.UNDISPATCHED) {
+            merge(
+                channel.broadcastFlow<JsonObject>(event = "typing").mapNotNull { parseTyping(chatId, it) },
+                channel.broadcastFlow<JsonObject>(event = "read_receipt").mapNotNull { parseReadReceipt(chatId, it) }
+            ).collect { eventBus.emit(it) }
+        }
+
+        try {
+            channel.subscribe(blockUntilSubscribed = true)
+        } catch (e: Exception) {
+            broadcastJobs.remove(chatId)?.cancel()
+            throw e
+        }
+
+        broadcastChannels[chatId] = channel
+        Log.d(TAG, "Joined broadcast topic for chat: $chatId")
+        return channel
+    }
+
+    /**
+     * Must be called under [mutex].
+     */
+    private suspend fun leaveBroadcastTopic(chatId: String) {
+        broadcastJobs.remove(chatId)?.cancel()
+        val channel = broadcastChannels.remove(chatId) ?: return
+        try {
+            client.realtime.removeChannel(channel)
+            Log.d(TAG, "Left broadcast topic for chat: $chatId")
+        } catch (e: Exception) {
+            Log.w(TAG, "Error leaving broadcast topic for chat: $chatId", e)
+        }
+    }
+
+    private fun scheduleRebuild() {
+        synchronized(this) {
+            rebuildJob?.cancel()
+            rebuildJob = scope.launch {
+                delay(REBUILD_DEBOUNCE_MS)
+                mutex.withLock { rebuildUserChannel() }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the per-user channel when the watched chat set changes. Must be called under [mutex].
+     * postgres_changes filters are fixed at join time, so a new set means a new join.
+     */
+    private suspend fun rebuildUserChannel() {
+        val userId = client.auth.currentUserOrNull()?.id
+        val messageChatIds = chatInterest.keys.sorted().take(MAX_FILTER_IDS)
+        val watchChatList = chatListInterest.get() > 0
+        val listChatIds = if (watchChatList) listedChatIds.sorted().take(MAX_FILTER_IDS) else emptyList()
+
+        val signature = "$userId|$messageChatIds|$watchChatList|$listChatIds"
+        if (signature == userChannelSignature) return
+
+        userChannelJob?.cancel()
+        userChannelJob = null
+        userChannel?.let { oldChannel ->
+            try {
+                client.realtime.removeChannel(oldChannel)
+            } catch (e: Exception) {
+                Log.w(TAG, "Error removing user channel", e)
+            }
+        }
+        userChannel = null
+        userChannelSignature = signature
+
+        if (userId == null || (messageChatIds.isEmpty() && !watchChatList)) {
+            Log.d(TAG, "No realtime interest, user channel closed")
+            return
+        }
+
+        val channel = client.realtime.channel("user:$userId")
+        val flows = mutableListOf<Flow<RealtimeEvent>>()
+
+        if (messageChatIds.isNotEmpty()) {
+            flows += channel.postgresChangeFlow<PostgresAction>(schema = "public") {
+                table = "messages"
+                filter = "chat_id=in.(${messageChatIds.joinToString(",")})"
+            }.mapNotNull { action -> RealtimeEvent.MessageChange(chatIdOf(action, "chat_id"), action) }
+        }
+
+        if (watchChatList) {
+            if (listChatIds.isNotEmpty()) {
+                flows += channel.postgresChangeFlow<PostgresAction>(schema = "public") {
+                    table = "chats"
+                    filter = "chat_id=in.(${listChatIds.joinToString(",")})"
+                }.mapNotNull { action -> RealtimeEvent.ChatChange(chatIdOf(action, "chat_id"), action) }
+            }
+            // New chats show up as a participant row for this user
+            flows += channel.postgresChangeFlow<PostgresAction>(schema = "public") {
+                table = "chat_participants"
+                filter = "user_id=eq.$userId"
+            }.mapNotNull { action -> RealtimeEvent.MembershipChange(chatIdOf(action, "chat_id"), action) }
+        }
+
+        userChannelJob = scope.launch(start = CoroutineStart.UNDISPATCHED) {
+            flows.merge().collect { dispatch(it) }
+        }
+
+        try {
+            channel.subscribe(blockUntilSubscribed = true)
+            userChannel = channel
+            Log.d(TAG, "User channel joined: ${messageChatIds.size} chats, chat list: $watchChatList")
+
+            // Changes made while no user channel was joined (rebuild, reconnect) are fetched
+            // from each chat's cursor; chats that were never loaded have no cursor and are skipped
+            scope.launch {
+                messageChatIds.forEach { catchUp(it) }
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to join user channel", e)
+            userChannelJob?.cancel()
+            userChannelJob = null
+            userChannelSignature = null
+        }
+    }
+
+    private fun chatIdOf(action: PostgresAction, column: String): String {
+        val record = when (action) {
+            is PostgresAction.Insert -> action.record
+            is PostgresAction.Update -> action.record
+            is PostgresAction.Delete -> action.oldRecord
+            else -> null
+        }
+        return record?.get(column)?.jsonPrimitive?.contentOrNull ?: ""
+    }
+
+    private fun parseTyping(chatId: String, payload: JsonObject): RealtimeEvent? {
+        val userId = payload["user_id"]?.jsonPrimitive?.contentOrNull ?: return null
+        return RealtimeEvent.Typing(
+            chatId,
+            TypingStatus(
+                userId = userId,
+                chatId = chatId,
+                isTyping = payload["is_typing"]?.jsonPrimitive?.booleanOrNull ?: false,
+                timestamp = payload["timestamp"]?.jsonPrimitive?.longOrNull ?: System.currentTimeMillis(),
+                heartbeatIntervalMs = payload["heartbeat_ms"]?.jsonPrimitive?.longOrNull
+            )
+        )
+    }
+
+    private fun parseReadReceipt(chatId: String, payload: JsonObject): RealtimeEvent? {
+        val userId = payload["user_id"]?.jsonPrimitive?.contentOrNull ?: return null
+        val messageIds = try {
+            payload["message_ids"]?.jsonArray?.mapNotNull { it.jsonPrimitive.contentOrNull } ?: emptyList()
+        } catch (e: IllegalArgumentException) {
+            emptyList()
+        }
+        return RealtimeEvent.ReadReceipt(
+            chatId,
+            ReadReceiptEvent(
+                chatId = chatId,
+                userId = userId,
+                messageIds = messageIds,
+                timestamp = payload["timestamp"]?.jsonPrimitive?.longOrNull ?: System.currentTimeMillis(),
+                readUpTo = payload["read_up_to"]?.jsonPrimitive?.longOrNull
+            )
+        )
+    }
+}
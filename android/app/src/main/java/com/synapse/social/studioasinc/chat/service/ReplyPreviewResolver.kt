@@ -0,0 +1,95 @@
+package com.synapse.social.studioasinc.chat.service
+
+import com.synapse.social.studioasinc.backend.SupabaseChatService
+import com.synapse.social.studioasinc.chat.models.ChatItem
+import com.synapse.social.studioasinc.chat.models.ChatItemMapper
+
+/**
+ * Previews of replied messages that aren't in the loaded list, shared by every chat screen.
+ *
+ * Keeps compact snippets rather than whole rows, the most recently used [CACHE_SIZE] of them.
+ * Everything a page of messages replies to that isn't known yet is fetched in one request per
+ * [MAX_IDS_PER_REQUEST] IDs instead of one per reply; messages that turn out to be deleted or
+ * missing are cached as [ChatItem.ReplyPreview.UNAVAILABLE] so they aren't asked for again.
+ */
+class ReplyPreviewResolver internal constructor(
+    private val fetcher: suspend (List<String>) -> Result<List<Map<String, Any?>>>
+) {
+
+    companion object {
+        private const val CACHE_SIZE = 500
+        const val MAX_IDS_PER_REQUEST = 100
+
+        @Volatile
+        private var INSTANCE: ReplyPreviewResolver? = null
+
+        /**
+         * Get singleton instance of ReplyPreviewResolver.
+         */
+        fun getInstance(): ReplyPreviewResolver {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: run {
+                    val chatService by lazy { SupabaseChatService() }
+                    ReplyPreviewResolver { ids -> chatService.getReplySnippets(ids) }
+                }.also { INSTANCE = it }
+            }
+        }
+    }
+
+    // Access-ordered, so the eldest entry is the least recently used
+    private val cache = object : LinkedHashMap<String, ChatItem.ReplyPreview>(64, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ChatItem.ReplyPreview>): Boolean {
+            return size > CACHE_SIZE
+        }
+    }
+    private val inFlight = HashSet<String>()
+
+    /**
+     * Cached previews among [messageIds], for mapping a list snapshot without suspending.
+     */
+    fun cached(messageIds: Collection<String>): Map<String, ChatItem.ReplyPreview> {
+        if (messageIds.isEmpty()) return emptyMap()
+        return synchronized(cache) {
+            messageIds.mapNotNull { id -> cache[id]?.let { id to it } }.toMap()
+        }
+    }
+
+    /**
+     * Fetches previews for the messages among [messageIds] that aren't cached or already being
+     * fetched.
+     *
+     * @return Whether any preview was added, i.e. replies to these messages should be remapped
+     */
+    suspend fun resolve(messageIds: Collection<String>): Boolean {
+        val missing = synchronized(cache) {
+            messageIds.filter { id -> !cache.containsKey(id) && inFlight.add(id) }
+        }
+        if (missing.isEmpty()) return false
+
+        var added = false
+        try {
+            missing.chunked(MAX_IDS_PER_REQUEST).forEach { batch ->
+                // A failed batch stays unknown and is retried on the next resolve
+                val rows = fetcher(batch).getOrNull() ?: return@forEach
+                val found = rows.mapNotNull { row -> row["id"]?.toString()?.let { it to ChatItemMapper.replyPreviewOf(row) } }.toMap()
+                synchronized(cache) {
+                    batch.forEach { id -> cache[id] = found[id] ?: ChatItem.ReplyPreview.UNAVAILABLE }
+                }
+                added = true
+            }
+        } finally {
+            synchronized(cache) { inFlight.removeAll(missing.toSet()) }
+        }
+        return added
+    }
+
+    /**
+     * Drops a cached preview after its message was edited or deleted, so the next [resolve]
+     * fetches it again.
+     *
+     * @return Whether a preview was cached
+     */
+    fun invalidate(messageId: String): Boolean {
+        return synchronized(cache) { cache.remove(messageId) != null }
+    }
+}
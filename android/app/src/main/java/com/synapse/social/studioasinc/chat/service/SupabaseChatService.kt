@@ -344,27 +344,6 @@ class SupabaseChatService(private val databaseService: SupabaseDatabaseService)
         }
     }
 
-    /**
-     * Update typing status
-     */
-    suspend fun updateTypingStatus(chatId: String, userId: String, isTyping: Boolean): Result<Unit> {
-        return withContext(Dispatchers.IO) {
-            try {
-                val typingData = mapOf(
-                    "chat_id" to chatId,
-                    "user_id" to userId,
-                    "is_typing" to isTyping,
-                    "timestamp" to System.currentTimeMillis()
-                )
-                
-                val result = databaseService.upsert("typing_status", typingData)
-                result
-            } catch (e: Exception) {
-                Result.failure(e)
-            }
-        }
-    }
-
     /**
      * Update message delivery state to DELIVERED.
      * Sets delivered_at timestamp and broadcasts delivery event via Realtime.
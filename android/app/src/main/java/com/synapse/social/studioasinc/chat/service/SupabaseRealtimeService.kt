@@ -1,20 +1,14 @@
 package com.synapse.social.studioasinc.chat.service
 
 import android.util.Log
-import com.synapse.social.studioasinc.SupabaseClient
 import com.synapse.social.studioasinc.chat.models.ReadReceiptEvent
 import com.synapse.social.studioasinc.chat.models.TypingStatus
 import io.github.jan.supabase.realtime.RealtimeChannel
-import io.github.jan.supabase.realtime.channel
-import io.github.jan.supabase.realtime.realtime
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.Job
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
-import kotlinx.coroutines.launch
 import kotlinx.serialization.Serializable
 import kotlinx.serialization.builtins.ListSerializer
 import kotlinx.serialization.builtins.serializer
@@ -28,6 +22,9 @@ import java.util.concurrent.ConcurrentHashMap
 /**
  * Service for managing Supabase Realtime WebSocket connections and events.
  * Handles channel lifecycle, typing indicators, read receipts, and connection state.
+ *
+ * Channels are owned by the process-wide [RealtimeRouter]; this service holds ref-counted
+ * interest in the chats it subscribes to, so several screens share one topic per chat.
  */
 class SupabaseRealtimeService {
     
@@ -35,15 +32,16 @@ class SupabaseRealtimeService {
         private const val TAG = "SupabaseRealtimeService"
         private const val MAX_RECONNECT_ATTEMPTS = 5
         private const val INITIAL_RECONNECT_DELAY = 2000L
-        private const val POLLING_INTERVAL = 5000L
         private const val CONNECTION_TIMEOUT = 10000L
     }
     
     // Performance metrics tracking
     private val metrics = RealtimeMetrics()
     
-    // Thread-safe channel map for concurrent access
-    private val channels = ConcurrentHashMap<String, RealtimeChannel>()
+    // Shared channel owner; this service only tracks which chats it holds interest in
+    private val router = RealtimeRouter.getInstance()
+    private val syncTracker = MessageSyncTracker.getInstance()
+    private val subscribedChats = ConcurrentHashMap.newKeySet<String>()
     
     // Connection state management per chat
     private val _connectionState = MutableStateFlow<RealtimeState>(RealtimeState.Disconnected)
@@ -62,15 +60,15 @@ class SupabaseRealtimeService {
     private val queuedTypingEvents = ConcurrentHashMap<String, MutableList<TypingStatus>>()
     private val queuedReadReceiptEvents = ConcurrentHashMap<String, MutableList<ReadReceiptEvent>>()
     
-    // Polling fallback jobs
-    private val pollingJobs = ConcurrentHashMap<String, kotlinx.coroutines.Job>()
+    // One adaptive poll loop covers every chat on polling fallback
+    private val poller = AdaptivePoller { chatIds -> pollFallbackChats(chatIds) }
     
     // Backend service for polling fallback
     private val chatService = com.synapse.social.studioasinc.backend.SupabaseChatService()
     
     /**
      * Subscribe to a chat room's Realtime channel.
-     * Creates and manages a channel for the specified chat ID.
+     * Acquires the chat's shared topic from the router, joining it if no one else holds it.
      * 
      * @param chatId The unique identifier for the chat room
      * @return The created or existing RealtimeChannel
@@ -79,37 +77,33 @@ class SupabaseRealtimeService {
         Log.d(TAG, "Subscribing to chat: $chatId")
         
         // Return existing channel if already subscribed
-        channels[chatId]?.let {
+        getChannel(chatId)?.let {
             Log.d(TAG, "Reusing existing channel for chat: $chatId")
             return it
         }
         
+        val newInterest = subscribedChats.add(chatId)
+        
         return try {
             updateConnectionState(RealtimeState.Connecting)
             
-            val channelName = "chat:$chatId"
-            val channel = SupabaseClient.client.realtime.channel(channelName)
-            
-            // Subscribe to the channel with timeout handling
-            channel.subscribe()
-            
-            // Store the channel
-            channels[chatId] = channel
-            
-            // Reset reconnection attempts on success
-            chatReconnectAttempts[chatId] = 0
-            chatPollingFallback[chatId] = false
-            lastSuccessfulConnection = System.currentTimeMillis()
-            
-            // Record successful connection
-            metrics.recordConnectionStart()
+            val channel = if (newInterest) {
+                router.acquire(chatId)
+            } else {
+                // Interest is held but the topic was dropped, rejoin it
+                router.rejoin(chatId)
+            }
             
-            updateConnectionState(RealtimeState.Connected)
+            onSubscribed(chatId)
             
             Log.d(TAG, "Successfully subscribed to chat: $chatId")
             channel
             
         } catch (e: Exception) {
+            // acquire() already dropped its reference on failure
+            if (newInterest) {
+                subscribedChats.remove(chatId)
+            }
             Log.e(TAG, "Failed to subscribe to chat: $chatId", e)
             handleSubscriptionError(chatId, e)
             throw e
@@ -123,15 +117,17 @@ class SupabaseRealtimeService {
      * @param chatId The chat room identifier
      * @param userId The user who is typing
      * @param isTyping Whether the user is currently typing
+     * @param heartbeatIntervalMs Sender's heartbeat interval, so receivers can size their expiry
      */
-    suspend fun broadcastTyping(chatId: String, userId: String, isTyping: Boolean) {
+    suspend fun broadcastTyping(chatId: String, userId: String, isTyping: Boolean, heartbeatIntervalMs: Long? = null) {
         Log.d(TAG, "Broadcasting typing event - chatId: $chatId, userId: $userId, isTyping: $isTyping")
         
         val typingStatus = TypingStatus(
             userId = userId,
             chatId = chatId,
             isTyping = isTyping,
-            timestamp = System.currentTimeMillis()
+            timestamp = System.currentTimeMillis(),
+            heartbeatIntervalMs = heartbeatIntervalMs
         )
         
         // Check if using polling fallback
@@ -141,12 +137,12 @@ class SupabaseRealtimeService {
             return
         }
         
-        val channel = channels[chatId]
+        val channel = getChannel(chatId)
         if (channel == null) {
             Log.w(TAG, "No channel found for chatId: $chatId. Subscribing first.")
             try {
                 subscribeToChat(chatId)
-                return broadcastTyping(chatId, userId, isTyping)
+                return broadcastTyping(chatId, userId, isTyping, heartbeatIntervalMs)
             } catch (e: Exception) {
                 Log.e(TAG, "Failed to subscribe, queuing typing event", e)
                 queueTypingEvent(chatId, typingStatus)
@@ -165,6 +161,7 @@ class SupabaseRealtimeService {
                     put("chat_id", chatId)
                     put("is_typing", isTyping)
                     put("timestamp", typingStatus.timestamp)
+                    heartbeatIntervalMs?.let { put("heartbeat_ms", it) }
                 }
             )
             
@@ -176,7 +173,7 @@ class SupabaseRealtimeService {
             
         } catch (e: Exception) {
             Log.e(TAG, "Failed to broadcast typing event, queuing for later", e)
-            metrics.recordFailedEvent("typing")
+            metrics.recordFailedEvent(RealtimeMetrics.EVENT_TYPING)
             queueTypingEvent(chatId, typingStatus)
             handleBroadcastError(chatId, e)
         }
@@ -189,15 +186,17 @@ class SupabaseRealtimeService {
      * @param chatId The chat room identifier
      * @param userId The user who read the messages
      * @param messageIds List of message IDs that were read
+     * @param readUpTo Newest created_at the user has read up to, if known
      */
-    suspend fun broadcastReadReceipt(chatId: String, userId: String, messageIds: List<String>) {
+    suspend fun broadcastReadReceipt(chatId: String, userId: String, messageIds: List<String>, readUpTo: Long? = null) {
         Log.d(TAG, "Broadcasting read receipt - chatId: $chatId, userId: $userId, messageCount: ${messageIds.size}")
         
         val readReceiptEvent = ReadReceiptEvent(
             chatId = chatId,
             userId = userId,
             messageIds = messageIds,
-            timestamp = System.currentTimeMillis()
+            timestamp = System.currentTimeMillis(),
+            readUpTo = readUpTo
         )
         
         // Check if using polling fallback
@@ -207,12 +206,12 @@ class SupabaseRealtimeService {
             return
         }
         
-        val channel = channels[chatId]
+        val channel = getChannel(chatId)
         if (channel == null) {
             Log.w(TAG, "No channel found for chatId: $chatId. Subscribing first.")
             try {
                 subscribeToChat(chatId)
-                return broadcastReadReceipt(chatId, userId, messageIds)
+                return broadcastReadReceipt(chatId, userId, messageIds, readUpTo)
             } catch (e: Exception) {
                 Log.e(TAG, "Failed to subscribe, queuing read receipt event", e)
                 queueReadReceiptEvent(chatId, readReceiptEvent)
@@ -231,6 +230,7 @@ class SupabaseRealtimeService {
                     put("user_id", userId)
                     put("message_ids", Json.encodeToJsonElement(ListSerializer(String.serializer()), messageIds))
                     put("timestamp", readReceiptEvent.timestamp)
+                    readUpTo?.let { put("read_up_to", it) }
                 }
             )
             
@@ -242,7 +242,7 @@ class SupabaseRealtimeService {
             
         } catch (e: Exception) {
             Log.e(TAG, "Failed to broadcast read receipt, queuing for later", e)
-            metrics.recordFailedEvent("read_receipt")
+            metrics.recordFailedEvent(RealtimeMetrics.EVENT_READ_RECEIPT)
             queueReadReceiptEvent(chatId, readReceiptEvent)
             handleBroadcastError(chatId, e)
         }
@@ -262,20 +262,16 @@ class SupabaseRealtimeService {
         // Clear queued events
         clearQueuedEvents(chatId)
         
-        val channel = channels.remove(chatId)
-        if (channel != null) {
-            try {
-                SupabaseClient.client.realtime.removeChannel(channel)
-                Log.d(TAG, "Successfully unsubscribed from chat: $chatId")
-            } catch (e: Exception) {
-                Log.e(TAG, "Error unsubscribing from chat: $chatId", e)
-            }
+        if (subscribedChats.remove(chatId)) {
+            // The topic is left once no other subscriber holds the chat
+            router.release(chatId)
+            Log.d(TAG, "Successfully unsubscribed from chat: $chatId")
         } else {
             Log.w(TAG, "No channel found for chatId: $chatId")
         }
         
         // Update connection state if no channels remain
-        if (channels.isEmpty()) {
+        if (subscribedChats.isEmpty()) {
             metrics.recordConnectionEnd()
             _connectionState.value = RealtimeState.Disconnected
             notifyConnectionCallbacks(RealtimeState.Disconnected)
@@ -290,19 +286,16 @@ class SupabaseRealtimeService {
     suspend fun cleanup() {
         Log.d(TAG, "Cleaning up all channels")
         
-        // Stop all polling jobs
-        pollingJobs.values.forEach { job ->
-            job.cancel()
-        }
-        pollingJobs.clear()
+        // Stop the combined poll
+        poller.stop()
         
         // Unsubscribe from all channels
-        channels.keys.toList().forEach { chatId ->
+        subscribedChats.toList().forEach { chatId ->
             unsubscribeFromChat(chatId)
         }
         
         // Clear all data structures
-        channels.clear()
+        subscribedChats.clear()
         connectionCallbacks.clear()
         chatReconnectAttempts.clear()
         chatPollingFallback.clear()
@@ -337,7 +330,18 @@ class SupabaseRealtimeService {
      * @return The RealtimeChannel if it exists, null otherwise
      */
     fun getChannel(chatId: String): RealtimeChannel? {
-        return channels[chatId]
+        return if (subscribedChats.contains(chatId)) router.getBroadcastChannel(chatId) else null
+    }
+    
+    /**
+     * Observe typed realtime events for a chat room (message changes, typing, read receipts).
+     * Holds interest in the chat while collected.
+     * 
+     * @param chatId The chat room identifier
+     * @return Flow of events routed to this chat
+     */
+    fun observeEvents(chatId: String): Flow<RealtimeEvent> {
+        return router.events(chatId)
     }
     
     /**
@@ -347,11 +351,23 @@ class SupabaseRealtimeService {
      * @return true if subscribed, false otherwise
      */
     fun isSubscribed(chatId: String): Boolean {
-        return channels.containsKey(chatId)
+        return subscribedChats.contains(chatId)
     }
     
     // Private helper methods
     
+    private fun onSubscribed(chatId: String) {
+        // Reset reconnection attempts on success
+        chatReconnectAttempts[chatId] = 0
+        chatPollingFallback[chatId] = false
+        lastSuccessfulConnection = System.currentTimeMillis()
+        
+        // Record successful connection
+        metrics.recordConnectionStart()
+        
+        updateConnectionState(RealtimeState.Connected)
+    }
+    
     private fun notifyConnectionCallbacks(state: RealtimeState) {
         connectionCallbacks.forEach { callback ->
             try {
@@ -382,16 +398,9 @@ class SupabaseRealtimeService {
         delay(delayMs)
         
         try {
-            // Remove failed channel before retrying
-            channels.remove(chatId)?.let { oldChannel ->
-                try {
-                    SupabaseClient.client.realtime.removeChannel(oldChannel)
-                } catch (e: Exception) {
-                    Log.w(TAG, "Error removing old channel during reconnection", e)
-                }
-            }
-            
-            subscribeToChat(chatId)
+            // Replace the failed topic; other holders of this chat share the new one.
+            // Rejoining rebuilds the user channel, which catches up from each chat's cursor
+            rejoinOrSubscribe(chatId)
             metrics.recordReconnection(successful = true)
             Log.i(TAG, "Reconnection successful for chat: $chatId")
             
@@ -402,6 +411,15 @@ class SupabaseRealtimeService {
         }
     }
     
+    private suspend fun rejoinOrSubscribe(chatId: String) {
+        if (subscribedChats.contains(chatId)) {
+            router.rejoin(chatId)
+            onSubscribed(chatId)
+        } else {
+            subscribeToChat(chatId)
+        }
+    }
+    
     private fun handleSubscriptionError(chatId: String, error: Exception) {
         Log.e(TAG, "Subscription error for chat: $chatId", error)
         
@@ -440,7 +458,7 @@ class SupabaseRealtimeService {
         chatPollingFallback[chatId] = true
         metrics.recordPollingFallbackActivation()
         updateConnectionState(RealtimeState.Error("Using polling fallback"))
-        Log.w(TAG, "Polling fallback enabled for chat: $chatId. Real-time features will poll every ${POLLING_INTERVAL}ms")
+        Log.w(TAG, "Polling fallback enabled for chat: $chatId. Real-time features will poll adaptively")
         
         // Start polling fallback
         startPollingFallback(chatId)
@@ -473,12 +491,13 @@ class SupabaseRealtimeService {
     }
     
     /**
-     * Get the polling interval in milliseconds.
+     * Get the current polling interval in milliseconds.
+     * The interval grows while polls find nothing and shrinks on activity.
      * 
      * @return The polling interval
      */
     fun getPollingInterval(): Long {
-        return POLLING_INTERVAL
+        return poller.currentIntervalMs
     }
     
     /**
@@ -497,12 +516,9 @@ class SupabaseRealtimeService {
         chatReconnectAttempts[chatId] = 0
         chatPollingFallback[chatId] = false
         
-        // Remove existing channel
-        unsubscribeFromChat(chatId)
-        
-        // Attempt to subscribe again
+        // Attempt to subscribe again, keeping queued events
         try {
-            subscribeToChat(chatId)
+            rejoinOrSubscribe(chatId)
             
             // Send queued events when connection is restored
             sendQueuedEvents(chatId)
@@ -518,11 +534,12 @@ class SupabaseRealtimeService {
     /**
      * Reconnect all active channels.
      * Useful for recovering from network changes or app resume.
+     * Message changes missed meanwhile are caught up once the shared user channel is rejoined.
      */
     suspend fun reconnectAll() {
         Log.d(TAG, "Reconnecting all channels")
         
-        val chatIds = channels.keys.toList()
+        val chatIds = subscribedChats.toList()
         chatIds.forEach { chatId ->
             try {
                 reconnect(chatId)
@@ -605,68 +622,58 @@ class SupabaseRealtimeService {
 
     /**
      * Start polling fallback for a specific chat when WebSocket fails.
-     * Polls every 5 seconds for typing indicators and read receipts.
+     * The chat joins the shared adaptive poll, which backs off while idle and pauses in the background.
      * 
      * Requirements: 6.2
      * 
      * @param chatId The chat room identifier
      */
-    private suspend fun startPollingFallback(chatId: String) {
-        // Cancel existing polling job if any
-        pollingJobs[chatId]?.cancel()
-        
-        val pollingJob = CoroutineScope(Dispatchers.IO).launch {
-            Log.i(TAG, "Starting polling fallback for chat: $chatId")
-            
-            while (chatPollingFallback.getOrDefault(chatId, false)) {
-                try {
-                    // Poll for typing indicators
-                    pollTypingIndicators(chatId)
-                    
-                    // Poll for read receipts
-                    pollReadReceipts(chatId)
-                    
-                    // Send queued events
-                    sendQueuedEvents(chatId)
-                    
-                    // Wait for next poll
-                    delay(POLLING_INTERVAL)
-                    
-                } catch (e: Exception) {
-                    Log.e(TAG, "Error during polling for chat: $chatId", e)
-                    delay(POLLING_INTERVAL)
-                }
-            }
-            
-            Log.i(TAG, "Polling fallback stopped for chat: $chatId")
-        }
-        
-        pollingJobs[chatId] = pollingJob
+    private fun startPollingFallback(chatId: String) {
+        Log.i(TAG, "Starting polling fallback for chat: $chatId")
+        poller.add(chatId)
     }
-
+    
     /**
-     * Poll for typing indicators using REST API.
+     * One combined poll for all fallback chats.
+     * A count-only request checks whether any message changed since the chats' cursors; only
+     * then are the changed chats fetched, each from its own cursor.
      * 
-     * @param chatId The chat room identifier
+     * @param chatIds The chats currently on polling fallback
+     * @return true if any change was found
      */
-    private suspend fun pollTypingIndicators(chatId: String) {
-        try {
-            // This would typically call a REST endpoint to get current typing users
-            // For now, we'll simulate this with a placeholder
-            // In a real implementation, you'd have an endpoint like:
-            // GET /api/chats/{chatId}/typing-users
-            
-            Log.d(TAG, "Polling typing indicators for chat: $chatId")
-            
-            // Placeholder: In real implementation, parse response and notify callbacks
-            // val typingUsers = chatService.getTypingUsers(chatId)
-            // typingUsers.forEach { typingStatus ->
-            //     notifyTypingCallbacks(typingStatus)
-            // }
+    private suspend fun pollFallbackChats(chatIds: Set<String>): Boolean {
+        val active = chatIds.filter { chatPollingFallback.getOrDefault(it, false) }
+        if (active.isEmpty()) return false
+        
+        var hadActivity = false
+        
+        // Chats never loaded have no cursor; their first load will fetch everything
+        val cursors = active.mapNotNull { chatId ->
+            syncTracker.getCursor(chatId)?.let { chatId to it.timestamp }
+        }.toMap()
+        if (cursors.isNotEmpty()) {
+            val changed = chatService.countMessagesChangedSince(cursors).getOrNull() ?: 0L
+            if (changed > 0) {
+                hadActivity = true
+                chatService.getChatIdsChangedSince(cursors).getOrNull()?.forEach { chatId ->
+                    router.catchUp(chatId)
+                }
+            }
+        }
+        
+        // Typing is broadcast-only and expires on receivers, so there is nothing to poll for it
+        active.forEach { chatId ->
+            // Poll for read receipts
+            pollReadReceipts(chatId)
             
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to poll typing indicators for chat: $chatId", e)
+            // Send queued events
+            if (!queuedTypingEvents[chatId].isNullOrEmpty() || !queuedReadReceiptEvents[chatId].isNullOrEmpty()) {
+                hadActivity = true
+                sendQueuedEvents(chatId)
+            }
         }
+        
+        return hadActivity
     }
 
     /**
@@ -774,7 +781,7 @@ class SupabaseRealtimeService {
                 
                 latestTypingByUser.forEach { typingStatus ->
                     try {
-                        broadcastTyping(chatId, typingStatus.userId, typingStatus.isTyping)
+                        broadcastTyping(chatId, typingStatus.userId, typingStatus.isTyping, typingStatus.heartbeatIntervalMs)
                     } catch (e: Exception) {
                         Log.e(TAG, "Failed to send queued typing event", e)
                     }
@@ -797,13 +804,14 @@ class SupabaseRealtimeService {
                 // Batch all message IDs by user
                 val batchedReceipts = readReceiptQueue.groupBy { it.userId }
                     .mapValues { (_, events) -> 
-                        events.flatMap { it.messageIds }.distinct()
+                        events.flatMap { it.messageIds }.distinct() to events.mapNotNull { it.readUpTo }.maxOrNull()
                     }
                 
-                batchedReceipts.forEach { (userId, messageIds) ->
+                batchedReceipts.forEach { (userId, batch) ->
+                    val (messageIds, readUpTo) = batch
                     if (messageIds.isNotEmpty()) {
                         try {
-                            broadcastReadReceipt(chatId, userId, messageIds)
+                            broadcastReadReceipt(chatId, userId, messageIds, readUpTo)
                         } catch (e: Exception) {
                             Log.e(TAG, "Failed to send queued read receipt event", e)
                         }
@@ -832,8 +840,7 @@ class SupabaseRealtimeService {
      * @param chatId The chat room identifier
      */
     private fun stopPollingFallback(chatId: String) {
-        pollingJobs[chatId]?.cancel()
-        pollingJobs.remove(chatId)
+        poller.remove(chatId)
         chatPollingFallback[chatId] = false
         Log.d(TAG, "Stopped polling fallback for chat: $chatId")
     }
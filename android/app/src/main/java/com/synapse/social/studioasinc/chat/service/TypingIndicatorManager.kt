@@ -2,19 +2,25 @@ package com.synapse.social.studioasinc.chat.service
 
 import android.util.Log
 import com.synapse.social.studioasinc.chat.models.TypingStatus
+import com.synapse.social.studioasinc.util.NetworkPolicy
 import kotlinx.coroutines.CoroutineExceptionHandler
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.filterIsInstance
 import kotlinx.coroutines.launch
 import java.util.concurrent.ConcurrentHashMap
 
 /**
- * Manages typing indicator events with debouncing and auto-stop functionality.
+ * Manages typing indicator events with leading-edge, heartbeat and auto-stop semantics.
  * 
- * This manager handles:
- * - Debouncing typing events to prevent excessive broadcasts (500ms)
+ * Typing state is ephemeral: it is only broadcast on the chat's realtime topic, never written
+ * to the database. This manager handles:
+ * - Broadcasting on the first keystroke, then one heartbeat per 3 seconds (wider on poor links)
+ *   while typing continues
  * - Auto-stopping typing indicators after inactivity (3 seconds)
+ * - Expiring remote typing indicators whose heartbeats stop arriving
  * - Managing coroutine jobs per chat room
  * - Subscribing to and handling incoming typing events
  * - Respecting user privacy preferences for typing indicators
@@ -24,7 +30,8 @@ import java.util.concurrent.ConcurrentHashMap
 class TypingIndicatorManager(
     private val realtimeService: SupabaseRealtimeService,
     private val preferencesManager: PreferencesManager,
-    private val coroutineScope: CoroutineScope
+    private val coroutineScope: CoroutineScope,
+    private val networkPolicy: StateFlow<NetworkPolicy>? = null
 ) {
 
     private val exceptionHandler = CoroutineExceptionHandler { _, throwable ->
@@ -33,8 +40,18 @@ class TypingIndicatorManager(
 
     companion object {
         private const val TAG = "TypingIndicatorManager"
-        private const val DEBOUNCE_DELAY = 500L // 500ms debounce for typing events
+        private const val HEARTBEAT_INTERVAL = 3000L // At most one typing event per 3 seconds
         private const val TYPING_TIMEOUT = 3000L // 3 seconds auto-stop timeout
+        
+        // Remote indicators survive one missed heartbeat before expiring
+        const val TYPING_EXPIRY = 2 * HEARTBEAT_INTERVAL + 1000L
+        
+        /**
+         * Expiry for a remote indicator, sized to the sender's advertised heartbeat.
+         */
+        fun typingExpiryFor(heartbeatIntervalMs: Long?): Long {
+            return heartbeatIntervalMs?.let { 2 * it.coerceAtLeast(HEARTBEAT_INTERVAL) + 1000L } ?: TYPING_EXPIRY
+        }
     }
     
     // Track typing jobs per chat room to manage debouncing
@@ -52,10 +69,16 @@ class TypingIndicatorManager(
     // Track typing event callbacks per chat
     private val typingCallbacks = ConcurrentHashMap<String, (TypingStatus) -> Unit>()
     
+    // Track incoming event collection per chat
+    private val subscriptionJobs = ConcurrentHashMap<String, Job>()
+    
+    // Expiry timers for remote typing indicators, keyed by "chatId:userId"
+    private val remoteExpiryJobs = ConcurrentHashMap<String, Job>()
+    
     /**
      * Called when the user types in the message input field.
-     * Implements debouncing to send typing events at most once per 500ms.
-     * Also sets up auto-stop timer for 3 seconds of inactivity.
+     * Broadcasts immediately on the first keystroke, then at most once per 3 seconds as a
+     * heartbeat while typing continues. Also sets up auto-stop timer for 3 seconds of inactivity.
      * Respects user privacy preferences for typing indicators.
      * 
      * Requirements: 1.1, 1.3, 1.4, 5.2, 5.3, 5.5, 6.1
@@ -80,21 +103,22 @@ class TypingIndicatorManager(
         val lastTime = lastTypingTime[chatId] ?: 0L
         val timeSinceLastEvent = currentTime - lastTime
         
-        // Check if we need to send a typing event (debounce logic)
-        val shouldSendEvent = timeSinceLastEvent >= DEBOUNCE_DELAY || !isTypingInChat.getOrDefault(chatId, false)
+        // Leading edge on the first keystroke, then one heartbeat per interval; poor links widen it
+        val heartbeatInterval = networkPolicy?.value?.typingHeartbeatMs ?: HEARTBEAT_INTERVAL
+        val shouldSendEvent = !isTypingInChat.getOrDefault(chatId, false) || timeSinceLastEvent >= heartbeatInterval
         
         if (shouldSendEvent) {
+            // Claim the slot before broadcasting so a burst of keystrokes sends one event
+            lastTypingTime[chatId] = currentTime
+            isTypingInChat[chatId] = true
+            
             // Cancel existing typing job if it exists
             typingJobs[chatId]?.cancel()
 
             // Send typing event immediately
             typingJobs[chatId] = coroutineScope.launch(exceptionHandler) {
                 try {
-                    userId?.let {
-                        realtimeService.broadcastTyping(chatId, it, true)
-                    }
-                    lastTypingTime[chatId] = currentTime
-                    isTypingInChat[chatId] = true
+                    realtimeService.broadcastTyping(chatId, userId, true, heartbeatInterval)
                     Log.d(TAG, "Typing event sent for chat: $chatId")
                 } catch (e: Exception) {
                     Log.e(TAG, "Failed to broadcast typing event for chat: $chatId", e)
@@ -217,14 +241,17 @@ class TypingIndicatorManager(
         typingCallbacks[chatId] = onTypingUpdate
         
         try {
-            // Get or create the Realtime channel
-            val channel = realtimeService.getChannel(chatId) 
+            // Get or create the Realtime channel used for sending
+            realtimeService.getChannel(chatId) 
                 ?: realtimeService.subscribeToChat(chatId)
             
-            // FIXME: Implement broadcast listening for typing events once the Supabase Realtime API is finalized.
-            // This will involve listening for a specific event on the channel and invoking the onTypingUpdate callback.
-            // For now, we'll rely on polling fallback for typing indicator updates
-            Log.d(TAG, "Typing indicator subscription set up for chat: $chatId (broadcast listening pending API clarification)")
+            // Incoming typing broadcasts are routed from the chat's shared topic
+            subscriptionJobs[chatId]?.cancel()
+            subscriptionJobs[chatId] = coroutineScope.launch(exceptionHandler) {
+                realtimeService.observeEvents(chatId)
+                    .filterIsInstance<RealtimeEvent.Typing>()
+                    .collect { event -> onRemoteTyping(chatId, event.status) }
+            }
 
             Log.d(TAG, "Successfully subscribed to typing events for chat: $chatId")
             
@@ -247,6 +274,10 @@ class TypingIndicatorManager(
         
         // Remove the callback
         typingCallbacks.remove(chatId)
+        subscriptionJobs.remove(chatId)?.cancel()
+        remoteExpiryJobs.keys.filter { it.startsWith("$chatId:") }.forEach { key ->
+            remoteExpiryJobs.remove(key)?.cancel()
+        }
         
         // Clean up typing state
         cleanup(chatId)
@@ -262,7 +293,32 @@ class TypingIndicatorManager(
         Log.d(TAG, "Unsubscribing from all typing events")
         
         typingCallbacks.clear()
+        subscriptionJobs.values.forEach { it.cancel() }
+        subscriptionJobs.clear()
+        remoteExpiryJobs.values.forEach { it.cancel() }
+        remoteExpiryJobs.clear()
         
         cleanupAll()
     }
+    
+    /**
+     * Delivers a remote typing event and (re)arms its expiry.
+     * Typing state is broadcast-only, so a sender that disconnects without a stop event would
+     * otherwise stay "typing" forever; each heartbeat pushes the expiry back.
+     */
+    private fun onRemoteTyping(chatId: String, status: TypingStatus) {
+        val key = "$chatId:${status.userId}"
+        remoteExpiryJobs.remove(key)?.cancel()
+        
+        if (status.isTyping) {
+            remoteExpiryJobs[key] = coroutineScope.launch(exceptionHandler) {
+                delay(typingExpiryFor(status.heartbeatIntervalMs))
+                remoteExpiryJobs.remove(key)
+                Log.d(TAG, "Typing indicator expired for user: ${status.userId} in chat: $chatId")
+                typingCallbacks[chatId]?.invoke(status.copy(isTyping = false, timestamp = System.currentTimeMillis()))
+            }
+        }
+        
+        typingCallbacks[chatId]?.invoke(status)
+    }
 }
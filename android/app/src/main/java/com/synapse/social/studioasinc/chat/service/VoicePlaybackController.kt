@@ -0,0 +1,309 @@
+package com.synapse.social.studioasinc.chat.service
+
+import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import androidx.annotation.OptIn
+import androidx.media3.common.AudioAttributes
+import androidx.media3.common.C
+import androidx.media3.common.MediaItem
+import androidx.media3.common.PlaybackException
+import androidx.media3.common.Player
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DefaultDataSource
+import androidx.media3.datasource.cache.CacheDataSource
+import androidx.media3.exoplayer.ExoPlayer
+import androidx.media3.exoplayer.source.DefaultMediaSourceFactory
+import com.synapse.social.studioasinc.chat.models.ChatItem
+import com.synapse.social.studioasinc.util.MediaCache
+
+/**
+ * Plays voice notes for every chat screen through one shared [ExoPlayer].
+ *
+ * Tapping a voice note plays it and then the voice notes right after it, as one playlist, so a
+ * run of notes plays through. Audio streams through [MediaCache.streamCache], so a note heard
+ * before plays from disk. Bubbles don't own any playback state: they read [currentId] and
+ * [isPlaying] when bound, [Listener]s hear when the playing note changes, and one progress
+ * ticker updates the single [ProgressTarget] showing the current note, only while it plays.
+ *
+ * The player is created on first use and released when the last [Listener] is removed.
+ * Main thread only.
+ */
+@OptIn(UnstableApi::class)
+class VoicePlaybackController private constructor(private val context: Context) {
+
+    companion object {
+        private const val TAG = "VoicePlaybackController"
+        private const val PROGRESS_INTERVAL_MS = 100L
+
+        @Volatile
+        private var INSTANCE: VoicePlaybackController? = null
+
+        /**
+         * Get singleton instance of VoicePlaybackController.
+         */
+        fun getInstance(context: Context): VoicePlaybackController {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: VoicePlaybackController(context.applicationContext).also { INSTANCE = it }
+            }
+        }
+
+        /**
+         * The voice note [startKey] and the playable voice notes directly after it in [items].
+         * The run ends at the first item that isn't one, so playback stops where the voice
+         * notes do.
+         */
+        fun playlistFrom(items: List<ChatItem>, startKey: String): List<Track> {
+            val start = items.indexOfFirst { it.key == startKey }
+            if (start == -1) return emptyList()
+            val tracks = ArrayList<Track>()
+            for (index in start until items.size) {
+                tracks.add(trackOf(items[index]) ?: break)
+            }
+            return tracks
+        }
+
+        private fun trackOf(item: ChatItem): Track? {
+            if (item !is ChatItem.Message || item.viewType != ChatItem.VIEW_TYPE_VOICE_MESSAGE || item.isDeleted) {
+                return null
+            }
+            val url = item.attachments.firstOrNull()?.url?.takeIf { it.isNotEmpty() } ?: return null
+            return Track(item.key, url)
+        }
+    }
+
+    /**
+     * One voice note of a playlist.
+     *
+     * @property id Message ID, or any key the caller identifies the note by
+     */
+    data class Track(val id: String, val url: String)
+
+    interface Listener {
+        /**
+         * The current note changed, or started, paused or stopped playing. [previousId] and
+         * [currentId] are the same when only the playing state changed.
+         */
+        fun onVoicePlaybackChanged(previousId: String?, currentId: String?)
+    }
+
+    interface ProgressTarget {
+        fun onVoiceProgress(positionMs: Long, durationMs: Long)
+    }
+
+    /** The note loaded in the player, playing or paused */
+    var currentId: String? = null
+        private set
+
+    private var player: ExoPlayer? = null
+    private val listeners = LinkedHashSet<Listener>()
+    private var progressTarget: ProgressTarget? = null
+    private var progressTargetId: String? = null
+    private val handler = Handler(Looper.getMainLooper())
+
+    private val progressTicker = object : Runnable {
+        override fun run() {
+            publishProgress()
+            if (player?.isPlaying == true) {
+                handler.postDelayed(this, PROGRESS_INTERVAL_MS)
+            }
+        }
+    }
+
+    private val playerListener = object : Player.Listener {
+        override fun onMediaItemTransition(mediaItem: MediaItem?, reason: Int) {
+            setCurrent(mediaItem?.mediaId)
+        }
+
+        override fun onIsPlayingChanged(isPlaying: Boolean) {
+            if (isPlaying) startTicker() else stopTicker()
+            notifyListeners(currentId, currentId)
+        }
+
+        override fun onPlayWhenReadyChanged(playWhenReady: Boolean, reason: Int) {
+            notifyListeners(currentId, currentId)
+        }
+
+        override fun onPlaybackStateChanged(playbackState: Int) {
+            when (playbackState) {
+                Player.STATE_ENDED -> stop()
+                else -> notifyListeners(currentId, currentId)
+            }
+        }
+
+        override fun onPlayerError(error: PlaybackException) {
+            Log.e(TAG, "Error playing voice message", error)
+            stop()
+        }
+    }
+
+    /**
+     * Whether [id] is the current note and playing or about to, i.e. its button should offer
+     * to pause.
+     */
+    fun isPlaying(id: String): Boolean {
+        return id == currentId && player?.playWhenReady == true
+    }
+
+    /**
+     * Whether [id] is the current note and waiting for audio.
+     */
+    fun isBuffering(id: String): Boolean {
+        return id == currentId && player?.playbackState == Player.STATE_BUFFERING
+    }
+
+    /**
+     * Pauses or resumes [id] if it's the current note, otherwise plays [playlist] from it.
+     */
+    fun toggle(playlist: List<Track>, id: String) {
+        val current = player
+        if (current != null && id == currentId) {
+            if (current.playWhenReady) current.pause() else current.play()
+            return
+        }
+        play(playlist, id)
+    }
+
+    /**
+     * Plays [playlist] starting at the note [id], replacing whatever was playing.
+     */
+    fun play(playlist: List<Track>, id: String, startPositionMs: Long = 0L) {
+        val startIndex = playlist.indexOfFirst { it.id == id }
+        if (startIndex == -1) return
+        val items = playlist.map { track -> MediaItem.Builder().setMediaId(track.id).setUri(track.url).build() }
+        val player = player ?: createPlayer().also { player = it }
+        player.setMediaItems(items, startIndex, startPositionMs)
+        player.prepare()
+        player.play()
+        setCurrent(id)
+    }
+
+    fun pause() {
+        player?.pause()
+    }
+
+    /**
+     * Stops playback and unloads the playlist; the player is kept for the next note.
+     */
+    fun stop() {
+        val current = player ?: return
+        current.stop()
+        current.clearMediaItems()
+        setCurrent(null)
+    }
+
+    /**
+     * Seeks within the current note; ignored for any other.
+     */
+    fun seekTo(id: String, positionMs: Long) {
+        if (id != currentId) return
+        player?.seekTo(positionMs)
+        publishProgress()
+    }
+
+    fun positionOf(id: String): Long {
+        return if (id == currentId) player?.currentPosition ?: 0L else 0L
+    }
+
+    /**
+     * Duration of [id] if it's the current note and its length is known yet, otherwise 0.
+     */
+    fun durationOf(id: String): Long {
+        if (id != currentId) return 0L
+        return player?.duration?.takeIf { it != C.TIME_UNSET } ?: 0L
+    }
+
+    fun addListener(listener: Listener) {
+        listeners.add(listener)
+    }
+
+    /**
+     * Removes [listener]. With no listener left no screen shows a voice note, so playback stops
+     * and the player is released.
+     */
+    fun removeListener(listener: Listener) {
+        listeners.remove(listener)
+        if (listeners.isEmpty()) release()
+    }
+
+    /**
+     * Makes [target] the one view showing the progress of [id]. Only the current note's target
+     * is updated; it gets the position right away, then every tick while playing.
+     */
+    fun setProgressTarget(id: String, target: ProgressTarget) {
+        progressTarget = target
+        progressTargetId = id
+        publishProgress()
+        if (player?.isPlaying == true) startTicker()
+    }
+
+    /**
+     * Stops updating [target], e.g. when its view is recycled or bound to another note.
+     */
+    fun clearProgressTarget(target: ProgressTarget) {
+        if (progressTarget !== target) return
+        progressTarget = null
+        progressTargetId = null
+        stopTicker()
+    }
+
+    // Private helper methods
+
+    private fun createPlayer(): ExoPlayer {
+        val dataSourceFactory = CacheDataSource.Factory()
+            .setCache(MediaCache.getInstance(context).streamCache())
+            .setUpstreamDataSourceFactory(DefaultDataSource.Factory(context))
+            .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+        val audioAttributes = AudioAttributes.Builder()
+            .setUsage(C.USAGE_MEDIA)
+            .setContentType(C.AUDIO_CONTENT_TYPE_SPEECH)
+            .build()
+
+        return ExoPlayer.Builder(context)
+            .setMediaSourceFactory(DefaultMediaSourceFactory(dataSourceFactory))
+            .setAudioAttributes(audioAttributes, true)
+            .setHandleAudioBecomingNoisy(true)
+            .build()
+            .apply { addListener(playerListener) }
+    }
+
+    private fun release() {
+        stopTicker()
+        progressTarget = null
+        progressTargetId = null
+        currentId = null
+        player?.let { current ->
+            current.removeListener(playerListener)
+            current.release()
+        }
+        player = null
+    }
+
+    private fun setCurrent(id: String?) {
+        val previous = currentId
+        currentId = id
+        notifyListeners(previous, id)
+    }
+
+    private fun notifyListeners(previousId: String?, currentId: String?) {
+        // Listeners may remove themselves while notified
+        listeners.toList().forEach { it.onVoicePlaybackChanged(previousId, currentId) }
+    }
+
+    private fun publishProgress() {
+        val id = currentId ?: return
+        if (progressTargetId != id) return
+        progressTarget?.onVoiceProgress(positionOf(id), durationOf(id))
+    }
+
+    private fun startTicker() {
+        if (progressTarget == null) return
+        handler.removeCallbacks(progressTicker)
+        handler.post(progressTicker)
+    }
+
+    private fun stopTicker() {
+        handler.removeCallbacks(progressTicker)
+    }
+}
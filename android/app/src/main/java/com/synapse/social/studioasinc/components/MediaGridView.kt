@@ -11,12 +11,10 @@ import android.widget.FrameLayout
 import android.widget.ImageView
 import android.widget.TextView
 import androidx.core.content.ContextCompat
-import com.bumptech.glide.Glide
-import com.bumptech.glide.load.resource.bitmap.CenterCrop
-import com.bumptech.glide.load.resource.bitmap.RoundedCorners
 import com.synapse.social.studioasinc.R
 import com.synapse.social.studioasinc.model.MediaItem
 import com.synapse.social.studioasinc.model.MediaType
+import com.synapse.social.studioasinc.util.ImageLoader
 
 /**
  * Custom FrameLayout that displays media items in Facebook-style grid layouts.
@@ -271,13 +269,17 @@ class MediaGridView @JvmOverloads constructor(
         val imageView = ImageView(context)
         imageView.scaleType = ImageView.ScaleType.CENTER_CROP
         
-        // Load image with Glide and apply rounded corners
-        Glide.with(context)
-            .load(mediaItem.url)
-            .transform(CenterCrop(), RoundedCorners(cornerRadius))
-            .placeholder(R.drawable.default_image)
-            .error(R.drawable.default_image)
-            .into(imageView)
+        // Blurhash first, then thumbnail, then full image; videos only need their poster frame
+        val isVideo = mediaItem.type == MediaType.VIDEO
+        ImageLoader.loadImage(
+            context = context,
+            url = if (isVideo) mediaItem.thumbnailUrl ?: mediaItem.url else mediaItem.url,
+            imageView = imageView,
+            placeholder = R.drawable.default_image,
+            blurHash = mediaItem.blurHash,
+            thumbnailUrl = if (isVideo) null else mediaItem.thumbnailUrl,
+            cornerRadius = cornerRadius
+        )
         
         // Add play icon overlay for videos
         if (mediaItem.type == MediaType.VIDEO) {
@@ -5,10 +5,12 @@ import androidx.room.Database
 import androidx.room.Room
 import androidx.room.RoomDatabase
 import androidx.room.TypeConverters
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
 
 @Database(
-    entities = [PostEntity::class, CommentEntity::class, UserEntity::class, ChatEntity::class], 
-    version = 1, 
+    entities = [PostEntity::class, CommentEntity::class, UserEntity::class, ChatEntity::class, LinkPreviewEntity::class, WindowMessageEntity::class],
+    version = 3,
     exportSchema = true
 )
 @TypeConverters(MediaItemConverter::class, PollOptionConverter::class, ReactionTypeConverter::class)
@@ -18,11 +20,38 @@ abstract class AppDatabase : RoomDatabase() {
     abstract fun commentDao(): CommentDao
     abstract fun userDao(): UserDao
     abstract fun chatDao(): ChatDao
+    abstract fun linkPreviewDao(): LinkPreviewDao
+    abstract fun windowMessageDao(): WindowMessageDao
 
     companion object {
         @Volatile
         private var INSTANCE: AppDatabase? = null
 
+        /** v2 adds the link preview cache; the offline tables are kept */
+        internal val MIGRATION_1_2 = object : Migration(1, 2) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `link_previews` (`url` TEXT NOT NULL, `title` TEXT, " +
+                        "`description` TEXT, `imageUrl` TEXT, `domain` TEXT, `failed` INTEGER NOT NULL, " +
+                        "`fetchedAt` INTEGER NOT NULL, PRIMARY KEY(`url`))"
+                )
+            }
+        }
+
+        /** v3 adds the store for messages trimmed off the chat window */
+        internal val MIGRATION_2_3 = object : Migration(2, 3) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `window_messages` (`id` TEXT NOT NULL, `chatId` TEXT NOT NULL, " +
+                        "`createdAt` INTEGER NOT NULL, `row` TEXT NOT NULL, PRIMARY KEY(`id`))"
+                )
+                db.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_window_messages_chatId_createdAt` " +
+                        "ON `window_messages` (`chatId`, `createdAt`)"
+                )
+            }
+        }
+
         fun getDatabase(context: Context): AppDatabase {
             return INSTANCE ?: synchronized(this) {
                 val instance = Room.databaseBuilder(
@@ -30,8 +59,8 @@ abstract class AppDatabase : RoomDatabase() {
                     AppDatabase::class.java,
                     "synapse_database"
                 )
-                // For v1, destructive migration is acceptable as this is initial offline implementation
-                // TODO: Add proper migrations before v2 to preserve user data
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_3)
+                // Versions without a migration path still fall back to a fresh database
                 .fallbackToDestructiveMigration()
                 .build()
                 INSTANCE = instance
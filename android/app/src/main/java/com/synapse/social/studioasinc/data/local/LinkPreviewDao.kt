@@ -0,0 +1,18 @@
+package com.synapse.social.studioasinc.data.local
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+
+@Dao
+interface LinkPreviewDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insert(preview: LinkPreviewEntity)
+
+    @Query("SELECT * FROM link_previews WHERE url = :url")
+    suspend fun getByUrl(url: String): LinkPreviewEntity?
+
+    @Query("DELETE FROM link_previews WHERE fetchedAt < :cutoff")
+    suspend fun deleteOlderThan(cutoff: Long): Int
+}
@@ -0,0 +1,22 @@
+package com.synapse.social.studioasinc.data.local
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Cached link preview. A row with [failed] set remembers that the page had no usable
+ * preview, so it isn't fetched again on every bind.
+ *
+ * @property fetchedAt Epoch milliseconds, for expiry
+ */
+@Entity(tableName = "link_previews")
+data class LinkPreviewEntity(
+    @PrimaryKey
+    val url: String,
+    val title: String?,
+    val description: String?,
+    val imageUrl: String?,
+    val domain: String?,
+    val failed: Boolean,
+    val fetchedAt: Long
+)
@@ -0,0 +1,34 @@
+package com.synapse.social.studioasinc.data.local
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+
+@Dao
+interface WindowMessageDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insertAll(messages: List<WindowMessageEntity>)
+
+    /** Newest first, ordered by (createdAt, id) like the keyset cursor */
+    @Query(
+        "SELECT * FROM window_messages WHERE chatId = :chatId " +
+            "AND (createdAt < :createdAt OR (createdAt = :createdAt AND id < :id)) " +
+            "ORDER BY createdAt DESC, id DESC LIMIT :limit"
+    )
+    suspend fun getBefore(chatId: String, createdAt: Long, id: String, limit: Int): List<WindowMessageEntity>
+
+    /** Oldest first */
+    @Query(
+        "SELECT * FROM window_messages WHERE chatId = :chatId " +
+            "AND (createdAt > :createdAt OR (createdAt = :createdAt AND id > :id)) " +
+            "ORDER BY createdAt ASC, id ASC LIMIT :limit"
+    )
+    suspend fun getAfter(chatId: String, createdAt: Long, id: String, limit: Int): List<WindowMessageEntity>
+
+    @Query("DELETE FROM window_messages WHERE id IN (:ids)")
+    suspend fun deleteByIds(ids: List<String>)
+
+    @Query("DELETE FROM window_messages")
+    suspend fun clear()
+}
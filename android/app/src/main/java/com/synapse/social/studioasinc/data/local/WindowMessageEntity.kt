@@ -0,0 +1,24 @@
+package com.synapse.social.studioasinc.data.local
+
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * A message trimmed off the chat screen's window, kept so scrolling back to it doesn't hit the
+ * network. Only a cache of server rows: any of them may be dropped at any time.
+ *
+ * @property createdAt The row's created_at, the paging cursor
+ * @property row The message map as JSON
+ */
+@Entity(
+    tableName = "window_messages",
+    indices = [Index(value = ["chatId", "createdAt"])]
+)
+data class WindowMessageEntity(
+    @PrimaryKey
+    val id: String,
+    val chatId: String,
+    val createdAt: Long,
+    val row: String
+)
@@ -3,6 +3,9 @@ package com.synapse.social.studioasinc.data.repository
 import com.synapse.social.studioasinc.SupabaseClient
 import com.synapse.social.studioasinc.backend.SupabaseChatService
 import com.synapse.social.studioasinc.backend.SupabaseDatabaseService
+import com.synapse.social.studioasinc.chat.service.MessageSyncTracker
+import com.synapse.social.studioasinc.chat.service.RealtimeEvent
+import com.synapse.social.studioasinc.chat.service.RealtimeRouter
 import com.synapse.social.studioasinc.data.local.ChatDao
 import com.synapse.social.studioasinc.data.local.ChatEntity
 import com.synapse.social.studioasinc.data.repository.ChatMapper
@@ -11,14 +14,13 @@ import com.synapse.social.studioasinc.model.Message
 import io.github.jan.supabase.postgrest.from
 import io.github.jan.supabase.postgrest.query.Columns
 import io.github.jan.supabase.realtime.PostgresAction
-import io.github.jan.supabase.realtime.channel
-import io.github.jan.supabase.realtime.postgresChangeFlow
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.catch
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.map
-import kotlinx.coroutines.flow.catch
-import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.mapNotNull
 import kotlinx.coroutines.withContext
 import kotlinx.serialization.json.JsonObject
 
@@ -27,6 +29,8 @@ class ChatRepository(private val chatDao: ChatDao) {
     private val chatService = SupabaseChatService()
     private val databaseService = SupabaseDatabaseService()
     private val client = SupabaseClient.client
+    private val realtimeRouter = RealtimeRouter.getInstance()
+    private val syncTracker = MessageSyncTracker.getInstance()
     
     private data class CacheEntry<T>(
         val data: T,
@@ -41,6 +45,7 @@ class ChatRepository(private val chatDao: ChatDao) {
     
     companion object {
         private const val CACHE_EXPIRATION_MS = 5 * 60 * 1000L // 5 minutes
+        private const val OBSERVED_MESSAGES_LIMIT = 50
     }
     
     fun invalidateCache() {
@@ -170,6 +175,11 @@ class ChatRepository(private val chatDao: ChatDao) {
                 android.util.Log.d("ChatRepository", "Last message: id=${messages.last().id}, content=${messages.last().content.take(30)}, createdAt=${messages.last().createdAt}")
             }
             
+            // The newest page is where live changes continue from
+            if (beforeTimestamp == null) {
+                syncTracker.advance(chatId, messages.map { cursorRecordOf(it) })
+            }
+            
             messagesCache[cacheKey] = CacheEntry(messages)
             android.util.Log.d("ChatRepository", "Messages cached with key: $cacheKey")
             
@@ -285,47 +295,56 @@ class ChatRepository(private val chatDao: ChatDao) {
     }
 
     fun observeMessages(chatId: String): Flow<List<Message>> {
-        return try {
-            val channel = client.channel("messages:$chatId")
-            channel.postgresChangeFlow<PostgresAction>(schema = "public") {
-                table = "messages"
-                filter = "chat_id=eq.$chatId"
-            }.map { action ->
-                when (action) {
-                    is PostgresAction.Insert, is PostgresAction.Update, is PostgresAction.Delete -> {
-                        val result = chatService.getMessages(chatId)
-                        result.getOrNull()?.map { mapToMessage(it) } ?: emptyList()
+        return flow {
+            // Latest window of rows by message ID; patched from routed changes instead of refetched
+            val rows = LinkedHashMap<String, Map<String, Any?>>()
+            
+            suspend fun reload() {
+                val loaded = chatService.getMessages(chatId, OBSERVED_MESSAGES_LIMIT).getOrNull() ?: return
+                rows.clear()
+                loaded.forEach { row -> rows[row["id"].toString()] = row }
+                syncTracker.advance(chatId, loaded)
+            }
+            
+            reload()
+            emit(snapshotOf(rows))
+            
+            // Changes arrive on the shared per-user channel, routed to this chat. Missed changes
+            // come as a catch-up from the last-seen cursor after every reconnect
+            emitAll(realtimeRouter.events(chatId).mapNotNull { event ->
+                when (event) {
+                    is RealtimeEvent.MessageChange -> applyChange(rows, event.action)
+                    is RealtimeEvent.CatchUp -> {
+                        if (event.truncated) {
+                            reload()
+                        } else {
+                            event.messages.forEach { row -> upsertRow(rows, row) }
+                        }
                     }
-                    else -> emptyList()
+                    else -> return@mapNotNull null
                 }
-            }.catch { e ->
-                android.util.Log.e("ChatRepository", "Error observing messages", e)
-                emit(emptyList())
-            }
-        } catch (e: Exception) {
-            kotlinx.coroutines.flow.flowOf(emptyList())
+                snapshotOf(rows)
+            })
+        }.catch { e ->
+            android.util.Log.e("ChatRepository", "Error observing messages", e)
+            emit(emptyList())
         }
     }
 
     fun observeUserChats(userId: String): Flow<List<Chat>> {
-        return try {
-            val channel = client.channel("user_chats:$userId")
-            channel.postgresChangeFlow<PostgresAction>(schema = "public") {
-                table = "chats"
-            }.map { action ->
-                when (action) {
-                    is PostgresAction.Insert, is PostgresAction.Update, is PostgresAction.Delete -> {
-                        val result = chatService.getUserChats(userId)
-                        result.getOrNull()?.map { mapToChat(it) } ?: emptyList()
-                    }
-                    else -> emptyList()
-                }
-            }.catch { e ->
-                android.util.Log.e("ChatRepository", "Error observing chats", e)
-                emit(emptyList())
-            }
-        } catch (e: Exception) {
-            kotlinx.coroutines.flow.flowOf(emptyList())
+        return flow {
+            // Only this user's chats are watched, not every row of the chats table
+            val initialChats = chatService.getUserChats(userId).getOrNull()?.map { mapToChat(it) } ?: emptyList()
+            emitAll(realtimeRouter.chatListEvents(initialChats.map { it.id }).map {
+                val result = chatService.getUserChats(userId)
+                val chats = result.getOrNull()?.map { mapToChat(it) } ?: emptyList()
+                // Membership changes add or remove chats from the watched set
+                realtimeRouter.updateChatList(chats.map { it.id })
+                chats
+            })
+        }.catch { e ->
+            android.util.Log.e("ChatRepository", "Error observing chats", e)
+            emit(emptyList())
         }
     }
 
@@ -366,6 +385,40 @@ class ChatRepository(private val chatDao: ChatDao) {
         return chatService.markMessagesAsRead(chatId, userId)
     }
 
+    private fun applyChange(rows: MutableMap<String, Map<String, Any?>>, action: PostgresAction) {
+        when (action) {
+            is PostgresAction.Insert -> upsertRow(rows, MessageSyncTracker.recordOf(action.record))
+            is PostgresAction.Update -> upsertRow(rows, MessageSyncTracker.recordOf(action.record))
+            is PostgresAction.Delete -> rows.remove(MessageSyncTracker.recordOf(action.oldRecord)["id"].toString())
+            else -> Unit
+        }
+    }
+    
+    private fun upsertRow(rows: MutableMap<String, Map<String, Any?>>, row: Map<String, Any?>) {
+        val id = row["id"]?.toString() ?: return
+        // getMessages() excludes deleted rows, so a deletion drops the row
+        if (row["is_deleted"]?.toString()?.toBooleanStrictOrNull() == true) {
+            rows.remove(id)
+        } else {
+            rows[id] = row
+        }
+    }
+    
+    private fun snapshotOf(rows: Map<String, Map<String, Any?>>): List<Message> {
+        return rows.values
+            .map { mapToMessage(it) }
+            .sortedBy { it.createdAt }
+            .takeLast(OBSERVED_MESSAGES_LIMIT)
+    }
+    
+    private fun cursorRecordOf(message: Message): Map<String, Any?> {
+        return mapOf(
+            "id" to message.id,
+            "created_at" to message.createdAt.toString(),
+            "updated_at" to message.updatedAt.toString()
+        )
+    }
+
     private fun mapToMessage(data: Map<String, Any?>): Message {
         return Message(
             id = data["id"]?.toString() ?: "",
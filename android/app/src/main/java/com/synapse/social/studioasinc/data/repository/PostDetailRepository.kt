@@ -231,7 +231,8 @@ class PostDetailRepository {
                     thumbnailUrl = mediaMap["thumbnailUrl"]?.jsonPrimitive?.contentOrNull,
                     duration = mediaMap["duration"]?.jsonPrimitive?.longOrNull,
                     size = mediaMap["size"]?.jsonPrimitive?.longOrNull,
-                    mimeType = mediaMap["mimeType"]?.jsonPrimitive?.contentOrNull
+                    mimeType = mediaMap["mimeType"]?.jsonPrimitive?.contentOrNull,
+                    blurHash = mediaMap["blurHash"]?.jsonPrimitive?.contentOrNull
                 )
             } catch (e: Exception) {
                 Log.e(TAG, "Failed to parse media item: ${e.message}")
@@ -140,6 +140,7 @@ class PostRepository(private val postDao: PostDao) {
                                 media.duration?.let { put("duration", it) }
                                 media.size?.let { put("size", it) }
                                 media.mimeType?.let { put("mimeType", it) }
+                                media.blurHash?.let { put("blurHash", it) }
                             })
                         }
                     })
@@ -313,7 +314,8 @@ class PostRepository(private val postDao: PostDao) {
                     thumbnailUrl = mediaMap["thumbnailUrl"]?.jsonPrimitive?.contentOrNull?.let { constructMediaUrl(it) },
                     duration = mediaMap["duration"]?.jsonPrimitive?.longOrNull,
                     size = mediaMap["size"]?.jsonPrimitive?.longOrNull,
-                    mimeType = mediaMap["mimeType"]?.jsonPrimitive?.contentOrNull
+                    mimeType = mediaMap["mimeType"]?.jsonPrimitive?.contentOrNull,
+                    blurHash = mediaMap["blurHash"]?.jsonPrimitive?.contentOrNull
                 )
             }.toMutableList()
         }
@@ -60,6 +60,7 @@ class ProfileRepositoryImpl : ProfileRepository {
         const val KEY_URL = "url"
         const val KEY_TYPE = "type"
         const val KEY_THUMBNAIL_URL = "thumbnailUrl" // Backend uses camelCase for this field
+        const val KEY_BLUR_HASH = "blurHash"
         const val KEY_TEXT = "text"
         const val KEY_VOTES = "votes"
         
@@ -285,7 +286,8 @@ class ProfileRepositoryImpl : ProfileRepository {
                     id = mediaMap.getString(KEY_ID),
                     url = constructMediaUrl(url),
                     type = if (mediaMap.getNullableString(KEY_TYPE).equals(MEDIA_TYPE_VIDEO, true)) MediaType.VIDEO else MediaType.IMAGE,
-                    thumbnailUrl = mediaMap.getNullableString(KEY_THUMBNAIL_URL)?.let { constructMediaUrl(it) }
+                    thumbnailUrl = mediaMap.getNullableString(KEY_THUMBNAIL_URL)?.let { constructMediaUrl(it) },
+                    blurHash = mediaMap.getNullableString(KEY_BLUR_HASH)
                 )
             }.toMutableList()
         }
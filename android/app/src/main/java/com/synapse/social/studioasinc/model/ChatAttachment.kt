@@ -33,5 +33,8 @@ data class ChatAttachmentImpl(
     val height: Int? = null,
     val duration: Long? = null,  // milliseconds for video/audio
     @SerialName("mime_type")
-    val mimeType: String? = null
+    val mimeType: String? = null,
+    val waveform: List<Float>? = null,  // normalized amplitudes for audio, computed at upload time
+    @SerialName("blur_hash")
+    val blurHash: String? = null  // placeholder for images/videos, computed at upload time
 ) : ChatAttachment
@@ -16,6 +16,7 @@ data class MediaItem(
     val duration: Long? = null,
     val size: Long? = null,
     val mimeType: String? = null,
+    val blurHash: String? = null, // Placeholder rendered before the image loads, computed at upload
     @Transient
     val likesCount: Int = 0,
     @Transient
@@ -1,5 +1,7 @@
 package com.synapse.social.studioasinc.model
 
+import com.synapse.social.studioasinc.backend.UserPresence
+
 sealed class SearchResult {
     data class User(
         val uid: String,
@@ -11,7 +13,7 @@ sealed class SearchResult {
         val isPremium: Boolean,
         val isVerified: Boolean,
         val isBanned: Boolean,
-        val status: String?
+        val presence: UserPresence?
     ) : SearchResult()
 
     data class Post(
@@ -12,5 +12,7 @@ data class MediaUploadResult(
     val mimeType: String,
     val width: Int? = null,
     val height: Int? = null,
-    val duration: Long? = null
+    val duration: Long? = null,
+    val waveform: List<Float>? = null, // Normalized amplitudes for voice/audio bubbles
+    val blurHash: String? = null // Placeholder for image/video bubbles
 )
\ No newline at end of file
@@ -25,11 +25,18 @@ import com.synapse.social.studioasinc.chat.service.PreferencesManager
 import com.synapse.social.studioasinc.chat.service.MediaUploadManager
 import com.synapse.social.studioasinc.chat.service.MessageSearchService
 import com.synapse.social.studioasinc.chat.service.ChatBackupService
+import com.synapse.social.studioasinc.chat.service.MessageLatencyTracer
+import com.synapse.social.studioasinc.chat.service.MessageOutbox
+import com.synapse.social.studioasinc.chat.service.OutboxEntry
+import com.synapse.social.studioasinc.chat.service.OutboxQueue
 import com.synapse.social.studioasinc.backend.SupabaseChatService
 import com.synapse.social.studioasinc.model.models.UploadProgress
 import com.synapse.social.studioasinc.model.models.MediaUploadResult
+import com.synapse.social.studioasinc.util.NetworkPolicyEngine
 import com.synapse.social.studioasinc.util.PaginationManager
 import com.synapse.social.studioasinc.util.ScrollPositionState
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.launchIn
 import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.flow.MutableStateFlow
@@ -51,12 +58,14 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
     private val chatRepository = ChatRepository(chatDao)
     
     // Use cases
-    private val sendMessageUseCase = SendMessageUseCase(chatDao)
     private val getMessagesUseCase = GetMessagesUseCase(chatDao)
     private val observeMessagesUseCase = ObserveMessagesUseCase(chatDao)
     private val getUserChatsUseCase = GetUserChatsUseCase(chatDao)
     private val deleteMessageUseCase = DeleteMessageUseCase(chatDao)
     private val editMessageUseCase = EditMessageUseCase(chatDao)
+    
+    // Optimistic sends, reconciled with server rows by client ID
+    private val messageOutbox = MessageOutbox.getInstance(application)
 
     // Existing LiveData properties
     private val _messages = MutableLiveData<List<Message>>()
@@ -319,10 +328,17 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
 
     /**
      * Starts observing messages in real-time
+     * 
+     * Outbox messages not yet on the server are appended after the server messages, and each
+     * is replaced in place by its server row once it arrives under the same ID.
      */
     fun startObservingMessages(chatId: String) {
         currentChatId = chatId
         observeMessagesUseCase(chatId)
+            .combine(messageOutbox.entries(chatId)) { serverMessages, outboxEntries ->
+                messageOutbox.acknowledge(serverMessages.map { it.id })
+                OutboxQueue.reconcile(serverMessages, outboxEntries)
+            }
             .onEach { messageList ->
                 _messages.value = messageList
             }
@@ -330,58 +346,51 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
     }
 
     /**
-     * Sends a message
+     * Outbox entries of a chat, for screens that render pending messages themselves.
      */
-    fun sendMessage(chatId: String, content: String, messageType: String = "text", replyToId: String? = null) {
-        android.util.Log.d("ChatViewModel", "=== sendMessage START ===")
-        android.util.Log.d("ChatViewModel", "Sending message to chatId: $chatId")
-        android.util.Log.d("ChatViewModel", "Content length: ${content.length}, type: $messageType")
-        
+    fun outboxEntries(chatId: String): Flow<List<OutboxEntry>> {
+        return messageOutbox.entries(chatId)
+    }
+
+    /**
+     * Sends a message optimistically.
+     * 
+     * The message is queued in the outbox under a client-generated ID and shows up as sending
+     * right away; the outbox sends it in order and retries on failure.
+     * 
+     * @return The client ID of the queued message, or null if nothing was queued
+     */
+    fun sendMessage(chatId: String, content: String, messageType: String = "text", replyToId: String? = null): String? {
         if (content.isBlank()) {
             android.util.Log.w("ChatViewModel", "Message content is blank, aborting send")
-            return
+            return null
         }
         
-        viewModelScope.launch {
-            try {
-                val currentUserId = authService.getCurrentUserId()
-                android.util.Log.d("ChatViewModel", "Current user ID: $currentUserId")
-                
-                if (currentUserId == null) {
-                    android.util.Log.e("ChatViewModel", "User not authenticated")
-                    _error.value = "User not authenticated"
-                    _messageSent.value = false
-                    return@launch
-                }
-                
-                // Stop typing indicator when sending message
-                android.util.Log.d("ChatViewModel", "Stopping typing indicator")
-                typingIndicatorManager?.onUserStoppedTyping(chatId, currentUserId)
-                
-                android.util.Log.d("ChatViewModel", "Calling sendMessageUseCase")
-                val result = sendMessageUseCase(chatId, currentUserId, content, messageType, replyToId)
-                
-                result.onSuccess { messageId ->
-                    android.util.Log.d("ChatViewModel", "Message sent successfully, messageId: $messageId")
-                    _messageSent.value = true
-                    _error.value = null
-                    
-                    // Refresh messages
-                    android.util.Log.d("ChatViewModel", "Refreshing messages after send")
-                    loadMessages(chatId)
-                }.onFailure { exception ->
-                    android.util.Log.e("ChatViewModel", "Failed to send message: ${exception.message}", exception)
-                    _error.value = exception.message
-                    _messageSent.value = false
-                }
-            } catch (e: Exception) {
-                android.util.Log.e("ChatViewModel", "Exception in sendMessage: ${e.message}", e)
-                _error.value = e.message
-                _messageSent.value = false
-            } finally {
-                android.util.Log.d("ChatViewModel", "=== sendMessage END ===")
-            }
+        val currentUserId = authService.getCurrentUserId()
+        if (currentUserId == null) {
+            android.util.Log.e("ChatViewModel", "User not authenticated")
+            _error.value = "User not authenticated"
+            _messageSent.value = false
+            return null
         }
+        
+        // Stop typing indicator when sending message
+        typingIndicatorManager?.onUserStoppedTyping(chatId, currentUserId)
+        
+        val entry = messageOutbox.enqueue(chatId, currentUserId, content, messageType, replyToId)
+        android.util.Log.d("ChatViewModel", "Queued message ${entry.clientId} for chatId: $chatId")
+        _messageSent.value = true
+        _error.value = null
+        return entry.clientId
+    }
+
+    /**
+     * Sends a failed outbox message again.
+     * 
+     * @return false if the message is not a failed outbox message
+     */
+    fun retryMessage(clientId: String): Boolean {
+        return messageOutbox.retry(clientId)
     }
 
     /**
@@ -507,6 +516,16 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
         onUserTypingWithManager(text)
     }
 
+    /**
+     * Called when the user leaves the chat or the app is backgrounded mid-typing.
+     * Broadcasts a typing-stopped event; typing state is never stored server-side.
+     */
+    fun onUserStoppedTyping() {
+        val chatId = currentChatId ?: return
+        val userId = currentUserId ?: authService.getCurrentUserId() ?: return
+        typingIndicatorManager?.onUserStoppedTyping(chatId, userId)
+    }
+
     /**
      * Handle typing update from other users.
      * Updates the typing user list for UI display.
@@ -565,8 +584,13 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
             return
         }
         
+        // The watermark also covers our messages that were read but not listed in this receipt
+        val readIds = event.messageIds.toHashSet()
+        val readUpTo = event.readUpTo
         val updatedMessages = _messagesStateFlow.value.map { message ->
-            if (event.messageIds.contains(message.id) && message.senderId == currentUserId) {
+            val isRead = message.id in readIds || (readUpTo != null && message.createdAt <= readUpTo)
+            if (isRead && message.senderId == currentUserId && message.messageState != MessageState.READ) {
+                readIds.add(message.id)
                 // Update message state to read for our sent messages
                 message.copy(
                     messageState = MessageState.READ,
@@ -580,7 +604,7 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
         _messagesStateFlow.value = updatedMessages
         
         // Update the ChatAdapter with the new message states
-        val messageStates = event.messageIds.associateWith { MessageState.READ }
+        val messageStates = readIds.associateWith { MessageState.READ }
         updateAdapterMessageStates(messageStates)
         
         // Also update the legacy LiveData for backward compatibility
@@ -843,7 +867,9 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
                     width = uploadResult.width,
                     height = uploadResult.height,
                     duration = uploadResult.duration,
-                    mimeType = uploadResult.mimeType
+                    mimeType = uploadResult.mimeType,
+                    waveform = uploadResult.waveform,
+                    blurHash = uploadResult.blurHash
                 )
                 
                 // Send message with attachment using backend service
@@ -909,7 +935,8 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
         typingIndicatorManager = TypingIndicatorManager(
             realtimeService = realtimeService!!,
             preferencesManager = preferencesManager!!,
-            coroutineScope = viewModelScope
+            coroutineScope = viewModelScope,
+            networkPolicy = NetworkPolicyEngine.getInstance(context).policy
         )
         
         // Initialize ReadReceiptManager
@@ -937,6 +964,9 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
         // Initialize ChatBackupService
         chatBackupService = ChatBackupService(context)
         
+        // Tag delivery latency samples with the network type
+        MessageLatencyTracer.getInstance().attachConnectionMonitor(context)
+        
         // Set current user ID for read receipt filtering
         currentUserId = authService.getCurrentUserId()
         readReceiptManager?.setCurrentUserId(currentUserId ?: "")
@@ -1065,19 +1095,23 @@ class ChatViewModel(application: Application) : AndroidViewModel(application) {
         }
         
         // Filter out messages that are already read or sent by current user
+        val visibleIds = visibleMessageIds.toHashSet()
         val messagesToMarkAsRead = _messagesStateFlow.value.filter { message ->
-            visibleMessageIds.contains(message.id) &&
+            message.id in visibleIds &&
             message.senderId != userId && // Don't mark our own messages as read
             message.messageState != MessageState.READ // Don't re-mark already read messages
-        }.map { it.id }
+        }
         
         if (messagesToMarkAsRead.isNotEmpty()) {
-            viewModelScope.launch {
-                try {
-                    readReceiptManager?.markMessagesAsRead(chatId, userId, messagesToMarkAsRead)
-                } catch (e: Exception) {
-                    _error.value = "Failed to mark messages as read: ${e.message}"
-                }
+            try {
+                readReceiptManager?.markMessagesAsRead(
+                    chatId,
+                    userId,
+                    messagesToMarkAsRead.map { it.id },
+                    readUpTo = messagesToMarkAsRead.maxOf { it.createdAt }
+                )
+            } catch (e: Exception) {
+                _error.value = "Failed to mark messages as read: ${e.message}"
             }
         }
     }
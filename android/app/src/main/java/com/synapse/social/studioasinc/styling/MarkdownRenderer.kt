@@ -37,6 +37,9 @@ class MarkdownRenderer private constructor(private val markwon: Markwon) {
     companion object {
         @Volatile private var instance: MarkdownRenderer? = null
 
+        // Compiled once rather than on every rendered text
+        private val MENTION_HASHTAG_PATTERN = java.util.regex.Pattern.compile("(?<![^\\s])([@#])([A-Za-z0-9_.-]+)")
+
         @JvmStatic
         fun get(context: Context): MarkdownRenderer {
             return instance ?: synchronized(this) {
@@ -90,8 +93,7 @@ class MarkdownRenderer private constructor(private val markwon: Markwon) {
         private fun applyMentionHashtagSpans(textView: TextView) {
             val text = textView.text
             if (text !is android.text.Spannable) return
-            val pattern = java.util.regex.Pattern.compile("(?<![^\\s])([@#])([A-Za-z0-9_.-]+)")
-            val matcher = pattern.matcher(text)
+            val matcher = MENTION_HASHTAG_PATTERN.matcher(text)
             while (matcher.find()) {
                 val start = matcher.start()
                 val end = matcher.end()
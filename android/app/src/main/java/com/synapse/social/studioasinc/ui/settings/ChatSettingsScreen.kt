@@ -30,6 +30,7 @@ fun ChatSettingsScreen(
     onNavigateToChatPrivacy: () -> Unit
 ) {
     val chatSettings by viewModel.chatSettings.collectAsState()
+    val networkPolicyMode by viewModel.networkPolicyMode.collectAsState()
     val isLoading by viewModel.isLoading.collectAsState()
     val error by viewModel.error.collectAsState()
 
@@ -131,6 +132,23 @@ fun ChatSettingsScreen(
                         },
                         enabled = !isLoading
                     )
+
+                    SettingsDivider()
+
+                    // Network Quality
+                    SettingsSelectionItem(
+                        title = "Network Quality",
+                        subtitle = "Smaller pages and image previews on slow connections",
+                        icon = R.drawable.data_usage_24px,
+                        options = viewModel.getNetworkPolicyModeOptions().map { it.displayName() },
+                        selectedOption = networkPolicyMode.displayName(),
+                        onSelect = { selectedName ->
+                            val selectedMode = viewModel.getNetworkPolicyModeOptions()
+                                .find { it.displayName() == selectedName }
+                            selectedMode?.let { viewModel.setNetworkPolicyMode(it) }
+                        },
+                        enabled = !isLoading
+                    )
                 }
             }
 
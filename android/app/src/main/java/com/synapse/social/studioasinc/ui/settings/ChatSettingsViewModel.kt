@@ -2,10 +2,14 @@ package com.synapse.social.studioasinc.ui.settings
 
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.synapse.social.studioasinc.chat.service.PreferencesManager
 import com.synapse.social.studioasinc.data.repository.SettingsRepository
+import com.synapse.social.studioasinc.util.NetworkPolicyMode
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 
 /**
@@ -15,13 +19,15 @@ import kotlinx.coroutines.launch
  * - Read receipts (showing when messages are read)
  * - Typing indicators (showing typing status to others)
  * - Media auto-download preferences (Always, WiFi Only, Never)
+ * - Network quality mode (Automatic, Full Quality, Data Saver)
  * - Message requests navigation
  * - Chat privacy navigation
  * 
  * Requirements: 6.1, 6.2, 6.3, 6.4
  */
 class ChatSettingsViewModel(
-    private val settingsRepository: SettingsRepository
+    private val settingsRepository: SettingsRepository,
+    private val preferencesManager: PreferencesManager
 ) : ViewModel() {
 
     // ========================================================================
@@ -31,6 +37,9 @@ class ChatSettingsViewModel(
     private val _chatSettings = MutableStateFlow(ChatSettings())
     val chatSettings: StateFlow<ChatSettings> = _chatSettings.asStateFlow()
 
+    val networkPolicyMode: StateFlow<NetworkPolicyMode> = preferencesManager.getNetworkPolicyModeFlow()
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), NetworkPolicyMode.AUTO)
+
     private val _isLoading = MutableStateFlow(false)
     val isLoading: StateFlow<Boolean> = _isLoading.asStateFlow()
 
@@ -166,6 +175,44 @@ class ChatSettingsViewModel(
         return MediaAutoDownload.values().toList()
     }
 
+    // ========================================================================
+    // Network Quality
+    // ========================================================================
+
+    /**
+     * Sets how network-dependent behaviour is chosen: page sizes, image variants and
+     * media prefetching.
+     * 
+     * @param mode AUTO to follow the connection, or a fixed mode
+     */
+    fun setNetworkPolicyMode(mode: NetworkPolicyMode) {
+        viewModelScope.launch {
+            _isLoading.value = true
+            _error.value = null
+            try {
+                preferencesManager.setNetworkPolicyMode(mode)
+                android.util.Log.d(
+                    "ChatSettingsViewModel",
+                    "Network policy mode set to ${mode.displayName()}"
+                )
+            } catch (e: Exception) {
+                android.util.Log.e("ChatSettingsViewModel", "Failed to set network policy mode", e)
+                _error.value = "Failed to update network quality"
+            } finally {
+                _isLoading.value = false
+            }
+        }
+    }
+
+    /**
+     * Returns all network policy modes for selection.
+     * 
+     * @return List of all NetworkPolicyMode enum values
+     */
+    fun getNetworkPolicyModeOptions(): List<NetworkPolicyMode> {
+        return NetworkPolicyMode.values().toList()
+    }
+
     // ========================================================================
     // Navigation Handlers
     // ========================================================================
@@ -2,15 +2,17 @@ package com.synapse.social.studioasinc.ui.settings
 
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.ViewModelProvider
+import com.synapse.social.studioasinc.chat.service.PreferencesManager
 import com.synapse.social.studioasinc.data.repository.SettingsRepository
 
 class ChatSettingsViewModelFactory(
-    private val settingsRepository: SettingsRepository
+    private val settingsRepository: SettingsRepository,
+    private val preferencesManager: PreferencesManager
 ) : ViewModelProvider.Factory {
     @Suppress("UNCHECKED_CAST")
     override fun <T : ViewModel> create(modelClass: Class<T>): T {
         if (modelClass.isAssignableFrom(ChatSettingsViewModel::class.java)) {
-            return ChatSettingsViewModel(settingsRepository) as T
+            return ChatSettingsViewModel(settingsRepository, preferencesManager) as T
         }
         throw IllegalArgumentException("Unknown ViewModel class")
     }
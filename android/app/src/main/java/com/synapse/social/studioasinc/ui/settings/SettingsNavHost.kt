@@ -8,6 +8,7 @@ import androidx.navigation.NavHostController
 import androidx.navigation.compose.NavHost
 import androidx.navigation.compose.composable
 import androidx.navigation.compose.rememberNavController
+import com.synapse.social.studioasinc.chat.service.PreferencesManager
 import com.synapse.social.studioasinc.data.repository.SettingsRepositoryImpl
 
 /**
@@ -125,7 +126,10 @@ fun SettingsNavHost(
         // Chat Settings Screen
         composable(route = SettingsDestination.ROUTE_CHAT) {
             val viewModel: ChatSettingsViewModel = viewModel(
-                factory = ChatSettingsViewModelFactory(settingsRepository)
+                factory = ChatSettingsViewModelFactory(
+                    settingsRepository,
+                    PreferencesManager.getInstance(context.applicationContext)
+                )
             )
             ChatSettingsScreen(
                 viewModel = viewModel,
@@ -0,0 +1,294 @@
+package com.synapse.social.studioasinc.util
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Canvas
+import android.graphics.ImageDecoder
+import android.graphics.Matrix
+import android.graphics.Paint
+import android.graphics.Rect
+import android.graphics.RectF
+import android.net.Uri
+import android.os.Build
+import android.util.Size
+import androidx.exifinterface.media.ExifInterface
+import java.io.IOException
+import kotlin.math.ceil
+import kotlin.math.max
+import kotlin.math.roundToInt
+
+/**
+ * BitmapDecoder decodes an image straight to its final size in a single pass.
+ * Orientation, scaling and center crop are applied at decode time with ImageDecoder (API 28+),
+ * or with one pooled draw on older APIs, so only one full-size bitmap is ever alive.
+ */
+object BitmapDecoder {
+
+    private val DECODE_CONFIG = Bitmap.Config.RGB_565 // Use less memory
+
+    /**
+     * Decodes an image to the size chosen by [targetSize].
+     *
+     * @param context Android context
+     * @param uri The URI of the image to decode
+     * @param centerCrop Whether to fill the target size and crop the overflow around the center
+     * @param targetSize Resolves the output size from the oriented source dimensions
+     * @return The decoded bitmap. Hand it to [BitmapPool.put] when done.
+     */
+    fun decode(
+        context: Context,
+        uri: Uri,
+        centerCrop: Boolean,
+        targetSize: (width: Int, height: Int) -> Size
+    ): Bitmap {
+        return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            decodeWithImageDecoder(context, uri, centerCrop, targetSize)
+        } else {
+            decodeWithBitmapFactory(context, uri, centerCrop, targetSize)
+        }
+    }
+
+    /**
+     * Draws [source] into a pooled bitmap of [size] x [size], center cropped.
+     * Used for sources that are not decoded from a URI, such as video frames.
+     *
+     * @param source The source bitmap, left untouched
+     * @param size The target thumbnail size (width and height)
+     * @return Center-cropped bitmap
+     */
+    fun centerCrop(source: Bitmap, size: Int): Bitmap {
+        val output = BitmapPool.get(size, size, DECODE_CONFIG)
+        val matrix = buildTransform(
+            ExifInterface.ORIENTATION_NORMAL,
+            source.width,
+            source.height,
+            size,
+            size,
+            centerCrop = true
+        )
+        drawTransformed(source, output, matrix)
+        return output
+    }
+
+    private fun decodeWithImageDecoder(
+        context: Context,
+        uri: Uri,
+        centerCrop: Boolean,
+        targetSize: (width: Int, height: Int) -> Size
+    ): Bitmap {
+        val source = ImageDecoder.createSource(context.contentResolver, uri)
+        return ImageDecoder.decodeBitmap(source) { decoder, info, _ ->
+            // ImageInfo reports dimensions with EXIF orientation already applied
+            val sourceWidth = info.size.width
+            val sourceHeight = info.size.height
+            val target = targetSize(sourceWidth, sourceHeight)
+            val scaled = scaledSize(sourceWidth, sourceHeight, target, centerCrop)
+
+            // Output is re-encoded to JPEG, so keep it in software memory where it can be pooled
+            decoder.allocator = ImageDecoder.ALLOCATOR_SOFTWARE
+            decoder.memorySizePolicy = ImageDecoder.MEMORY_POLICY_LOW_RAM
+            decoder.isMutableRequired = true
+            decoder.setTargetSize(scaled.width, scaled.height)
+
+            if (centerCrop) {
+                val left = (scaled.width - target.width) / 2
+                val top = (scaled.height - target.height) / 2
+                decoder.crop = Rect(left, top, left + target.width, top + target.height)
+            }
+        }
+    }
+
+    private fun decodeWithBitmapFactory(
+        context: Context,
+        uri: Uri,
+        centerCrop: Boolean,
+        targetSize: (width: Int, height: Int) -> Size
+    ): Bitmap {
+        val boundsOptions = BitmapFactory.Options().apply {
+            inJustDecodeBounds = true
+        }
+        context.contentResolver.openInputStream(uri)?.use { inputStream ->
+            BitmapFactory.decodeStream(inputStream, null, boundsOptions)
+        } ?: throw IOException("Cannot open input stream for URI: $uri")
+
+        val rawWidth = boundsOptions.outWidth
+        val rawHeight = boundsOptions.outHeight
+        if (rawWidth <= 0 || rawHeight <= 0) {
+            throw IOException("Invalid image dimensions")
+        }
+
+        val orientation = readExifOrientation(context, uri)
+        val swapsAxes = swapsWidthAndHeight(orientation)
+        val orientedWidth = if (swapsAxes) rawHeight else rawWidth
+        val orientedHeight = if (swapsAxes) rawWidth else rawHeight
+
+        val target = targetSize(orientedWidth, orientedHeight)
+        val scaled = scaledSize(orientedWidth, orientedHeight, target, centerCrop)
+        val sampleSize = calculateSampleSize(orientedWidth, orientedHeight, scaled.width, scaled.height)
+
+        val decoded = decodeSampled(context, uri, rawWidth, rawHeight, sampleSize)
+            ?: throw IOException("Failed to decode bitmap")
+
+        val alreadyFinal = orientation == ExifInterface.ORIENTATION_NORMAL &&
+            decoded.width == target.width && decoded.height == target.height
+        if (alreadyFinal) {
+            return decoded
+        }
+
+        // Rotate, scale and crop in one draw instead of chaining createBitmap calls
+        val output = BitmapPool.get(target.width, target.height, DECODE_CONFIG)
+        val matrix = buildTransform(
+            orientation,
+            decoded.width,
+            decoded.height,
+            target.width,
+            target.height,
+            centerCrop
+        )
+        drawTransformed(decoded, output, matrix)
+        BitmapPool.put(decoded)
+        return output
+    }
+
+    private fun decodeSampled(
+        context: Context,
+        uri: Uri,
+        rawWidth: Int,
+        rawHeight: Int,
+        sampleSize: Int
+    ): Bitmap? {
+        val sampledWidth = ceil(rawWidth.toDouble() / sampleSize).toInt()
+        val sampledHeight = ceil(rawHeight.toDouble() / sampleSize).toInt()
+        val reusable = BitmapPool.getForDecode(sampledWidth, sampledHeight, DECODE_CONFIG)
+
+        val options = BitmapFactory.Options().apply {
+            inSampleSize = sampleSize
+            inPreferredConfig = DECODE_CONFIG
+            inMutable = true
+            inBitmap = reusable
+        }
+
+        return try {
+            context.contentResolver.openInputStream(uri)?.use { inputStream ->
+                BitmapFactory.decodeStream(inputStream, null, options)
+            }
+        } catch (e: IllegalArgumentException) {
+            // The pooled bitmap could not be reused for this image, decode into a fresh one
+            reusable?.let { BitmapPool.put(it) }
+            options.inBitmap = null
+            context.contentResolver.openInputStream(uri)?.use { inputStream ->
+                BitmapFactory.decodeStream(inputStream, null, options)
+            }
+        }
+    }
+
+    /**
+     * Computes the size the source must be scaled to before cropping.
+     * For center crop the scaled image covers the target, otherwise it equals the target.
+     */
+    private fun scaledSize(sourceWidth: Int, sourceHeight: Int, target: Size, centerCrop: Boolean): Size {
+        if (!centerCrop) {
+            return target
+        }
+        val scale = max(
+            target.width.toFloat() / sourceWidth,
+            target.height.toFloat() / sourceHeight
+        )
+        return Size(
+            max(target.width, (sourceWidth * scale).roundToInt()),
+            max(target.height, (sourceHeight * scale).roundToInt())
+        )
+    }
+
+    /**
+     * Calculates the largest power-of-2 sample size that keeps the decoded image
+     * at least as large as the requested dimensions.
+     */
+    private fun calculateSampleSize(width: Int, height: Int, reqWidth: Int, reqHeight: Int): Int {
+        var inSampleSize = 1
+        while ((width / (inSampleSize * 2)) >= reqWidth && (height / (inSampleSize * 2)) >= reqHeight) {
+            inSampleSize *= 2
+        }
+        return inSampleSize
+    }
+
+    private fun readExifOrientation(context: Context, uri: Uri): Int {
+        return try {
+            context.contentResolver.openInputStream(uri)?.use { inputStream ->
+                ExifInterface(inputStream).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL
+                )
+            } ?: ExifInterface.ORIENTATION_NORMAL
+        } catch (e: Exception) {
+            // If EXIF processing fails, treat the image as upright
+            ExifInterface.ORIENTATION_NORMAL
+        }
+    }
+
+    private fun swapsWidthAndHeight(orientation: Int): Boolean {
+        return when (orientation) {
+            ExifInterface.ORIENTATION_ROTATE_90,
+            ExifInterface.ORIENTATION_ROTATE_270,
+            ExifInterface.ORIENTATION_TRANSPOSE,
+            ExifInterface.ORIENTATION_TRANSVERSE -> true
+            else -> false
+        }
+    }
+
+    /**
+     * Builds a matrix mapping the raw source into the output bitmap:
+     * orientation first, then scale, then the center-crop offset.
+     */
+    private fun buildTransform(
+        orientation: Int,
+        sourceWidth: Int,
+        sourceHeight: Int,
+        outputWidth: Int,
+        outputHeight: Int,
+        centerCrop: Boolean
+    ): Matrix {
+        val matrix = Matrix()
+        when (orientation) {
+            ExifInterface.ORIENTATION_ROTATE_90 -> matrix.postRotate(90f)
+            ExifInterface.ORIENTATION_ROTATE_180 -> matrix.postRotate(180f)
+            ExifInterface.ORIENTATION_ROTATE_270 -> matrix.postRotate(270f)
+            ExifInterface.ORIENTATION_FLIP_HORIZONTAL -> matrix.postScale(-1f, 1f)
+            ExifInterface.ORIENTATION_FLIP_VERTICAL -> matrix.postScale(1f, -1f)
+            ExifInterface.ORIENTATION_TRANSPOSE -> {
+                matrix.postRotate(90f)
+                matrix.postScale(-1f, 1f)
+            }
+            ExifInterface.ORIENTATION_TRANSVERSE -> {
+                matrix.postRotate(-90f)
+                matrix.postScale(-1f, 1f)
+            }
+        }
+
+        // Move the oriented image back to the origin
+        val bounds = RectF(0f, 0f, sourceWidth.toFloat(), sourceHeight.toFloat())
+        matrix.mapRect(bounds)
+        matrix.postTranslate(-bounds.left, -bounds.top)
+
+        val scaleX = outputWidth / bounds.width()
+        val scaleY = outputHeight / bounds.height()
+        if (centerCrop) {
+            val scale = max(scaleX, scaleY)
+            matrix.postScale(scale, scale)
+            matrix.postTranslate(
+                (outputWidth - bounds.width() * scale) / 2f,
+                (outputHeight - bounds.height() * scale) / 2f
+            )
+        } else {
+            // Output already has the source aspect ratio, stretch away rounding differences
+            matrix.postScale(scaleX, scaleY)
+        }
+        return matrix
+    }
+
+    private fun drawTransformed(source: Bitmap, output: Bitmap, matrix: Matrix) {
+        val paint = Paint(Paint.FILTER_BITMAP_FLAG or Paint.DITHER_FLAG)
+        Canvas(output).drawBitmap(source, matrix, paint)
+    }
+}
@@ -0,0 +1,123 @@
+package com.synapse.social.studioasinc.util
+
+import android.graphics.Bitmap
+import android.graphics.Color
+
+/**
+ * BitmapPool keeps a small, size-bounded set of mutable bitmaps that can be reused
+ * as decode targets (`inBitmap`) and as destinations for crop/scale/rotate draws.
+ * Reusing allocations keeps peak memory flat when many images are processed back to back.
+ */
+object BitmapPool {
+
+    private const val MAX_POOL_FRACTION = 8 // Use at most 1/8 of the heap
+    private const val MAX_POOL_SIZE_BYTES = 32 * 1024 * 1024L // 32MB
+
+    private val maxSizeBytes: Long by lazy {
+        minOf(Runtime.getRuntime().maxMemory() / MAX_POOL_FRACTION, MAX_POOL_SIZE_BYTES)
+    }
+
+    // Least recently returned bitmaps first
+    private val pool = ArrayDeque<Bitmap>()
+    private var currentSizeBytes = 0L
+
+    /**
+     * Returns a mutable bitmap with exactly the requested dimensions and config.
+     * Reuses a pooled allocation when one is large enough, otherwise allocates.
+     *
+     * @param width Requested width
+     * @param height Requested height
+     * @param config Requested bitmap config
+     * @return A cleared, mutable bitmap
+     */
+    fun get(width: Int, height: Int, config: Bitmap.Config): Bitmap {
+        val reusable = takeReusable(width * height * bytesPerPixel(config).toLong())
+        if (reusable != null) {
+            try {
+                reusable.reconfigure(width, height, config)
+                reusable.eraseColor(Color.TRANSPARENT)
+                return reusable
+            } catch (e: IllegalArgumentException) {
+                reusable.recycle()
+            }
+        }
+        return Bitmap.createBitmap(width, height, config)
+    }
+
+    /**
+     * Returns a pooled bitmap suitable for `BitmapFactory.Options.inBitmap`, or null.
+     * BitmapFactory reconfigures the bitmap itself, so only the allocation size matters.
+     *
+     * @param width Expected decoded width
+     * @param height Expected decoded height
+     * @param config Decode config
+     * @return A reusable bitmap or null if none is large enough
+     */
+    fun getForDecode(width: Int, height: Int, config: Bitmap.Config): Bitmap? {
+        return takeReusable(width * height * bytesPerPixel(config).toLong())
+    }
+
+    /**
+     * Hands a bitmap back to the pool. Bitmaps that cannot be reused are recycled.
+     *
+     * @param bitmap The bitmap that is no longer referenced by the caller
+     */
+    fun put(bitmap: Bitmap) {
+        if (bitmap.isRecycled) return
+        if (!bitmap.isMutable || isHardware(bitmap) || bitmap.allocationByteCount > maxSizeBytes) {
+            bitmap.recycle()
+            return
+        }
+
+        synchronized(pool) {
+            if (pool.any { it === bitmap }) return
+            pool.addLast(bitmap)
+            currentSizeBytes += bitmap.allocationByteCount
+            trimToSize(maxSizeBytes)
+        }
+    }
+
+    /**
+     * Releases every pooled bitmap.
+     * Called when the system asks the application to trim memory.
+     */
+    fun clear() {
+        synchronized(pool) {
+            trimToSize(0L)
+        }
+    }
+
+    private fun takeReusable(requiredBytes: Long): Bitmap? {
+        synchronized(pool) {
+            // Prefer the smallest allocation that fits to avoid wasting large buffers
+            val candidate = pool
+                .filter { !it.isRecycled && it.allocationByteCount >= requiredBytes }
+                .minByOrNull { it.allocationByteCount }
+                ?: return null
+            pool.remove(candidate)
+            currentSizeBytes -= candidate.allocationByteCount
+            return candidate
+        }
+    }
+
+    private fun trimToSize(targetBytes: Long) {
+        while (currentSizeBytes > targetBytes && pool.isNotEmpty()) {
+            val evicted = pool.removeFirst()
+            currentSizeBytes -= evicted.allocationByteCount
+            evicted.recycle()
+        }
+    }
+
+    private fun isHardware(bitmap: Bitmap): Boolean {
+        return bitmap.config == Bitmap.Config.HARDWARE
+    }
+
+    private fun bytesPerPixel(config: Bitmap.Config): Int {
+        return when (config) {
+            Bitmap.Config.ALPHA_8 -> 1
+            Bitmap.Config.RGB_565 -> 2
+            Bitmap.Config.RGBA_F16 -> 8
+            else -> 4
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.synapse.social.studioasinc.util
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.Log
+import java.io.File
+import kotlin.math.PI
+import kotlin.math.abs
+import kotlin.math.cos
+import kotlin.math.floor
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.pow
+import kotlin.math.roundToInt
+import kotlin.math.withSign
+
+/**
+ * BlurHash encoder/decoder (https://blurha.sh).
+ * A hash is ~20-30 characters, small enough to ship inside media JSON, and decodes
+ * to a blurred preview that can be shown before any image bytes arrive.
+ */
+object BlurHash {
+    private const val TAG = "BlurHash"
+    private const val CHARACTERS =
+        "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~"
+
+    // Sources are scaled to this size before encoding; the hash only keeps low frequencies
+    private const val ENCODE_SAMPLE_SIZE = 32
+    const val DEFAULT_DECODE_SIZE = 32
+
+    /**
+     * Computes a blurhash for a local image file.
+     *
+     * @param file The image file (original or compressed upload)
+     * @return The hash, or null if the file can't be decoded
+     */
+    fun encode(file: File): String? {
+        return try {
+            val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+            BitmapFactory.decodeFile(file.absolutePath, bounds)
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null
+
+            val options = BitmapFactory.Options().apply {
+                var sampleSize = 1
+                while (min(bounds.outWidth, bounds.outHeight) / (sampleSize * 2) >= ENCODE_SAMPLE_SIZE) {
+                    sampleSize *= 2
+                }
+                inSampleSize = sampleSize
+                inPreferredConfig = Bitmap.Config.ARGB_8888
+            }
+            val decoded = BitmapFactory.decodeFile(file.absolutePath, options) ?: return null
+            val scale = ENCODE_SAMPLE_SIZE.toFloat() / max(decoded.width, decoded.height)
+            val sample = if (scale < 1f) {
+                Bitmap.createScaledBitmap(
+                    decoded,
+                    max(1, (decoded.width * scale).roundToInt()),
+                    max(1, (decoded.height * scale).roundToInt()),
+                    true
+                ).also { if (it !== decoded) decoded.recycle() }
+            } else {
+                decoded
+            }
+
+            // More components along the longer axis
+            val hash = if (sample.width >= sample.height) encode(sample, 4, 3) else encode(sample, 3, 4)
+            sample.recycle()
+            hash
+        } catch (e: Exception) {
+            Log.w(TAG, "Failed to compute blurhash for ${file.name}", e)
+            null
+        }
+    }
+
+    /**
+     * Encodes a bitmap. Keep the bitmap small (~32px); cost is O(pixels * components).
+     *
+     * @param bitmap Source bitmap
+     * @param componentsX Horizontal components (1-9)
+     * @param componentsY Vertical components (1-9)
+     * @return The blurhash string
+     */
+    fun encode(bitmap: Bitmap, componentsX: Int, componentsY: Int): String {
+        val width = bitmap.width
+        val height = bitmap.height
+        val pixels = IntArray(width * height)
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height)
+        return encode(pixels, width, height, componentsX, componentsY)
+    }
+
+    /**
+     * Encodes ARGB pixels laid out row by row, as returned by [Bitmap.getPixels].
+     */
+    internal fun encode(pixels: IntArray, width: Int, height: Int, componentsX: Int, componentsY: Int): String {
+        require(componentsX in 1..9 && componentsY in 1..9) { "Components must be between 1 and 9" }
+        require(pixels.size == width * height) { "Pixel count doesn't match ${width}x$height" }
+
+        val factors = Array(componentsX * componentsY) { DoubleArray(3) }
+        for (j in 0 until componentsY) {
+            for (i in 0 until componentsX) {
+                val normalisation = if (i == 0 && j == 0) 1.0 else 2.0
+                val factor = factors[j * componentsX + i]
+                for (y in 0 until height) {
+                    val cosY = cos(PI * j * y / height)
+                    for (x in 0 until width) {
+                        val basis = normalisation * cos(PI * i * x / width) * cosY
+                        val pixel = pixels[y * width + x]
+                        factor[0] += basis * srgbToLinear((pixel shr 16) and 255)
+                        factor[1] += basis * srgbToLinear((pixel shr 8) and 255)
+                        factor[2] += basis * srgbToLinear(pixel and 255)
+                    }
+                }
+                val scale = 1.0 / (width * height)
+                factor[0] *= scale
+                factor[1] *= scale
+                factor[2] *= scale
+            }
+        }
+
+        val hash = StringBuilder()
+        encode83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1)
+
+        val maximumValue: Double
+        if (factors.size > 1) {
+            val actualMaximum = factors.drop(1).maxOf { f -> max(abs(f[0]), max(abs(f[1]), abs(f[2]))) }
+            val quantisedMaximum = floor(actualMaximum * 166 - 0.5).toInt().coerceIn(0, 82)
+            maximumValue = (quantisedMaximum + 1) / 166.0
+            encode83(hash, quantisedMaximum, 1)
+        } else {
+            maximumValue = 1.0
+            encode83(hash, 0, 1)
+        }
+
+        val dc = factors[0]
+        encode83(hash, (linearToSrgb(dc[0]) shl 16) + (linearToSrgb(dc[1]) shl 8) + linearToSrgb(dc[2]), 4)
+
+        for (index in 1 until factors.size) {
+            val f = factors[index]
+            val quantR = quantiseAc(f[0], maximumValue)
+            val quantG = quantiseAc(f[1], maximumValue)
+            val quantB = quantiseAc(f[2], maximumValue)
+            encode83(hash, quantR * 19 * 19 + quantG * 19 + quantB, 2)
+        }
+
+        return hash.toString()
+    }
+
+    /**
+     * Decodes a blurhash into a small bitmap. Scale it up with the ImageView; the result is blurry by design.
+     *
+     * @param hash The blurhash string
+     * @param width Output width in pixels
+     * @param height Output height in pixels
+     * @param punch Contrast boost for the AC components (1.0 = as encoded)
+     * @return The decoded bitmap, or null if the hash is invalid
+     */
+    fun decode(
+        hash: String?,
+        width: Int = DEFAULT_DECODE_SIZE,
+        height: Int = DEFAULT_DECODE_SIZE,
+        punch: Float = 1f
+    ): Bitmap? {
+        val pixels = decodePixels(hash, width, height, punch) ?: return null
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888)
+    }
+
+    /**
+     * Decodes a blurhash into opaque ARGB pixels laid out row by row.
+     *
+     * @return The pixels, or null if the hash is invalid
+     */
+    internal fun decodePixels(hash: String?, width: Int, height: Int, punch: Float = 1f): IntArray? {
+        if (hash == null || hash.length < 6) return null
+
+        return try {
+            val sizeFlag = decode83(hash, 0, 1)
+            val numY = sizeFlag / 9 + 1
+            val numX = sizeFlag % 9 + 1
+            if (hash.length != 4 + 2 * numX * numY) return null
+
+            val quantisedMaximum = decode83(hash, 1, 2)
+            val maximumValue = (quantisedMaximum + 1) / 166.0 * punch
+
+            val colors = Array(numX * numY) { index ->
+                if (index == 0) {
+                    val value = decode83(hash, 2, 6)
+                    doubleArrayOf(
+                        srgbToLinear(value shr 16),
+                        srgbToLinear((value shr 8) and 255),
+                        srgbToLinear(value and 255)
+                    )
+                } else {
+                    val value = decode83(hash, 4 + index * 2, 6 + index * 2)
+                    doubleArrayOf(
+                        signPow(((value / (19 * 19)) - 9) / 9.0, 2.0) * maximumValue,
+                        signPow((((value / 19) % 19) - 9) / 9.0, 2.0) * maximumValue,
+                        signPow(((value % 19) - 9) / 9.0, 2.0) * maximumValue
+                    )
+                }
+            }
+
+            // Cosine tables, reused for every pixel
+            val cosX = DoubleArray(width * numX) { cos(PI * (it / numX) * (it % numX) / width) }
+            val cosY = DoubleArray(height * numY) { cos(PI * (it / numY) * (it % numY) / height) }
+
+            val pixels = IntArray(width * height)
+            for (y in 0 until height) {
+                for (x in 0 until width) {
+                    var r = 0.0
+                    var g = 0.0
+                    var b = 0.0
+                    for (j in 0 until numY) {
+                        val basisY = cosY[y * numY + j]
+                        for (i in 0 until numX) {
+                            val basis = cosX[x * numX + i] * basisY
+                            val color = colors[j * numX + i]
+                            r += color[0] * basis
+                            g += color[1] * basis
+                            b += color[2] * basis
+                        }
+                    }
+                    pixels[y * width + x] =
+                        (0xFF shl 24) or (linearToSrgb(r) shl 16) or (linearToSrgb(g) shl 8) or linearToSrgb(b)
+                }
+            }
+
+            pixels
+        } catch (e: IllegalArgumentException) {
+            Log.w(TAG, "Invalid blurhash: $hash", e)
+            null
+        }
+    }
+
+    private fun quantiseAc(value: Double, maximumValue: Double): Int {
+        return floor(signPow(value / maximumValue, 0.5) * 9 + 9.5).toInt().coerceIn(0, 18)
+    }
+
+    private fun srgbToLinear(value: Int): Double {
+        val v = value / 255.0
+        return if (v <= 0.04045) v / 12.92 else ((v + 0.055) / 1.055).pow(2.4)
+    }
+
+    private fun linearToSrgb(value: Double): Int {
+        val v = min(1.0, max(0.0, value))
+        return if (v <= 0.0031308) {
+            (v * 12.92 * 255 + 0.5).toInt()
+        } else {
+            ((1.055 * v.pow(1 / 2.4) - 0.055) * 255 + 0.5).toInt()
+        }
+    }
+
+    private fun signPow(value: Double, exp: Double): Double {
+        return abs(value).pow(exp).withSign(value)
+    }
+
+    private fun encode83(builder: StringBuilder, value: Int, length: Int) {
+        for (i in 1..length) {
+            val digit = (value / 83.0.pow(length - i).toInt()) % 83
+            builder.append(CHARACTERS[digit])
+        }
+    }
+
+    private fun decode83(hash: String, from: Int, to: Int): Int {
+        var value = 0
+        for (index in from until to) {
+            val digit = CHARACTERS.indexOf(hash[index])
+            require(digit >= 0) { "Invalid blurhash character: ${hash[index]}" }
+            value = value * 83 + digit
+        }
+        return value
+    }
+}
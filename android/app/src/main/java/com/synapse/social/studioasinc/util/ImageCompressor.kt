@@ -3,16 +3,14 @@ package com.synapse.social.studioasinc.util
 import android.content.Context
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
-import android.graphics.Matrix
 import android.net.Uri
-import androidx.exifinterface.media.ExifInterface
+import android.util.Size
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import java.io.ByteArrayOutputStream
 import java.io.File
 import java.io.FileOutputStream
 import java.io.IOException
-import java.io.InputStream
 
 /**
  * ImageCompressor handles image compression with size and quality optimization.
@@ -36,96 +34,7 @@ class ImageCompressor(private val context: Context) {
      * @param uri The URI of the image to compress
      * @return Result containing the compressed image file or error
      */
-    suspend fun compress(uri: Uri): Result<File> = withContext(Dispatchers.IO) {
-        try {
-            val inputStream = context.contentResolver.openInputStream(uri)
-                ?: return@withContext Result.failure(IOException("Cannot open input stream for URI: $uri"))
-            
-            // Get original image dimensions and EXIF data
-            val options = BitmapFactory.Options().apply {
-                inJustDecodeBounds = true
-            }
-            BitmapFactory.decodeStream(inputStream, null, options)
-            inputStream.close()
-            
-            val originalWidth = options.outWidth
-            val originalHeight = options.outHeight
-            
-            if (originalWidth <= 0 || originalHeight <= 0) {
-                return@withContext Result.failure(IOException("Invalid image dimensions"))
-            }
-            
-            // Calculate optimal sample size
-            val sampleSize = calculateInSampleSize(options, MAX_WIDTH, MAX_HEIGHT)
-            
-            // Decode the image with sample size
-            val newInputStream = context.contentResolver.openInputStream(uri)
-                ?: return@withContext Result.failure(IOException("Cannot reopen input stream for URI: $uri"))
-            
-            val decodedBitmap = try {
-                val decodeOptions = BitmapFactory.Options().apply {
-                    inSampleSize = sampleSize
-                    inPreferredConfig = Bitmap.Config.RGB_565 // Use less memory
-                }
-                BitmapFactory.decodeStream(newInputStream, null, decodeOptions)
-            } catch (e: OutOfMemoryError) {
-                // Retry with higher sample size if OOM occurs
-                val higherSampleSize = sampleSize * 2
-                val retryOptions = BitmapFactory.Options().apply {
-                    inSampleSize = higherSampleSize
-                    inPreferredConfig = Bitmap.Config.RGB_565
-                }
-                newInputStream.close()
-                val retryInputStream = context.contentResolver.openInputStream(uri)
-                    ?: return@withContext Result.failure(IOException("Cannot reopen input stream after OOM"))
-                BitmapFactory.decodeStream(retryInputStream, null, retryOptions)
-            } finally {
-                newInputStream.close()
-            }
-            
-            if (decodedBitmap == null) {
-                return@withContext Result.failure(IOException("Failed to decode bitmap"))
-            }
-            
-            // Apply EXIF orientation
-            val orientedBitmap = try {
-                applyExifOrientation(uri, decodedBitmap)
-            } catch (e: Exception) {
-                // If EXIF processing fails, use original bitmap
-                decodedBitmap
-            }
-            
-            // Scale bitmap to target dimensions if needed
-            val scaledBitmap = scaleToTargetSize(orientedBitmap, MAX_WIDTH, MAX_HEIGHT)
-            
-            // Clean up intermediate bitmap if different
-            if (scaledBitmap != orientedBitmap && scaledBitmap != decodedBitmap) {
-                orientedBitmap.recycle()
-            }
-            if (orientedBitmap != decodedBitmap) {
-                decodedBitmap.recycle()
-            }
-            
-            // Validate bitmap safety before compression
-            if (!isBitmapSafeToProcess(scaledBitmap)) {
-                scaledBitmap.recycle()
-                return@withContext Result.failure(IOException("Bitmap too large to process safely"))
-            }
-            
-            // Compress iteratively to meet file size target
-            val compressedFile = compressIteratively(scaledBitmap, MAX_FILE_SIZE_BYTES)
-            
-            // Clean up bitmap
-            scaledBitmap.recycle()
-            
-            Result.success(compressedFile)
-            
-        } catch (e: OutOfMemoryError) {
-            Result.failure(IOException("Out of memory while compressing image", e))
-        } catch (e: Exception) {
-            Result.failure(e)
-        }
-    }
+    suspend fun compress(uri: Uri): Result<File> = compressToSize(uri, MAX_FILE_SIZE_BYTES)
     
     /**
      * Compresses an image to a specific target size.
@@ -136,71 +45,29 @@ class ImageCompressor(private val context: Context) {
      */
     suspend fun compressToSize(uri: Uri, maxSizeBytes: Long): Result<File> = withContext(Dispatchers.IO) {
         try {
-            val inputStream = context.contentResolver.openInputStream(uri)
-                ?: return@withContext Result.failure(IOException("Cannot open input stream for URI: $uri"))
-            
-            val options = BitmapFactory.Options().apply {
-                inJustDecodeBounds = true
-            }
-            BitmapFactory.decodeStream(inputStream, null, options)
-            inputStream.close()
-            
-            val sampleSize = calculateInSampleSize(options, MAX_WIDTH, MAX_HEIGHT)
-            
-            val newInputStream = context.contentResolver.openInputStream(uri)
-                ?: return@withContext Result.failure(IOException("Cannot reopen input stream for URI: $uri"))
-            
-            val decodedBitmap = try {
-                val decodeOptions = BitmapFactory.Options().apply {
-                    inSampleSize = sampleSize
-                    inPreferredConfig = Bitmap.Config.RGB_565
-                }
-                BitmapFactory.decodeStream(newInputStream, null, decodeOptions)
-            } catch (e: OutOfMemoryError) {
-                val higherSampleSize = sampleSize * 2
-                val retryOptions = BitmapFactory.Options().apply {
-                    inSampleSize = higherSampleSize
-                    inPreferredConfig = Bitmap.Config.RGB_565
-                }
-                newInputStream.close()
-                val retryInputStream = context.contentResolver.openInputStream(uri)
-                    ?: return@withContext Result.failure(IOException("Cannot reopen input stream after OOM"))
-                BitmapFactory.decodeStream(retryInputStream, null, retryOptions)
-            } finally {
-                newInputStream.close()
-            }
-            
-            if (decodedBitmap == null) {
-                return@withContext Result.failure(IOException("Failed to decode bitmap"))
-            }
-            
-            val orientedBitmap = try {
-                applyExifOrientation(uri, decodedBitmap)
-            } catch (e: Exception) {
-                decodedBitmap
-            }
-            
-            val scaledBitmap = scaleToTargetSize(orientedBitmap, MAX_WIDTH, MAX_HEIGHT)
-            
-            if (scaledBitmap != orientedBitmap && scaledBitmap != decodedBitmap) {
-                orientedBitmap.recycle()
-            }
-            if (orientedBitmap != decodedBitmap) {
-                decodedBitmap.recycle()
+            // Decode, orient and scale in a single pass so only one bitmap is alive
+            val scaledBitmap = BitmapDecoder.decode(context, uri, centerCrop = false) { width, height ->
+                calculateTargetSize(width, height, MAX_WIDTH, MAX_HEIGHT)
             }
             
             // Validate bitmap safety before compression
             if (!isBitmapSafeToProcess(scaledBitmap)) {
-                scaledBitmap.recycle()
+                BitmapPool.put(scaledBitmap)
                 return@withContext Result.failure(IOException("Bitmap too large to process safely"))
             }
             
-            val compressedFile = compressIteratively(scaledBitmap, maxSizeBytes)
-            scaledBitmap.recycle()
+            // Compress iteratively to meet file size target
+            val compressedFile = try {
+                compressIteratively(scaledBitmap, maxSizeBytes)
+            } finally {
+                // Hand the bitmap back for reuse by the next image in the batch
+                BitmapPool.put(scaledBitmap)
+            }
             
             Result.success(compressedFile)
             
         } catch (e: OutOfMemoryError) {
+            BitmapPool.clear()
             Result.failure(IOException("Out of memory while compressing image", e))
         } catch (e: Exception) {
             Result.failure(e)
@@ -235,97 +102,25 @@ class ImageCompressor(private val context: Context) {
     }
     
     /**
-     * Applies EXIF orientation to the bitmap to ensure correct display.
+     * Calculates the dimensions that fit within the target bounds while maintaining aspect ratio.
      * 
-     * @param uri The URI of the original image
-     * @param bitmap The bitmap to orient
-     * @return Oriented bitmap
-     */
-    private suspend fun applyExifOrientation(uri: Uri, bitmap: Bitmap): Bitmap = withContext(Dispatchers.IO) {
-        try {
-            val inputStream = context.contentResolver.openInputStream(uri)
-                ?: return@withContext bitmap
-            
-            val exif = ExifInterface(inputStream)
-            val orientation = exif.getAttributeInt(
-                ExifInterface.TAG_ORIENTATION,
-                ExifInterface.ORIENTATION_NORMAL
-            )
-            inputStream.close()
-            
-            val matrix = Matrix()
-            when (orientation) {
-                ExifInterface.ORIENTATION_ROTATE_90 -> matrix.postRotate(90f)
-                ExifInterface.ORIENTATION_ROTATE_180 -> matrix.postRotate(180f)
-                ExifInterface.ORIENTATION_ROTATE_270 -> matrix.postRotate(270f)
-                ExifInterface.ORIENTATION_FLIP_HORIZONTAL -> matrix.postScale(-1f, 1f)
-                ExifInterface.ORIENTATION_FLIP_VERTICAL -> matrix.postScale(1f, -1f)
-                ExifInterface.ORIENTATION_TRANSPOSE -> {
-                    matrix.postRotate(90f)
-                    matrix.postScale(-1f, 1f)
-                }
-                ExifInterface.ORIENTATION_TRANSVERSE -> {
-                    matrix.postRotate(-90f)
-                    matrix.postScale(-1f, 1f)
-                }
-                else -> return@withContext bitmap
-            }
-            
-            try {
-                val orientedBitmap = Bitmap.createBitmap(
-                    bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true
-                )
-                if (orientedBitmap != bitmap) {
-                    bitmap.recycle()
-                }
-                orientedBitmap
-            } catch (e: OutOfMemoryError) {
-                // If we can't create the oriented bitmap, return the original
-                bitmap
-            }
-        } catch (e: Exception) {
-            // If EXIF processing fails, return original bitmap
-            bitmap
-        }
-    }
-    
-    /**
-     * Scales bitmap to fit within target dimensions while maintaining aspect ratio.
-     * 
-     * @param bitmap The bitmap to scale
+     * @param width Oriented source width
+     * @param height Oriented source height
      * @param maxWidth Maximum width
      * @param maxHeight Maximum height
-     * @return Scaled bitmap
+     * @return Target dimensions, or the source dimensions if already within bounds
      */
-    private fun scaleToTargetSize(bitmap: Bitmap, maxWidth: Int, maxHeight: Int): Bitmap {
-        val width = bitmap.width
-        val height = bitmap.height
-        
+    private fun calculateTargetSize(width: Int, height: Int, maxWidth: Int, maxHeight: Int): Size {
         if (width <= maxWidth && height <= maxHeight) {
-            return bitmap
+            return Size(width, height)
         }
         
         val aspectRatio = width.toFloat() / height.toFloat()
-        val targetWidth: Int
-        val targetHeight: Int
         
-        if (width > height) {
-            targetWidth = maxWidth
-            targetHeight = (maxWidth / aspectRatio).toInt()
+        return if (width > height) {
+            Size(maxWidth, maxOf(1, (maxWidth / aspectRatio).toInt()))
         } else {
-            targetHeight = maxHeight
-            targetWidth = (maxHeight * aspectRatio).toInt()
-        }
-        
-        return try {
-            val scaledBitmap = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true)
-            if (scaledBitmap != bitmap) {
-                bitmap.recycle()
-            }
-            scaledBitmap
-        } catch (e: OutOfMemoryError) {
-            // If scaling fails due to memory, return original bitmap
-            bitmap
+            Size(maxOf(1, (maxHeight * aspectRatio).toInt()), maxHeight)
         }
     }
     
@@ -1,14 +1,21 @@
 package com.synapse.social.studioasinc.util
 
 import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.drawable.BitmapDrawable
 import android.graphics.drawable.Drawable
 import android.util.Log
+import android.util.LruCache
 import android.widget.ImageView
 import com.bumptech.glide.Glide
+import com.bumptech.glide.RequestBuilder
 import com.bumptech.glide.load.DataSource
 import com.bumptech.glide.load.engine.GlideException
 import com.bumptech.glide.load.model.GlideUrl
 import com.bumptech.glide.load.model.LazyHeaders
+import com.bumptech.glide.load.resource.bitmap.CenterCrop
+import com.bumptech.glide.load.resource.bitmap.RoundedCorners
+import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions
 import com.bumptech.glide.request.RequestListener
 import com.bumptech.glide.request.target.Target
 import com.synapse.social.studioasinc.BuildConfig
@@ -18,11 +25,20 @@ import kotlinx.coroutines.delay
 /**
  * Utility class for loading images with retry logic and proper authentication.
  * Implements exponential backoff retry strategy for failed image loads.
+ *
+ * Loads are progressive when the caller has them: a blurhash placeholder renders
+ * immediately, the small thumbnail variant replaces it, then the full image. When the
+ * [NetworkPolicy] prefers thumbnails (poor links or data saver), only the thumbnail loads.
  */
 object ImageLoader {
     private const val TAG = "ImageLoader"
     private const val MAX_RETRIES = 2
     private const val INITIAL_RETRY_DELAY_MS = 100L
+    private const val BLURHASH_CACHE_ENTRIES = 100
+    private const val CROSSFADE_DURATION_MS = 150
+    
+    // Decoded blurhash placeholders; 32x32 bitmaps, so entries are ~4KB
+    private val blurHashCache = LruCache<String, Bitmap>(BLURHASH_CACHE_ENTRIES)
     
     /**
      * Load an image into an ImageView with retry logic and authentication headers.
@@ -31,6 +47,9 @@ object ImageLoader {
      * @param url Image URL to load
      * @param imageView Target ImageView
      * @param placeholder Placeholder drawable resource ID (optional)
+     * @param blurHash Blurhash of the image, rendered until pixels arrive (optional)
+     * @param thumbnailUrl Smaller variant loaded ahead of the full image (optional)
+     * @param cornerRadius Rounded corner radius in pixels, 0 for none
      * @param onSuccess Callback invoked when image loads successfully (optional)
      * @param onFailure Callback invoked when all retries fail (optional)
      */
@@ -39,6 +58,9 @@ object ImageLoader {
         url: String?,
         imageView: ImageView,
         placeholder: Int = R.drawable.default_image,
+        blurHash: String? = null,
+        thumbnailUrl: String? = null,
+        cornerRadius: Int = 0,
         onSuccess: (() -> Unit)? = null,
         onFailure: (() -> Unit)? = null
     ) {
@@ -48,11 +70,21 @@ object ImageLoader {
             return
         }
         
+        val variantUrl = thumbnailUrl?.takeIf { it.isNotBlank() && it != url }
+        val loadUrl = variantUrl
+            ?.takeIf { NetworkPolicyEngine.getInstance(context).currentPolicy.preferThumbnails }
+            ?: url
+        
         loadImageWithRetry(
             context = context,
-            url = url,
+            url = loadUrl,
             imageView = imageView,
             placeholder = placeholder,
+            request = ProgressiveRequest(
+                placeholder = getBlurHashDrawable(context, blurHash),
+                thumbnailUrl = variantUrl?.takeIf { loadUrl == url },
+                cornerRadius = cornerRadius
+            ),
             retryCount = 0,
             onSuccess = onSuccess,
             onFailure = onFailure
@@ -67,16 +99,34 @@ object ImageLoader {
         url: String,
         imageView: ImageView,
         placeholder: Int,
+        request: ProgressiveRequest,
         retryCount: Int,
         onSuccess: (() -> Unit)?,
         onFailure: (() -> Unit)?
     ) {
         val glideUrl = buildGlideUrlWithAuth(url)
         
-        Glide.with(context)
+        var builder = Glide.with(context)
             .load(glideUrl)
-            .placeholder(placeholder)
+            .applyShape(imageView, request.cornerRadius)
             .error(placeholder)
+        
+        builder = if (request.placeholder != null) {
+            builder.placeholder(request.placeholder)
+                .transition(DrawableTransitionOptions.withCrossFade(CROSSFADE_DURATION_MS))
+        } else {
+            builder.placeholder(placeholder)
+        }
+        
+        if (request.thumbnailUrl != null) {
+            builder = builder.thumbnail(
+                Glide.with(context)
+                    .load(buildGlideUrlWithAuth(request.thumbnailUrl))
+                    .applyShape(imageView, request.cornerRadius)
+            )
+        }
+        
+        builder
             .listener(object : RequestListener<Drawable> {
                 override fun onLoadFailed(
                     e: GlideException?,
@@ -99,6 +149,7 @@ object ImageLoader {
                                 url = url,
                                 imageView = imageView,
                                 placeholder = placeholder,
+                                request = request,
                                 retryCount = retryCount + 1,
                                 onSuccess = onSuccess,
                                 onFailure = onFailure
@@ -132,6 +183,44 @@ object ImageLoader {
             .into(imageView)
     }
     
+    /**
+     * Placeholder and variant options for a progressive load.
+     */
+    private class ProgressiveRequest(
+        val placeholder: Drawable?,
+        val thumbnailUrl: String?,
+        val cornerRadius: Int
+    )
+    
+    /**
+     * Returns a drawable for a blurhash, decoding it once and caching the bitmap.
+     * 
+     * @param context Android context
+     * @param blurHash The blurhash string
+     * @return Drawable to use as a placeholder, or null if the hash is missing or invalid
+     */
+    fun getBlurHashDrawable(context: Context, blurHash: String?): Drawable? {
+        if (blurHash.isNullOrBlank()) return null
+        
+        val bitmap = blurHashCache.get(blurHash)
+            ?: BlurHash.decode(blurHash)?.also { blurHashCache.put(blurHash, it) }
+            ?: return null
+        return BitmapDrawable(context.resources, bitmap)
+    }
+    
+    /**
+     * Applies the crop and corner transforms matching the ImageView's scale type.
+     */
+    private fun RequestBuilder<Drawable>.applyShape(imageView: ImageView, cornerRadius: Int): RequestBuilder<Drawable> {
+        val centerCrop = imageView.scaleType == ImageView.ScaleType.CENTER_CROP
+        return when {
+            centerCrop && cornerRadius > 0 -> transform(CenterCrop(), RoundedCorners(cornerRadius))
+            cornerRadius > 0 -> transform(RoundedCorners(cornerRadius))
+            centerCrop -> centerCrop()
+            else -> this
+        }
+    }
+    
     /**
      * Build a GlideUrl with proper authentication headers for Supabase Storage.
      * 
@@ -2,290 +2,630 @@ package com.synapse.social.studioasinc.util
 
 import android.content.Context
 import android.util.Log
-import kotlinx.coroutines.*
+import androidx.annotation.OptIn
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.database.StandaloneDatabaseProvider
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor
+import androidx.media3.datasource.cache.SimpleCache
+import java.io.BufferedWriter
 import java.io.File
+import java.io.FileWriter
 import java.io.IOException
 import java.security.MessageDigest
-import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.atomic.AtomicLong
 
 /**
- * Local file caching system with LRU eviction and automatic cleanup.
- * Provides efficient storage and retrieval of media files with size and time-based eviction.
+ * Local file caching system with journaled LRU eviction and per-category quotas.
+ *
+ * Cache state lives in a DiskLruCache-style journal instead of per-file metadata:
+ * - Access order is persisted (READ records), so LRU survives restarts
+ * - Startup replays the journal instead of scanning the cache directory
+ * - get/put/evict are O(1) through access-ordered maps, one per category
+ * - Writes are atomic: DIRTY is journaled, the file is copied to a temp name,
+ *   renamed into place, then CLEAN is journaled. Unfinished writes are discarded on load
+ *
+ * Use [getInstance]; only one instance may own a directory's journal.
+ *
+ * @param cacheDir Where files and the journal live; tests pass a temporary directory
  */
-class MediaCache(private val context: Context) {
-    
+class MediaCache internal constructor(
+    private val context: Context,
+    private val cacheDir: File = context.cacheDir.resolve(CACHE_DIR_NAME)
+) {
+
     companion object {
         private const val TAG = "MediaCache"
         private const val CACHE_DIR_NAME = "media"
         private const val MAX_CACHE_SIZE_BYTES = 500L * 1024 * 1024 // 500MB
         private const val CACHE_EXPIRATION_DAYS = 7L
         private const val CACHE_EXPIRATION_MS = CACHE_EXPIRATION_DAYS * 24 * 60 * 60 * 1000
-        private const val METADATA_FILE_SUFFIX = ".meta"
+        private const val EVICTION_TARGET_RATIO = 0.8 // Leave 20% buffer after eviction
+
+        private const val STREAM_CACHE_DIR_NAME = "media_stream"
+        private const val STREAM_CACHE_MAX_BYTES = 50L * 1024 * 1024 // 50MB
+
+        private const val JOURNAL_FILE_NAME = "journal"
+        private const val JOURNAL_TEMP_SUFFIX = ".tmp"
+        private const val JOURNAL_HEADER = "synapse.media.cache 1"
+        private const val COMPACT_OP_THRESHOLD = 2000
+
+        private const val OP_CLEAN = "CLEAN"
+        private const val OP_DIRTY = "DIRTY"
+        private const val OP_READ = "READ"
+        private const val OP_REMOVE = "REMOVE"
+
+        // Per-file metadata of caches written before the journal
+        private const val LEGACY_METADATA_SUFFIX = ".meta"
+
+        @Volatile
+        private var INSTANCE: MediaCache? = null
+
+        /**
+         * Returns the process-wide cache. A single instance owns the journal.
+         */
+        fun getInstance(context: Context): MediaCache {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: MediaCache(context.applicationContext).also { INSTANCE = it }
+            }
+        }
     }
-    
-    private val cacheDir: File = context.cacheDir.resolve(CACHE_DIR_NAME)
-    private val currentCacheSize = AtomicLong(0)
-    private val accessTimes = ConcurrentHashMap<String, Long>()
-    private val fileSizes = ConcurrentHashMap<String, Long>()
-    
+
+    /**
+     * Cache categories with independent quotas. Quotas add up to the 500MB cap.
+     */
+    enum class Category(val quotaBytes: Long) {
+        IMAGE(150L * 1024 * 1024),
+        VIDEO(250L * 1024 * 1024),
+        AUDIO(60L * 1024 * 1024),
+        DOCUMENT(40L * 1024 * 1024);
+
+        companion object {
+            /**
+             * Maps the media type strings used by attachments and downloads to a category.
+             */
+            fun fromMediaType(mediaType: String?): Category {
+                return when (mediaType?.lowercase()) {
+                    "image", "thumbnail" -> IMAGE
+                    "video" -> VIDEO
+                    "audio" -> AUDIO
+                    else -> DOCUMENT
+                }
+            }
+
+            /**
+             * Guesses the category of a cached file from its leading bytes, for files cached
+             * before categories were recorded; cache files are named by key hash, without an
+             * extension.
+             */
+            fun sniff(file: File): Category {
+                val header = ByteArray(12)
+                val read = try {
+                    file.inputStream().use { it.read(header) }
+                } catch (e: IOException) {
+                    return DOCUMENT
+                }
+                if (read < 4) return DOCUMENT
+
+                fun ascii(offset: Int, length: Int) = String(header, offset, length, Charsets.US_ASCII)
+                val b0 = header[0].toInt() and 0xFF
+                val b1 = header[1].toInt() and 0xFF
+                return when {
+                    b0 == 0xFF && b1 == 0xD8 -> IMAGE // JPEG
+                    b0 == 0x89 && ascii(1, 3) == "PNG" -> IMAGE
+                    ascii(0, 4) == "GIF8" -> IMAGE
+                    read >= 12 && ascii(0, 4) == "RIFF" && ascii(8, 4) == "WEBP" -> IMAGE
+                    read >= 12 && ascii(0, 4) == "RIFF" && ascii(8, 4) == "WAVE" -> AUDIO
+                    read >= 12 && ascii(4, 4) == "ftyp" -> if (ascii(8, 3) == "M4A") AUDIO else VIDEO // MP4, 3GP, MOV
+                    b0 == 0x1A && b1 == 0x45 -> VIDEO // WebM, Matroska
+                    ascii(0, 3) == "ID3" || (b0 == 0xFF && (b1 and 0xE0) == 0xE0) -> AUDIO // MP3, AAC
+                    ascii(0, 4) == "OggS" || ascii(0, 4) == "fLaC" || ascii(0, 4) == "#!AM" -> AUDIO
+                    else -> DOCUMENT
+                }
+            }
+        }
+    }
+
+    private data class Entry(
+        val cacheKey: String,
+        val category: Category,
+        val size: Long,
+        val createdAt: Long,
+        var lastAccess: Long
+    )
+
+    private val journalFile = File(cacheDir, JOURNAL_FILE_NAME)
+
+    // Access-ordered maps: iteration starts at the least recently used entry
+    private val entriesByCategory = Category.values().associateWith {
+        LinkedHashMap<String, Entry>(0, 0.75f, true)
+    }
+    private val index = HashMap<String, Entry>()
+    private val categorySizes = Category.values().associateWith { 0L }.toMutableMap()
+    private var totalSize = 0L
+
+    private var journalWriter: BufferedWriter? = null
+    private var redundantOpCount = 0
+
+    // Created on first use; Media3 allows one SimpleCache per directory and process
+    @Volatile
+    private var streamCacheInstance: SimpleCache? = null
+
     init {
         // Ensure cache directory exists
         if (!cacheDir.exists()) {
             cacheDir.mkdirs()
         }
-        
-        // Initialize cache metadata
-        initializeCacheMetadata()
+
+        // Restore cache state from the journal
+        synchronized(this) {
+            initializeFromJournal()
+        }
     }
-    
+
     /**
      * Store a file in the cache with the given key.
-     * If the cache exceeds size limits, LRU eviction will be triggered.
+     * If the category exceeds its quota, LRU eviction will be triggered for that category.
      */
-    fun put(key: String, file: File) {
+    fun put(key: String, file: File, category: Category) {
         if (!file.exists() || !file.isFile) {
             Log.w(TAG, "Cannot cache non-existent or invalid file: ${file.path}")
             return
         }
-        
+
+        val cacheKey = generateCacheKey(key)
+        val cachedFile = getCacheFile(cacheKey)
+        val tempFile = File(cacheDir, cacheKey + JOURNAL_TEMP_SUFFIX)
+
+        synchronized(this) {
+            appendJournal(OP_DIRTY, cacheKey)
+        }
+
         try {
-            val cacheKey = generateCacheKey(key)
-            val cachedFile = getCacheFile(cacheKey)
-            
-            // Copy file to cache directory
-            file.copyTo(cachedFile, overwrite = true)
-            
-            val fileSize = cachedFile.length()
-            val currentTime = System.currentTimeMillis()
-            
-            // Update metadata
-            updateFileMetadata(cacheKey, fileSize, currentTime)
-            
-            // Check if we need to evict files due to size limit
-            if (currentCacheSize.get() > MAX_CACHE_SIZE_BYTES) {
-                evictLRU()
+            // Copy outside the lock, then publish atomically
+            file.copyTo(tempFile, overwrite = true)
+
+            synchronized(this) {
+                if (!tempFile.renameTo(cachedFile)) {
+                    throw IOException("Failed to commit cache file for key: $key")
+                }
+
+                removeEntry(cacheKey)
+                val now = System.currentTimeMillis()
+                val entry = Entry(cacheKey, category, cachedFile.length(), now, now)
+                addEntry(entry)
+                appendJournal(OP_CLEAN, cacheKey, category.name, entry.size.toString(), entry.createdAt.toString())
+
+                // Check if we need to evict files due to size limits
+                trimCategory(category)
+                trimTotal()
+                compactJournalIfNeeded()
             }
-            
-            Log.d(TAG, "Cached file with key: $key, size: ${fileSize}B")
-            
+
+            Log.d(TAG, "Cached file with key: $key, size: ${cachedFile.length()}B, category: $category")
+
         } catch (e: IOException) {
+            tempFile.delete()
+            synchronized(this) {
+                // The journal now says the key is gone, so the previous version goes too
+                removeEntry(cacheKey)
+                getCacheFile(cacheKey).delete()
+                appendJournal(OP_REMOVE, cacheKey)
+            }
             Log.e(TAG, "Failed to cache file with key: $key", e)
         }
     }
-    
+
     /**
      * Retrieve a cached file by key.
-     * Updates access time for LRU tracking.
+     * Records the access in the journal for LRU tracking.
      */
     fun get(key: String): File? {
         val cacheKey = generateCacheKey(key)
-        val cachedFile = getCacheFile(cacheKey)
-        
-        if (!cachedFile.exists()) {
-            // Clean up orphaned metadata
-            removeFileMetadata(cacheKey)
-            return null
-        }
-        
-        // Check if file has expired
-        val fileAge = System.currentTimeMillis() - cachedFile.lastModified()
-        if (fileAge > CACHE_EXPIRATION_MS) {
-            Log.d(TAG, "Cache file expired: $key")
-            remove(key)
-            return null
+
+        synchronized(this) {
+            val entry = findEntry(cacheKey) ?: return null
+
+            // Check if file has expired
+            val now = System.currentTimeMillis()
+            if (now - entry.createdAt > CACHE_EXPIRATION_MS) {
+                Log.d(TAG, "Cache file expired: $key")
+                deleteEntry(entry)
+                return null
+            }
+
+            val cachedFile = getCacheFile(cacheKey)
+            if (!cachedFile.exists()) {
+                // File was removed behind our back, drop the orphaned entry
+                deleteEntry(entry)
+                return null
+            }
+
+            // Update access order for LRU
+            entry.lastAccess = now
+            appendJournal(OP_READ, cacheKey, now.toString())
+            redundantOpCount++
+            compactJournalIfNeeded()
+
+            Log.d(TAG, "Cache hit for key: $key")
+            return cachedFile
         }
-        
-        // Update access time for LRU
-        accessTimes[cacheKey] = System.currentTimeMillis()
-        
-        Log.d(TAG, "Cache hit for key: $key")
-        return cachedFile
-    }
-    
+    }
+
     /**
      * Remove a specific file from the cache.
      */
     fun remove(key: String) {
         val cacheKey = generateCacheKey(key)
-        val cachedFile = getCacheFile(cacheKey)
-        
-        if (cachedFile.exists()) {
-            val fileSize = cachedFile.length()
-            
-            if (cachedFile.delete()) {
-                removeFileMetadata(cacheKey)
-                currentCacheSize.addAndGet(-fileSize)
-                Log.d(TAG, "Removed cached file: $key")
-            } else {
-                Log.w(TAG, "Failed to delete cached file: $key")
-            }
+        synchronized(this) {
+            val entry = findEntry(cacheKey) ?: return
+            deleteEntry(entry)
+            Log.d(TAG, "Removed cached file: $key")
         }
     }
-    
+
     /**
      * Clear the entire cache.
      */
     fun clear() {
-        try {
-            cacheDir.listFiles()?.forEach { file ->
-                if (file.isFile) {
-                    file.delete()
+        synchronized(this) {
+            try {
+                closeJournal()
+                cacheDir.listFiles()?.forEach { file ->
+                    if (file.isFile) {
+                        file.delete()
+                    }
                 }
+
+                entriesByCategory.values.forEach { it.clear() }
+                index.clear()
+                Category.values().forEach { categorySizes[it] = 0L }
+                totalSize = 0L
+
+                rebuildJournal()
+                clearStreamCache()
+                Log.d(TAG, "Cache cleared")
+
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to clear cache", e)
             }
-            
-            accessTimes.clear()
-            fileSizes.clear()
-            currentCacheSize.set(0)
-            
-            Log.d(TAG, "Cache cleared")
-            
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to clear cache", e)
         }
     }
-    
+
     /**
      * Remove files older than the expiration time.
      */
     fun evictExpired() {
-        val currentTime = System.currentTimeMillis()
-        val expiredFiles = mutableListOf<String>()
-        
-        cacheDir.listFiles()?.forEach { file ->
-            if (file.isFile && !file.name.endsWith(METADATA_FILE_SUFFIX)) {
-                val fileAge = currentTime - file.lastModified()
-                if (fileAge > CACHE_EXPIRATION_MS) {
-                    val cacheKey = file.nameWithoutExtension
-                    expiredFiles.add(cacheKey)
-                }
+        synchronized(this) {
+            val cutoff = System.currentTimeMillis() - CACHE_EXPIRATION_MS
+            val expired = entriesByCategory.values.flatMap { entries ->
+                entries.values.filter { it.createdAt < cutoff }
             }
+
+            expired.forEach { deleteEntry(it) }
+
+            if (expired.isNotEmpty()) {
+                Log.d(TAG, "Evicted ${expired.size} expired files")
+            }
+            compactJournalIfNeeded()
         }
-        
-        expiredFiles.forEach { cacheKey ->
-            val originalKey = reverseGenerateCacheKey(cacheKey)
-            remove(originalKey)
+    }
+
+    /**
+     * Evict least recently used files from every category over its quota,
+     * then from the whole cache if it is still over the global limit.
+     */
+    fun evictLRU() {
+        synchronized(this) {
+            Category.values().forEach { trimCategory(it) }
+            trimTotal()
+            compactJournalIfNeeded()
         }
-        
-        if (expiredFiles.isNotEmpty()) {
-            Log.d(TAG, "Evicted ${expiredFiles.size} expired files")
+    }
+
+    /**
+     * Get current cache size in bytes.
+     */
+    fun getCacheSize(): Long = synchronized(this) { totalSize }
+
+    /**
+     * Get current size of a single category in bytes.
+     */
+    fun getCategorySize(category: Category): Long = synchronized(this) { categorySizes.getValue(category) }
+
+    /**
+     * Get number of cached files.
+     */
+    fun getCacheFileCount(): Int = synchronized(this) { index.size }
+
+    /**
+     * Get cache statistics for debugging.
+     */
+    fun getCacheStats(): CacheStats {
+        synchronized(this) {
+            return CacheStats(
+                totalSize = totalSize,
+                fileCount = index.size,
+                maxSize = MAX_CACHE_SIZE_BYTES,
+                expirationDays = CACHE_EXPIRATION_DAYS,
+                categorySizes = categorySizes.toMap()
+            )
         }
     }
-    
+
     /**
-     * Evict least recently used files when cache size exceeds limit.
+     * Media3 cache for media played while it streams, like voice notes, filled in ranges as
+     * playback reads them. It lives beside the file cache in its own directory with its own LRU
+     * cap, since ExoPlayer reads and writes it directly. Thread-safe.
      */
-    fun evictLRU() {
-        if (currentCacheSize.get() <= MAX_CACHE_SIZE_BYTES) {
-            return
+    @OptIn(UnstableApi::class)
+    fun streamCache(): Cache {
+        return streamCacheInstance ?: synchronized(this) {
+            streamCacheInstance ?: SimpleCache(
+                context.cacheDir.resolve(STREAM_CACHE_DIR_NAME),
+                LeastRecentlyUsedCacheEvictor(STREAM_CACHE_MAX_BYTES),
+                StandaloneDatabaseProvider(context)
+            ).also { streamCacheInstance = it }
         }
-        
-        // Sort files by access time (oldest first)
-        val sortedByAccess = accessTimes.entries
-            .sortedBy { it.value }
-            .map { it.key }
-        
+    }
+
+    // Private helper methods
+
+    private fun findEntry(cacheKey: String): Entry? {
+        val entry = index[cacheKey] ?: return null
+        // LinkedHashMap.get moves the entry to the most recently used position
+        return entriesByCategory.getValue(entry.category)[cacheKey]
+    }
+
+    private fun addEntry(entry: Entry) {
+        entriesByCategory.getValue(entry.category)[entry.cacheKey] = entry
+        index[entry.cacheKey] = entry
+        categorySizes[entry.category] = categorySizes.getValue(entry.category) + entry.size
+        totalSize += entry.size
+    }
+
+    private fun removeEntry(cacheKey: String): Entry? {
+        val entry = index.remove(cacheKey) ?: return null
+        entriesByCategory.getValue(entry.category).remove(cacheKey)
+        categorySizes[entry.category] = categorySizes.getValue(entry.category) - entry.size
+        totalSize -= entry.size
+        return entry
+    }
+
+    private fun deleteEntry(entry: Entry) {
+        removeEntry(entry.cacheKey)
+        val cachedFile = getCacheFile(entry.cacheKey)
+        if (cachedFile.exists() && !cachedFile.delete()) {
+            Log.w(TAG, "Failed to delete cached file: ${entry.cacheKey}")
+        }
+        appendJournal(OP_REMOVE, entry.cacheKey)
+        redundantOpCount++
+    }
+
+    /**
+     * Evicts the least recently used entries of a category until it is under quota.
+     * Each eviction is O(1): the head of the access-ordered map.
+     */
+    private fun trimCategory(category: Category) {
+        if (categorySizes.getValue(category) <= category.quotaBytes) return
+
+        val target = (category.quotaBytes * EVICTION_TARGET_RATIO).toLong()
+        val entries = entriesByCategory.getValue(category)
         var bytesEvicted = 0L
         var filesEvicted = 0
-        
-        for (cacheKey in sortedByAccess) {
-            if (currentCacheSize.get() <= MAX_CACHE_SIZE_BYTES * 0.8) { // Leave 20% buffer
-                break
-            }
-            
-            val cachedFile = getCacheFile(cacheKey)
-            if (cachedFile.exists()) {
-                val fileSize = cachedFile.length()
-                
-                if (cachedFile.delete()) {
-                    removeFileMetadata(cacheKey)
-                    currentCacheSize.addAndGet(-fileSize)
-                    bytesEvicted += fileSize
-                    filesEvicted++
-                }
-            }
+
+        while (categorySizes.getValue(category) > target && entries.isNotEmpty()) {
+            val eldest = entries.values.first()
+            bytesEvicted += eldest.size
+            filesEvicted++
+            deleteEntry(eldest)
         }
-        
+
         if (filesEvicted > 0) {
-            Log.d(TAG, "LRU evicted $filesEvicted files, freed ${bytesEvicted}B")
+            Log.d(TAG, "LRU evicted $filesEvicted $category files, freed ${bytesEvicted}B")
         }
     }
-    
+
     /**
-     * Get current cache size in bytes.
+     * Enforces the global cap by evicting the least recently used entry across categories.
      */
-    fun getCacheSize(): Long = currentCacheSize.get()
-    
+    private fun trimTotal() {
+        if (totalSize <= MAX_CACHE_SIZE_BYTES) return
+
+        val target = (MAX_CACHE_SIZE_BYTES * EVICTION_TARGET_RATIO).toLong()
+        while (totalSize > target) {
+            val eldest = entriesByCategory.values
+                .mapNotNull { entries -> entries.values.firstOrNull() }
+                .minByOrNull { it.lastAccess }
+                ?: break
+            deleteEntry(eldest)
+        }
+    }
+
     /**
-     * Get number of cached files.
+     * Empties the stream cache. Called under the cache lock, which also guards opening it, so
+     * the directory is never deleted while a SimpleCache owns it.
      */
-    fun getCacheFileCount(): Int = accessTimes.size
-    
+    @OptIn(UnstableApi::class)
+    private fun clearStreamCache() {
+        val cache = streamCacheInstance
+        if (cache != null) {
+            cache.keys.forEach { key -> cache.removeResource(key) }
+            return
+        }
+        // Not opened in this process yet, e.g. no voice note played; files from earlier runs remain
+        val dir = context.cacheDir.resolve(STREAM_CACHE_DIR_NAME)
+        if (dir.exists()) {
+            SimpleCache.delete(dir, StandaloneDatabaseProvider(context))
+        }
+    }
+
+    private fun initializeFromJournal() {
+        if (!journalFile.exists()) {
+            rebuildFromDirectory()
+            return
+        }
+
+        val dirtyKeys = HashSet<String>()
+        var lineCount = 0
+
+        try {
+            journalFile.bufferedReader().useLines { lines ->
+                val iterator = lines.iterator()
+                if (!iterator.hasNext() || iterator.next() != JOURNAL_HEADER) {
+                    throw IOException("Unexpected journal header")
+                }
+
+                iterator.forEach { line ->
+                    lineCount++
+                    val parts = line.split(' ')
+                    val op = parts.getOrNull(0)
+                    val cacheKey = parts.getOrNull(1) ?: return@forEach
+                    when (op) {
+                        OP_DIRTY -> dirtyKeys.add(cacheKey)
+                        OP_CLEAN -> if (parts.size == 5) {
+                            dirtyKeys.remove(cacheKey)
+                            removeEntry(cacheKey)
+                            val createdAt = parts[4].toLong()
+                            addEntry(Entry(cacheKey, Category.valueOf(parts[2]), parts[3].toLong(), createdAt, createdAt))
+                        }
+                        OP_READ -> findEntry(cacheKey)?.let { entry ->
+                            entry.lastAccess = parts.getOrNull(2)?.toLongOrNull() ?: entry.lastAccess
+                        }
+                        OP_REMOVE -> {
+                            dirtyKeys.remove(cacheKey)
+                            removeEntry(cacheKey)
+                        }
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "Cache journal is corrupt, rebuilding", e)
+            entriesByCategory.values.forEach { it.clear() }
+            index.clear()
+            Category.values().forEach { categorySizes[it] = 0L }
+            totalSize = 0L
+            rebuildFromDirectory()
+            return
+        }
+
+        // Discard writes that never committed
+        dirtyKeys.forEach { cacheKey ->
+            if (index[cacheKey] == null) {
+                getCacheFile(cacheKey).delete()
+            }
+            File(cacheDir, cacheKey + JOURNAL_TEMP_SUFFIX).delete()
+        }
+
+        redundantOpCount = lineCount - index.size
+        if (dirtyKeys.isNotEmpty() || redundantOpCount >= COMPACT_OP_THRESHOLD) {
+            rebuildJournal()
+        } else {
+            openJournal()
+        }
+
+        Log.d(TAG, "Initialized cache from journal: ${index.size} files, ${totalSize}B")
+    }
+
     /**
-     * Get cache statistics for debugging.
+     * One-time migration for caches written before the journal existed.
+     * Files are ordered by modification time and categorized by their content, so each
+     * category's quota applies to its own media rather than all of it landing in one.
      */
-    fun getCacheStats(): CacheStats {
-        return CacheStats(
-            totalSize = currentCacheSize.get(),
-            fileCount = accessTimes.size,
-            maxSize = MAX_CACHE_SIZE_BYTES,
-            expirationDays = CACHE_EXPIRATION_DAYS
-        )
+    private fun rebuildFromDirectory() {
+        cacheDir.listFiles()
+            ?.filter { it.isFile && it.name != JOURNAL_FILE_NAME && !it.name.endsWith(JOURNAL_TEMP_SUFFIX) }
+            ?.filter { file ->
+                // Legacy metadata is superseded by the journal
+                if (file.name.endsWith(LEGACY_METADATA_SUFFIX)) file.delete()
+                !file.name.endsWith(LEGACY_METADATA_SUFFIX)
+            }
+            ?.sortedBy { it.lastModified() }
+            ?.forEach { file ->
+                addEntry(Entry(file.name, Category.sniff(file), file.length(), file.lastModified(), file.lastModified()))
+            }
+        rebuildJournal()
+        Log.d(TAG, "Rebuilt cache journal from directory: ${index.size} files, ${totalSize}B")
     }
-    
-    // Private helper methods
-    
-    private fun initializeCacheMetadata() {
-        var totalSize = 0L
-        
-        cacheDir.listFiles()?.forEach { file ->
-            if (file.isFile && !file.name.endsWith(METADATA_FILE_SUFFIX)) {
-                val cacheKey = file.nameWithoutExtension
-                val fileSize = file.length()
-                val accessTime = file.lastModified()
-                
-                accessTimes[cacheKey] = accessTime
-                fileSizes[cacheKey] = fileSize
-                totalSize += fileSize
+
+    /**
+     * Rewrites the journal with one CLEAN (and READ) record per live entry, in LRU order.
+     */
+    private fun rebuildJournal() {
+        closeJournal()
+        val tempJournal = File(cacheDir, JOURNAL_FILE_NAME + JOURNAL_TEMP_SUFFIX)
+
+        try {
+            tempJournal.bufferedWriter().use { writer ->
+                writer.write(JOURNAL_HEADER)
+                writer.newLine()
+                entriesByCategory.values
+                    .flatMap { it.values }
+                    .sortedBy { it.lastAccess }
+                    .forEach { entry ->
+                        writer.write("$OP_CLEAN ${entry.cacheKey} ${entry.category.name} ${entry.size} ${entry.createdAt}")
+                        writer.newLine()
+                        writer.write("$OP_READ ${entry.cacheKey} ${entry.lastAccess}")
+                        writer.newLine()
+                    }
+            }
+            if (!tempJournal.renameTo(journalFile)) {
+                throw IOException("Failed to replace cache journal")
             }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to rebuild cache journal", e)
+            tempJournal.delete()
+        }
+
+        redundantOpCount = 0
+        openJournal()
+    }
+
+    private fun compactJournalIfNeeded() {
+        if (redundantOpCount >= COMPACT_OP_THRESHOLD && redundantOpCount >= index.size) {
+            rebuildJournal()
+        }
+    }
+
+    private fun openJournal() {
+        try {
+            journalWriter = BufferedWriter(FileWriter(journalFile, true))
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to open cache journal", e)
+            journalWriter = null
         }
-        
-        currentCacheSize.set(totalSize)
-        Log.d(TAG, "Initialized cache: ${accessTimes.size} files, ${totalSize}B")
-    }
-    
-    private fun updateFileMetadata(cacheKey: String, fileSize: Long, accessTime: Long) {
-        // Remove old size if file existed
-        val oldSize = fileSizes[cacheKey] ?: 0L
-        currentCacheSize.addAndGet(fileSize - oldSize)
-        
-        // Update metadata
-        accessTimes[cacheKey] = accessTime
-        fileSizes[cacheKey] = fileSize
-    }
-    
-    private fun removeFileMetadata(cacheKey: String) {
-        accessTimes.remove(cacheKey)
-        fileSizes.remove(cacheKey)
-    }
-    
+    }
+
+    private fun closeJournal() {
+        try {
+            journalWriter?.close()
+        } catch (e: IOException) {
+            // Ignore close errors
+        }
+        journalWriter = null
+    }
+
+    private fun appendJournal(vararg fields: String) {
+        val writer = journalWriter ?: return
+        try {
+            writer.write(fields.joinToString(" "))
+            writer.newLine()
+            writer.flush()
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to append to cache journal", e)
+        }
+    }
+
     private fun generateCacheKey(key: String): String {
         // Generate a safe filename from the key using MD5 hash
         val digest = MessageDigest.getInstance("MD5")
         val hashBytes = digest.digest(key.toByteArray())
         return hashBytes.joinToString("") { "%02x".format(it) }
     }
-    
-    private fun reverseGenerateCacheKey(cacheKey: String): String {
-        // For LRU eviction, we don't need to reverse the hash
-        // We'll use the cache key directly for file operations
-        return cacheKey
-    }
-    
+
     private fun getCacheFile(cacheKey: String): File {
         return cacheDir.resolve(cacheKey)
     }
-    
+
     /**
      * Schedule periodic cache cleanup using WorkManager.
      * Should be called during app initialization.
@@ -293,74 +633,77 @@ class MediaCache(private val context: Context) {
     fun schedulePeriodicCleanup() {
         MediaCacheCleanupWorker.schedulePeriodicCleanup(context)
     }
-    
+
     /**
      * Cancel scheduled periodic cleanup.
      */
     fun cancelPeriodicCleanup() {
         MediaCacheCleanupWorker.cancelPeriodicCleanup(context)
     }
-    
+
     /**
      * Trigger immediate cleanup.
      */
     fun runCleanupNow() {
         MediaCacheCleanupWorker.runCleanupNow(context)
     }
-    
+
     /**
      * Check if a file exists in cache without updating access time.
      */
     fun contains(key: String): Boolean {
         val cacheKey = generateCacheKey(key)
-        val cachedFile = getCacheFile(cacheKey)
-        return cachedFile.exists()
+        return synchronized(this) { index.containsKey(cacheKey) }
     }
-    
+
     /**
      * Get file size for a cached file without retrieving it.
      */
     fun getFileSize(key: String): Long? {
         val cacheKey = generateCacheKey(key)
-        return fileSizes[cacheKey]
+        synchronized(this) {
+            // Read the index directly so the lookup doesn't count as an access
+            return index[cacheKey]?.size
+        }
     }
-    
+
     /**
      * Get last access time for a cached file.
      */
     fun getLastAccessTime(key: String): Long? {
         val cacheKey = generateCacheKey(key)
-        return accessTimes[cacheKey]
+        synchronized(this) {
+            return index[cacheKey]?.lastAccess
+        }
     }
-    
+
     /**
      * Get all cached file keys (for debugging/monitoring).
      */
     fun getAllKeys(): Set<String> {
-        return accessTimes.keys.toSet()
+        return synchronized(this) { index.keys.toSet() }
     }
-    
+
     /**
      * Perform maintenance cleanup - remove expired files and enforce size limits.
      * This is called by the background worker.
      */
     fun performMaintenance(): MaintenanceResult {
         val startTime = System.currentTimeMillis()
-        val initialFileCount = accessTimes.size
-        val initialSize = currentCacheSize.get()
-        
+        val initialFileCount = getCacheFileCount()
+        val initialSize = getCacheSize()
+
         // First, remove expired files
         evictExpired()
-        val afterExpiredFileCount = accessTimes.size
-        val afterExpiredSize = currentCacheSize.get()
-        
+        val afterExpiredFileCount = getCacheFileCount()
+
         // Then, enforce size limits with LRU
         evictLRU()
-        val finalFileCount = accessTimes.size
-        val finalSize = currentCacheSize.get()
-        
+        val finalFileCount = getCacheFileCount()
+        val finalSize = getCacheSize()
+
         val duration = System.currentTimeMillis() - startTime
-        
+
         return MaintenanceResult(
             expiredFilesRemoved = initialFileCount - afterExpiredFileCount,
             lruFilesRemoved = afterExpiredFileCount - finalFileCount,
@@ -371,7 +714,7 @@ class MediaCache(private val context: Context) {
             finalFileCount = finalFileCount
         )
     }
-    
+
     /**
      * Data class for cache statistics.
      */
@@ -379,9 +722,10 @@ class MediaCache(private val context: Context) {
         val totalSize: Long,
         val fileCount: Int,
         val maxSize: Long,
-        val expirationDays: Long
+        val expirationDays: Long,
+        val categorySizes: Map<Category, Long> = emptyMap()
     )
-    
+
     /**
      * Data class for maintenance operation results.
      */
@@ -394,4 +738,4 @@ class MediaCache(private val context: Context) {
         val finalCacheSize: Long,
         val finalFileCount: Int
     )
-}
\ No newline at end of file
+}
@@ -81,7 +81,7 @@ class MediaCacheCleanupWorker(
         Log.i(TAG, "Starting media cache cleanup work")
         
         return@withContext try {
-            val mediaCache = MediaCache(applicationContext)
+            val mediaCache = MediaCache.getInstance(applicationContext)
             val initialStats = mediaCache.getCacheStats()
             
             Log.d(TAG, "Cache stats before cleanup: ${initialStats.fileCount} files, ${initialStats.totalSize}B")
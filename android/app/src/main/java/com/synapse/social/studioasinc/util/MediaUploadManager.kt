@@ -37,11 +37,14 @@ object MediaUploadManager {
                         try {
                             val filePath = getFilePathFromUri(context, mediaItem.url)
                             if (filePath != null) {
+                                // Computed from the local file so feeds can render it before any download
+                                val blurHash = BlurHash.encode(File(filePath))
                                 val imgbbUrl = uploadToImgBB(filePath)
                                 val uploadedItem = mediaItem.copy(
                                     id = UUID.randomUUID().toString(),
                                     url = imgbbUrl,
-                                    mimeType = "image/jpeg"
+                                    mimeType = "image/jpeg",
+                                    blurHash = blurHash
                                 )
                                 uploadedItems.add(uploadedItem)
                                 android.util.Log.d("MediaUpload", "Uploaded image: $imgbbUrl")
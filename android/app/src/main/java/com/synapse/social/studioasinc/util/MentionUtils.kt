@@ -26,13 +26,15 @@ import java.util.regex.Pattern
  */
 object MentionUtils {
 
+    /** A mention; group 1 is the username */
+    val MENTION_PATTERN: Pattern = Pattern.compile("@(\\w+)")
+
     /**
      * Make mentions in text clickable and navigate to user profiles
      */
     fun handleMentions(context: Context, textView: TextView, text: String) {
         val spannableString = SpannableString(text)
-        val pattern = Pattern.compile("@(\\w+)")
-        val matcher = pattern.matcher(text)
+        val matcher = MENTION_PATTERN.matcher(text)
 
         while (matcher.find()) {
             val username = matcher.group(1)
@@ -42,30 +44,7 @@ object MentionUtils {
 
                 val clickableSpan = object : ClickableSpan() {
                     override fun onClick(widget: View) {
-                        // Use Supabase to find user by username
-                        CoroutineScope(Dispatchers.IO).launch {
-                            try {
-                                val userRepository = com.synapse.social.studioasinc.data.repository.UserRepository(AppDatabase.getDatabase(context.applicationContext).userDao())
-                                val userResult = userRepository.getUserByUsername(username)
-                                
-                                userResult.fold(
-                                    onSuccess = { user ->
-                                        if (user != null) {
-                                            CoroutineScope(Dispatchers.Main).launch {
-                                                val intent = Intent(context, ProfileComposeActivity::class.java)
-                                                intent.putExtra("uid", user.uid)
-                                                context.startActivity(intent)
-                                            }
-                                        }
-                                    },
-                                    onFailure = { error ->
-                                        android.util.Log.e("MentionUtils", "Error finding user: ${error.message}")
-                                    }
-                                )
-                            } catch (e: Exception) {
-                                android.util.Log.e("MentionUtils", "Error finding user: ${e.message}")
-                            }
-                        }
+                        openProfile(context, username)
                     }
 
                     override fun updateDrawState(ds: android.text.TextPaint) {
@@ -82,6 +61,36 @@ object MentionUtils {
         textView.movementMethod = android.text.method.LinkMovementMethod.getInstance()
     }
 
+    /**
+     * Look up a mentioned user by username and open their profile
+     */
+    fun openProfile(context: Context, username: String) {
+        // Use Supabase to find user by username
+        CoroutineScope(Dispatchers.IO).launch {
+            try {
+                val userRepository = com.synapse.social.studioasinc.data.repository.UserRepository(AppDatabase.getDatabase(context.applicationContext).userDao())
+                val userResult = userRepository.getUserByUsername(username)
+                
+                userResult.fold(
+                    onSuccess = { user ->
+                        if (user != null) {
+                            CoroutineScope(Dispatchers.Main).launch {
+                                val intent = Intent(context, ProfileComposeActivity::class.java)
+                                intent.putExtra("uid", user.uid)
+                                context.startActivity(intent)
+                            }
+                        }
+                    },
+                    onFailure = { error ->
+                        android.util.Log.e("MentionUtils", "Error finding user: ${error.message}")
+                    }
+                )
+            } catch (e: Exception) {
+                android.util.Log.e("MentionUtils", "Error finding user: ${e.message}")
+            }
+        }
+    }
+
     /**
      * Send notifications to mentioned users
      */
@@ -95,8 +104,7 @@ object MentionUtils {
     ) {
         if (text.isBlank()) return
 
-        val pattern = Pattern.compile("@(\\w+)")
-        val matcher = pattern.matcher(text)
+        val matcher = MENTION_PATTERN.matcher(text)
 
         val mentionedUsernames = mutableSetOf<String>()
         while (matcher.find()) {
@@ -176,8 +184,7 @@ object MentionUtils {
      * Extract mentioned usernames from text
      */
     fun extractMentions(text: String): List<String> {
-        val pattern = Pattern.compile("@(\\w+)")
-        val matcher = pattern.matcher(text)
+        val matcher = MENTION_PATTERN.matcher(text)
         val mentions = mutableListOf<String>()
         
         while (matcher.find()) {
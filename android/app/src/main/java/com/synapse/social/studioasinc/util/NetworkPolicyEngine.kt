@@ -0,0 +1,175 @@
+package com.synapse.social.studioasinc.util
+
+import android.content.Context
+import android.util.Log
+import com.synapse.social.studioasinc.chat.service.PreferencesManager
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.stateIn
+
+/**
+ * How the user wants network policies chosen, from settings.
+ */
+enum class NetworkPolicyMode {
+    /** Follow the measured connection quality */
+    AUTO,
+
+    /** Always behave as on a good connection */
+    FULL_QUALITY,
+
+    /** Always behave as on a poor connection */
+    DATA_SAVER;
+
+    /**
+     * Returns a human-readable display name.
+     */
+    fun displayName(): String = when (this) {
+        AUTO -> "Automatic"
+        FULL_QUALITY -> "Full Quality"
+        DATA_SAVER -> "Data Saver"
+    }
+}
+
+/**
+ * Behaviour that subsystems adapt to the current connection.
+ *
+ * @property preferThumbnails Load the thumbnail variant of images instead of the full image
+ * @property pageSizeFactor Multiplier applied to list page sizes
+ * @property prefetchEnabled Whether speculative media downloads may run
+ * @property typingHeartbeatMs Interval between typing heartbeats while the user types
+ */
+data class NetworkPolicy(
+    val tier: Tier,
+    val preferThumbnails: Boolean,
+    val pageSizeFactor: Float,
+    val prefetchEnabled: Boolean,
+    val typingHeartbeatMs: Long
+) {
+
+    enum class Tier {
+        FULL,
+        REDUCED,
+        MINIMAL
+    }
+
+    /**
+     * Scales a page size by [pageSizeFactor], never below [MIN_PAGE_SIZE].
+     */
+    fun scalePageSize(pageSize: Int): Int {
+        return (pageSize * pageSizeFactor).toInt().coerceIn(minOf(MIN_PAGE_SIZE, pageSize), pageSize)
+    }
+
+    companion object {
+        private const val MIN_PAGE_SIZE = 10
+
+        val FULL = NetworkPolicy(
+            tier = Tier.FULL,
+            preferThumbnails = false,
+            pageSizeFactor = 1f,
+            prefetchEnabled = true,
+            typingHeartbeatMs = 3000L
+        )
+
+        val REDUCED = NetworkPolicy(
+            tier = Tier.REDUCED,
+            preferThumbnails = false,
+            pageSizeFactor = 0.5f,
+            prefetchEnabled = false,
+            typingHeartbeatMs = 3000L
+        )
+
+        val MINIMAL = NetworkPolicy(
+            tier = Tier.MINIMAL,
+            preferThumbnails = true,
+            pageSizeFactor = 0.5f,
+            prefetchEnabled = false,
+            typingHeartbeatMs = 6000L
+        )
+    }
+}
+
+/**
+ * Turns [ConnectionMonitor] quality into a [NetworkPolicy] that other subsystems observe.
+ *
+ * The policy follows the connection unless the user picked a fixed [NetworkPolicyMode] in
+ * settings. Policy changes are logged and published on [policy]; consumers read
+ * [currentPolicy] at the point of use so they never act on a stale copy.
+ */
+class NetworkPolicyEngine private constructor(context: Context) {
+
+    companion object {
+        private const val TAG = "NetworkPolicyEngine"
+
+        @Volatile
+        private var INSTANCE: NetworkPolicyEngine? = null
+
+        /**
+         * Get singleton instance of NetworkPolicyEngine.
+         * Always uses application context.
+         */
+        fun getInstance(context: Context): NetworkPolicyEngine {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: NetworkPolicyEngine(context.applicationContext).also { INSTANCE = it }
+            }
+        }
+
+        /**
+         * Policy for a connection quality under a user mode.
+         */
+        fun policyFor(quality: ConnectionMonitor.ConnectionQuality, mode: NetworkPolicyMode): NetworkPolicy {
+            return when (mode) {
+                NetworkPolicyMode.FULL_QUALITY -> NetworkPolicy.FULL
+                NetworkPolicyMode.DATA_SAVER -> NetworkPolicy.MINIMAL
+                NetworkPolicyMode.AUTO -> when (quality) {
+                    ConnectionMonitor.ConnectionQuality.EXCELLENT,
+                    ConnectionMonitor.ConnectionQuality.GOOD -> NetworkPolicy.FULL
+                    ConnectionMonitor.ConnectionQuality.FAIR -> NetworkPolicy.REDUCED
+                    ConnectionMonitor.ConnectionQuality.POOR -> NetworkPolicy.MINIMAL
+                    // Bandwidth unknown or offline; nothing to save, so don't degrade
+                    ConnectionMonitor.ConnectionQuality.NONE -> NetworkPolicy.FULL
+                }
+            }
+        }
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val preferencesManager = PreferencesManager.getInstance(context)
+
+    /**
+     * Process-wide connection monitor. Reuse it instead of registering another callback.
+     */
+    val connectionMonitor = ConnectionMonitor(context)
+
+    /**
+     * The current policy, updated when connection quality or the user's mode changes.
+     */
+    val policy: StateFlow<NetworkPolicy> = combine(
+        connectionMonitor.connectionInfo,
+        preferencesManager.getNetworkPolicyModeFlow()
+    ) { info, mode ->
+        policyFor(info.quality, mode)
+    }
+        .distinctUntilChanged()
+        .onEach { Log.i(TAG, "Network policy: ${it.tier}") }
+        .stateIn(
+            scope,
+            SharingStarted.Eagerly,
+            policyFor(connectionMonitor.connectionInfo.value.quality, NetworkPolicyMode.AUTO)
+        )
+
+    val currentPolicy: NetworkPolicy
+        get() = policy.value
+
+    /**
+     * Override the policy from settings.
+     */
+    suspend fun setMode(mode: NetworkPolicyMode) {
+        preferencesManager.setNetworkPolicyMode(mode)
+    }
+}
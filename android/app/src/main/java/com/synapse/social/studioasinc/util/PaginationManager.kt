@@ -22,6 +22,8 @@ import java.io.IOException
  * @param onLoadPage Callback to fetch a page of data
  * @param onError Callback for error handling
  * @param coroutineScope CoroutineScope for launching coroutines
+ * @param networkPolicy Optional network policy; poor links shrink the page size. The size is
+ *        chosen on refresh and kept until the next one, since page numbers assume a fixed size.
  */
 class PaginationManager<T>(
     private val pageSize: Int = 20,
@@ -29,7 +31,8 @@ class PaginationManager<T>(
     private val maxCachedItems: Int = 200,
     private val onLoadPage: suspend (page: Int, pageSize: Int) -> Result<List<T>>,
     private val onError: (String) -> Unit,
-    private val coroutineScope: CoroutineScope
+    private val coroutineScope: CoroutineScope,
+    private val networkPolicy: StateFlow<NetworkPolicy>? = null
 ) {
     // State management
     private val _paginationState = MutableStateFlow<PaginationState<T>>(PaginationState.Initial)
@@ -40,6 +43,7 @@ class PaginationManager<T>(
     private var isLoading = false
     private var hasMoreData = true
     private val loadedItems = mutableListOf<T>()
+    private var activePageSize = pageSize
     
     // Scroll listener and jobs
     private var scrollListener: RecyclerView.OnScrollListener? = null
@@ -97,6 +101,7 @@ class PaginationManager<T>(
         currentPage = 0
         hasMoreData = true
         loadedItems.clear()
+        activePageSize = networkPolicy?.value?.scalePageSize(pageSize) ?: pageSize
         
         // Start performance monitoring
         lastLoadStartTime = System.currentTimeMillis()
@@ -105,7 +110,7 @@ class PaginationManager<T>(
         loadJob = coroutineScope.launch {
             try {
                 // Call onLoadPage callback with page 0
-                val result = onLoadPage(0, pageSize)
+                val result = onLoadPage(0, activePageSize)
                 
                 // Log pagination timing metrics
                 val loadDuration = System.currentTimeMillis() - lastLoadStartTime
@@ -123,7 +128,7 @@ class PaginationManager<T>(
                         logMemoryUsage()
                         
                         // Determine if there's more data
-                        hasMoreData = items.size >= pageSize
+                        hasMoreData = items.size >= activePageSize
                         
                         // Update state to Success
                         _paginationState.value = PaginationState.Success(
@@ -174,7 +179,7 @@ class PaginationManager<T>(
         loadJob = coroutineScope.launch {
             try {
                 // Call onLoadPage callback with next page
-                val result = onLoadPage(nextPage, pageSize)
+                val result = onLoadPage(nextPage, activePageSize)
                 
                 // Log pagination timing metrics
                 val loadDuration = System.currentTimeMillis() - lastLoadStartTime
@@ -202,7 +207,7 @@ class PaginationManager<T>(
                             currentPage = nextPage
                             
                             // Determine if there's more data
-                            hasMoreData = items.size >= pageSize
+                            hasMoreData = items.size >= activePageSize
                             
                             // Update state to Success with hasMore flag
                             if (hasMoreData) {
@@ -293,7 +298,7 @@ class PaginationManager<T>(
             }
             
             // Recalculate current page after eviction
-            currentPage = (loadedItems.size / pageSize)
+            currentPage = (loadedItems.size / activePageSize)
         }
     }
 
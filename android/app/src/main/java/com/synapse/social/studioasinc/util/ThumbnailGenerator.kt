@@ -3,20 +3,21 @@ package com.synapse.social.studioasinc.util
 import android.content.Context
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
-import android.graphics.Canvas
-import android.graphics.Paint
-import android.graphics.PorterDuff
-import android.graphics.PorterDuffXfermode
-import android.graphics.Rect
-import android.graphics.RectF
 import android.media.MediaMetadataRetriever
 import android.net.Uri
+import android.provider.DocumentsContract
+import android.provider.MediaStore
+import android.util.Size
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import java.io.File
 import java.io.FileOutputStream
 import java.io.IOException
-import java.util.concurrent.ConcurrentHashMap
 
 /**
  * ThumbnailGenerator creates optimized thumbnail images for media files.
@@ -30,11 +31,14 @@ class ThumbnailGenerator(private val context: Context) {
         private const val VIDEO_FRAME_TIME_US = 1000000L // 1 second in microseconds
         private const val CACHE_DIR_NAME = "thumbnails"
         private const val MAX_CACHE_SIZE = 100 * 1024 * 1024L // 100MB
+        private const val THUMBNAIL_EXTENSION = "jpg"
+        private const val TYPE_IMAGE = "image"
+        private const val TYPE_VIDEO = "video"
+        
+        // Thumbnails decode at small sizes, so a few can run side by side without memory pressure
+        private val MAX_PARALLEL_THUMBNAILS = Runtime.getRuntime().availableProcessors().coerceIn(2, 4)
     }
     
-    // In-memory cache for recently generated thumbnails
-    private val thumbnailCache = ConcurrentHashMap<String, File>()
-    
     // Cache directory for persistent thumbnail storage
     private val cacheDir: File by lazy {
         File(context.cacheDir, CACHE_DIR_NAME).apply {
@@ -44,19 +48,69 @@ class ThumbnailGenerator(private val context: Context) {
         }
     }
     
+    // Persistent source -> thumbnail index shared by all generator instances
+    private val thumbnailIndex: ThumbnailIndex by lazy {
+        ThumbnailIndex.getInstance(cacheDir)
+    }
+    
+    // Bounds concurrent work in generateThumbnails
+    private val batchPermits = Semaphore(MAX_PARALLEL_THUMBNAILS)
+    
+    /**
+     * Generates thumbnails for a batch of media files concurrently.
+     * Cached thumbnails resolve from the index without decoding; the rest are generated
+     * with bounded parallelism so large selections don't serialize.
+     * 
+     * @param uris The URIs of the images and videos to generate thumbnails for
+     * @return Result per URI, in the order of [uris]
+     */
+    suspend fun generateThumbnails(uris: List<Uri>): Map<Uri, Result<File>> = coroutineScope {
+        uris.distinct()
+            .map { uri ->
+                async {
+                    batchPermits.withPermit {
+                        uri to generateThumbnail(uri)
+                    }
+                }
+            }
+            .awaitAll()
+            .toMap()
+    }
+    
+    /**
+     * Generates a thumbnail for an image or video, based on the URI's MIME type.
+     * 
+     * @param uri The URI of the media to generate thumbnail for
+     * @return Result containing the thumbnail file or error
+     */
+    suspend fun generateThumbnail(uri: Uri): Result<File> {
+        val mimeType = try {
+            context.contentResolver.getType(uri)
+        } catch (e: Exception) {
+            null
+        }
+        return if (mimeType?.startsWith("video/") == true) {
+            generateVideoThumbnail(uri)
+        } else {
+            generateImageThumbnail(uri)
+        }
+    }
+    
     /**
      * Generates a thumbnail for an image file.
      * Uses center crop scaling to maintain aspect ratio within square bounds.
      * 
      * @param uri The URI of the image to generate thumbnail for
-     * @return Result containing the thumbnail file or error
+     * @return Result containing the thumbnail file or error. The file belongs to the
+     *         thumbnail cache; callers must not delete it.
      */
     suspend fun generateImageThumbnail(uri: Uri): Result<File> = withContext(Dispatchers.IO) {
         try {
-            val cacheKey = generateCacheKey(uri, "image")
+            val lastModified = getSourceLastModified(uri)
+            val indexKey = thumbnailIndex.keyFor(TYPE_IMAGE, uri.toString(), lastModified)
             
             // Check cache first
-            getCachedThumbnail(cacheKey)?.let { cachedFile ->
+            getCachedThumbnail(indexKey)?.let { cachedFile ->
                 return@withContext Result.success(cachedFile)
             }
             
@@ -104,69 +158,30 @@ class ThumbnailGenerator(private val context: Context) {
             
             val (originalWidth, originalHeight) = dimensionsResult
             
-            // Calculate optimal sample size for thumbnail
-            val sampleSize = calculateThumbnailSampleSize(originalWidth, originalHeight)
-            
-            // Decode with sample size for efficiency
-            val newInputStream = context.contentResolver.openInputStream(uri)
-                ?: return@withContext Result.failure(IOException("Cannot reopen input stream"))
-            
-            val bitmap = try {
-                val decodeOptions = BitmapFactory.Options().apply {
-                    inSampleSize = sampleSize
-                    inPreferredConfig = Bitmap.Config.RGB_565 // Use less memory for thumbnails
-                    inTempStorage = ByteArray(16 * 1024) // 16KB temp storage for better performance
-                }
-                BitmapFactory.decodeStream(newInputStream, null, decodeOptions)
-            } catch (e: OutOfMemoryError) {
-                // Retry with higher sample size if OOM occurs
-                val higherSampleSize = sampleSize * 2
-                val retryOptions = BitmapFactory.Options().apply {
-                    inSampleSize = higherSampleSize
-                    inPreferredConfig = Bitmap.Config.RGB_565
-                    inTempStorage = ByteArray(16 * 1024)
+            // Decode, orient, scale and center-crop in a single pass
+            val thumbnail = try {
+                BitmapDecoder.decode(context, uri, centerCrop = true) { _, _ ->
+                    Size(THUMBNAIL_SIZE, THUMBNAIL_SIZE)
                 }
-                newInputStream.close()
-                val retryInputStream = context.contentResolver.openInputStream(uri)
-                    ?: return@withContext Result.failure(IOException("Cannot reopen input stream after OOM"))
-                BitmapFactory.decodeStream(retryInputStream, null, retryOptions)
-            } catch (e: Exception) {
-                newInputStream.close()
+            } catch (e: IOException) {
                 return@withContext Result.failure(IOException("Failed to decode corrupted image: ${e.message}", e))
-            } finally {
-                try {
-                    newInputStream.close()
-                } catch (e: Exception) {
-                    // Ignore close errors
-                }
             }
             
-            if (bitmap == null) {
-                return@withContext Result.failure(IOException("Failed to decode bitmap for thumbnail - possibly corrupted"))
-            }
-            
-            // Validate decoded bitmap
-            if (bitmap.isRecycled || bitmap.width <= 0 || bitmap.height <= 0) {
-                bitmap.recycle()
-                return@withContext Result.failure(IOException("Decoded bitmap is invalid or corrupted"))
-            }
-            
-            // Create center-cropped thumbnail
-            val thumbnail = createCenterCroppedThumbnail(bitmap, THUMBNAIL_SIZE)
-            bitmap.recycle()
-            
             // Validate thumbnail before saving
             if (thumbnail.isRecycled || thumbnail.width != THUMBNAIL_SIZE || thumbnail.height != THUMBNAIL_SIZE) {
-                thumbnail.recycle()
+                BitmapPool.put(thumbnail)
                 return@withContext Result.failure(IOException("Failed to create valid thumbnail"))
             }
             
             // Save thumbnail to cache
-            val thumbnailFile = saveThumbnailToCache(thumbnail, cacheKey)
-            thumbnail.recycle()
+            val thumbnailFile = try {
+                saveThumbnailToCache(thumbnail, generateCacheFileName(uri, TYPE_IMAGE, lastModified))
+            } finally {
+                BitmapPool.put(thumbnail)
+            }
             
-            // Add to in-memory cache
-            thumbnailCache[cacheKey] = thumbnailFile
+            // Record in the persistent index
+            thumbnailIndex.put(indexKey, ThumbnailIndex.Entry(thumbnailFile.name, originalWidth, originalHeight))
             
             Result.success(thumbnailFile)
             
@@ -182,14 +197,16 @@ class ThumbnailGenerator(private val context: Context) {
      * Extracts a frame from the video and creates a center-cropped thumbnail.
      * 
      * @param uri The URI of the video to generate thumbnail for
-     * @return Result containing the thumbnail file or error
+     * @return Result containing the thumbnail file or error. The file belongs to the
+     *         thumbnail cache; callers must not delete it.
      */
     suspend fun generateVideoThumbnail(uri: Uri): Result<File> = withContext(Dispatchers.IO) {
         try {
-            val cacheKey = generateCacheKey(uri, "video")
+            val lastModified = getSourceLastModified(uri)
+            val indexKey = thumbnailIndex.keyFor(TYPE_VIDEO, uri.toString(), lastModified)
             
             // Check cache first
-            getCachedThumbnail(cacheKey)?.let { cachedFile ->
+            getCachedThumbnail(indexKey)?.let { cachedFile ->
                 return@withContext Result.success(cachedFile)
             }
             
@@ -267,22 +284,25 @@ class ThumbnailGenerator(private val context: Context) {
                     return@withContext Result.failure(IOException("Extracted video frame is invalid"))
                 }
                 
-                // Create center-cropped thumbnail
-                val thumbnail = createCenterCroppedThumbnail(bitmap, THUMBNAIL_SIZE)
+                // Create center-cropped thumbnail in a pooled bitmap
+                val thumbnail = BitmapDecoder.centerCrop(bitmap, THUMBNAIL_SIZE)
                 bitmap.recycle()
                 
                 // Validate thumbnail before saving
                 if (thumbnail.isRecycled || thumbnail.width != THUMBNAIL_SIZE || thumbnail.height != THUMBNAIL_SIZE) {
-                    thumbnail.recycle()
+                    BitmapPool.put(thumbnail)
                     return@withContext Result.failure(IOException("Failed to create valid video thumbnail"))
                 }
                 
                 // Save thumbnail to cache
-                val thumbnailFile = saveThumbnailToCache(thumbnail, cacheKey)
-                thumbnail.recycle()
+                val thumbnailFile = try {
+                    saveThumbnailToCache(thumbnail, generateCacheFileName(uri, TYPE_VIDEO, lastModified))
+                } finally {
+                    BitmapPool.put(thumbnail)
+                }
                 
-                // Add to in-memory cache
-                thumbnailCache[cacheKey] = thumbnailFile
+                // Record in the persistent index
+                thumbnailIndex.put(indexKey, ThumbnailIndex.Entry(thumbnailFile.name, width, height))
                 
                 Result.success(thumbnailFile)
                 
@@ -343,93 +363,29 @@ class ThumbnailGenerator(private val context: Context) {
         }
     }
     
-    /**
-     * Calculates optimal sample size for thumbnail generation.
-     * Ensures efficient memory usage while maintaining quality.
-     * 
-     * @param width Original image width
-     * @param height Original image height
-     * @return Optimal sample size (power of 2)
-     */
-    private fun calculateThumbnailSampleSize(width: Int, height: Int): Int {
-        var inSampleSize = 1
-        val targetSize = THUMBNAIL_SIZE * 2 // Decode at 2x target size for better quality
-        
-        if (width > targetSize || height > targetSize) {
-            val halfWidth = width / 2
-            val halfHeight = height / 2
-            
-            // Calculate the largest inSampleSize value that keeps dimensions above target
-            while ((halfWidth / inSampleSize) >= targetSize && (halfHeight / inSampleSize) >= targetSize) {
-                inSampleSize *= 2
-            }
-        }
-        
-        return inSampleSize
-    }
-    
-    /**
-     * Creates a center-cropped square thumbnail from a bitmap.
-     * Maintains aspect ratio by cropping to fit square dimensions.
-     * 
-     * @param source The source bitmap
-     * @param size The target thumbnail size (width and height)
-     * @return Center-cropped thumbnail bitmap
-     */
-    private fun createCenterCroppedThumbnail(source: Bitmap, size: Int): Bitmap {
-        val sourceWidth = source.width
-        val sourceHeight = source.height
-        
-        // Calculate crop dimensions to maintain aspect ratio
-        val cropSize = minOf(sourceWidth, sourceHeight)
-        val cropX = (sourceWidth - cropSize) / 2
-        val cropY = (sourceHeight - cropSize) / 2
-        
-        // Create cropped bitmap
-        val croppedBitmap = try {
-            Bitmap.createBitmap(source, cropX, cropY, cropSize, cropSize)
-        } catch (e: OutOfMemoryError) {
-            // If cropping fails, scale the original bitmap directly
-            return Bitmap.createScaledBitmap(source, size, size, true)
-        }
-        
-        // Scale to target size
-        val thumbnail = if (cropSize != size) {
-            try {
-                val scaledBitmap = Bitmap.createScaledBitmap(croppedBitmap, size, size, true)
-                if (scaledBitmap != croppedBitmap) {
-                    croppedBitmap.recycle()
-                }
-                scaledBitmap
-            } catch (e: OutOfMemoryError) {
-                croppedBitmap // Return cropped bitmap if scaling fails
-            }
-        } else {
-            croppedBitmap
-        }
-        
-        return thumbnail
-    }
-    
     /**
      * Saves a thumbnail bitmap to the cache directory.
      * 
      * @param thumbnail The thumbnail bitmap to save
-     * @param cacheKey The cache key for the thumbnail
+     * @param fileName The cache file name for the thumbnail
      * @return The saved thumbnail file
      */
-    private suspend fun saveThumbnailToCache(thumbnail: Bitmap, cacheKey: String): File = withContext(Dispatchers.IO) {
-        val thumbnailFile = File(cacheDir, "$cacheKey.jpg")
+    private suspend fun saveThumbnailToCache(thumbnail: Bitmap, fileName: String): File = withContext(Dispatchers.IO) {
+        val thumbnailFile = File(cacheDir, fileName)
+        // Written aside and renamed, so a reader, e.g. an upload, never sees a partial file
+        // when the same source is generated twice at once
+        val tempFile = File.createTempFile(fileName, ".tmp", cacheDir)
         
         try {
-            FileOutputStream(thumbnailFile).use { outputStream ->
+            FileOutputStream(tempFile).use { outputStream ->
                 thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, outputStream)
             }
+            if (!tempFile.renameTo(thumbnailFile)) {
+                throw IOException("Failed to move thumbnail into place: $fileName")
+            }
         } catch (e: IOException) {
             // Clean up file if write fails
-            if (thumbnailFile.exists()) {
-                thumbnailFile.delete()
-            }
+            tempFile.delete()
             throw e
         }
         
@@ -437,52 +393,71 @@ class ThumbnailGenerator(private val context: Context) {
     }
     
     /**
-     * Generates a cache key for a media URI and type.
+     * Generates the cache file name for a media URI, type and source version.
      * 
      * @param uri The media URI
      * @param type The media type (image, video)
-     * @return A unique cache key
+     * @param lastModified Last modified time of the source
+     * @return A unique cache file name
      */
-    private fun generateCacheKey(uri: Uri, type: String): String {
-        return "${type}_${uri.toString().hashCode()}_${THUMBNAIL_SIZE}"
+    private fun generateCacheFileName(uri: Uri, type: String, lastModified: Long): String {
+        return "${type}_${uri.toString().hashCode()}_${lastModified}_${THUMBNAIL_SIZE}.$THUMBNAIL_EXTENSION"
     }
     
     /**
-     * Retrieves a cached thumbnail if it exists and is valid.
+     * Retrieves a cached thumbnail through the persistent index.
      * 
-     * @param cacheKey The cache key
+     * @param indexKey The index key for the source
      * @return The cached thumbnail file or null if not found/invalid
      */
-    private fun getCachedThumbnail(cacheKey: String): File? {
-        // Check in-memory cache first
-        thumbnailCache[cacheKey]?.let { cachedFile ->
-            if (cachedFile.exists() && cachedFile.length() > 0) {
-                return cachedFile
-            } else {
-                // Remove invalid entry from cache
-                thumbnailCache.remove(cacheKey)
-            }
-        }
+    private fun getCachedThumbnail(indexKey: String): File? {
+        val entry = thumbnailIndex.get(indexKey) ?: return null
         
-        // Check disk cache
-        val thumbnailFile = File(cacheDir, "$cacheKey.jpg")
-        if (thumbnailFile.exists() && thumbnailFile.length() > 0) {
-            // Add to in-memory cache for faster access
-            thumbnailCache[cacheKey] = thumbnailFile
+        val thumbnailFile = File(cacheDir, entry.fileName)
+        if (thumbnailFile.length() > 0) {
             return thumbnailFile
         }
         
+        // File was evicted, drop the stale entry
+        thumbnailIndex.remove(indexKey)
         return null
     }
     
+    /**
+     * Resolves the last modified time of a media source so edits invalidate its thumbnail.
+     * 
+     * @param uri The media URI
+     * @return Last modified time, or 0 if the provider doesn't expose one
+     */
+    private fun getSourceLastModified(uri: Uri): Long {
+        return try {
+            when (uri.scheme) {
+                "file" -> File(uri.path ?: return 0L).lastModified()
+                "content" -> {
+                    val column = if (DocumentsContract.isDocumentUri(context, uri)) {
+                        DocumentsContract.Document.COLUMN_LAST_MODIFIED
+                    } else {
+                        MediaStore.MediaColumns.DATE_MODIFIED
+                    }
+                    context.contentResolver.query(uri, arrayOf(column), null, null, null)?.use { cursor ->
+                        if (cursor.moveToFirst() && !cursor.isNull(0)) cursor.getLong(0) else 0L
+                    } ?: 0L
+                }
+                else -> 0L
+            }
+        } catch (e: Exception) {
+            0L
+        }
+    }
+    
     /**
      * Clears the thumbnail cache to free up storage space.
      * Removes both in-memory and disk cache entries.
      */
     suspend fun clearCache() = withContext(Dispatchers.IO) {
         try {
-            // Clear in-memory cache
-            thumbnailCache.clear()
+            // Clear the index first so no lookup resolves to a deleted file
+            thumbnailIndex.clear()
             
             // Clear disk cache
             if (cacheDir.exists()) {
@@ -507,7 +482,7 @@ class ThumbnailGenerator(private val context: Context) {
         try {
             if (!cacheDir.exists()) return@withContext
             
-            val files = cacheDir.listFiles() ?: return@withContext
+            val files = cacheDir.listFiles { file -> file.extension == THUMBNAIL_EXTENSION } ?: return@withContext
             val totalSize = files.sumOf { it.length() }
             
             // If cache size exceeds limit, remove oldest files
@@ -522,9 +497,8 @@ class ThumbnailGenerator(private val context: Context) {
                         currentSize -= file.length()
                         file.delete()
                         
-                        // Remove from in-memory cache if present
-                        val fileName = file.nameWithoutExtension
-                        thumbnailCache.remove(fileName)
+                        // Remove from the index if present
+                        thumbnailIndex.removeByFileName(file.name)
                     } catch (e: Exception) {
                         // Ignore individual file deletion errors
                     }
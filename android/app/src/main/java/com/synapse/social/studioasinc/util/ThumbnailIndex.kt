@@ -0,0 +1,189 @@
+package com.synapse.social.studioasinc.util
+
+import android.util.Log
+import java.io.File
+import java.io.FileWriter
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * ThumbnailIndex is a small on-disk index mapping a media source to its cached thumbnail.
+ * Entries are keyed by URI + last modified time, so lookups are O(1) map reads instead of
+ * directory scans, and edited sources never resolve to a stale thumbnail.
+ *
+ * The index is an append-only journal of PUT/DEL lines that is compacted on load.
+ */
+class ThumbnailIndex private constructor(private val directory: File) {
+
+    companion object {
+        private const val TAG = "ThumbnailIndex"
+        private const val INDEX_FILE_NAME = "thumbnail_index"
+        private const val COMPACT_THRESHOLD = 2 // Compact when the journal is 2x the live entries
+        private const val OP_PUT = "PUT"
+        private const val OP_DEL = "DEL"
+        private const val SEPARATOR = "\t"
+
+        @Volatile
+        private var INSTANCE: ThumbnailIndex? = null
+
+        fun getInstance(directory: File): ThumbnailIndex {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: ThumbnailIndex(directory).also { INSTANCE = it }
+            }
+        }
+    }
+
+    /**
+     * A cached thumbnail and the dimensions of the source it was generated from.
+     */
+    data class Entry(
+        val fileName: String,
+        val sourceWidth: Int,
+        val sourceHeight: Int
+    )
+
+    private val entries = ConcurrentHashMap<String, Entry>()
+    private val indexFile = File(directory, INDEX_FILE_NAME)
+    private val writeLock = Any()
+
+    @Volatile
+    private var loaded = false
+
+    /**
+     * Builds the index key for a media source.
+     *
+     * @param type The media type (image, video)
+     * @param sourceKey Stable identifier of the source, usually the URI string
+     * @param lastModified Last modified time of the source, 0 if unknown
+     * @return Index key
+     */
+    fun keyFor(type: String, sourceKey: String, lastModified: Long): String {
+        return "$type|$lastModified|$sourceKey"
+    }
+
+    /**
+     * Looks up a cached thumbnail entry.
+     *
+     * @param key Index key from [keyFor]
+     * @return The entry or null if not indexed
+     */
+    fun get(key: String): Entry? {
+        ensureLoaded()
+        return entries[key]
+    }
+
+    /**
+     * Records a generated thumbnail.
+     */
+    fun put(key: String, entry: Entry) {
+        ensureLoaded()
+        entries[key] = entry
+        appendLine(listOf(OP_PUT, key, entry.fileName, entry.sourceWidth, entry.sourceHeight).joinToString(SEPARATOR))
+    }
+
+    /**
+     * Removes a thumbnail entry, e.g. after its file was evicted or found missing.
+     */
+    fun remove(key: String) {
+        ensureLoaded()
+        if (entries.remove(key) != null) {
+            appendLine(listOf(OP_DEL, key).joinToString(SEPARATOR))
+        }
+    }
+
+    /**
+     * Removes every entry pointing at the given thumbnail file name.
+     */
+    fun removeByFileName(fileName: String) {
+        ensureLoaded()
+        entries.filterValues { it.fileName == fileName }.keys.forEach { remove(it) }
+    }
+
+    /**
+     * Drops all entries and deletes the journal.
+     */
+    fun clear() {
+        synchronized(writeLock) {
+            entries.clear()
+            indexFile.delete()
+            loaded = true
+        }
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        synchronized(writeLock) {
+            if (loaded) return
+            var journalLines = 0
+            try {
+                if (indexFile.exists()) {
+                    indexFile.forEachLine { line ->
+                        journalLines++
+                        applyLine(line)
+                    }
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Failed to read thumbnail index, starting empty", e)
+                entries.clear()
+            }
+            loaded = true
+
+            if (journalLines > entries.size * COMPACT_THRESHOLD) {
+                compact()
+            }
+        }
+    }
+
+    private fun applyLine(line: String) {
+        val parts = line.split(SEPARATOR)
+        when (parts.firstOrNull()) {
+            OP_PUT -> if (parts.size == 5) {
+                val width = parts[3].toIntOrNull() ?: return
+                val height = parts[4].toIntOrNull() ?: return
+                entries[parts[1]] = Entry(parts[2], width, height)
+            }
+            OP_DEL -> if (parts.size == 2) {
+                entries.remove(parts[1])
+            }
+        }
+    }
+
+    private fun appendLine(line: String) {
+        synchronized(writeLock) {
+            try {
+                if (!directory.exists()) {
+                    directory.mkdirs()
+                }
+                FileWriter(indexFile, true).use { writer ->
+                    writer.append(line).append('\n')
+                }
+            } catch (e: IOException) {
+                // The in-memory index stays valid; the entry is regenerated after a restart
+                Log.w(TAG, "Failed to append to thumbnail index", e)
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with only live entries. Must be called under [writeLock].
+     */
+    private fun compact() {
+        val tempFile = File(directory, "$INDEX_FILE_NAME.tmp")
+        try {
+            tempFile.bufferedWriter().use { writer ->
+                entries.forEach { (key, entry) ->
+                    writer.append(
+                        listOf(OP_PUT, key, entry.fileName, entry.sourceWidth, entry.sourceHeight)
+                            .joinToString(SEPARATOR)
+                    ).append('\n')
+                }
+            }
+            if (!tempFile.renameTo(indexFile)) {
+                tempFile.delete()
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to compact thumbnail index", e)
+            tempFile.delete()
+        }
+    }
+}
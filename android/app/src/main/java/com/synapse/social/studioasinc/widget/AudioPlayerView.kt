@@ -3,118 +3,111 @@ package com.synapse.social.studioasinc.widget
 import android.content.Context
 import android.util.AttributeSet
 import android.view.LayoutInflater
-import android.view.View
 import android.widget.FrameLayout
 import android.widget.SeekBar
 import androidx.core.view.isVisible
-import androidx.media3.common.MediaItem
-import androidx.media3.common.Player
-import androidx.media3.common.util.UnstableApi
-import androidx.media3.exoplayer.ExoPlayer
 import com.synapse.social.studioasinc.R
+import com.synapse.social.studioasinc.chat.service.VoicePlaybackController
 import com.synapse.social.studioasinc.databinding.ViewAudioPlayerBinding
-import kotlinx.coroutines.*
 import java.util.concurrent.TimeUnit
 
 /**
- * Custom audio player view that wraps ExoPlayer for audio playback.
- * Provides controls for play, pause, seek, and displays audio file information.
+ * Custom audio player view with controls for play, pause and seek, and audio file information.
+ * Playback goes through the shared [VoicePlaybackController], so starting one audio stops any
+ * other and no view holds a player of its own.
  * Optionally displays waveform visualization for audio files under 5 minutes.
  * 
  * Requirements: 6.3, 6.4, 6.5
  */
-@UnstableApi
 class AudioPlayerView @JvmOverloads constructor(
     context: Context,
     attrs: AttributeSet? = null,
     defStyleAttr: Int = 0
-) : FrameLayout(context, attrs, defStyleAttr) {
+) : FrameLayout(context, attrs, defStyleAttr), VoicePlaybackController.Listener, VoicePlaybackController.ProgressTarget {
 
     private val binding: ViewAudioPlayerBinding
-    private var player: ExoPlayer? = null
+    private val controller = VoicePlaybackController.getInstance(context)
     private var currentAudioUrl: String? = null
+    private var currentWaveform: FloatArray? = null
     private var lastPosition: Long = 0L
     private var isUserSeeking: Boolean = false
+    private var wasCurrent: Boolean = false
+    private var wasPlaying: Boolean = false
     
-    // Coroutine scope for updating seek bar
-    private val scope = CoroutineScope(Dispatchers.Main + SupervisorJob())
-    private var updateJob: Job? = null
-    
-    // Listener for when this player starts playing (to pause other media)
+    // Listener for when this player starts playing
     var onPlaybackStarted: (() -> Unit)? = null
     
     // Listener for playback state changes
     var onPlaybackStateChanged: ((isPlaying: Boolean) -> Unit)? = null
 
     companion object {
-        // Keep track of currently playing instance to pause others
-        private var currentlyPlayingView: AudioPlayerView? = null
-        
         // Maximum duration for waveform generation (5 minutes in milliseconds)
         private const val MAX_WAVEFORM_DURATION_MS = 5 * 60 * 1000L
     }
 
     init {
         binding = ViewAudioPlayerBinding.inflate(LayoutInflater.from(context), this, true)
-        initializePlayer()
         setupControls()
     }
 
-    private fun initializePlayer() {
-        player = ExoPlayer.Builder(context)
-            .build()
-            .apply {
-                // Add listener for playback state changes
-                addListener(object : Player.Listener {
-                    override fun onIsPlayingChanged(isPlaying: Boolean) {
-                        updatePlayPauseButton(isPlaying)
-                        
-                        if (isPlaying) {
-                            // Pause other media when this audio starts playing
-                            pauseOtherMedia()
-                            onPlaybackStarted?.invoke()
-                            startSeekBarUpdate()
-                        } else {
-                            stopSeekBarUpdate()
-                        }
-                        
-                        onPlaybackStateChanged?.invoke(isPlaying)
-                    }
-                    
-                    override fun onPlaybackStateChanged(playbackState: Int) {
-                        when (playbackState) {
-                            Player.STATE_BUFFERING -> {
-                                binding.loadingIndicator.isVisible = true
-                            }
-                            Player.STATE_READY -> {
-                                binding.loadingIndicator.isVisible = false
-                                updateDuration()
-                                
-                                // Check if waveform should be displayed
-                                val duration = getDuration()
-                                if (duration > 0 && duration <= MAX_WAVEFORM_DURATION_MS) {
-                                    showWaveform()
-                                }
-                            }
-                            Player.STATE_ENDED -> {
-                                // Audio playback ended
-                                lastPosition = 0L
-                                seekTo(0L)
-                                updatePlayPauseButton(false)
-                                stopSeekBarUpdate()
-                            }
-                            Player.STATE_IDLE -> {
-                                binding.loadingIndicator.isVisible = false
-                            }
-                        }
-                    }
-                    
-                    override fun onPlayerError(error: androidx.media3.common.PlaybackException) {
-                        binding.loadingIndicator.isVisible = false
-                        // Error handling - could show a toast or error message
-                    }
-                })
+    override fun onAttachedToWindow() {
+        super.onAttachedToWindow()
+        controller.addListener(this)
+        updatePlaybackState()
+    }
+
+    override fun onVoicePlaybackChanged(previousId: String?, currentId: String?) {
+        val url = currentAudioUrl ?: return
+        if (previousId == url || currentId == url) updatePlaybackState()
+    }
+
+    override fun onVoiceProgress(positionMs: Long, durationMs: Long) {
+        if (isUserSeeking) return
+        if (durationMs > 0 && binding.seekBar.max.toLong() != durationMs) {
+            updateDuration()
+        }
+        binding.seekBar.progress = positionMs.toInt()
+        updateCurrentTime(positionMs)
+
+        // Update waveform progress if visible
+        if (binding.waveformContainer.isVisible && durationMs > 0) {
+            binding.waveformView.setProgress(positionMs.toFloat() / durationMs)
+        }
+    }
+
+    private fun updatePlaybackState() {
+        val url = currentAudioUrl
+        val isCurrent = url != null && controller.currentId == url
+        val isPlaying = url != null && controller.isPlaying(url)
+        binding.loadingIndicator.isVisible = url != null && controller.isBuffering(url)
+        updatePlayPauseButton(isPlaying)
+
+        if (url != null && isCurrent) {
+            controller.setProgressTarget(url, this)
+            val duration = getDuration()
+            if (duration > 0) {
+                updateDuration()
+                // Check if waveform should be displayed
+                if (duration <= MAX_WAVEFORM_DURATION_MS && !binding.waveformContainer.isVisible) {
+                    showWaveform()
+                }
+            }
+        } else {
+            controller.clearProgressTarget(this)
+            if (wasCurrent) {
+                // Playback ended or moved to another audio
+                lastPosition = 0L
+                binding.seekBar.progress = 0
+                updateCurrentTime(0L)
             }
+        }
+        wasCurrent = isCurrent
+
+        if (isPlaying != wasPlaying) {
+            wasPlaying = isPlaying
+            if (isPlaying) onPlaybackStarted?.invoke()
+            onPlaybackStateChanged?.invoke(isPlaying)
+        }
     }
     
     private fun setupControls() {
@@ -137,7 +130,6 @@ class AudioPlayerView @JvmOverloads constructor(
             
             override fun onStartTrackingTouch(seekBar: SeekBar?) {
                 isUserSeeking = true
-                stopSeekBarUpdate()
             }
             
             override fun onStopTrackingTouch(seekBar: SeekBar?) {
@@ -145,51 +137,16 @@ class AudioPlayerView @JvmOverloads constructor(
                 seekBar?.let {
                     seekTo(it.progress.toLong())
                 }
-                if (isPlaying()) {
-                    startSeekBarUpdate()
-                }
             }
         })
     }
     
-    private fun pauseOtherMedia() {
-        // Pause any other currently playing audio
-        if (currentlyPlayingView != null && currentlyPlayingView != this) {
-            currentlyPlayingView?.pause()
-        }
-        currentlyPlayingView = this
-    }
-    
     private fun updatePlayPauseButton(isPlaying: Boolean) {
         binding.playPauseButton.setImageResource(
             if (isPlaying) R.drawable.ic_pause else R.drawable.ic_play
         )
     }
     
-    private fun startSeekBarUpdate() {
-        stopSeekBarUpdate()
-        updateJob = scope.launch {
-            while (isActive && isPlaying()) {
-                if (!isUserSeeking) {
-                    val position = getCurrentPosition()
-                    binding.seekBar.progress = position.toInt()
-                    updateCurrentTime(position)
-                    
-                    // Update waveform progress if visible
-                    if (binding.waveformContainer.isVisible) {
-                        binding.waveformView.setProgress(position.toFloat() / getDuration())
-                    }
-                }
-                delay(100) // Update every 100ms
-            }
-        }
-    }
-    
-    private fun stopSeekBarUpdate() {
-        updateJob?.cancel()
-        updateJob = null
-    }
-    
     private fun updateDuration() {
         val duration = getDuration()
         binding.seekBar.max = duration.toInt()
@@ -209,7 +166,7 @@ class AudioPlayerView @JvmOverloads constructor(
     private fun showWaveform() {
         binding.waveformContainer.isVisible = true
         currentAudioUrl?.let { url ->
-            binding.waveformView.setAudioUrl(url)
+            binding.waveformView.setAudioUrl(url, currentWaveform)
             
             // Set up seek listener for waveform
             binding.waveformView.onSeekListener = { progress ->
@@ -223,33 +180,22 @@ class AudioPlayerView @JvmOverloads constructor(
     }
 
     /**
-     * Sets the audio URL and prepares the player.
+     * Sets the audio to play. Nothing is loaded until [play].
      * 
      * @param url The audio URL to load
      * @param fileName Optional file name to display
+     * @param waveform Optional waveform computed at upload time
      */
-    fun setAudioUrl(url: String, fileName: String? = null) {
+    fun setAudioUrl(url: String, fileName: String? = null, waveform: List<Float>? = null) {
         currentAudioUrl = url
+        currentWaveform = waveform?.toFloatArray()
         
         // Update file name display
         binding.audioFileName.text = fileName ?: extractFileNameFromUrl(url)
         
         // Hide waveform initially
         binding.waveformContainer.isVisible = false
-        
-        val mediaItem = MediaItem.Builder()
-            .setUri(url)
-            .build()
-            
-        player?.apply {
-            setMediaItem(mediaItem)
-            prepare()
-            
-            // Resume from last position if available
-            if (lastPosition > 0) {
-                seekTo(lastPosition)
-            }
-        }
+        updatePlaybackState()
     }
     
     private fun extractFileNameFromUrl(url: String): String {
@@ -257,17 +203,23 @@ class AudioPlayerView @JvmOverloads constructor(
     }
 
     /**
-     * Starts audio playback.
+     * Starts audio playback, resuming from the saved position if there is one.
      */
     fun play() {
-        player?.play()
+        val url = currentAudioUrl ?: return
+        if (controller.currentId == url) {
+            if (!controller.isPlaying(url)) controller.toggle(emptyList(), url)
+            return
+        }
+        controller.play(listOf(VoicePlaybackController.Track(url, url)), url, lastPosition)
     }
 
     /**
      * Pauses audio playback.
      */
     fun pause() {
-        player?.pause()
+        val url = currentAudioUrl ?: return
+        if (controller.isPlaying(url)) controller.pause()
     }
 
     /**
@@ -276,7 +228,13 @@ class AudioPlayerView @JvmOverloads constructor(
      * @param positionMs The position in milliseconds
      */
     fun seekTo(positionMs: Long) {
-        player?.seekTo(positionMs)
+        val url = currentAudioUrl ?: return
+        if (controller.currentId == url) {
+            controller.seekTo(url, positionMs)
+        } else {
+            // Applied when playback starts
+            lastPosition = positionMs
+        }
     }
 
     /**
@@ -285,16 +243,17 @@ class AudioPlayerView @JvmOverloads constructor(
      * @return Current position in milliseconds
      */
     fun getCurrentPosition(): Long {
-        return player?.currentPosition ?: 0L
+        val url = currentAudioUrl ?: return 0L
+        return if (controller.currentId == url) controller.positionOf(url) else lastPosition
     }
 
     /**
      * Gets the total duration of the audio.
      * 
-     * @return Duration in milliseconds
+     * @return Duration in milliseconds, 0 until it's loaded
      */
     fun getDuration(): Long {
-        return player?.duration ?: 0L
+        return currentAudioUrl?.let { controller.durationOf(it) } ?: 0L
     }
 
     /**
@@ -303,7 +262,7 @@ class AudioPlayerView @JvmOverloads constructor(
      * @return True if playing, false otherwise
      */
     fun isPlaying(): Boolean {
-        return player?.isPlaying ?: false
+        return currentAudioUrl?.let { controller.isPlaying(it) } ?: false
     }
 
     /**
@@ -323,24 +282,22 @@ class AudioPlayerView @JvmOverloads constructor(
     }
 
     /**
-     * Releases the player and frees resources.
+     * Stops this view's audio if it's playing.
      * Should be called when the view is no longer needed.
      */
     fun release() {
         savePosition()
-        stopSeekBarUpdate()
-        if (currentlyPlayingView == this) {
-            currentlyPlayingView = null
+        controller.clearProgressTarget(this)
+        if (controller.currentId == currentAudioUrl) {
+            controller.stop()
         }
-        player?.release()
-        player = null
-        scope.cancel()
     }
 
     override fun onDetachedFromWindow() {
         super.onDetachedFromWindow()
-        // Save position but don't release - let the parent manage lifecycle
+        // Save position; the shared player is released once no view listens
         savePosition()
-        stopSeekBarUpdate()
+        controller.clearProgressTarget(this)
+        controller.removeListener(this)
     }
 }
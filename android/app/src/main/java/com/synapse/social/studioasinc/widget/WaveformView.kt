@@ -9,16 +9,14 @@ import android.view.MotionEvent
 import android.view.View
 import androidx.core.content.ContextCompat
 import com.synapse.social.studioasinc.R
+import com.synapse.social.studioasinc.audio.WaveformCache
+import com.synapse.social.studioasinc.audio.WaveformExtractor
 import kotlinx.coroutines.*
-import java.io.File
-import java.io.FileInputStream
-import kotlin.math.abs
 import kotlin.math.max
-import kotlin.math.min
 
 /**
  * Custom view that displays an audio waveform visualization.
- * Generates waveform data from audio files and displays it with a progress indicator.
+ * Displays waveform data extracted from audio files with a progress indicator.
  * Supports seeking by tapping on the waveform.
  * 
  * Requirements: 6.5
@@ -67,6 +65,9 @@ class WaveformView @JvmOverloads constructor(
     
     // Coroutine scope for waveform generation
     private val scope = CoroutineScope(Dispatchers.Default + SupervisorJob())
+    private var waveformJob: Job? = null
+    
+    private val waveformCache = WaveformCache.getInstance(context)
     
     init {
         // Initialize with empty waveform
@@ -79,112 +80,47 @@ class WaveformView @JvmOverloads constructor(
     }
 
     /**
-     * Sets the audio URL and generates waveform data.
-     * Only generates waveform for audio files under 5 minutes.
+     * Sets the audio URL and loads its waveform.
+     * Uses the waveform computed at upload time when available, then the cache,
+     * and only decodes the audio as a last resort. Only the in-memory cache is read here;
+     * the disk is read and written off the main thread.
      * 
      * @param url The audio file URL
+     * @param precomputedWaveform Waveform shipped with the message attachment, if any
      */
-    fun setAudioUrl(url: String) {
-        scope.launch {
-            try {
-                // Download or get cached audio file
-                val audioFile = downloadAudioFile(url)
-                
-                if (audioFile != null && audioFile.exists()) {
-                    val waveform = generateWaveformData(audioFile)
-                    withContext(Dispatchers.Main) {
-                        waveformData = waveform
-                        invalidate()
-                    }
-                } else {
-                    // Use placeholder waveform if file not available
-                    withContext(Dispatchers.Main) {
-                        generatePlaceholderWaveform()
-                    }
-                }
-            } catch (e: Exception) {
-                // On error, use placeholder waveform
-                withContext(Dispatchers.Main) {
-                    generatePlaceholderWaveform()
-                }
+    fun setAudioUrl(url: String, precomputedWaveform: FloatArray? = null) {
+        waveformJob?.cancel()
+        
+        if (precomputedWaveform != null && precomputedWaveform.isNotEmpty()) {
+            setWaveformData(precomputedWaveform)
+            // Already cached with these values on every re-bind, so usually no write
+            if (waveformCache.getCached(url)?.contentEquals(precomputedWaveform) != true) {
+                waveformJob = scope.launch { waveformCache.put(url, precomputedWaveform) }
             }
+            return
         }
-    }
-    
-    /**
-     * Downloads or retrieves cached audio file.
-     * This is a placeholder - should integrate with MediaDownloadManager.
-     */
-    private suspend fun downloadAudioFile(url: String): File? {
-        // FIXME: Integrate with a proper MediaDownloadManager to handle caching and
-        // retrieval of the audio file. This will prevent re-downloading the same file.
-        // For now, return null to use placeholder waveform
-        return null
-    }
-    
-    /**
-     * Generates waveform data from an audio file.
-     * Samples the audio and calculates amplitude for each bar.
-     */
-    private fun generateWaveformData(audioFile: File): FloatArray {
-        val waveform = FloatArray(barCount)
         
-        try {
-            FileInputStream(audioFile).use { fis ->
-                val fileSize = audioFile.length()
-                val samplesPerBar = (fileSize / barCount).toInt()
-                
-                val buffer = ByteArray(samplesPerBar)
-                
-                for (i in 0 until barCount) {
-                    val bytesRead = fis.read(buffer)
-                    if (bytesRead <= 0) break
-                    
-                    // Calculate RMS (Root Mean Square) amplitude
-                    var sum = 0.0
-                    for (j in 0 until bytesRead step 2) {
-                        if (j + 1 < bytesRead) {
-                            // Convert bytes to 16-bit sample
-                            val sample = ((buffer[j + 1].toInt() shl 8) or (buffer[j].toInt() and 0xFF)).toShort()
-                            sum += (sample * sample).toDouble()
-                        }
-                    }
-                    
-                    val rms = kotlin.math.sqrt(sum / (bytesRead / 2))
-                    // Normalize to 0.0 - 1.0 range
-                    waveform[i] = min(1.0f, (rms / 32768.0).toFloat())
-                }
-            }
-            
-            // Smooth the waveform
-            return smoothWaveform(waveform)
-            
-        } catch (e: Exception) {
-            // On error, return placeholder waveform
-            return generatePlaceholderWaveformData()
+        waveformCache.getCached(url)?.let { cached ->
+            setWaveformData(cached)
+            return
         }
-    }
-    
-    /**
-     * Smooths waveform data using a simple moving average.
-     */
-    private fun smoothWaveform(data: FloatArray): FloatArray {
-        val smoothed = FloatArray(data.size)
-        val windowSize = 3
         
-        for (i in data.indices) {
-            var sum = 0f
-            var count = 0
-            
-            for (j in max(0, i - windowSize)..min(data.size - 1, i + windowSize)) {
-                sum += data[j]
-                count++
+        // Placeholder bars until the waveform is read or extracted, not the previous note's
+        generateEmptyWaveform()
+        waveformJob = scope.launch {
+            val waveform = waveformCache.get(url)
+                ?: WaveformExtractor(context).extract(url, barCount).getOrNull()?.also {
+                    waveformCache.put(url, it)
+                }
+            withContext(Dispatchers.Main) {
+                if (waveform != null) {
+                    setWaveformData(waveform)
+                } else {
+                    // Use placeholder waveform if the audio can't be decoded
+                    generatePlaceholderWaveform()
+                }
             }
-            
-            smoothed[i] = sum / count
         }
-        
-        return smoothed
     }
     
     /**
@@ -281,6 +217,7 @@ class WaveformView @JvmOverloads constructor(
 
     override fun onDetachedFromWindow() {
         super.onDetachedFromWindow()
-        scope.cancel()
+        // Only the work in flight: recycled bubbles are attached again and keep the scope
+        scope.coroutineContext.cancelChildren()
     }
 }
@@ -1,5 +1,10 @@
 package com.synapse.social.studioasinc
 
+import com.synapse.social.studioasinc.ChatAdapter.MessagePosition
+import com.synapse.social.studioasinc.chat.models.ChatItem
+import com.synapse.social.studioasinc.chat.models.ChatItemMapper
+import com.synapse.social.studioasinc.chat.models.MessageLayout
+import com.synapse.social.studioasinc.chat.models.MessageLayoutPass
 import org.junit.Test
 import org.junit.Assert.*
 import org.junit.Before
@@ -415,6 +420,76 @@ class ChatAdapterPerformanceTest {
         )
     }
 
+    /**
+     * Test that the layout pass fills every field ChatAdapter.applyGroupingLayout reads on bind
+     * Grouping must match the per-bind calculation it replaced; bind itself only assigns these
+     */
+    @Test
+    fun testPrecomputedLayoutMatchesGroupingCalculation() {
+        val sender1 = "user123"
+        val sender2 = "user456"
+        val timestamp = System.currentTimeMillis()
+
+        for (i in 0 until LARGE_MESSAGE_COUNT) {
+            val sender = if (i % 10 == 0) sender2 else sender1
+            testData.add(createTextMessage(sender, "Message $i", timestamp + (i * 1000)))
+        }
+
+        var items: List<ChatItem> = emptyList()
+        val layoutPassNs = measureNanoTime {
+            items = MessageLayoutPass.apply(ChatItemMapper.map(testData, emptyMap(), sender1), isGroupChat = true)
+        }
+        val messages = items.map { it as ChatItem.Message }
+
+        println("Precomputed Layout Performance:")
+        println("  Layout pass for ${messages.size} messages: ${String.format("%.2f", layoutPassNs / 1_000_000.0)} ms")
+
+        // Runs off the main thread once per list change, so it only needs to stay reasonable
+        assertTrue(
+            "Layout pass (${String.format("%.2f", layoutPassNs / 1_000_000.0)} ms) exceeds 500ms",
+            layoutPassNs < 500_000_000
+        )
+
+        assertEquals(testData.size, messages.size)
+        messages.forEachIndexed { index, message ->
+            val layout = message.layout
+            assertNotSame("Message $index was not laid out", MessageLayout.PENDING, layout)
+            assertEquals(
+                "Position of message $index",
+                mockAdapter.calculateMessagePosition(testData, index).name,
+                layout.position.name
+            )
+            assertEquals(MessageLayoutPass.bubbleShapeFor(layout.position, message.isMine), layout.bubbleRes)
+
+            val startsGroup = layout.position == MessagePosition.SINGLE || layout.position == MessagePosition.FIRST
+            val expectedSpacing = if (startsGroup) R.dimen.message_spacing_ungrouped else R.dimen.message_spacing_grouped
+            assertEquals(expectedSpacing, layout.spacingRes)
+            assertEquals(startsGroup && !message.isMine, layout.showUsername)
+            assertTrue("Message $index has no formatted time", layout.formattedTime.isNotEmpty())
+        }
+    }
+
+    /**
+     * Test that messages sent within the same minute share their formatted time
+     */
+    @Test
+    fun testFormattedTimeIsSharedWithinMinute() {
+        val sender1 = "user123"
+        val timestamp = System.currentTimeMillis() / 60_000 * 60_000
+
+        for (i in 0 until 30) {
+            testData.add(createTextMessage(sender1, "Message $i", timestamp + (i * 1000)))
+        }
+
+        val messages = MessageLayoutPass.apply(ChatItemMapper.map(testData, emptyMap(), sender1), isGroupChat = false)
+            .map { it as ChatItem.Message }
+
+        val first = messages.first().layout.formattedTime
+        messages.forEach { assertSame(first, it.layout.formattedTime) }
+        assertEquals(MessagePosition.FIRST, messages.first().layout.position)
+        assertEquals(MessagePosition.LAST, messages.last().layout.position)
+    }
+
     // ========== Helper Methods ==========
 
     private fun createTextMessage(senderId: String, content: String, timestamp: Long): HashMap<String, Any?> {
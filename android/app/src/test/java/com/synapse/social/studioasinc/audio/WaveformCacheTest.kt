@@ -0,0 +1,52 @@
+package com.synapse.social.studioasinc.audio
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.longs.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import kotlinx.coroutines.test.runTest
+import org.robolectric.annotation.Config
+import java.io.File
+import java.nio.file.Files
+import java.security.MessageDigest
+
+/**
+ * Tests for the waveform disk cache: persistence across instances and its size cap.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class WaveformCacheTest : StringSpec({
+
+    fun tempDir(): File = Files.createTempDirectory("waveforms").toFile().apply { deleteOnExit() }
+
+    fun fileFor(dir: File, url: String): File {
+        val name = MessageDigest.getInstance("SHA-256").digest(url.toByteArray()).joinToString("") { "%02x".format(it) }
+        return File(dir, "$name.wf")
+    }
+
+    "waveforms are read back from disk by a new instance" {
+        runTest {
+            val dir = tempDir()
+            WaveformCache(dir).put("https://cdn/a.m4a", floatArrayOf(0.1f, 0.5f, 1f))
+
+            WaveformCache(dir).get("https://cdn/a.m4a")?.toList() shouldBe listOf(0.1f, 0.5f, 1f)
+            WaveformCache(dir).get("https://cdn/missing.m4a") shouldBe null
+        }
+    }
+
+    "the directory is trimmed back under its cap, dropping the oldest files" {
+        runTest {
+            val dir = tempDir()
+            val cache = WaveformCache(dir)
+            // 100 bars is 404 bytes on disk, so this writes about twice the cap
+            val count = (2 * WaveformCache.MAX_DISK_BYTES / 404).toInt()
+            repeat(count) { index ->
+                cache.put("https://cdn/$index.m4a", FloatArray(100) { index.toFloat() })
+                // Distinct ages, as file times may be coarser than the loop
+                fileFor(dir, "https://cdn/$index.m4a").setLastModified(1_000_000L + index * 1000L)
+            }
+
+            dir.listFiles()!!.sumOf { it.length() } shouldBeLessThanOrEqual WaveformCache.MAX_DISK_BYTES
+            fileFor(dir, "https://cdn/0.m4a").exists() shouldBe false
+            WaveformCache(dir).get("https://cdn/${count - 1}.m4a")?.first() shouldBe (count - 1).toFloat()
+        }
+    }
+})
@@ -0,0 +1,53 @@
+package com.synapse.social.studioasinc.backend
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.long
+import io.kotest.property.checkAll
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for read-side presence expiry.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class UserPresenceTest : StringSpec({
+
+    val now = 1_700_000_000_000L
+
+    "a fresh heartbeat keeps the stored status" {
+        val presence = UserPresence("u1", "chatting_with_u2", now - SupabasePresenceService.HEARTBEAT_INTERVAL_MS)
+
+        presence.isOnline(now) shouldBe true
+        presence.effectiveStatus(now) shouldBe "chatting_with_u2"
+    }
+
+    "an expired heartbeat reads as offline" {
+        checkAll(100, Arb.long(1L..SupabasePresenceService.PRESENCE_EXPIRY_MS)) { overdue ->
+            val lastSeen = now - SupabasePresenceService.PRESENCE_EXPIRY_MS - overdue
+            val presence = UserPresence("u1", SupabasePresenceService.STATUS_ONLINE, lastSeen)
+
+            presence.isOnline(now) shouldBe false
+            presence.effectiveStatus(now) shouldBe SupabasePresenceService.STATUS_OFFLINE
+        }
+    }
+
+    "an explicit offline status is never online" {
+        UserPresence("u1", SupabasePresenceService.STATUS_OFFLINE, now).isOnline(now) shouldBe false
+    }
+
+    "expiry tolerates one missed heartbeat" {
+        val lastSeen = now - 2 * SupabasePresenceService.HEARTBEAT_INTERVAL_MS
+
+        UserPresence("u1", SupabasePresenceService.STATUS_ONLINE, lastSeen).isOnline(now) shouldBe true
+    }
+
+    "last_seen parses every stored format" {
+        SupabasePresenceService.parseLastSeen(now.toString()) shouldBe now
+        SupabasePresenceService.parseLastSeen((now / 1000).toString()) shouldBe now
+        SupabasePresenceService.parseLastSeen("2023-11-14T22:13:20Z") shouldBe now
+        SupabasePresenceService.parseLastSeen("2023-11-14 22:13:20+00") shouldBe now
+        SupabasePresenceService.parseLastSeen(null) shouldBe 0L
+        SupabasePresenceService.parseLastSeen("garbage") shouldBe 0L
+    }
+})
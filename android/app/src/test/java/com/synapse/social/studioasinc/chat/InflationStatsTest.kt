@@ -0,0 +1,36 @@
+package com.synapse.social.studioasinc.chat
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for counting chat bubble inflations.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class InflationStatsTest : StringSpec({
+
+    "inflations are counted per view type apart from prewarming" {
+        val stats = InflationStats()
+
+        stats.recordPrewarm(1)
+        stats.recordInflation(1, nanos = 2_000_000)
+        stats.recordInflation(1, nanos = 4_000_000)
+        stats.recordInflation(2, nanos = 3_000_000)
+
+        stats.inflationsOf(1) shouldBe 2
+        stats.inflationCount shouldBe 3
+        stats.prewarmCount shouldBe 1
+        stats.averageInflationMs shouldBe 3.0
+    }
+
+    "reset clears every count" {
+        val stats = InflationStats()
+        stats.recordInflation(1, nanos = 1_000)
+
+        stats.reset()
+
+        stats.inflationCount shouldBe 0
+        stats.averageInflationMs shouldBe 0.0
+    }
+})
@@ -0,0 +1,89 @@
+package com.synapse.social.studioasinc.chat
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.int
+import io.kotest.property.arbitrary.list
+import io.kotest.property.checkAll
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the chat list's message ID index.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class MessagePositionIndexTest : StringSpec({
+
+    "prepending shifts existing positions without re-indexing them" {
+        val index = MessagePositionIndex()
+        index.rebuild(listOf("c", "d"))
+
+        index.prepend(listOf("a", "b"))
+        index.append("e")
+
+        listOf("a", "b", "c", "d", "e").map { index.positionOf(it) } shouldBe listOf(0, 1, 2, 3, 4)
+        index.size shouldBe 5
+        index.positionOf("missing") shouldBe -1
+    }
+
+    "rows without an ID take a position but aren't indexed" {
+        val index = MessagePositionIndex()
+        index.rebuild(listOf("a", "b"))
+
+        index.prepend(listOf(null))
+
+        index.positionOf("a") shouldBe 1
+        index.removeAt(0)
+        index.positionOf("a") shouldBe 0
+        index.size shouldBe 2
+    }
+
+    "replacing an ID keeps its position" {
+        val index = MessagePositionIndex()
+        index.rebuild(listOf("a", "temp", "c"))
+
+        index.replace(1, "temp", "b")
+
+        index.positionOf("temp") shouldBe -1
+        index.positionOf("b") shouldBe 1
+    }
+
+    "trimming either end keeps the remaining positions" {
+        val index = MessagePositionIndex()
+        index.rebuild(listOf("a", "b", "c", "d", "e"))
+
+        index.dropFirst(2)
+        index.dropLast(1)
+
+        listOf("a", "b", "c", "d", "e").map { index.positionOf(it) } shouldBe listOf(-1, -1, 0, 1, -1)
+        index.size shouldBe 2
+        index.append("f")
+        index.positionOf("f") shouldBe 2
+    }
+
+    "index matches the list after any sequence of edits" {
+        // Op codes: 0 append, 1 prepend two, 2 remove, 3 prepend a row without an ID,
+        // 4 trim the top, 5 trim the bottom
+        checkAll(100, Arb.list(Arb.int(0..5), 1..40)) { ops ->
+            val list = ArrayList<String?>()
+            val index = MessagePositionIndex()
+            var next = 0
+
+            ops.forEach { op ->
+                when {
+                    op == 0 -> "m${next++}".let { list.add(it); index.append(it) }
+                    op == 1 -> listOf("m${next++}", "m${next++}").let { list.addAll(0, it); index.prepend(it) }
+                    op == 2 && list.isNotEmpty() -> (list.size / 2).let { list.removeAt(it); index.removeAt(it) }
+                    op == 3 -> { list.add(0, null); index.prepend(listOf(null)) }
+                    op == 4 -> (list.size / 3).let { n -> repeat(n) { list.removeAt(0) }; index.dropFirst(n) }
+                    op == 5 -> (list.size / 3).let { n -> repeat(n) { list.removeAt(list.size - 1) }; index.dropLast(n) }
+                }
+            }
+
+            index.size shouldBe list.size
+            list.forEachIndexed { position, id ->
+                if (id != null) index.positionOf(id) shouldBe position
+            }
+        }
+    }
+})
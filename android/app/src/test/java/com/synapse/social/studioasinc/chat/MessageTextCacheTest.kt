@@ -0,0 +1,39 @@
+package com.synapse.social.studioasinc.chat
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for finding the tappable parts of message texts.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class MessageTextCacheTest : StringSpec({
+
+    "mentions and hashtags are found at word starts" {
+        val text = "hi @alice, see #release and mail bob@example.org"
+
+        val found = MessageTextCache.findLinks(text)
+
+        found.map { it.second } shouldContainExactly listOf(
+            MessageLink.Mention("alice"),
+            MessageLink.Hashtag("release")
+        )
+        text.substring(found[0].first) shouldBe "@alice"
+        text.substring(found[1].first) shouldBe "#release"
+    }
+
+    "mentions and hashtags inside a link are left to the link" {
+        val text = "read https://example.com/#top and https://example.com/@user"
+        val links = listOf(
+            (5 until 29) to "https://example.com/#top",
+            (34 until 59) to "https://example.com/@user"
+        )
+
+        MessageTextCache.findLinks(text, links).map { it.second } shouldContainExactly listOf(
+            MessageLink.Url("https://example.com/#top"),
+            MessageLink.Url("https://example.com/@user")
+        )
+    }
+})
@@ -0,0 +1,85 @@
+package com.synapse.social.studioasinc.chat
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the chat list's bounded paging window.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class MessageWindowTest : StringSpec({
+
+    "scrolling back past the cap trims the newest rows and detaches from the latest" {
+        val window = MessageWindow(pageSize = 50, maxItems = 150)
+        window.reset(loaded = 50)
+
+        window.onOlderLoaded(loaded = 50, size = 100) shouldBe 0
+        window.onOlderLoaded(loaded = 50, size = 150) shouldBe 0
+        window.isAtLatest shouldBe true
+
+        window.onOlderLoaded(loaded = 50, size = 200) shouldBe 50
+        window.hasNewer shouldBe true
+        window.hasOlder shouldBe true
+    }
+
+    "paging back down trims the oldest rows until the latest page is reached" {
+        val window = MessageWindow(pageSize = 50, maxItems = 150)
+        window.reset(loaded = 50)
+        window.onOlderLoaded(loaded = 50, size = 200)
+
+        window.onNewerLoaded(loaded = 50, size = 200) shouldBe 50
+        window.hasNewer shouldBe true
+
+        window.onNewerLoaded(loaded = 20, size = 170) shouldBe 20
+        window.isAtLatest shouldBe true
+        window.hasOlder shouldBe true
+    }
+
+    "a short page ends the history in that direction" {
+        val window = MessageWindow(pageSize = 50, maxItems = 150)
+
+        window.reset(loaded = 30)
+        window.hasOlder shouldBe false
+
+        window.reset(loaded = 50)
+        window.onOlderLoaded(loaded = 10, size = 60) shouldBe 0
+        window.hasOlder shouldBe false
+    }
+
+    "a jump opens a window with history on both sides" {
+        val window = MessageWindow(pageSize = 50, maxItems = 150)
+
+        window.resetAround(olderLoaded = 50, newerLoaded = 50)
+        window.hasOlder shouldBe true
+        window.hasNewer shouldBe true
+
+        window.resetAround(olderLoaded = 50, newerLoaded = 3)
+        window.isAtLatest shouldBe true
+    }
+
+    "replacing the window bumps its generation" {
+        val window = MessageWindow(pageSize = 50, maxItems = 150)
+        val start = window.generation
+
+        window.reset(loaded = 50)
+        window.onOlderLoaded(loaded = 50, size = 100)
+        window.generation shouldBe start + 1
+
+        window.resetAround(olderLoaded = 10, newerLoaded = 10)
+        window.generation shouldBe start + 2
+    }
+
+    "a window opened with smaller pages judges its ends by that size" {
+        val window = MessageWindow(pageSize = 50, maxItems = 150)
+
+        window.reset(loaded = 25, pageSize = 25)
+        window.hasOlder shouldBe true
+        window.onOlderLoaded(loaded = 25, size = 50) shouldBe 0
+        window.hasOlder shouldBe true
+
+        // The next window may use full pages again
+        window.reset(loaded = 25)
+        window.hasOlder shouldBe false
+    }
+})
@@ -0,0 +1,191 @@
+package com.synapse.social.studioasinc.chat.models
+
+import com.synapse.social.studioasinc.ChatAdapter.MessagePosition
+import com.synapse.social.studioasinc.R
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.robolectric.annotation.Config
+import java.time.LocalDate
+import java.time.ZoneOffset
+import java.util.Locale
+
+/**
+ * Tests for mapping chat list rows to typed items, their layout pass and their diff payloads.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class ChatItemMapperTest : StringSpec({
+
+    val now = 1_700_000_000_000L
+
+    fun row(id: String, sender: String, text: String = id, createdAt: Long = now) = hashMapOf<String, Any?>(
+        "id" to id,
+        "sender_id" to sender,
+        "content" to text,
+        "created_at" to createdAt
+    )
+
+    fun messages(rows: List<Map<String, Any?>>, replied: Map<String, ChatItem.ReplyPreview> = emptyMap()) =
+        ChatItemMapper.map(rows, replied, currentUserId = "me", now = now).map { it as ChatItem.Message }
+
+    fun laidOut(rows: List<Map<String, Any?>>, isGroupChat: Boolean = false) =
+        MessageLayoutPass.apply(ChatItemMapper.map(rows, emptyMap(), currentUserId = "me", now = now), isGroupChat, now)
+            .map { it as ChatItem.Message }
+
+    "legacy field names are read once into typed fields" {
+        val legacy = hashMapOf<String, Any?>(
+            "key" to "m1",
+            "uid" to "me",
+            "message_text" to "hello",
+            "message_state" to "read",
+            "is_edited" to "true"
+        )
+
+        val item = messages(listOf(legacy)).single()
+
+        item.key shouldBe "m1"
+        item.senderId shouldBe "me"
+        item.isMine shouldBe true
+        item.text shouldBe "hello"
+        item.deliveryStatus shouldBe "read"
+        item.isEdited shouldBe true
+        item.timestamp shouldBe now
+    }
+
+    "loading and typing rows map to their own items" {
+        val items = ChatItemMapper.map(
+            listOf(hashMapOf("isLoadingMore" to true), row("m1", "a"), hashMapOf("typingMessageStatus" to true)),
+            emptyMap(),
+            currentUserId = "me",
+            now = now
+        )
+
+        items[0] shouldBe ChatItem.LoadingMore
+        items[1].shouldBeInstanceOf<ChatItem.Message>()
+        items[2] shouldBe ChatItem.Typing
+    }
+
+    "view type and link URL are resolved up front" {
+        val video = row("v", "a").apply {
+            put("TYPE", "ATTACHMENT_MESSAGE")
+            put("attachments", arrayListOf(hashMapOf<String, Any?>("url" to "u", "publicId" to "x|video")))
+        }
+        val failed = row("f", "me").apply { put("delivery_status", "failed") }
+        val link = row("l", "a", text = "see https://example.com/page now")
+
+        val items = messages(listOf(video, failed, link))
+
+        items.map { it.viewType } shouldContainExactly listOf(
+            ChatItem.VIEW_TYPE_VIDEO,
+            ChatItem.VIEW_TYPE_ERROR,
+            ChatItem.VIEW_TYPE_LINK_PREVIEW
+        )
+        items[0].attachments.single().url shouldBe "u"
+        items[2].linkUrl shouldBe "https://example.com/page"
+    }
+
+    "consecutive messages from one sender are grouped and deleted messages break groups" {
+        val rows = listOf(
+            row("1", "a"), row("2", "a"), row("3", "a"),
+            row("4", "b"),
+            row("5", "b").apply { put("is_deleted", true) },
+            row("6", "b")
+        )
+
+        laidOut(rows).map { it.layout.position } shouldContainExactly listOf(
+            MessagePosition.FIRST, MessagePosition.MIDDLE, MessagePosition.LAST,
+            MessagePosition.SINGLE, MessagePosition.SINGLE, MessagePosition.SINGLE
+        )
+    }
+
+    "grouped messages only keep a timestamp before a gap of over a minute" {
+        val rows = listOf(
+            row("1", "a", createdAt = now),
+            row("2", "a", createdAt = now + 10_000),
+            row("3", "a", createdAt = now + 200_000),
+            row("4", "a", createdAt = now + 210_000)
+        )
+
+        laidOut(rows).map { it.layout.showTimestamp } shouldContainExactly listOf(false, true, false, true)
+    }
+
+    "group chats name the sender once per incoming group" {
+        val rows = listOf(row("1", "a"), row("2", "a"), row("3", "me"), row("4", "me"))
+
+        laidOut(rows, isGroupChat = true).map { it.layout.showUsername } shouldContainExactly
+            listOf(true, false, false, false)
+        laidOut(rows).none { it.layout.showUsername } shouldBe true
+    }
+
+    "bubble shape and spacing follow the group position" {
+        val items = laidOut(listOf(row("1", "me"), row("2", "me"), row("3", "a")))
+
+        items.map { it.layout.bubbleRes } shouldContainExactly listOf(
+            R.drawable.shape_outgoing_message_first,
+            R.drawable.shape_outgoing_message_last,
+            R.drawable.shape_incoming_message_single
+        )
+        items.map { it.layout.spacingRes } shouldContainExactly listOf(
+            R.dimen.message_spacing_ungrouped,
+            R.dimen.message_spacing_grouped,
+            R.dimen.message_spacing_ungrouped
+        )
+    }
+
+    "times are formatted relative to today and shared within a minute" {
+        val zone = ZoneOffset.UTC
+        val noon = LocalDate.of(2024, 3, 10).atTime(12, 0).toInstant(zone).toEpochMilli()
+        val formatter = MessageTimeFormatter(noon, zone, Locale.US)
+
+        formatter.format(noon + 5_000) shouldBe "12:00"
+        formatter.format(noon - 86_400_000L) shouldBe "Yesterday 12:00"
+        formatter.format(noon - 3 * 86_400_000L) shouldBe "Mar 07, 12:00"
+        formatter.format(noon + 30_000) shouldBeSameInstanceAs formatter.format(noon)
+    }
+
+    "replies resolve from the list or the replied-message cache" {
+        val original = row("1", "a", text = "original")
+        val inList = row("2", "me").apply { put("replied_message_id", "1") }
+        val cached = row("3", "me").apply { put("reply_to_id", "old") }
+        val missing = row("4", "me").apply { put("replied_message_id", "gone") }
+
+        val items = messages(
+            listOf(original, inList, cached, missing),
+            replied = mapOf("old" to ChatItemMapper.replyPreviewOf(row("old", "a", text = "from cache")))
+        )
+
+        items[1].reply shouldBe ChatItem.ReplyPreview("a", "original", null)
+        items[2].reply?.text shouldBe "from cache"
+        items[3].replyToId shouldBe "gone"
+        items[3].reply shouldBe null
+    }
+
+    "reply snippets keep the start of the text and a thumbnail" {
+        val long = row("1", "a", text = "x".repeat(500)).apply {
+            put("attachments", listOf(mapOf("type" to "video", "url" to "v.mp4", "thumbnail_url" to "v.jpg")))
+        }
+        val deleted = row("2", "a").apply { put("is_deleted", "true") }
+
+        val snippet = ChatItemMapper.replyPreviewOf(long)
+
+        snippet.text.length shouldBe ChatItemMapper.REPLY_SNIPPET_LENGTH
+        snippet.imageUrl shouldBe "v.jpg"
+        ChatItemMapper.replyPreviewOf(deleted) shouldBe ChatItem.ReplyPreview.UNAVAILABLE
+        ChatItemMapper.replyToIdOf(row("3", "a").apply { put("reply_to_id", "null") }) shouldBe null
+    }
+
+    "diff payloads distinguish state-only and grouping-only changes" {
+        val before = messages(listOf(row("1", "me"))).single()
+
+        val read = before.copy(deliveryStatus = "read")
+        val grouped = before.copy(layout = before.layout.copy(position = MessagePosition.LAST))
+        val edited = before.copy(text = "edited", displayText = "edited")
+
+        ChatItem.DIFF_CALLBACK.areItemsTheSame(before, edited) shouldBe true
+        ChatItem.DIFF_CALLBACK.getChangePayload(before, read) shouldBe ChatItem.PAYLOAD_MESSAGE_STATE
+        ChatItem.DIFF_CALLBACK.getChangePayload(before, grouped) shouldBe ChatItem.PAYLOAD_GROUPING
+        ChatItem.DIFF_CALLBACK.getChangePayload(before, edited) shouldBe null
+    }
+})
@@ -0,0 +1,56 @@
+package com.synapse.social.studioasinc.chat.service
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.longs.shouldBeGreaterThanOrEqual
+import io.kotest.matchers.longs.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.long
+import io.kotest.property.checkAll
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the fixed-bucket latency histogram behind realtime metrics.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class LatencyHistogramTest : StringSpec({
+
+    "small values are recorded exactly" {
+        val histogram = LatencyHistogram()
+        (1L..10L).forEach { histogram.record(it) }
+
+        histogram.percentile(0.50) shouldBe 5L
+        histogram.percentile(0.99) shouldBe 10L
+        histogram.max() shouldBe 10L
+    }
+
+    "tail percentiles reflect outliers an average would hide" {
+        val histogram = LatencyHistogram()
+        repeat(98) { histogram.record(20L) }
+        repeat(2) { histogram.record(3000L) }
+
+        histogram.percentile(0.50) shouldBe 20L
+        histogram.percentile(0.99) shouldBeGreaterThanOrEqual 3000L
+        histogram.mean() shouldBeLessThanOrEqual 100L
+    }
+
+    "bucket bounds stay within ~6% of the recorded value" {
+        checkAll(200, Arb.long(0L..10_000_000L)) { value ->
+            val upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(value))
+
+            upperBound shouldBeGreaterThanOrEqual value
+            (upperBound - value) shouldBeLessThanOrEqual value / 16
+        }
+    }
+
+    "empty and reset histograms report zero" {
+        val histogram = LatencyHistogram()
+        histogram.percentile(0.99) shouldBe 0L
+
+        histogram.record(500L)
+        histogram.reset()
+
+        histogram.count shouldBe 0L
+        histogram.percentile(0.50) shouldBe 0L
+    }
+})
@@ -0,0 +1,109 @@
+package com.synapse.social.studioasinc.chat.service
+
+import com.synapse.social.studioasinc.LinkPreviewUtil
+import com.synapse.social.studioasinc.data.local.LinkPreviewDao
+import com.synapse.social.studioasinc.data.local.LinkPreviewEntity
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import org.jsoup.HttpStatusException
+import org.robolectric.annotation.Config
+import java.io.ByteArrayInputStream
+import java.net.SocketTimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Tests for link preview caching, fetch dedupe, which failures are stored and partial page reads.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class LinkPreviewServiceTest : StringSpec({
+
+    val url = "https://example.com/page"
+    val preview = LinkPreviewUtil.LinkData(url, title = "Example", domain = "example.com")
+
+    "concurrent lookups of one URL share a single fetch" {
+        val fetches = AtomicInteger()
+        val gate = CompletableDeferred<Unit>()
+        val service = LinkPreviewService(dao = null, fetcher = {
+            fetches.incrementAndGet()
+            gate.await()
+            Result.success(preview)
+        })
+
+        val results = coroutineScope {
+            val first = async { service.get(url) }
+            val second = async { service.get(url) }
+            service.prefetch(listOf(url))
+            gate.complete(Unit)
+            listOf(first.await(), second.await())
+        }
+
+        results shouldBe listOf(preview, preview)
+        fetches.get() shouldBe 1
+        service.peek(url) shouldBe preview
+    }
+
+    "failures are remembered until their shorter expiry" {
+        var now = 0L
+        val fetches = AtomicInteger()
+        val service = LinkPreviewService(
+            dao = null,
+            fetcher = { fetches.incrementAndGet(); Result.failure(IllegalStateException("no head")) },
+            clock = { now }
+        )
+
+        service.get(url) shouldBe null
+        service.isKnownFailure(url) shouldBe true
+        service.get(url) shouldBe null
+        fetches.get() shouldBe 1
+
+        now += LinkPreviewService.FAILURE_TTL_MS + 1
+        service.isKnownFailure(url) shouldBe false
+        service.get(url) shouldBe null
+        fetches.get() shouldBe 2
+    }
+
+    "only definitive failures are stored" {
+        val stored = HashMap<String, LinkPreviewEntity>()
+        val dao = object : LinkPreviewDao {
+            override suspend fun insert(preview: LinkPreviewEntity) {
+                stored[preview.url] = preview
+            }
+
+            override suspend fun getByUrl(url: String): LinkPreviewEntity? = stored[url]
+
+            override suspend fun deleteOlderThan(cutoff: Long): Int = 0
+        }
+        val failures = mapOf(
+            "https://example.com/missing" to HttpStatusException("Not found", 404, "https://example.com/missing"),
+            "https://example.com/bare" to LinkPreviewUtil.NoPreviewException("https://example.com/bare"),
+            "https://example.com/slow" to SocketTimeoutException("timed out"),
+            "https://example.com/down" to HttpStatusException("Unavailable", 503, "https://example.com/down")
+        )
+        val service = LinkPreviewService(dao, fetcher = { Result.failure(failures.getValue(it)) })
+
+        failures.keys.forEach { service.get(it) shouldBe null }
+
+        stored.keys shouldBe setOf("https://example.com/missing", "https://example.com/bare")
+        stored.values.all { it.failed } shouldBe true
+        // Still not retried on every bind
+        service.isKnownFailure("https://example.com/slow") shouldBe true
+    }
+
+    "page reads stop after the head" {
+        val head = "<html><HEAD><meta property=\"og:title\" content=\"T\"></Head>"
+        val page = head + "<body>" + "x".repeat(100_000) + "</body></html>"
+
+        val read = LinkPreviewUtil.readHead(ByteArrayInputStream(page.toByteArray()), maxBytes = 64 * 1024)
+
+        String(read) shouldBe head
+    }
+
+    "page reads are capped when the head never ends" {
+        val page = "<html><head>" + "x".repeat(10_000)
+
+        LinkPreviewUtil.readHead(ByteArrayInputStream(page.toByteArray()), maxBytes = 1_000).size shouldBe 1_000
+    }
+})
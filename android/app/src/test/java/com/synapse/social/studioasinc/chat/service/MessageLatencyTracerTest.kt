@@ -0,0 +1,71 @@
+package com.synapse.social.studioasinc.chat.service
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.maps.shouldNotContainKey
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for end-to-end message delivery latency tracing.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class MessageLatencyTracerTest : StringSpec({
+
+    "sent messages are traced through ack, echo and read" {
+        var now = 1_000L
+        val tracer = MessageLatencyTracer { now }
+
+        tracer.onSend("m1", "chat-a")
+        now = 1_120L
+        tracer.onServerAck("m1")
+        now = 1_300L
+        tracer.onMessageArrived("chat-a", mapOf("id" to "m1", "created_at" to "1"))
+        now = 5_000L
+        tracer.onReadReceipt("chat-a", listOf("m1"))
+
+        val report = tracer.getChatReport("chat-a")
+        report.getValue(DeliveryStage.SERVER_ACK).p50 shouldBe 120L
+        report.getValue(DeliveryStage.ECHO).p50 shouldBe 300L
+        report.getValue(DeliveryStage.READ).count shouldBe 1L
+        report shouldNotContainKey DeliveryStage.PEER_DELIVERY
+        tracer.getNetworkReport("UNKNOWN").getValue(DeliveryStage.SERVER_ACK).count shouldBe 1L
+    }
+
+    "peer messages are measured from their created_at" {
+        val tracer = MessageLatencyTracer { 1_700_000_000_250L }
+
+        tracer.onMessageArrived("chat-a", mapOf("id" to "peer", "created_at" to "1700000000"))
+
+        tracer.getChatReport("chat-a").getValue(DeliveryStage.PEER_DELIVERY).p50 shouldBe 250L
+    }
+
+    "failed sends are not traced further" {
+        val tracer = MessageLatencyTracer { 0L }
+        tracer.onSend("m1", "chat-a")
+        tracer.onSendFailed("m1")
+
+        tracer.onReadReceipt("chat-a", listOf("m1"))
+
+        tracer.getChatReport("chat-a") shouldNotContainKey DeliveryStage.READ
+    }
+
+    "timestamps parse from epoch seconds and Postgres text" {
+        MessageLatencyTracer.parseTimestampMs("1700000000") shouldBe 1_700_000_000_000L
+        MessageLatencyTracer.parseTimestampMs("2023-11-14 22:13:20+00") shouldBe 1_700_000_000_000L
+        MessageLatencyTracer.parseTimestampMs("2023-11-14T22:13:20.5+00:00") shouldBe 1_700_000_000_500L
+        MessageLatencyTracer.parseTimestampMs("null").shouldBeNull()
+    }
+
+    "export groups percentiles by chat and network" {
+        val tracer = MessageLatencyTracer { 100L }
+        tracer.onSend("m1", "chat-a", sentAt = 0L)
+        tracer.onServerAck("m1")
+
+        val json = tracer.exportJson()
+
+        json shouldContain "\"by_chat\":{\"chat-a\":{\"server_ack\""
+        json shouldContain "\"by_network\":{\"UNKNOWN\""
+    }
+})
@@ -0,0 +1,83 @@
+package com.synapse.social.studioasinc.chat.service
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the rows the chat window pages in and out of its local store.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class MessagePagerTest : StringSpec({
+
+    "server messages map to rows with the legacy field names" {
+        val row = MessagePager.rowOf(
+            mapOf("id" to "m1", "sender_id" to "a", "content" to "hi", "created_at" to "1700000000000")
+        )
+
+        row["uid"] shouldBe "a"
+        row["message_text"] shouldBe "hi"
+        row["push_date"] shouldBe "1700000000000"
+    }
+
+    "reply targets carry over, but not the string form of a null column" {
+        MessagePager.rowOf(mapOf("id" to "m2", "reply_to_id" to "m1"))["replied_message_id"] shouldBe "m1"
+        MessagePager.rowOf(mapOf("id" to "m3", "reply_to_id" to "null")).containsKey("replied_message_id") shouldBe false
+    }
+
+    "stored rows keep the value types the list reads" {
+        val row = hashMapOf<String, Any?>(
+            "id" to "m1",
+            "content" to "42",
+            "created_at" to 1_700_000_000_000L,
+            "is_edited" to true,
+            "reply_to_id" to null,
+            "attachments" to arrayListOf(hashMapOf<String, Any?>("url" to "u", "duration" to 3000L))
+        )
+
+        val decoded = MessageRowCodec.decode(MessageRowCodec.encode(row))
+
+        decoded shouldBe row
+        decoded["content"] shouldBe "42"
+    }
+
+    "rows of the cursor's second are the ones a server page can repeat" {
+        val loaded = listOf(
+            mapOf("id" to "m1", "created_at" to "1700000000100"),
+            mapOf("id" to "m2", "created_at" to "1700000000900"),
+            mapOf("id" to "m3", "created_at" to "1700000001000"),
+            mapOf("id" to "optimistic", "created_at" to "pending")
+        )
+
+        MessagePager.idsInSecondOf(1_700_000_000_500L, loaded) shouldBe setOf("m1", "m2")
+    }
+
+    "server rows already loaded are dropped, other rows of the same second are kept" {
+        val page = listOf(
+            mapOf("id" to "m0", "created_at" to "1700000000050"),
+            mapOf("id" to "m1", "created_at" to "1700000000100"),
+            mapOf("id" to "m2", "created_at" to "1700000000900")
+        )
+
+        MessagePager.withoutSeen(page, setOf("m1", "m2")).map { it["id"] } shouldBe listOf("m0")
+    }
+
+    "a jump keeps the anchor's second on both sides without repeating the anchor" {
+        fun row(id: String, createdAt: Long) = hashMapOf<String, Any?>("id" to id, "created_at" to createdAt.toString())
+        val anchor = row("m3", 1_700_000_000_000L)
+        // Both pages include the anchor's second: m2 and m4 share it
+        val older = listOf(
+            row("m1", 1_699_999_999_000L), row("m2", 1_700_000_000_000L), anchor, row("m4", 1_700_000_000_000L)
+        )
+        val newer = listOf(
+            row("m2", 1_700_000_000_000L), anchor, row("m4", 1_700_000_000_000L), row("m5", 1_700_000_001_000L)
+        )
+
+        val page = MessagePager.anchoredPage(anchor, older, newer)
+
+        page.rows.map { it["id"] } shouldBe listOf("m1", "m2", "m3", "m4", "m5")
+        page.anchorIndex shouldBe 2
+        page.olderFetched shouldBe 3
+        page.newerFetched shouldBe 3
+    }
+})
@@ -0,0 +1,42 @@
+package com.synapse.social.studioasinc.chat.service
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.comparables.shouldBeGreaterThan
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.long
+import io.kotest.property.checkAll
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the per-chat sync cursor used to catch up on missed realtime changes.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class MessageSyncTrackerTest : StringSpec({
+
+    "cursor takes the newer of created_at and updated_at" {
+        val cursor = MessageSyncTracker.cursorOf(
+            mapOf("id" to "m1", "created_at" to "1700000000", "updated_at" to "1700000050")
+        )
+
+        cursor shouldBe SyncCursor("1700000050", "m1")
+    }
+
+    "rows without an ID or timestamps have no cursor" {
+        MessageSyncTracker.cursorOf(mapOf("created_at" to "1700000000")).shouldBeNull()
+        MessageSyncTracker.cursorOf(mapOf("id" to "m1", "created_at" to "null")).shouldBeNull()
+    }
+
+    "epoch timestamps compare numerically" {
+        checkAll(100, Arb.long(1L..9_999_999_999L)) { ts ->
+            SyncCursor((ts + 1).toString(), "a") shouldBeGreaterThan SyncCursor(ts.toString(), "z")
+        }
+        // Lexical order would put "999" after "1000"
+        SyncCursor("1000", "a") shouldBeGreaterThan SyncCursor("999", "a")
+    }
+
+    "message ID breaks ties within the same second" {
+        SyncCursor("1700000000", "b") shouldBeGreaterThan SyncCursor("1700000000", "a")
+    }
+})
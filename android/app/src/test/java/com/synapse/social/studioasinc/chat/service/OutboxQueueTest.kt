@@ -0,0 +1,129 @@
+package com.synapse.social.studioasinc.chat.service
+
+import com.synapse.social.studioasinc.model.Message
+import com.synapse.social.studioasinc.model.MessageDeliveryStatus
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for outbox ordering, retries and reconciliation with server rows.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class OutboxQueueTest : StringSpec({
+
+    fun entry(id: String, chatId: String = "chat-a", createdAt: Long = 1_000L) =
+        OutboxEntry(clientId = id, chatId = chatId, senderId = "me", content = id, createdAt = createdAt)
+
+    "each chat sends in queue order, independently of other chats" {
+        val queue = OutboxQueue()
+        queue.add(entry("a1"))
+        queue.add(entry("b1", chatId = "chat-b"))
+        queue.add(entry("a2"))
+
+        queue.takeNext("chat-a")?.clientId shouldBe "a1"
+        queue.takeNext("chat-b")?.clientId shouldBe "b1"
+        queue.markSent("a1", now = 2_000L)
+        queue.takeNext("chat-a")?.clientId shouldBe "a2"
+        queue.takeNext("chat-a") shouldBe null
+    }
+
+    "a failed attempt keeps the message at the head of its chat" {
+        val queue = OutboxQueue(maxAttempts = 3)
+        queue.add(entry("a1"))
+        queue.add(entry("a2"))
+
+        queue.takeNext("chat-a")
+        queue.markAttemptFailed("a1")?.state shouldBe OutboxEntry.State.PENDING
+
+        queue.takeNext("chat-a")?.clientId shouldBe "a1"
+    }
+
+    "a message that runs out of attempts stops blocking the chat" {
+        val queue = OutboxQueue(maxAttempts = 2)
+        queue.add(entry("a1"))
+        queue.add(entry("a2"))
+
+        repeat(2) {
+            queue.takeNext("chat-a")
+            queue.markAttemptFailed("a1")
+        }
+
+        queue.get("a1")?.state shouldBe OutboxEntry.State.FAILED
+        queue.takeNext("chat-a")?.clientId shouldBe "a2"
+    }
+
+    "a manual retry requeues a failed message behind newer ones" {
+        val queue = OutboxQueue(maxAttempts = 1)
+        queue.add(entry("a1"))
+        queue.takeNext("chat-a")
+        queue.markAttemptFailed("a1")
+        queue.add(entry("a2"))
+
+        queue.retry("a1")?.attempt shouldBe 0
+        queue.retry("a2") shouldBe null
+
+        queue.takeNext("chat-a")?.clientId shouldBe "a2"
+        queue.takeNext("chat-a")?.clientId shouldBe "a1"
+    }
+
+    "in-flight sends are persisted as pending and sent messages are not persisted" {
+        val queue = OutboxQueue()
+        queue.add(entry("a1"))
+        queue.add(entry("a2"))
+        queue.takeNext("chat-a")
+        queue.markSent("a1", now = 2_000L)
+        queue.takeNext("chat-a")
+
+        val unsent = queue.unsent()
+
+        unsent.map { it.clientId } shouldContainExactly listOf("a2")
+        unsent.single().state shouldBe OutboxEntry.State.PENDING
+    }
+
+    "sent entries are dropped once acknowledged or stale" {
+        val queue = OutboxQueue()
+        queue.add(entry("a1"))
+        queue.add(entry("a2"))
+        queue.takeNext("chat-a")
+        queue.markSent("a1", now = 2_000L)
+
+        queue.acknowledge(listOf("a1", "a2")) shouldBe 1
+        queue.snapshot().map { it.clientId } shouldContainExactly listOf("a2")
+
+        queue.takeNext("chat-a")
+        queue.markSent("a2", now = 3_000L)
+        queue.pruneSent(now = 10_000L, retentionMs = 5_000L)
+        queue.snapshot().shouldBeEmpty()
+    }
+
+    "reconcile appends pending messages and replaces echoed ones without duplicates" {
+        val server = listOf(
+            Message(id = "s1", createdAt = 1L),
+            Message(id = "a1", createdAt = 2L)
+        )
+        val outbox = listOf(
+            entry("a1").copy(state = OutboxEntry.State.SENT),
+            entry("a2"),
+            entry("a3").copy(state = OutboxEntry.State.FAILED)
+        )
+
+        val merged = OutboxQueue.reconcile(server, outbox)
+
+        merged.map { it.id } shouldContainExactly listOf("s1", "a1", "a2", "a3")
+        merged[1] shouldBeSameInstanceAs server[1]
+        merged[2].deliveryStatus shouldBe MessageDeliveryStatus.SENDING
+        merged[3].deliveryStatus shouldBe MessageDeliveryStatus.FAILED
+        merged[2].isFromCurrentUser shouldBe true
+    }
+
+    "reconcile returns the server list untouched when nothing is pending" {
+        val server = listOf(Message(id = "s1"))
+
+        OutboxQueue.reconcile(server, emptyList()) shouldBeSameInstanceAs server
+        OutboxQueue.reconcile(server, listOf(entry("s1"))) shouldBeSameInstanceAs server
+    }
+})
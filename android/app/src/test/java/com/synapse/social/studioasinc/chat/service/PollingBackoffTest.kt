@@ -0,0 +1,51 @@
+package com.synapse.social.studioasinc.chat.service
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.longs.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.boolean
+import io.kotest.property.arbitrary.list
+import io.kotest.property.checkAll
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the adaptive polling fallback interval.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class PollingBackoffTest : StringSpec({
+
+    "idle polls grow the interval up to the cap" {
+        val backoff = PollingBackoff(minIntervalMs = 1000L, maxIntervalMs = 5000L, backoffFactor = 2.0)
+
+        backoff.next(hadActivity = false) shouldBe 2000L
+        backoff.next(hadActivity = false) shouldBe 4000L
+        backoff.next(hadActivity = false) shouldBe 5000L
+        backoff.next(hadActivity = false) shouldBe 5000L
+    }
+
+    "activity snaps back to the minimum" {
+        val backoff = PollingBackoff(minIntervalMs = 1000L, maxIntervalMs = 5000L, backoffFactor = 2.0)
+        repeat(5) { backoff.next(hadActivity = false) }
+
+        backoff.next(hadActivity = true) shouldBe 1000L
+    }
+
+    "reset returns to the minimum" {
+        val backoff = PollingBackoff(minIntervalMs = 1000L, maxIntervalMs = 5000L)
+        repeat(5) { backoff.next(hadActivity = false) }
+
+        backoff.reset()
+
+        backoff.currentIntervalMs shouldBe 1000L
+    }
+
+    "interval never exceeds the cap" {
+        checkAll(100, Arb.list(Arb.boolean(), 0..50)) { outcomes ->
+            val backoff = PollingBackoff()
+            outcomes.forEach { backoff.next(it) }
+
+            backoff.currentIntervalMs shouldBeLessThanOrEqual 60000L
+        }
+    }
+})
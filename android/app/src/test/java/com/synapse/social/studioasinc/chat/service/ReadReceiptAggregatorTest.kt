@@ -0,0 +1,76 @@
+package com.synapse.social.studioasinc.chat.service
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for flushing read receipt windows.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class ReadReceiptAggregatorTest : StringSpec({
+
+    "receipts of a failed flush are flushed on the next window" {
+        runTest {
+            val scope = CoroutineScope(SupervisorJob() + StandardTestDispatcher(testScheduler))
+            val calls = mutableListOf<List<String>>()
+            var failures = 1
+            val aggregator = ReadReceiptAggregator(
+                markRead = { ids, _ ->
+                    calls.add(ids)
+                    if (failures-- > 0) throw IllegalStateException("offline")
+                    ids.size
+                },
+                scope = scope,
+                windowMs = 1000L
+            )
+
+            aggregator.submit("chat", "user", listOf("m1", "m2"), readUpTo = 10L, realtimeService = null, broadcast = false)
+            advanceTimeBy(1000L)
+            runCurrent()
+
+            calls.size shouldBe 1
+            aggregator.getPendingCount("chat") shouldBe 2
+
+            // No further mark-as-read arrives; the retry window flushes on its own
+            advanceTimeBy(1000L)
+            runCurrent()
+
+            calls shouldBe listOf(listOf("m1", "m2"), listOf("m1", "m2"))
+            aggregator.getPendingCount("chat") shouldBe 0
+            scope.cancel()
+        }
+    }
+
+    "receipts are dropped after the last attempt" {
+        runTest {
+            val scope = CoroutineScope(SupervisorJob() + StandardTestDispatcher(testScheduler))
+            var calls = 0
+            val aggregator = ReadReceiptAggregator(
+                markRead = { _, _ ->
+                    calls++
+                    throw IllegalStateException("offline")
+                },
+                scope = scope,
+                windowMs = 1000L
+            )
+
+            aggregator.submit("chat", "user", listOf("m1"), readUpTo = null, realtimeService = null, broadcast = false)
+            repeat(5) {
+                advanceTimeBy(1000L)
+                runCurrent()
+            }
+
+            calls shouldBe 3
+            aggregator.getPendingCount("chat") shouldBe 0
+            scope.cancel()
+        }
+    }
+})
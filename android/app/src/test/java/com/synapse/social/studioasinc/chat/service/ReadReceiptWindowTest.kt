@@ -0,0 +1,62 @@
+package com.synapse.social.studioasinc.chat.service
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the cross-chat read receipt window.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class ReadReceiptWindowTest : StringSpec({
+
+    "receipts collapse to one batch per chat with the newest watermark" {
+        val window = ReadReceiptWindow()
+
+        window.add("chat-a", "user", listOf("m1", "m2"), readUpTo = 100L, broadcast = true)
+        window.add("chat-a", "user", listOf("m2", "m3"), readUpTo = 90L, broadcast = true)
+        window.add("chat-b", "user", listOf("m9"), readUpTo = 50L, broadcast = false)
+
+        val batches = window.drain().associateBy { it.chatId }
+
+        batches.keys shouldBe setOf("chat-a", "chat-b")
+        batches.getValue("chat-a").messageIds shouldContainExactly listOf("m1", "m2", "m3")
+        batches.getValue("chat-a").readUpTo shouldBe 100L
+        batches.getValue("chat-b").broadcast shouldBe false
+        window.size() shouldBe 0
+    }
+
+    "flushed messages are not queued again" {
+        val window = ReadReceiptWindow()
+        window.add("chat-a", "user", listOf("m1"), readUpTo = null, broadcast = true)
+        window.drain()
+
+        window.add("chat-a", "user", listOf("m1"), readUpTo = null, broadcast = true) shouldBe 0
+        window.drain().shouldBeEmpty()
+    }
+
+    "restored batches are retried with the next window" {
+        val window = ReadReceiptWindow()
+        window.add("chat-a", "user", listOf("m1", "m2"), readUpTo = 10L, broadcast = true)
+        val failed = window.drain()
+
+        window.restore(failed)
+        window.add("chat-a", "user", listOf("m1"), readUpTo = null, broadcast = true) shouldBe 0
+
+        val retry = window.drain().single()
+        retry.messageIds shouldContainExactly listOf("m1", "m2")
+        retry.readUpTo shouldBe 10L
+        retry.attempt shouldBe 1
+    }
+
+    "de-duplication memory is bounded" {
+        val window = ReadReceiptWindow(maxRemembered = 2)
+        window.add("chat-a", "user", listOf("m1", "m2", "m3"), readUpTo = null, broadcast = true)
+        window.drain()
+
+        // m1 was evicted, m3 is still remembered
+        window.add("chat-a", "user", listOf("m1", "m3"), readUpTo = null, broadcast = true) shouldBe 1
+    }
+})
@@ -0,0 +1,63 @@
+package com.synapse.social.studioasinc.chat.service
+
+import com.synapse.social.studioasinc.chat.models.ChatItem
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for batching and caching reply previews of messages outside the loaded list.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class ReplyPreviewResolverTest : StringSpec({
+
+    fun message(id: String) = mapOf<String, Any?>("id" to id, "sender_id" to "a", "content" to "text of $id")
+
+    "a page's reply targets are fetched in one request and not again" {
+        val requests = mutableListOf<List<String>>()
+        val resolver = ReplyPreviewResolver { ids ->
+            requests.add(ids)
+            Result.success(ids.filter { it != "gone" }.map(::message))
+        }
+
+        resolver.resolve(listOf("a", "b", "gone", "a")) shouldBe true
+        resolver.resolve(listOf("a", "b", "gone")) shouldBe false
+
+        requests shouldBe listOf(listOf("a", "b", "gone"))
+        val cached = resolver.cached(listOf("a", "gone", "unknown"))
+        cached["a"]?.text shouldBe "text of a"
+        cached["gone"] shouldBe ChatItem.ReplyPreview.UNAVAILABLE
+        cached.containsKey("unknown") shouldBe false
+    }
+
+    "large pages are split into bounded requests" {
+        val sizes = mutableListOf<Int>()
+        val resolver = ReplyPreviewResolver { ids ->
+            sizes.add(ids.size)
+            Result.success(ids.map(::message))
+        }
+
+        resolver.resolve((1..250).map { "m$it" })
+
+        sizes shouldBe listOf(100, 100, 50)
+    }
+
+    "failed requests are retried and invalidated previews fetched again" {
+        var fail = true
+        var requests = 0
+        val resolver = ReplyPreviewResolver { ids ->
+            requests++
+            if (fail) Result.failure(IllegalStateException("offline")) else Result.success(ids.map(::message))
+        }
+
+        resolver.resolve(listOf("a")) shouldBe false
+        resolver.cached(listOf("a")) shouldBe emptyMap()
+
+        fail = false
+        resolver.resolve(listOf("a")) shouldBe true
+        resolver.invalidate("a") shouldBe true
+        resolver.resolve(listOf("a")) shouldBe true
+
+        requests shouldBe 3
+    }
+})
@@ -0,0 +1,82 @@
+package com.synapse.social.studioasinc.chat.service
+
+import com.synapse.social.studioasinc.chat.models.ChatItem
+import com.synapse.social.studioasinc.chat.models.MessageLayout
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.shouldBe
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for building the playlist of consecutive voice notes.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class VoicePlaybackControllerTest : StringSpec({
+
+    fun message(
+        id: String,
+        viewType: Int = ChatItem.VIEW_TYPE_VOICE_MESSAGE,
+        url: String? = "https://cdn/$id.m4a",
+        isDeleted: Boolean = false
+    ) = ChatItem.Message(
+        key = id,
+        viewType = viewType,
+        senderId = "a",
+        isMine = false,
+        text = "",
+        displayText = "",
+        deliveryStatus = "sent",
+        isDeleted = isDeleted,
+        isEdited = false,
+        isForwarded = false,
+        replyToId = null,
+        reply = null,
+        attachments = listOfNotNull(url?.let { ChatItem.Attachment(it, "audio", null, null, 1000L) }),
+        linkUrl = null,
+        timestamp = 0L,
+        layout = MessageLayout.PENDING,
+        isNew = false,
+        errorDetails = null
+    )
+
+    "the tapped note is followed by the voice notes right after it" {
+        val items = listOf(
+            message("v1"),
+            message("v2"),
+            message("v3"),
+            message("v4"),
+            message("t1", viewType = ChatItem.VIEW_TYPE_TEXT),
+            message("v5")
+        )
+
+        VoicePlaybackController.playlistFrom(items, "v2").map { it.id } shouldBe listOf("v2", "v3", "v4")
+        VoicePlaybackController.playlistFrom(items, "v2").first().url shouldBe "https://cdn/v2.m4a"
+    }
+
+    "deleted notes and notes without audio end the run" {
+        val items = listOf(
+            message("v1"),
+            message("v2", isDeleted = true),
+            message("v3"),
+            message("v4", url = null),
+            message("v5")
+        )
+
+        VoicePlaybackController.playlistFrom(items, "v1").map { it.id } shouldBe listOf("v1")
+        VoicePlaybackController.playlistFrom(items, "v3").map { it.id } shouldBe listOf("v3")
+        VoicePlaybackController.playlistFrom(items, "v5").map { it.id } shouldBe listOf("v5")
+    }
+
+    "the typing indicator after the last note ends the run" {
+        val items = listOf(message("v1"), message("v2"), ChatItem.Typing)
+
+        VoicePlaybackController.playlistFrom(items, "v1").map { it.id } shouldBe listOf("v1", "v2")
+    }
+
+    "unknown or unplayable start notes give no playlist" {
+        val items = listOf(message("v1"), message("gone", isDeleted = true))
+
+        VoicePlaybackController.playlistFrom(items, "missing").shouldBeEmpty()
+        VoicePlaybackController.playlistFrom(items, "gone").shouldBeEmpty()
+    }
+})
@@ -0,0 +1,68 @@
+package com.synapse.social.studioasinc.util
+
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.int
+import io.kotest.property.checkAll
+import kotlin.math.abs
+
+/**
+ * Tests for BlurHash encode/decode used by progressive image placeholders.
+ * Runs on raw ARGB pixels; the Bitmap overloads only copy pixels in and out.
+ */
+class BlurHashTest : StringSpec({
+
+    fun argb(r: Int, g: Int, b: Int): Int = (0xFF shl 24) or (r shl 16) or (g shl 8) or b
+
+    fun solid(size: Int, color: Int): IntArray = IntArray(size * size) { color }
+
+    "hash length matches component count" {
+        val red = solid(16, argb(255, 0, 0))
+
+        BlurHash.encode(red, 16, 16, 4, 3).length shouldBe 4 + 2 * 4 * 3
+        BlurHash.encode(red, 16, 16, 1, 1).length shouldBe 6
+    }
+
+    "solid colors survive a round trip" {
+        checkAll(50, Arb.int(0..255), Arb.int(0..255), Arb.int(0..255)) { r, g, b ->
+            val hash = BlurHash.encode(solid(8, argb(r, g, b)), 8, 8, 4, 3)
+
+            val decoded = BlurHash.decodePixels(hash, 4, 4).shouldNotBeNull()
+            decoded.size shouldBe 16
+            val pixel = decoded[2 * 4 + 2]
+
+            (pixel ushr 24) shouldBe 0xFF
+            abs(((pixel shr 16) and 255) - r) shouldBeLessThanOrEqual 2
+            abs(((pixel shr 8) and 255) - g) shouldBeLessThanOrEqual 2
+            abs((pixel and 255) - b) shouldBeLessThanOrEqual 2
+        }
+    }
+
+    "a horizontal gradient keeps its direction" {
+        val pixels = IntArray(16 * 16) { index ->
+            val value = (index % 16) * 255 / 15
+            argb(value, value, value)
+        }
+
+        val decoded = BlurHash.decodePixels(BlurHash.encode(pixels, 16, 16, 4, 3), 8, 8).shouldNotBeNull()
+        val left = decoded[4 * 8] and 255
+        val right = decoded[4 * 8 + 7] and 255
+
+        (left < right) shouldBe true
+    }
+
+    "invalid hashes decode to null" {
+        BlurHash.decodePixels(null, 4, 4).shouldBeNull()
+        BlurHash.decodePixels("", 4, 4).shouldBeNull()
+        BlurHash.decodePixels("LEHV6nWB2yk8", 4, 4).shouldBeNull() // Truncated
+        BlurHash.decodePixels("LEHV6nWB2yk8pyo0adR*.7kCMd!n", 4, 4).shouldBeNull() // Invalid character
+    }
+
+    "known hash decodes" {
+        BlurHash.decodePixels("LEHV6nWB2yk8pyo0adR*.7kCMdnj", 32, 32).shouldNotBeNull().size shouldBe 32 * 32
+    }
+})
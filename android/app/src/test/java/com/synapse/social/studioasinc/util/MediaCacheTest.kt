@@ -0,0 +1,159 @@
+package com.synapse.social.studioasinc.util
+
+import android.content.Context
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.robolectric.annotation.Config
+import java.io.File
+import java.nio.file.Files
+import java.security.MessageDigest
+
+/**
+ * Tests for the media cache journal: replay, compaction, interrupted writes and the migration
+ * of caches written before the journal.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class MediaCacheTest : StringSpec({
+
+    fun tempDir(): File = Files.createTempDirectory("media-cache").toFile().apply { deleteOnExit() }
+
+    fun open(dir: File): MediaCache {
+        val context = mock<Context> { on { cacheDir } doReturn dir.parentFile }
+        return MediaCache(context, dir)
+    }
+
+    fun source(name: String, bytes: ByteArray): File {
+        // Outside the cache directory, like a download's temp file
+        return File(Files.createTempDirectory("media-source").toFile(), name).apply { writeBytes(bytes) }
+    }
+
+    fun cacheKey(key: String): String {
+        return MessageDigest.getInstance("MD5").digest(key.toByteArray()).joinToString("") { "%02x".format(it) }
+    }
+
+    fun journalLines(dir: File) = File(dir, "journal").readLines()
+
+    "entries survive a restart through the journal" {
+        val dir = tempDir()
+        val cache = open(dir)
+        cache.put("image", source("a.jpg", ByteArray(10)), MediaCache.Category.IMAGE)
+        cache.put("audio", source("b.m4a", ByteArray(20)), MediaCache.Category.AUDIO)
+        cache.put("gone", source("c.pdf", ByteArray(30)), MediaCache.Category.DOCUMENT)
+        cache.remove("gone")
+
+        val reopened = open(dir)
+
+        reopened.getCacheFileCount() shouldBe 2
+        reopened.getCategorySize(MediaCache.Category.IMAGE) shouldBe 10L
+        reopened.getCategorySize(MediaCache.Category.AUDIO) shouldBe 20L
+        reopened.getCategorySize(MediaCache.Category.DOCUMENT) shouldBe 0L
+        reopened.get("image")?.length() shouldBe 10L
+        reopened.contains("gone") shouldBe false
+    }
+
+    "a later put of the same key replaces the entry on replay" {
+        val dir = tempDir()
+        val cache = open(dir)
+        cache.put("key", source("v1", ByteArray(10)), MediaCache.Category.IMAGE)
+        cache.put("key", source("v2", ByteArray(25)), MediaCache.Category.IMAGE)
+
+        val reopened = open(dir)
+
+        reopened.getCacheFileCount() shouldBe 1
+        reopened.getCacheSize() shouldBe 25L
+    }
+
+    "repeated reads compact the journal" {
+        val dir = tempDir()
+        val cache = open(dir)
+        cache.put("key", source("a", ByteArray(10)), MediaCache.Category.IMAGE)
+
+        repeat(2100) { cache.get("key") }
+
+        journalLines(dir).size shouldBeLessThan 200
+        open(dir).get("key")?.length() shouldBe 10L
+    }
+
+    "a write interrupted between DIRTY and CLEAN is discarded on load" {
+        val dir = tempDir()
+        val cache = open(dir)
+        cache.put("kept", source("a", ByteArray(10)), MediaCache.Category.IMAGE)
+
+        // Crash after the copy started: DIRTY journaled, temp and target files left behind
+        val crashed = cacheKey("crashed")
+        File(dir, "journal").appendText("DIRTY $crashed\n")
+        File(dir, "$crashed.tmp").writeBytes(ByteArray(5))
+        File(dir, crashed).writeBytes(ByteArray(5))
+
+        val reopened = open(dir)
+
+        reopened.contains("crashed") shouldBe false
+        reopened.contains("kept") shouldBe true
+        File(dir, "$crashed.tmp").exists() shouldBe false
+        File(dir, crashed).exists() shouldBe false
+        journalLines(dir).any { it.startsWith("DIRTY") } shouldBe false
+    }
+
+    "an interrupted rewrite keeps the committed version" {
+        val dir = tempDir()
+        val cache = open(dir)
+        cache.put("key", source("a", ByteArray(10)), MediaCache.Category.IMAGE)
+        File(dir, "journal").appendText("DIRTY ${cacheKey("key")}\n")
+
+        val reopened = open(dir)
+
+        reopened.get("key")?.length() shouldBe 10L
+    }
+
+    "a corrupt journal is rebuilt from the directory" {
+        val dir = tempDir()
+        val cache = open(dir)
+        cache.put("key", source("a", ByteArray(10)), MediaCache.Category.IMAGE)
+        File(dir, "journal").writeText("not a journal\n")
+
+        val reopened = open(dir)
+
+        reopened.getCacheFileCount() shouldBe 1
+        journalLines(dir).first() shouldBe "synapse.media.cache 1"
+    }
+
+    "migration categorizes legacy files by content and drops their metadata" {
+        val dir = tempDir().apply { mkdirs() }
+        val jpeg = byteArrayOf(0xFF.toByte(), 0xD8.toByte(), 0xFF.toByte(), 0xE0.toByte()) + ByteArray(96)
+        val mp4 = byteArrayOf(0, 0, 0, 0x18) + "ftypisom".toByteArray() + ByteArray(188)
+        val m4a = byteArrayOf(0, 0, 0, 0x18) + "ftypM4A ".toByteArray() + ByteArray(288)
+        val pdf = "%PDF-1.7".toByteArray() + ByteArray(392)
+        File(dir, cacheKey("photo")).writeBytes(jpeg)
+        File(dir, cacheKey("clip")).writeBytes(mp4)
+        File(dir, cacheKey("note")).writeBytes(m4a)
+        File(dir, cacheKey("doc")).writeBytes(pdf)
+        File(dir, cacheKey("photo") + ".meta").writeText("12345")
+
+        val cache = open(dir)
+
+        cache.getCacheFileCount() shouldBe 4
+        cache.getCategorySize(MediaCache.Category.IMAGE) shouldBe 100L
+        cache.getCategorySize(MediaCache.Category.VIDEO) shouldBe 200L
+        cache.getCategorySize(MediaCache.Category.AUDIO) shouldBe 300L
+        cache.getCategorySize(MediaCache.Category.DOCUMENT) shouldBe 400L
+        File(dir, cacheKey("photo") + ".meta").exists() shouldBe false
+        cache.get("photo")?.length() shouldBe 100L
+
+        // The migration is journaled, so the next start replays it
+        open(dir).getCategorySize(MediaCache.Category.VIDEO) shouldBe 200L
+    }
+
+    "a document put after migration doesn't evict migrated media" {
+        val dir = tempDir().apply { mkdirs() }
+        val jpeg = byteArrayOf(0xFF.toByte(), 0xD8.toByte(), 0xFF.toByte(), 0xE0.toByte()) + ByteArray(96)
+        File(dir, cacheKey("photo")).writeBytes(jpeg)
+        val cache = open(dir)
+
+        cache.put("doc", source("d.pdf", ByteArray(10)), MediaCache.Category.DOCUMENT)
+
+        cache.contains("photo") shouldBe true
+    }
+})
@@ -0,0 +1,55 @@
+package com.synapse.social.studioasinc.util
+
+import com.synapse.social.studioasinc.chat.service.TypingIndicatorManager
+import com.synapse.social.studioasinc.util.ConnectionMonitor.ConnectionQuality
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.longs.shouldBeGreaterThan
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.enum
+import io.kotest.property.arbitrary.int
+import io.kotest.property.checkAll
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the connection-quality policy mapping.
+ */
+@Config(manifest = Config.NONE, sdk = [28])
+class NetworkPolicyEngineTest : StringSpec({
+
+    "policy follows connection quality in auto mode" {
+        NetworkPolicyEngine.policyFor(ConnectionQuality.EXCELLENT, NetworkPolicyMode.AUTO) shouldBe NetworkPolicy.FULL
+        NetworkPolicyEngine.policyFor(ConnectionQuality.GOOD, NetworkPolicyMode.AUTO) shouldBe NetworkPolicy.FULL
+        NetworkPolicyEngine.policyFor(ConnectionQuality.FAIR, NetworkPolicyMode.AUTO) shouldBe NetworkPolicy.REDUCED
+        NetworkPolicyEngine.policyFor(ConnectionQuality.POOR, NetworkPolicyMode.AUTO) shouldBe NetworkPolicy.MINIMAL
+    }
+
+    "unknown bandwidth does not degrade behaviour" {
+        NetworkPolicyEngine.policyFor(ConnectionQuality.NONE, NetworkPolicyMode.AUTO) shouldBe NetworkPolicy.FULL
+    }
+
+    "settings override the measured quality" {
+        checkAll(Arb.enum<ConnectionQuality>()) { quality ->
+            NetworkPolicyEngine.policyFor(quality, NetworkPolicyMode.FULL_QUALITY) shouldBe NetworkPolicy.FULL
+            NetworkPolicyEngine.policyFor(quality, NetworkPolicyMode.DATA_SAVER) shouldBe NetworkPolicy.MINIMAL
+        }
+    }
+
+    "scaled page sizes never grow and keep a usable minimum" {
+        checkAll(100, Arb.int(1..500)) { pageSize ->
+            val scaled = NetworkPolicy.MINIMAL.scalePageSize(pageSize)
+
+            scaled shouldBeLessThanOrEqual pageSize
+            scaled shouldBe maxOf(pageSize / 2, minOf(10, pageSize))
+        }
+        NetworkPolicy.FULL.scalePageSize(20) shouldBe 20
+    }
+
+    "receivers outlast a widened typing heartbeat" {
+        val heartbeat = NetworkPolicy.MINIMAL.typingHeartbeatMs
+
+        TypingIndicatorManager.typingExpiryFor(heartbeat) shouldBeGreaterThan 2 * heartbeat
+        TypingIndicatorManager.typingExpiryFor(null) shouldBe TypingIndicatorManager.TYPING_EXPIRY
+    }
+})